@@ -280,6 +280,15 @@ public class PdfSignatureAppearance {
         return new RASInputStream(fac.createRanged(getUnderlyingSource(), range));
     }
 
+    /**
+     * Gets the byte ranges covered by the signature, as written into the /ByteRange entry
+     * by preClose(): pairs of offset and length, the gap between them hosts the /Contents.
+     * @return a copy of the byte ranges, <CODE>null</CODE> if the document has not been pre-closed yet
+     */
+    public long[] getRange() {
+        return preClosed ? range.clone() : null;
+    }
+
     /**
      * @return the underlying source
      * @throws IOException
@@ -1488,4 +1497,20 @@ public class PdfSignatureAppearance {
                 try{originalout.close();}catch(Exception e){}
         }
     }
+
+    /**
+     * Releases the resources held after {@link #preClose(HashMap)} when the signature
+     * is not going to be completed by {@link #close(PdfDictionary)}, e.g. when only the
+     * digest of the range stream was needed. The reader and the temporary file are closed;
+     * as for close(), the temporary file is deleted only if an <CODE>OutputStream</CODE> was given.
+     */
+    public void release() {
+        try{writer.reader.close();}catch(Exception e){}
+        if (tempFile != null) {
+            if (raf != null)
+                try{raf.close();}catch(Exception ee){}
+            if (originalout != null)
+                try{tempFile.delete();}catch(Exception ee){}
+        }
+    }
 }
\ No newline at end of file
@@ -44,7 +44,9 @@
  */
 package com.itextpdf.text.pdf.security;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.security.GeneralSecurityException;
 import java.security.cert.CertificateFactory;
@@ -146,6 +148,7 @@ public class CRLVerifier extends RootStoreVerifier {
 	
 	/**
 	 * Fetches a CRL for a specific certificate online (without further checking).
+	 * Patched by JENIA Software: the CRL is obtained by the shared RevocationDataSource, if any.
 	 * @param signCert	the certificate
 	 * @param issuerCert	its issuer
 	 * @return	an X509CRL object
@@ -161,7 +164,9 @@ public class CRLVerifier extends RootStoreVerifier {
 			LOGGER.info("Getting CRL from " + crlurl);
 			CertificateFactory cf = CertificateFactory.getInstance("X.509");
 			// Creates the CRL
-			return (X509CRL) cf.generateCRL(new URL(crlurl).openStream());
+			RevocationDataSource source = RevocationDataSource.getShared();
+			InputStream is = source != null ? new ByteArrayInputStream(source.getCRL(crlurl)) : new URL(crlurl).openStream();
+			return (X509CRL) cf.generateCRL(is);
 		}
 		catch(IOException e) {
 			return null;
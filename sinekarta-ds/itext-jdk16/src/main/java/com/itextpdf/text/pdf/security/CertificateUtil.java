@@ -136,6 +136,7 @@ public class CertificateUtil {
 
 	/**
 	 * Gets the CRL object using a CRL URL.
+	 * Patched by JENIA Software: the CRL is obtained by the shared RevocationDataSource, if any.
 	 * @param url	the URL where to get the CRL
 	 * @return	a CRL object
 	 * @throws IOException
@@ -145,7 +146,8 @@ public class CertificateUtil {
 	public static CRL getCRL(String url) throws IOException, CertificateException, CRLException {
 		if (url == null)
 			return null;
-		InputStream is = new URL(url).openStream();
+		RevocationDataSource source = RevocationDataSource.getShared();
+		InputStream is = source != null ? new ByteArrayInputStream(source.getCRL(url)) : new URL(url).openStream();
 		CertificateFactory cf = CertificateFactory.getInstance("X.509");
 		return (CRL)cf.generateCRL(is); 
 	}
@@ -62,6 +62,7 @@ import com.itextpdf.text.log.Logger;
 import com.itextpdf.text.log.LoggerFactory;
 
 /**
+ * Patched by JENIA Software: the CRLs are obtained by the shared RevocationDataSource, if any.
  * An implementation of the CrlClient that fetches the CRL bytes
  * from an URL.
  * @author Paulo Soares
@@ -169,6 +170,12 @@ public class CrlClientOnline implements CrlClient {
         for (URL urlt : urllist) {
         	try {
         		LOGGER.info("Checking CRL: " + urlt);
+        		RevocationDataSource source = RevocationDataSource.getShared();
+        		if (source != null) {
+        			ar.add(source.getCRL(urlt.toExternalForm()));
+        			LOGGER.info("Added CRL found at: " + urlt);
+        			continue;
+        		}
         		HttpURLConnection con = (HttpURLConnection)urlt.openConnection();
         		if (con.getResponseCode() / 100 != 2) {
         			throw new IOException(MessageLocalization.getComposedMessage("invalid.http.response.1", con.getResponseCode()));
@@ -84,6 +84,7 @@ import com.itextpdf.text.pdf.PdfEncryption;
 
 /**
  * Patched by JENIA Software to adapt itext to bcprov-jdk16.
+ * The OCSP responses are obtained by the shared RevocationDataSource, if any, by requests without nonce.
  * OcspClient implementation using BouncyCastle.
  * @author Paulo Soarees
  * @author Alessandro De Prato
@@ -94,28 +95,37 @@ public class OcspClientBouncyCastle implements OcspClient {
     private static final Logger LOGGER = LoggerFactory.getLogger(OcspClientBouncyCastle.class);
 
     /**
-     * Generates an OCSP request using BouncyCastle.
+     * Generates the id of the certificate we are looking for.
      * @param issuerCert	certificate of the issues
      * @param serialNumber	serial number
-     * @return	an OCSP request
-     * @throws OCSPException
-     * @throws IOException
+     * @return	the certificate id
      */
-    private static OCSPReq generateOCSPRequest(X509Certificate issuerCert, BigInteger serialNumber) throws OCSPException, IOException, 
+    private static CertificateID generateCertificateID(X509Certificate issuerCert, BigInteger serialNumber) throws OCSPException, 
             OperatorException, CertificateEncodingException {
         //Add provider BC
         Security.addProvider(new org.bouncycastle.jce.provider.BouncyCastleProvider());
 
-        // Generate the id for the certificate we are looking for
-        CertificateID id = new CertificateID(
+        return new CertificateID(
                 new JcaDigestCalculatorProviderBuilder().build().get(CertificateID.HASH_SHA1),
                 new JcaX509CertificateHolder(issuerCert), serialNumber);
+    }
 
-        // basic request generation with nonce
+    /**
+     * Generates an OCSP request using BouncyCastle.
+     * @param id	the id of the certificate we are looking for
+     * @param nonce	false to omit the nonce, if the response is going to be shared among the requests
+     * @return	an OCSP request
+     * @throws OCSPException
+     * @throws IOException
+     */
+    private static OCSPReq generateOCSPRequest(CertificateID id, boolean nonce) throws OCSPException, IOException {
         OCSPReqBuilder gen = new OCSPReqBuilder();
 
         gen.addRequest(id);
+        if (!nonce)
+            return gen.build();
 
+        // basic request generation with nonce
         X509Extension ext = new X509Extension(false, new DEROctetString(new DEROctetString(PdfEncryption.createDocumentId()).getEncoded()));
         // FIXME verificare
 //        Extension ext = new Extension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce, false, new DEROctetString(new DEROctetString(PdfEncryption.createDocumentId()).getEncoded()));
@@ -136,7 +146,12 @@ public class OcspClientBouncyCastle implements OcspClient {
         if (url == null)
             return null;
         LOGGER.info("Getting OCSP from " + url);
-        OCSPReq request = generateOCSPRequest(rootCert, checkCert.getSerialNumber());
+        CertificateID id = generateCertificateID(rootCert, checkCert.getSerialNumber());
+        RevocationDataSource source = RevocationDataSource.getShared();
+        if (source != null) {
+            return new OCSPResp(source.getOCSPResponse(url, id, generateOCSPRequest(id, false).getEncoded()));
+        }
+        OCSPReq request = generateOCSPRequest(id, true);
         byte[] array = request.getEncoded();
         URL urlt = new URL(url);
         HttpURLConnection con = (HttpURLConnection)urlt.openConnection();
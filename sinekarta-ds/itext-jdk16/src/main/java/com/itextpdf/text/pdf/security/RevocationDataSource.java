@@ -0,0 +1,92 @@
+/*
+ * $Id$
+ *
+ * This file is part of the iText (R) project.
+ * Copyright (c) 1998-2014 iText Group NV
+ * Authors: Bruno Lowagie, Paulo Soares, et al.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License version 3
+ * as published by the Free Software Foundation with the addition of the
+ * following permission added to Section 15 as permitted in Section 7(a):
+ * FOR ANY PART OF THE COVERED WORK IN WHICH THE COPYRIGHT IS OWNED BY
+ * ITEXT GROUP. ITEXT GROUP DISCLAIMS THE WARRANTY OF NON INFRINGEMENT
+ * OF THIRD PARTY RIGHTS
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, see http://www.gnu.org/licenses or write to
+ * the Free Software Foundation, Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA, 02110-1301 USA, or download the license from the following URL:
+ * http://itextpdf.com/terms-of-use/
+ *
+ * The interactive user interfaces in modified source and object code versions
+ * of this program must display Appropriate Legal Notices, as required under
+ * Section 5 of the GNU Affero General Public License.
+ *
+ * In accordance with Section 7(b) of the GNU Affero General Public License,
+ * a covered work must retain the producer line in every PDF that is created
+ * or manipulated using iText.
+ *
+ * You can be released from the requirements of the license by purchasing
+ * a commercial license. Buying such a license is mandatory as soon as you
+ * develop commercial activities involving the iText software without
+ * disclosing the source code of your own applications.
+ * These activities include: offering paid services to customers as an ASP,
+ * serving PDFs on the fly in a web application, shipping iText with a closed
+ * source product.
+ *
+ * For more information, please contact iText Software Corp. at this
+ * address: sales@itextpdf.com
+ */
+package com.itextpdf.text.pdf.security;
+
+import java.io.IOException;
+
+import org.bouncycastle.cert.ocsp.CertificateID;
+
+/**
+ * Patched by JENIA Software: source of the CRLs and of the OCSP responses used by the clients and the verifiers,
+ * which can be replaced by the application in order to share the downloads among them, e.g. by a cache.
+ * Without a shared source every request downloads the data from its URL.
+ */
+public abstract class RevocationDataSource {
+
+    private static volatile RevocationDataSource shared;
+
+    /**
+     * @return the source set by the application, null if none
+     */
+    public static RevocationDataSource getShared() {
+        return shared;
+    }
+
+    /**
+     * @param source the source to be used by every client and verifier, null to download the data at every request
+     */
+    public static void setShared(RevocationDataSource source) {
+        shared = source;
+    }
+
+    /**
+     * Gets the CRL published at the given URL.
+     * @param url	the URL of the CRL
+     * @return	the DER encoded CRL
+     * @throws IOException if the CRL can't be obtained
+     */
+    public abstract byte[] getCRL(String url) throws IOException;
+
+    /**
+     * Gets the OCSP response about a certificate. The request carries no nonce, since the response
+     * may be shared among the requests about the same certificate.
+     * @param url	the URL of the OCSP responder
+     * @param id	the id of the certificate to be checked
+     * @param ocspRequest	the DER encoded request about that certificate
+     * @return	the DER encoded OCSP response
+     * @throws IOException if the response can't be obtained
+     */
+    public abstract byte[] getOCSPResponse(String url, CertificateID id, byte[] ocspRequest) throws IOException;
+}
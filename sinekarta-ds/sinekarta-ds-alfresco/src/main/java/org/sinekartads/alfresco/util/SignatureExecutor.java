@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2010 - 2012 Jenia Software.
+ *
+ * This file is part of Sinekarta
+ *
+ * Sinekarta is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Sinekarta is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+package org.sinekartads.alfresco.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Bounded worker pool for the per-document signature work of the multi-document webscripts.
+ * The webscript thread keeps all the repository accesses (reading the content streams, storing
+ * the results into the nodes), which need the Alfresco transaction and security context;
+ * the workers only run the signature services on the streams they are given.
+ * <p>
+ * Each webscript call opens a {@link Batch}: the submission blocks as long as the call has already
+ * maxDocumentsPerRequest documents in progress, so that a single large request can't take all the
+ * workers and the streams opened by the webscript are bounded.
+ * With parallelism 1 the tasks are run directly by the webscript thread. 
+ * A batch can be given a deadline by the requestTimeout, its tasks still running are cancelled once expired.
+ */
+public class SignatureExecutor implements InitializingBean, DisposableBean {
+
+	private static final Logger tracer = Logger.getLogger(SignatureExecutor.class);
+
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private int maxDocumentsPerRequest = Runtime.getRuntime().availableProcessors();
+	private long requestTimeout = 0;
+	private ExecutorService executor;
+
+
+
+	// -----
+	// --- Lifecycle
+	// -
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		if ( parallelism > 1 ) {
+			final AtomicInteger threadCount = new AtomicInteger();
+			executor = new ThreadPoolExecutor ( parallelism, parallelism, 60L, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(),
+					new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread ( r, "sinekartads-signature-" + threadCount.incrementAndGet() );
+							thread.setDaemon ( true );
+							return thread;
+						}
+					} );
+			((ThreadPoolExecutor) executor).allowCoreThreadTimeOut ( true );
+		}
+		tracer.info(String.format ( "signature executor started with %d workers, %d documents per request, %d ms timeout",
+				parallelism, maxDocumentsPerRequest, requestTimeout ));
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		if ( executor != null ) {
+			executor.shutdownNow();
+		}
+	}
+
+
+
+	// -----
+	// --- Batch submission
+	// -
+
+	public <T> Batch<T> newBatch() {
+		return new Batch<T>();
+	}
+
+	/**
+	 * The documents submitted by a single webscript call. The results are given back in the
+	 * submission order, the caller can then store them from its own thread.
+	 */
+	public class Batch<T> {
+
+		private final Semaphore permits = new Semaphore ( Math.max(1, maxDocumentsPerRequest) );
+		private final List<Future<T>> futures = new ArrayList<Future<T>>();
+		private final long expiration = requestTimeout > 0 ? System.currentTimeMillis() + requestTimeout : Long.MAX_VALUE;
+
+		private Batch() { }
+
+		/**
+		 * Submit a task, waiting first for one of the documents of this batch to be completed
+		 * if the per-request limit has been reached.
+		 * @throws InterruptedException if the webscript thread has been interrupted while waiting
+		 */
+		public Future<T> submit ( final Callable<T> task ) throws InterruptedException {
+			FutureTask<T> future;
+			if ( executor == null ) {
+				future = new FutureTask<T> ( task );
+				future.run();
+			} else {
+				permits.acquire();
+				future = new FutureTask<T> ( task ) {
+					@Override
+					protected void done() {
+						permits.release();
+					}
+				};
+				try {
+					executor.execute ( future );
+				} catch(RuntimeException e) {
+					permits.release();
+					throw e;
+				}
+			}
+			futures.add ( future );
+			return future;
+		}
+
+		/**
+		 * Register a document that failed before its task could be submitted, e.g. because its 
+		 * content could not be read; its future will throw the given exception.
+		 */
+		public Future<T> fail ( final Exception e ) {
+			FutureTask<T> future = new FutureTask<T> ( new Callable<T>() {
+				@Override
+				public T call() throws Exception {
+					throw e;
+				}
+			} );
+			future.run();
+			futures.add ( future );
+			return future;
+		}
+
+		/**
+		 * Wait for the result of a task of this batch until the request deadline, if any.
+		 * @throws TimeoutException if the deadline has expired, all the tasks of the batch are cancelled then
+		 */
+		public T await ( Future<T> future ) throws InterruptedException, ExecutionException, TimeoutException {
+			if ( expiration == Long.MAX_VALUE ) {
+				return future.get();
+			}
+			try {
+				return future.get ( Math.max(0, expiration - System.currentTimeMillis()), TimeUnit.MILLISECONDS );
+			} catch(TimeoutException e) {
+				for ( Future<T> pending : futures ) {
+					pending.cancel ( true );
+				}
+				throw e;
+			}
+		}
+
+		/**
+		 * @return the futures of the submitted tasks, in the submission order
+		 */
+		public List<Future<T>> getFutures() {
+			return futures;
+		}
+	}
+
+
+
+	// -----
+	// --- Configuration
+	// -
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @param parallelism the number of workers shared by all the webscript calls, 1 to disable the pool
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	public int getMaxDocumentsPerRequest() {
+		return maxDocumentsPerRequest;
+	}
+
+	/**
+	 * @param maxDocumentsPerRequest the maximum number of documents of a single call processed at the same time
+	 */
+	public void setMaxDocumentsPerRequest(int maxDocumentsPerRequest) {
+		this.maxDocumentsPerRequest = maxDocumentsPerRequest;
+	}
+
+	public long getRequestTimeout() {
+		return requestTimeout;
+	}
+
+	/**
+	 * @param requestTimeout the milliseconds given to the tasks of a single call awaited by {@link Batch#await(Future)}, 
+	 * 0 to wait indefinitely
+	 */
+	public void setRequestTimeout(long requestTimeout) {
+		this.requestTimeout = requestTimeout;
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2010 - 2012 Jenia Software.
+ *
+ * This file is part of Sinekarta
+ *
+ * Sinekarta is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Sinekarta is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+package org.sinekartads.alfresco.util;
+
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.sinekartads.dto.tools.SignatureService;
+import org.sinekartads.model.domain.SignatureType.SignCategory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.xeustechnologies.jcl.JarClassLoader;
+import org.xeustechnologies.jcl.JclObjectFactory;
+import org.xeustechnologies.jcl.JclUtils;
+
+/**
+ * Registry of the SignatureService instances, one per signature category.
+ * The core jars are loaded into a dedicated JarClassLoader once, when the bean is initialized,
+ * and the services are shared among all the webscript calls; the classloading and the
+ * bootstrap of the cryptographic libraries are then paid only once per JVM.
+ * The services must be stateless with respect to the single request.
+ * {@link #reload()} rebuilds the classloader and the services, for the hot redeploy of the core jars.
+ */
+public class SignatureServiceRegistry implements InitializingBean, DisposableBean {
+
+	private static final Logger tracer = Logger.getLogger(SignatureServiceRegistry.class);
+
+	public static final String DEFAULT_CORE_LOCATION = "alfresco/extension/sinekarta-ds-alfresco/core";
+
+	private static final Map<SignCategory, String> SERVICE_CLASSES =
+			new EnumMap<SignCategory, String>(SignCategory.class);
+	static {
+		SERVICE_CLASSES.put ( SignCategory.CMS, "org.sinekartads.core.service.CMSSignatureService" );
+		SERVICE_CLASSES.put ( SignCategory.PDF, "org.sinekartads.core.service.PDFSignatureService" );
+		SERVICE_CLASSES.put ( SignCategory.XML, "org.sinekartads.core.service.XMLSignatureService" );
+	}
+
+	private String coreLocation = DEFAULT_CORE_LOCATION;
+	private volatile Map<SignCategory, SignatureService> services = Collections.emptyMap();
+
+	private final AtomicLong lookups = new AtomicLong();
+	private volatile int builds;
+	private volatile long lastBuildTime;
+	private volatile long lastBuildLoadedClasses;
+
+
+
+	// -----
+	// --- Lifecycle
+	// -
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		reload();
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		services = Collections.emptyMap();
+	}
+
+	/**
+	 * Create a new JarClassLoader on the core jars and instantiate the services again.
+	 * The requests already running keep on working with the previous instances.
+	 */
+	public synchronized void reload() {
+		ClassLoadingMXBean classLoading = ManagementFactory.getClassLoadingMXBean();
+		long loadedBefore = classLoading.getTotalLoadedClassCount();
+		long start = System.currentTimeMillis();
+
+		JarClassLoader jcl = new JarClassLoader();
+		jcl.add(getClass().getClassLoader().getResource(coreLocation));
+		JclObjectFactory factory = JclObjectFactory.getInstance();
+
+		Map<SignCategory, SignatureService> newServices =
+				new EnumMap<SignCategory, SignatureService>(SignCategory.class);
+		Object obj;
+		for ( Map.Entry<SignCategory, String> serviceClass : SERVICE_CLASSES.entrySet() ) {
+			obj = factory.create ( jcl, serviceClass.getValue() );
+			newServices.put ( serviceClass.getKey(), JclUtils.cast(obj, SignatureService.class) );
+		}
+		services = Collections.unmodifiableMap(newServices);
+
+		builds++;
+		lastBuildTime = System.currentTimeMillis() - start;
+		lastBuildLoadedClasses = classLoading.getTotalLoadedClassCount() - loadedBefore;
+		tracer.info(String.format ( "signature services loaded in %d ms, %d classes loaded (build #%d)",
+				lastBuildTime, lastBuildLoadedClasses, builds ));
+	}
+
+
+
+	// -----
+	// --- Service lookup
+	// -
+
+	public SignatureService getSignatureService ( SignCategory signCategory ) {
+		SignatureService signatureService = services.get ( signCategory );
+		if ( signatureService == null ) {
+			throw new IllegalArgumentException(String.format ( "unsupported signature type - %s", signCategory ));
+		}
+		lookups.incrementAndGet();
+		return signatureService;
+	}
+
+
+
+	// -----
+	// --- Metrics
+	// -
+
+	/**
+	 * @return the number of times the services have been built, 1 unless reload() has been called
+	 */
+	public int getBuilds() {
+		return builds;
+	}
+
+	/**
+	 * @return the milliseconds spent by the last build to create the classloader and the services
+	 */
+	public long getLastBuildTime() {
+		return lastBuildTime;
+	}
+
+	/**
+	 * @return the number of classes loaded by the JVM during the last build
+	 */
+	public long getLastBuildLoadedClasses() {
+		return lastBuildLoadedClasses;
+	}
+
+	/**
+	 * @return the number of services served since the startup, all of them without construction cost
+	 */
+	public long getLookups() {
+		return lookups.get();
+	}
+
+
+
+	// -----
+	// --- Configuration
+	// -
+
+	public String getCoreLocation() {
+		return coreLocation;
+	}
+
+	public void setCoreLocation(String coreLocation) {
+		this.coreLocation = coreLocation;
+	}
+}
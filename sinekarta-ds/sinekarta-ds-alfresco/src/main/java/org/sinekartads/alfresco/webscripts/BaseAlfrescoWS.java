@@ -1,8 +1,10 @@
 package org.sinekartads.alfresco.webscripts;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -21,6 +23,7 @@ import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.security.AuthenticationService;
 import org.alfresco.service.cmr.security.AuthorityService;
 import org.alfresco.service.cmr.security.PersonService;
+import org.alfresco.util.TempFileProvider;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
@@ -110,8 +113,13 @@ public abstract class BaseAlfrescoWS<Request extends BaseRequest, Response exten
 			if  ( StringUtils.equalsIgnoreCase(requestType, "xml") ) {
 				req = (Request) BaseDTO.fromXML(wsReq.getContent().getInputStream(), requestClass);
 			} else if (StringUtils.equalsIgnoreCase(requestType, "json") ) {
-				req = (Request) TemplateUtils.Encoding.deserializeJSON ( 
-						requestClass, wsReq.getContent().getInputStream() );
+				// decode with the charset declared by the client, the JSON default otherwise
+				String encoding = wsReq.getContent().getEncoding();
+				if ( StringUtils.isBlank(encoding) ) {
+					encoding = TemplateUtils.Encoding.JSON_CHARSET;
+				}
+				req = (Request) TemplateUtils.Encoding.deserializeJSON ( requestClass, 
+						new InputStreamReader(wsReq.getContent().getInputStream(), encoding) );
 			}
 			
 			// Esegue la business logic per generare il response
@@ -180,39 +188,7 @@ public abstract class BaseAlfrescoWS<Request extends BaseRequest, Response exten
 		}
 		
 		if ( node != null ) {
-			NodeRef nodeRef;
-			Assert.isTrue( StringUtils.isNotBlank(node.getFileName()) );
-			if ( StringUtils.isBlank(node.getNodeRef()) ) {
-				Assert.isTrue( StringUtils.isNotBlank(node.getParentRef()) );
-				NodeRef parentRef = new NodeRef ( node.getParentRef() );
-				String destName = node.getFileName();
-				String fileName = node.getFileName();
-				int attempt = 0;
-				nodeRef = null;
-				do {
-					if ( attempt > 0) {
-						Matcher mtc = Pattern.compile("^(\\.*[^\\.]+)(\\..*)$").matcher(destName);
-						if ( mtc.find() ) {
-							fileName = String.format("%s_%d%s", mtc.group(1), attempt, mtc.group(2));
-						} else {
-							fileName = String.format("%s_%d", destName, attempt);
-						}
-						node.setFileName(fileName);
-					}
-					if ( nodeService.getChildByName(parentRef, ContentModel.ASSOC_CONTAINS, fileName) == null ) {
-//						nodeRef = NodeTools.createNode ( nodeService, parentRef, fileName );
-						FileInfo fileInfo = serviceRegistry.getFileFolderService().create(parentRef, fileName, ContentModel.TYPE_CONTENT);
-						nodeRef = fileInfo.getNodeRef();
-						node.setNodeRef ( nodeRef.toString() );
-					} else {
-						attempt++;
-					}
-				} while ( nodeRef == null);
-			} else {
-				nodeRef = new NodeRef ( node.getNodeRef() );
-				Assert.isTrue ( nodeService.exists(nodeRef) );
-			}
-			
+			NodeRef nodeRef = resolveNode ( node );
 			byte[] output = Base64.decodeBase64( base64 );
 			ContentWriter writer = contentService.getWriter ( 
 					nodeRef, ContentModel.PROP_CONTENT, true );
@@ -220,15 +196,64 @@ public abstract class BaseAlfrescoWS<Request extends BaseRequest, Response exten
 		}
 	}
 	
+	/**
+	 * Store the content of the given file into the node, creating it if needed.
+	 * The content is streamed, without being loaded into memory.
+	 */
+	protected void storeIntoNode ( 
+			NodeDTO node, 
+			File file ) {
+		
+		if ( node != null ) {
+			NodeRef nodeRef = resolveNode ( node );
+			ContentWriter writer = contentService.getWriter ( 
+					nodeRef, ContentModel.PROP_CONTENT, true );
+			writer.putContent ( file );
+		}
+	}
+	
+	private NodeRef resolveNode ( NodeDTO node ) {
+		NodeRef nodeRef;
+		Assert.isTrue( StringUtils.isNotBlank(node.getFileName()) );
+		if ( StringUtils.isBlank(node.getNodeRef()) ) {
+			Assert.isTrue( StringUtils.isNotBlank(node.getParentRef()) );
+			NodeRef parentRef = new NodeRef ( node.getParentRef() );
+			String destName = node.getFileName();
+			String fileName = node.getFileName();
+			int attempt = 0;
+			nodeRef = null;
+			do {
+				if ( attempt > 0) {
+					Matcher mtc = Pattern.compile("^(\\.*[^\\.]+)(\\..*)$").matcher(destName);
+					if ( mtc.find() ) {
+						fileName = String.format("%s_%d%s", mtc.group(1), attempt, mtc.group(2));
+					} else {
+						fileName = String.format("%s_%d", destName, attempt);
+					}
+					node.setFileName(fileName);
+				}
+				if ( nodeService.getChildByName(parentRef, ContentModel.ASSOC_CONTAINS, fileName) == null ) {
+//					nodeRef = NodeTools.createNode ( nodeService, parentRef, fileName );
+					FileInfo fileInfo = serviceRegistry.getFileFolderService().create(parentRef, fileName, ContentModel.TYPE_CONTENT);
+					nodeRef = fileInfo.getNodeRef();
+					node.setNodeRef ( nodeRef.toString() );
+				} else {
+					attempt++;
+				}
+			} while ( nodeRef == null);
+		} else {
+			nodeRef = new NodeRef ( node.getNodeRef() );
+			Assert.isTrue ( nodeService.exists(nodeRef) );
+		}
+		return nodeRef;
+	}
+	
 	protected String loadFromNode( NodeDTO node ) throws IOException {
 		String contentBase64 = null;
 		InputStream is = null;
 		if ( node != null && StringUtils.isNotBlank(node.getNodeRef()) ) {
 			try {
-				NodeRef nodeRef = new NodeRef ( node.getNodeRef() );
-				ContentReader contentReader = contentService.getReader(
-						nodeRef, ContentModel.PROP_CONTENT);
-				is = contentReader.getContentInputStream();
+				is = openNodeStream ( node );
 				contentBase64 = Base64.encodeBase64String(IOUtils.toByteArray(is));
 			} finally {
 				IOUtils.closeQuietly(is);
@@ -236,4 +261,34 @@ public abstract class BaseAlfrescoWS<Request extends BaseRequest, Response exten
 		}
 		return contentBase64;
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * @return an inputStream on the node content, null if the node has not been given;
+	 * the caller is in charge of closing it
+	 */
+	protected InputStream openNodeStream( NodeDTO node ) {
+		InputStream is = null;
+		if ( node != null && StringUtils.isNotBlank(node.getNodeRef()) ) {
+			NodeRef nodeRef = new NodeRef ( node.getNodeRef() );
+			ContentReader contentReader = contentService.getReader(
+					nodeRef, ContentModel.PROP_CONTENT);
+			is = contentReader.getContentInputStream();
+		}
+		return is;
+	}
+	
+	/**
+	 * @return a new temporary file, to be used for spooling the content produced by the services
+	 */
+	protected File createTempFile() {
+		return TempFileProvider.createTempFile ( "skds", ".tmp" );
+	}
+	
+	protected void deleteTempFiles ( File ... files ) {
+		for ( File file : files ) {
+			if ( file != null && file.exists() && !file.delete() ) {
+				file.deleteOnExit();
+			}
+		}
+	}
+}
@@ -1,5 +1,11 @@
 package org.sinekartads.alfresco.webscripts.core;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+import org.sinekartads.alfresco.util.SignatureExecutor;
+import org.sinekartads.alfresco.util.SignatureServiceRegistry;
 import org.sinekartads.alfresco.webscripts.BaseAlfrescoWS;
 import org.sinekartads.dto.BaseDTO;
 import org.sinekartads.dto.ResultCode;
@@ -8,9 +14,6 @@ import org.sinekartads.dto.request.BaseRequest;
 import org.sinekartads.dto.response.BaseResponse;
 import org.sinekartads.dto.tools.SignatureService;
 import org.sinekartads.model.domain.SignatureType.SignCategory;
-import org.xeustechnologies.jcl.JarClassLoader;
-import org.xeustechnologies.jcl.JclObjectFactory;
-import org.xeustechnologies.jcl.JclUtils;
 
 
 public abstract class SkdsBaseSignWS
@@ -28,38 +31,54 @@ public abstract class SkdsBaseSignWS
 		}
 		return dto;
 	}
-
 	
-	protected SignatureService getSignatureService ( SignCategory signCategory ) {
-		
-		SignatureService signatureService;
-		
-		JarClassLoader jcl = new JarClassLoader();
-		jcl.add(getClass().getClassLoader().getResource("alfresco/extension/sinekarta-ds-alfresco/core"));
-		JclObjectFactory factory = JclObjectFactory.getInstance();
-		Object obj;
-		
-		switch ( signCategory ) {
-			case CMS: {
-				obj = factory.create ( jcl, "org.sinekartads.core.service.CMSSignatureService" );
-				signatureService = JclUtils.cast ( obj, SignatureService.class );
-				break;
-			}
-			case PDF: {
-				obj = factory.create ( jcl, "org.sinekartads.core.service.PDFSignatureService" );
-				signatureService = JclUtils.cast ( obj, SignatureService.class );
-				break;
-			} 
-			case XML: {
-				obj = factory.create ( jcl, "org.sinekartads.core.service.XMLSignatureService" );
-				signatureService = JclUtils.cast ( obj, SignatureService.class );
-				break;
-			}
-			default: {
-				throw new IllegalArgumentException(String.format ( "unsupported signature type - %s", signCategory ));
+	/**
+	 * Wait for the result of a task submitted to the signatureExecutor, within the deadline of its batch,
+	 * rethrowing the exception raised by the worker if any.
+	 * @throws TimeoutException if the deadline has expired
+	 */
+	protected <T> T getResult ( SignatureExecutor.Batch<T> batch, Future<T> future ) throws Exception {
+		try {
+			return batch.await ( future );
+		} catch(ExecutionException e) {
+			if ( e.getCause() instanceof Exception ) {
+				throw (Exception) e.getCause();
 			}
+			throw e;
+		}
+	}
+
+	
+	protected SignatureServiceRegistry signatureServiceRegistry;
+	protected SignatureExecutor signatureExecutor;
+	
+	/**
+	 * The registry and the executor are the shared beans of sinekartads-webscripts-context.xml: 
+	 * a private instance would load the core jars and start a worker pool for each webscript.
+	 * @throws IllegalStateException if any of them has not been injected
+	 */
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		super.afterPropertiesSet();
+		if ( signatureServiceRegistry == null ) {
+			throw new IllegalStateException("the signatureServiceRegistry has not been injected - "
+					+ "refer to the sinekartads.signatureServiceRegistry bean");
+		}
+		if ( signatureExecutor == null ) {
+			throw new IllegalStateException("the signatureExecutor has not been injected - "
+					+ "refer to the sinekartads.signatureExecutor bean");
 		}
-		
-		return signatureService;
 	}
-}
+	
+	public void setSignatureServiceRegistry(SignatureServiceRegistry signatureServiceRegistry) {
+		this.signatureServiceRegistry = signatureServiceRegistry;
+	}
+	
+	public void setSignatureExecutor(SignatureExecutor signatureExecutor) {
+		this.signatureExecutor = signatureExecutor;
+	}
+	
+	protected SignatureService getSignatureService ( SignCategory signCategory ) {
+		return signatureServiceRegistry.getSignatureService ( signCategory );
+	}
+}
\ No newline at end of file
@@ -16,15 +16,25 @@
  */
 package org.sinekartads.alfresco.webscripts.core;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import org.alfresco.service.cmr.repository.NodeRef;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
 import org.sinekartads.alfresco.util.NodeTools;
+import org.sinekartads.alfresco.util.SignatureExecutor;
 import org.sinekartads.dto.BaseDTO;
 import org.sinekartads.dto.domain.DocumentDTO;
 import org.sinekartads.dto.domain.NodeDTO;
 import org.sinekartads.dto.domain.SignatureDTO;
-import org.sinekartads.dto.jcl.PostSignResponseDTO;
 import org.sinekartads.dto.request.SkdsSignRequest.SkdsPostSignRequest;
 import org.sinekartads.dto.response.SkdsSignResponse.SkdsPostSignResponse;
 import org.sinekartads.dto.tools.SignatureService;
@@ -44,89 +54,173 @@ public class SkdsPostSignWS
 		SkdsPostSignResponse resp = new SkdsPostSignResponse();
 		try {
 			documents = req.documentsFromBase64();
+			long start = System.currentTimeMillis();
 			
 			int 			 	lastIndex;
 			SignatureDTO[] 	signatures;
 			SignatureDTO  	signedSignature;
 			SignatureDTO 	finalizedSignature;
-			PostSignResponseDTO	postSignResp;
 			SignCategory 	 	signCategory;
 			SignatureService 	signatureService;
-			String			 	contentBase64;
+			InputStream		 	contentIs;
+			File[]				envelopeFiles;
+			NodeDTO				node;
 			
-			for ( DocumentDTO document : documents ) {
-				signatures 		= document.getSignatures ( );
-				lastIndex 		= signatures.length - 1;
-				signedSignature	= signatures [ lastIndex ];
-				
-				signCategory = signedSignature.signCategoryFromString ( );
-				signatureService = getSignatureService ( signCategory );
-				
-				try {
-					// Retrieve the content
-					contentBase64 = loadFromNode ( document.getBaseDocument() );
-							
-					// Perform the post-sign phase
-					try {
-						String base64Resp = signatureService.postSign ( signedSignature.toBase64(), contentBase64 );
-						postSignResp = BaseDTO.deserializeBase64 ( PostSignResponseDTO.class, base64Resp );
-						finalizedSignature = extractResult ( SignatureDTO.class, base64Resp );
-					} catch(Exception e) {
-						tracer.error("error during the digest evaluation", e);
-						throw e;
-					}
+			// Submit the post-sign phase of every document: the contents are opened by the webscript 
+			// thread, the envelopes are spooled by the workers to temporary files 
+			SignatureExecutor.Batch<String> batch = signatureExecutor.newBatch();
+			File[][] documentFiles = new File[documents.length][];
+			try {
+				for ( int i=0; i<documents.length; i++ ) {
+					signatures 		= documents[i].getSignatures ( );
+					lastIndex 		= signatures.length - 1;
+					signedSignature	= signatures [ lastIndex ];
 					
-					// Create the destination node
-					NodeDTO node = new NodeDTO();
-					node.setDescription(signedSignature.getReason());
-					node.setFileName(document.getDestName());
-					node.setParentRef(document.getBaseDocument().getParentRef());
-					if ( BaseDTO.isNotEmpty(signedSignature.getTimeStampRequest()) ) {
-						document.setMarkedSign(node);
-					} else {
-						document.setEmbeddedSign(node);
+					contentIs = null;
+					try {
+						signCategory = signedSignature.signCategoryFromString ( );
+						signatureService = getSignatureService ( signCategory );
+						documentFiles[i] = new File[] { createTempFile(), createTempFile(), createTempFile() };
+						contentIs = openNodeStream ( documents[i].getBaseDocument() );
+						batch.submit ( postSignTask(signatureService, signedSignature, contentIs, documentFiles[i]) );
+					} catch (Exception e) {
+						IOUtils.closeQuietly(contentIs);
+						batch.fail ( e );
 					}
+				}
+				
+				// Store the results from the webscript thread, in the documents order
+				List<Future<String>> futures = batch.getFutures();
+				for ( int i=0; i<documents.length; i++ ) {
+					DocumentDTO document = documents[i];
+					signatures 		= document.getSignatures ( );
+					lastIndex 		= signatures.length - 1;
+					signedSignature	= signatures [ lastIndex ];
+					envelopeFiles 	= documentFiles[i];
 					
-					// Store the results to the relative nodeRefs, if any
-					storeIntoNode ( document.getDetachedSign(), postSignResp.getDetachedSign() );
-					storeIntoNode ( document.getEmbeddedSign(), postSignResp.getEmbeddedSign() );
-//					storeIntoNode ( document.getTimeStamp(), 	postSignResp.getTsResponse() );
-					storeIntoNode ( document.getMarkedSign(), 	postSignResp.getMarkedSign() );
-					
-					// Complete the document details
-					Date now = new Date();
-					String mimetype;
-					switch(finalizedSignature.signCategoryFromString()) {
-						case XML: {
-							mimetype = "text/xml";
-							break;
+					try {
+						try {
+							finalizedSignature = extractResult ( SignatureDTO.class, getResult(batch, futures.get(i)) );
+							
+							// Create the destination node
+							node = new NodeDTO();
+							node.setDescription(signedSignature.getReason());
+							node.setFileName(document.getDestName());
+							node.setParentRef(document.getBaseDocument().getParentRef());
+							if ( BaseDTO.isNotEmpty(signedSignature.getTimeStampRequest()) ) {
+								document.setMarkedSign(node);
+							} else {
+								document.setEmbeddedSign(node);
+							}
+							
+							// Store the results to the relative nodeRefs, if any
+							storeIntoNode ( document.getDetachedSign(), envelopeFiles[0] );
+							storeIntoNode ( document.getEmbeddedSign(), envelopeFiles[1] );
+							storeIntoNode ( document.getMarkedSign(), 	envelopeFiles[2] );
+						} finally {
+							if ( envelopeFiles != null ) {
+								deleteTempFiles ( envelopeFiles );
+								documentFiles[i] = null;
+							}
 						}
-						case PDF: {
-							mimetype = "application/pdf";
-							break;
+						
+						// Complete the document details
+						Date now = new Date();
+						String mimetype;
+						switch(finalizedSignature.signCategoryFromString()) {
+							case XML: {
+								mimetype = "text/xml";
+								break;
+							}
+							case PDF: {
+								mimetype = "application/pdf";
+								break;
+							}
+							default: {
+								mimetype = "application/octet-stream";
+							}
 						}
-						default: {
-							mimetype = "application/octet-stream";
+						node.creationDateToString(now);
+						node.lastUpdateToString(now);
+						node.setFilePath(NodeTools.translatePath ( nodeService, new NodeRef(node.getNodeRef()) ));
+						node.setMimetype(mimetype);
+						
+						// Replace the signedSignature with the evaluated finalizedSignature
+						signatures [ lastIndex ] = finalizedSignature;
+						
+						// Populate the response with the updated documents
+						resp.documentsToBase64(documents);
+					} catch (Exception e) {
+						processError ( resp, e );
+					}
+				}
+			} finally {
+				// Wait for the workers still running after a failure, then drop their temporary files
+				for ( int i=0; i<documentFiles.length; i++ ) {
+					if ( documentFiles[i] != null ) {
+						if ( i < batch.getFutures().size() ) {
+							try {
+								batch.getFutures().get(i).get();
+							} catch (Exception e) {
+								// already reported
+							}
 						}
+						deleteTempFiles ( documentFiles[i] );
 					}
-					node.creationDateToString(now);
-					node.lastUpdateToString(now);
-					node.setFilePath(NodeTools.translatePath ( nodeService, new NodeRef(node.getNodeRef()) ));
-					node.setMimetype(mimetype);
-					
-					// Replace the signedSignature with the evaluated finalizedSignature
-					signatures [ lastIndex ] = finalizedSignature;
-					
-					// Populate the response with the updated documents
-					resp.documentsToBase64(documents);
-				} catch (Exception e) {
-					processError ( resp, e );
 				}
 			}
+			if ( tracer.isDebugEnabled() ) {
+				tracer.debug(String.format ( "postSign of %d documents completed in %d ms", 
+						documents.length, System.currentTimeMillis() - start ));
+			}
 		} catch (Exception e) {
 			documents = null;
 			processError ( resp, e );
 		}
 		return resp;
 	}
+	
+	/**
+	 * Perform the post-sign phase of a single document, to be run by a worker thread. 
+	 * The detached, embedded and marked envelopes are written into the given files,
+	 * the content stream is always closed at the end.
+	 */
+	private Callable<String> postSignTask ( 
+			final SignatureService signatureService, 
+			final SignatureDTO signedSignature, 
+			final InputStream contentIs,
+			final File[] envelopeFiles ) {
+		
+		return new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				OutputStream detachedSignOs = null;
+				OutputStream embeddedSignOs = null;
+				OutputStream markedSignOs = null;
+				try {
+					detachedSignOs = new BufferedOutputStream ( new FileOutputStream(envelopeFiles[0]) );
+					embeddedSignOs = new BufferedOutputStream ( new FileOutputStream(envelopeFiles[1]) );
+					markedSignOs = new BufferedOutputStream ( new FileOutputStream(envelopeFiles[2]) );
+					String base64Resp = signatureService.postSign ( signedSignature.toBase64(), 
+																	contentIs, 
+																	detachedSignOs, 
+																	embeddedSignOs, 
+																	new NullOutputStream(), 
+																	markedSignOs );
+					detachedSignOs.close();
+					embeddedSignOs.close();
+					markedSignOs.close();
+					return base64Resp;
+				} catch(Exception e) {
+					tracer.error("error during the digest evaluation", e);
+					throw e;
+				} finally {
+					IOUtils.closeQuietly(contentIs);
+					IOUtils.closeQuietly(detachedSignOs);
+					IOUtils.closeQuietly(embeddedSignOs);
+					IOUtils.closeQuietly(markedSignOs);
+				}
+			}
+		};
+	}
 }
@@ -17,8 +17,14 @@
 package org.sinekartads.alfresco.webscripts.core;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.security.SignatureException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
+import org.apache.commons.io.IOUtils;
+import org.sinekartads.alfresco.util.SignatureExecutor;
 import org.sinekartads.dto.ResultCode;
 import org.sinekartads.dto.domain.DocumentDTO;
 import org.sinekartads.dto.domain.SignatureDTO;
@@ -44,6 +50,7 @@ public class SkdsPreSignWS
 		SkdsPreSignResponse resp = new SkdsPreSignResponse();
 		try {
 			documents = req.documentsFromBase64();
+			long start = System.currentTimeMillis();
 			
 			int 			 	lastIndex;
 			SignatureDTO[] 		signatures;
@@ -51,28 +58,35 @@ public class SkdsPreSignWS
 			SignatureDTO	 	digestSignature;
 			SignCategory 	 	signCategory;
 			SignatureService 	signatureService;
-			String 			 	contentBase64;
+			InputStream		 	contentIs;
 			
+			// Submit the pre-sign phase of every document, the contents are opened by the webscript thread
+			SignatureExecutor.Batch<String> batch = signatureExecutor.newBatch();
 			for ( DocumentDTO document : documents ) {
 				signatures 		= document.getSignatures ( );
 				lastIndex 		= signatures.length - 1;
 				chainSignature 	= signatures [ lastIndex ];
 				
-				signCategory = chainSignature.signCategoryFromString ( );
-				signatureService = getSignatureService ( signCategory );
+				contentIs = null;
+				try {
+					signCategory = chainSignature.signCategoryFromString ( );
+					signatureService = getSignatureService ( signCategory );
+					contentIs = openNodeStream ( document.getBaseDocument() );
+					batch.submit ( preSignTask(signatureService, chainSignature, contentIs) );
+				} catch (Exception e) {
+					IOUtils.closeQuietly(contentIs);
+					batch.fail ( e );
+				}
+			}
+			
+			// Collect the results in the documents order
+			List<Future<String>> futures = batch.getFutures();
+			for ( int i=0; i<documents.length; i++ ) {
+				signatures 		= documents[i].getSignatures ( );
+				lastIndex 		= signatures.length - 1;
 				
 				try {
-					// Retrieve the content
-					contentBase64 = loadFromNode ( document.getBaseDocument() );
-					
-					// Perform the pre-sign phase
-					try {
-						String responseBase64 = signatureService.preSign(chainSignature.toBase64(), contentBase64);
-						digestSignature = extractResult ( SignatureDTO.class, responseBase64 );
-					} catch(Exception e) {
-						tracer.error("error during the pre sign phase", e);
-						throw e;
-					}
+					digestSignature = extractResult ( SignatureDTO.class, getResult(batch, futures.get(i)) );
 					
 					// Replace the chainSignature with the evaluated digestSignature
 					signatures [ lastIndex ] = digestSignature;
@@ -83,6 +97,10 @@ public class SkdsPreSignWS
 					processError ( resp, e );
 				}
 			}
+			if ( tracer.isDebugEnabled() ) {
+				tracer.debug(String.format ( "preSign of %d documents completed in %d ms", 
+						documents.length, System.currentTimeMillis() - start ));
+			}
 		} catch (Exception e) {
 			documents = null;
 			processError ( resp, e );
@@ -94,4 +112,27 @@ public class SkdsPreSignWS
 		return resp;
 	}
 	
+	/**
+	 * Perform the pre-sign phase of a single document, to be run by a worker thread.
+	 * The content stream is always closed at the end.
+	 */
+	private Callable<String> preSignTask ( 
+			final SignatureService signatureService, 
+			final SignatureDTO chainSignature, 
+			final InputStream contentIs ) {
+		
+		return new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				try {
+					return signatureService.preSign(chainSignature.toBase64(), contentIs);
+				} catch(Exception e) {
+					tracer.error("error during the pre sign phase", e);
+					throw e;
+				} finally {
+					IOUtils.closeQuietly(contentIs);
+				}
+			}
+		};
+	}
 }
\ No newline at end of file
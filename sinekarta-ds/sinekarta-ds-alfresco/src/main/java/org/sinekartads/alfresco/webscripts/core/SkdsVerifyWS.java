@@ -16,15 +16,21 @@
  */
 package org.sinekartads.alfresco.webscripts.core;
 
-import org.apache.commons.lang3.StringUtils;
-import org.sinekartads.dto.BaseDTO;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.io.IOUtils;
 import org.sinekartads.dto.domain.DocumentDTO;
 import org.sinekartads.dto.domain.VerifyDTO;
-import org.sinekartads.dto.jcl.VerifyResponseDTO;
 import org.sinekartads.dto.request.SkdsVerifyRequest;
 import org.sinekartads.dto.response.SkdsVerifyResponse;
 import org.sinekartads.dto.tools.SignatureService;
 import org.sinekartads.model.domain.SignatureType.SignCategory;
+import org.sinekartads.util.SignCategoryDetector;
 import org.springframework.extensions.webscripts.Cache;
 import org.springframework.extensions.webscripts.Status;
 import org.springframework.util.Assert;
@@ -46,64 +52,41 @@ public class SkdsVerifyWS
 			document = req.documentFromBase64();
 			
 			// Retrieve the content and the optional verification data
-			String contentHex = loadFromNode ( document.getBaseDocument() );
-			String tsResponse = "";// loadFromNode ( document.getTimeStamp() );
-			String envelope   = loadFromNode ( document.getMarkedSign() );
-			VerifyResponseDTO	verifyResp = null;
-			SignatureService signatureService;
+			InputStream contentIs = null;
+			InputStream tsResponseIs = null;// openNodeStream ( document.getTimeStamp() );
+			InputStream envelopeIs = null;
+			File extractedContentFile = createTempFile();
 			
-			Assert.notNull(envelope);
-		
-			if ( verifyResults == null ) {
-				try {
-					signatureService = getSignatureService ( SignCategory.CMS );
-					String hexResp = signatureService.verify ( contentHex, 
-															   tsResponse, 
-															   envelope);
-					verifyResp = BaseDTO.deserializeHex ( VerifyResponseDTO.class, hexResp );
-					verifyResults = extractResult ( VerifyDTO.class, hexResp );
-				} catch (Exception e) {
-					// to nothing, try with the next signature type
-				} 
-			}
-			
-			if ( verifyResults == null ) {
-				try {
-					signatureService = getSignatureService ( SignCategory.PDF );
-					String hexResp = signatureService.verify ( contentHex, 
-															   tsResponse, 
-															   envelope );
-					verifyResp = BaseDTO.deserializeHex ( VerifyResponseDTO.class, hexResp );
-					verifyResults = extractResult ( VerifyDTO.class, hexResp );
-				} catch (Exception e) {
-					// to nothing, try with the next signature type
-				}  
-			}
-			
-			if ( verifyResults == null ) {
-				try {
-					signatureService = getSignatureService ( SignCategory.XML );
-					String hexResp = signatureService.verify ( contentHex, 
-															   tsResponse, 
-															   envelope );
-					verifyResp = BaseDTO.deserializeHex ( VerifyResponseDTO.class, hexResp );
-					verifyResults = extractResult ( VerifyDTO.class, hexResp );
-				} catch (Exception e) {
-					// to nothing, try with the next signature type
-				}  
-			}
-			
-			if ( verifyResults == null ) {
-				throw new Exception("unable to verify the signature for the given document");
-			}
-			
-			// Add a document reference to the verifyResults
-			verifyResults.setDocument(document);
-			
-			// Store the content document if necessary
-			if ( StringUtils.isEmpty(contentHex) ) {
-				// TODO manage the extracted document node generation
-				storeIntoNode(document.getBaseDocument(), verifyResp.getExtractedContent());
+			try {
+				contentIs = openNodeStream ( document.getBaseDocument() );
+				envelopeIs = openNodeStream ( document.getMarkedSign() );
+				Assert.notNull(envelopeIs);
+				envelopeIs = new BufferedInputStream ( envelopeIs );
+				
+				// Detect the envelope format and verify it with the relative service only
+				SignCategory signCategory = SignCategoryDetector.detect ( envelopeIs );
+				if ( signCategory == null ) {
+					throw new Exception("unable to verify the signature for the given document - unknown envelope format");
+				}
+				SignatureService signatureService = getSignatureService ( signCategory );
+				
+				// Verify the envelope by the webscript thread, the streams and the temporary file are released 
+				//			only once it is over; the signatures are checked in parallel by the service
+				verifyResults = extractResult ( VerifyDTO.class, 
+						verify(signatureService, envelopeIs, contentIs, tsResponseIs, extractedContentFile) );
+				
+				// Add a document reference to the verifyResults
+				verifyResults.setDocument(document);
+				
+				// Store the content document if necessary
+				if ( contentIs == null ) {
+					// TODO manage the extracted document node generation
+					storeIntoNode(document.getBaseDocument(), extractedContentFile);
+				}
+			} finally {
+				IOUtils.closeQuietly(contentIs);
+				IOUtils.closeQuietly(envelopeIs);
+				deleteTempFiles(extractedContentFile);
 			}
 		} catch (Exception e) {
 			document = null;
@@ -115,6 +98,37 @@ public class SkdsVerifyWS
 		
 		return resp;
 	}
+	
+	/**
+	 * Verify a single envelope. The extracted content is written into the given file, 
+	 * the streams are always closed at the end.
+	 */
+	private String verify ( 
+			SignatureService signatureService, 
+			InputStream envelopeIs,
+			InputStream contentIs,
+			InputStream tsResponseIs,
+			File extractedContentFile ) throws Exception {
+		
+		OutputStream extractedContentOs = null;
+		try {
+			extractedContentOs = new BufferedOutputStream ( new FileOutputStream(extractedContentFile) );
+			String base64Resp = signatureService.verify ( envelopeIs, 
+														  contentIs, 
+														  tsResponseIs, 
+														  extractedContentOs );
+			extractedContentOs.close();
+			return base64Resp;
+		} catch(Exception e) {
+			tracer.error("error during the signature verification", e);
+			throw e;
+		} finally {
+			IOUtils.closeQuietly(envelopeIs);
+			IOUtils.closeQuietly(contentIs);
+			IOUtils.closeQuietly(tsResponseIs);
+			IOUtils.closeQuietly(extractedContentOs);
+		}
+	}
 }
 
 
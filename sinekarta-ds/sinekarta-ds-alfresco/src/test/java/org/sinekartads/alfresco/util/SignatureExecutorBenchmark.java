@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2010 - 2012 Jenia Software.
+ *
+ * This file is part of Sinekarta
+ *
+ * Sinekarta is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Sinekarta is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+package org.sinekartads.alfresco.util;
+
+import java.security.MessageDigest;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import org.sinekartads.alfresco.util.SignatureExecutor.Batch;
+
+/**
+ * Throughput of a multi-document request of 1, 10 and 100 documents, processed sequentially as the 
+ * webscripts did and by the SignatureExecutor. The signature work of each document is simulated by 
+ * digesting its content, the repository accesses are not included.
+ * It is not run by the build, launch it with the test classpath:
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; org.sinekartads.alfresco.util.SignatureExecutorBenchmark [documentKB] [requests]
+ * </pre>
+ */
+public class SignatureExecutorBenchmark {
+
+	private static final int DEFAULT_DOCUMENT_KB = 1024;
+	private static final int DEFAULT_REQUESTS = 5;
+	private static final int[] DOCUMENT_COUNTS = { 1, 10, 100 };
+
+	public static void main ( String[] args ) throws Exception {
+		int documentKB = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_DOCUMENT_KB;
+		int requests = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_REQUESTS;
+		byte[] content = new byte[documentKB * 1024];
+		int cores = Runtime.getRuntime().availableProcessors();
+
+		SignatureExecutor sequential = newExecutor ( 1 );
+		SignatureExecutor parallel = newExecutor ( cores );
+		try {
+			for ( int documents : DOCUMENT_COUNTS ) {
+				measure ( "sequential", sequential, documents, requests, content );
+				measure ( String.format("%d workers", cores), parallel, documents, requests, content );
+			}
+		} finally {
+			sequential.destroy();
+			parallel.destroy();
+		}
+	}
+
+	private static void measure ( String name, SignatureExecutor executor, int documents, int requests, byte[] content ) 
+			throws Exception {
+		
+		// warm up with the same load
+		request ( executor, documents, content );
+		long start = System.nanoTime();
+		for ( int i = 0; i < requests; i++ ) {
+			request ( executor, documents, content );
+		}
+		long elapsed = System.nanoTime() - start;
+		System.out.println ( String.format("%3d documents, %-12s %10.1f documents/s  %10d ms/request", 
+				documents, name, documents * requests * 1e9 / elapsed, elapsed / requests / 1000000) );
+	}
+
+	private static void request ( SignatureExecutor executor, int documents, final byte[] content ) throws Exception {
+		Batch<byte[]> batch = executor.newBatch();
+		for ( int i = 0; i < documents; i++ ) {
+			batch.submit ( new Callable<byte[]>() {
+				@Override
+				public byte[] call() throws Exception {
+					return MessageDigest.getInstance("SHA-256").digest ( content );
+				}
+			} );
+		}
+		for ( Future<byte[]> future : batch.getFutures() ) {
+			batch.await ( future );
+		}
+	}
+
+	private static SignatureExecutor newExecutor ( int parallelism ) throws Exception {
+		SignatureExecutor executor = new SignatureExecutor();
+		executor.setParallelism ( parallelism );
+		executor.setMaxDocumentsPerRequest ( parallelism );
+		executor.afterPropertiesSet();
+		return executor;
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2010 - 2012 Jenia Software.
+ *
+ * This file is part of Sinekarta
+ *
+ * Sinekarta is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Sinekarta is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+package org.sinekartads.alfresco.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.sinekartads.alfresco.util.SignatureExecutor.Batch;
+
+public class SignatureExecutorTest {
+
+	private SignatureExecutor executor;
+
+	@After
+	public void tearDown() throws Exception {
+		if ( executor != null ) {
+			executor.destroy();
+		}
+	}
+
+
+
+	// -----
+	// --- Execution
+	// -
+
+	@Test
+	public void runsTheTasksInlineWithoutThePool() throws Exception {
+		executor = newExecutor ( 1, 1, 0 );
+		Batch<Thread> batch = executor.newBatch();
+		Future<Thread> future = batch.submit ( currentThread() );
+		assertTrue ( future.isDone() );
+		assertSame ( Thread.currentThread(), batch.await(future) );
+	}
+
+	@Test
+	public void runsTheTasksOnTheWorkers() throws Exception {
+		executor = newExecutor ( 2, 2, 0 );
+		Batch<Thread> batch = executor.newBatch();
+		Thread worker = batch.await ( batch.submit(currentThread()) );
+		assertTrue ( worker != Thread.currentThread() );
+		assertTrue ( worker.getName().startsWith("sinekartads-signature-") );
+		assertTrue ( worker.isDaemon() );
+	}
+
+	@Test
+	public void keepsTheSubmissionOrder() throws Exception {
+		executor = newExecutor ( 4, 4, 0 );
+		Batch<Integer> batch = executor.newBatch();
+		for ( int i = 0; i < 20; i++ ) {
+			final int document = i;
+			batch.submit ( new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					Thread.sleep ( (20 - document) % 3 );
+					return document;
+				}
+			} );
+		}
+		List<Future<Integer>> futures = batch.getFutures();
+		assertEquals ( 20, futures.size() );
+		for ( int i = 0; i < 20; i++ ) {
+			assertEquals ( Integer.valueOf(i), batch.await(futures.get(i)) );
+		}
+	}
+
+	@Test
+	public void reportsTheDocumentsFailedBeforeTheSubmission() throws Exception {
+		executor = newExecutor ( 2, 2, 0 );
+		Batch<Thread> batch = executor.newBatch();
+		IOException cause = new IOException ( "unreadable content" );
+		Future<Thread> failed = batch.fail ( cause );
+		batch.submit ( currentThread() );
+		assertEquals ( 2, batch.getFutures().size() );
+		try {
+			batch.await ( failed );
+			fail ( "ExecutionException expected" );
+		} catch(ExecutionException e) {
+			assertSame ( cause, e.getCause() );
+		}
+	}
+
+
+
+	// -----
+	// --- Limits
+	// -
+
+	@Test
+	public void boundsTheDocumentsInProgressPerRequest() throws Exception {
+		executor = newExecutor ( 4, 2, 0 );
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		Batch<Integer> batch = executor.newBatch();
+		for ( int i = 0; i < 12; i++ ) {
+			batch.submit ( new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					int current = running.incrementAndGet();
+					synchronized ( maxRunning ) {
+						maxRunning.set ( Math.max(maxRunning.get(), current) );
+					}
+					Thread.sleep ( 5 );
+					running.decrementAndGet();
+					return current;
+				}
+			} );
+		}
+		for ( Future<Integer> future : batch.getFutures() ) {
+			batch.await ( future );
+		}
+		assertTrue ( maxRunning.get() <= 2 );
+	}
+
+	@Test
+	public void cancelsTheBatchOnceTheRequestTimeoutExpires() throws Exception {
+		executor = newExecutor ( 2, 2, 50 );
+		final CountDownLatch release = new CountDownLatch ( 1 );
+		Batch<Boolean> batch = executor.newBatch();
+		Future<Boolean> blocked = batch.submit ( new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				return release.await ( 10, TimeUnit.SECONDS );
+			}
+		} );
+		try {
+			batch.await ( blocked );
+			fail ( "TimeoutException expected" );
+		} catch(TimeoutException e) {
+			assertTrue ( blocked.isCancelled() );
+		} finally {
+			release.countDown();
+		}
+	}
+
+
+
+	// -----
+	// --- Utility methods
+	// -
+
+	private static SignatureExecutor newExecutor ( int parallelism, int maxDocumentsPerRequest, long requestTimeout ) 
+			throws Exception {
+		
+		SignatureExecutor executor = new SignatureExecutor();
+		executor.setParallelism ( parallelism );
+		executor.setMaxDocumentsPerRequest ( maxDocumentsPerRequest );
+		executor.setRequestTimeout ( requestTimeout );
+		executor.afterPropertiesSet();
+		return executor;
+	}
+
+	private static Callable<Thread> currentThread() {
+		return new Callable<Thread>() {
+			@Override
+			public Thread call() {
+				return Thread.currentThread();
+			}
+		};
+	}
+}
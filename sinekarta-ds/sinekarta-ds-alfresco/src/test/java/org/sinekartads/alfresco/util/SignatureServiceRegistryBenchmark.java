@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2010 - 2012 Jenia Software.
+ *
+ * This file is part of Sinekarta
+ *
+ * Sinekarta is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Sinekarta is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+package org.sinekartads.alfresco.util;
+
+import java.lang.management.ManagementFactory;
+
+import org.sinekartads.model.domain.SignatureType.SignCategory;
+
+/**
+ * Measures the cost of the signature services per webscript request, before and after the registry:
+ * <ul>
+ * <li>before, every request built a new JarClassLoader on the core jars and new service instances,
+ * which is what {@link SignatureServiceRegistry#reload()} does (SkdsVerifyWS could do it up to three times)
+ * <li>after, every request looks the shared service up
+ * </ul>
+ * It is not run by the build, since it needs the core jars; launch it with the test classpath and the
+ * classpath location of the jars, alfresco/extension/sinekarta-ds-alfresco/core by default:
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt;:&lt;core jars parent&gt; 
+ * 		org.sinekartads.alfresco.util.SignatureServiceRegistryBenchmark [coreLocation] [requests]
+ * </pre>
+ */
+public class SignatureServiceRegistryBenchmark {
+
+	private static final int DEFAULT_REQUESTS = 20;
+
+	public static void main ( String[] args ) throws Exception {
+		SignatureServiceRegistry registry = new SignatureServiceRegistry();
+		if ( args.length > 0 ) {
+			registry.setCoreLocation ( args[0] );
+		}
+		int requests = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_REQUESTS;
+		registry.afterPropertiesSet();
+		report ( "first build", registry.getLastBuildTime() * 1000, registry.getLastBuildLoadedClasses() );
+
+		// before: a new classloader and new services for each request
+		long buildTime = 0;
+		long loadedClasses = 0;
+		for ( int i = 0; i < requests; i++ ) {
+			registry.reload();
+			buildTime += registry.getLastBuildTime();
+			loadedClasses += registry.getLastBuildLoadedClasses();
+		}
+		report ( "per request, building the services", buildTime * 1000 / requests, loadedClasses / requests );
+
+		// after: the shared services are looked up
+		long loadedBefore = ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount();
+		long start = System.nanoTime();
+		for ( int i = 0; i < requests; i++ ) {
+			for ( SignCategory signCategory : new SignCategory[] { SignCategory.CMS, SignCategory.PDF, SignCategory.XML } ) {
+				registry.getSignatureService ( signCategory );
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		report ( "per request, looking the services up", elapsed / requests / 1000, 
+				(ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount() - loadedBefore) / requests );
+		registry.destroy();
+	}
+
+	private static void report ( String name, long micros, long loadedClasses ) {
+		System.out.println ( String.format("%-40s %10d us %8d classes loaded", name, micros, loadedClasses) );
+	}
+}
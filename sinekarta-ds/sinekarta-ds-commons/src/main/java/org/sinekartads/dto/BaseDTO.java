@@ -16,42 +16,55 @@
  */
 package org.sinekartads.dto;
 
-import java.io.ByteArrayInputStream;
+import java.beans.PropertyDescriptor;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.text.DateFormat;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
-import javax.xml.bind.Unmarshaller;
 
-import org.apache.commons.beanutils.BeanUtils;
 import org.apache.commons.beanutils.PropertyUtils;
+import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.BooleanUtils;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang3.time.FastDateFormat;
+import org.sinekartads.dto.tools.DTOBinaryCodec;
 import org.sinekartads.dto.tools.DTODeserializer.Base64Deserializer;
 import org.sinekartads.dto.tools.DTODeserializer.HexDeserializer;
 import org.sinekartads.dto.tools.DTODeserializer.JSONDeserializer;
 import org.sinekartads.dto.tools.DTODeserializer.XMLDeserializer;
 import org.sinekartads.dto.tools.DTOPropertyType;
+import org.sinekartads.dto.tools.DTOSchema;
 import org.sinekartads.dto.tools.DTOSerializer.Base64Serializer;
 import org.sinekartads.dto.tools.DTOSerializer.HexSerializer;
 import org.sinekartads.dto.tools.DTOSerializer.JSONSerializer;
 import org.sinekartads.dto.tools.DTOSerializer.XMLSerializer;
+import org.sinekartads.dto.tools.DTOXmlBinder;
+import org.sinekartads.util.HexUtils;
 import org.sinekartads.util.TemplateUtils;
 
 public abstract class BaseDTO implements Serializable {
@@ -90,39 +103,77 @@ public abstract class BaseDTO implements Serializable {
 	
 	
 	public BaseDTO() {
-		Class<? extends BaseDTO> dtoClass = getClass();
-		
 		try {
-			String property;
-			Class<?> fieldType;
+			// Set the value of the String properties to "" 
+			for ( Method setter : stringSetters(getClass()) ) {
+				setter.invoke ( this, "" );
+			}
+		} catch (IllegalAccessException | InvocationTargetException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * setters of the String properties declared by each DTO class, resolved at its first instantiation
+	 */
+	private static final ConcurrentMap<Class<?>, Method[]> STRING_SETTERS = new ConcurrentHashMap<Class<?>, Method[]>();
+	
+	private static Method[] stringSetters ( Class<?> dtoClass ) {
+		Method[] setters = STRING_SETTERS.get ( dtoClass );
+		if ( setters == null ) {
+			Map<String, PropertyDescriptor> descriptors = new HashMap<String, PropertyDescriptor>();
+			for ( PropertyDescriptor descriptor : PropertyUtils.getPropertyDescriptors(dtoClass) ) {
+				descriptors.put ( descriptor.getName(), descriptor );
+			}
+			
+			List<Method> setterList = new ArrayList<Method>();
+			PropertyDescriptor descriptor;
+			Method setter;
 			for ( Field field : dtoClass.getDeclaredFields() ) {
 				// Ignore the static field 
-				if((field.getModifiers() & java.lang.reflect.Modifier.STATIC) > 0) continue;
+				if ( Modifier.isStatic(field.getModifiers()) ) 							continue;
+				if ( !String.class.isAssignableFrom(field.getType()) ) 					continue;
 				
-				// Set the property value to "" if it represents a String
-				property = field.getName();
-				fieldType = field.getType();
-				if ( String.class.isAssignableFrom(fieldType) ) {
-						BeanUtils.setProperty(this, property, "");
+				// Properties without a String setter are ignored, as BeanUtils.setProperty did
+				descriptor = descriptors.get ( field.getName() );
+				setter = descriptor != null ? descriptor.getWriteMethod() : null;
+				if ( setter != null && setter.getParameterTypes()[0].isAssignableFrom(String.class) ) {
+					setter.setAccessible ( true );
+					setterList.add ( setter );
 				}
 			}
-		} catch (IllegalAccessException | InvocationTargetException e) {
-			throw new RuntimeException(e);
+			setters = setterList.toArray ( new Method[setterList.size()] );
+			STRING_SETTERS.putIfAbsent ( dtoClass, setters );
 		}
+		return setters;
 	}
 	
 	public String toString() {
 		return TemplateUtils.Encoding.serializeJSON ( this );
 	}
 	
+	/**
+	 * Field-wise comparison, see {@link DTOSchema#equals(BaseDTO, Object)}
+	 */
+	@Override
 	public boolean equals ( Object obj ) {
-		boolean equals = false;
-		if ( obj != null && obj instanceof BaseDTO ) {
-			equals = StringUtils.equals ( 
-					TemplateUtils.Encoding.serializeJSON ( this ), 
-					TemplateUtils.Encoding.serializeJSON ( (BaseDTO)obj ) );
+		return DTOSchema.equals ( this, obj ); 
+	}
+	
+	@Override
+	public int hashCode ( ) {
+		return DTOSchema.hashCode ( this );
+	}
+	
+	/**
+	 * Deep copy of the DTO, field by field for the structural DTOs and by serialization for the others
+	 */
+	public static <DTO extends BaseDTO> DTO copy ( DTO dto ) {
+		if ( dto == null )							return null;
+		if ( DTOSchema.supports(dto.getClass()) ) {
+			return DTOSchema.copy ( dto );
 		}
-		return equals; 
+		return TemplateUtils.Instantiation.cloneBySerialization ( dto );
 	}
 	
 	
@@ -143,7 +194,7 @@ public abstract class BaseDTO implements Serializable {
 	}
 	
 	public String toHex() {
-		return TemplateUtils.Encoding.serializeHex(this);
+		return HexUtils.encodeHex ( toBinary() );
 	}
 	
 	public static <DTO extends BaseDTO> String serializeHex ( DTO dto ) {
@@ -191,7 +242,22 @@ public abstract class BaseDTO implements Serializable {
 	}
 	
 	public String toBase64() {
-		return TemplateUtils.Encoding.serializeBase64(this);
+		return Base64.encodeBase64String ( toBinary() );
+	}
+	
+	/**
+	 * @return the compact binary encoding of the dto if enabled and supported, see {@link DTOBinaryCodec}, 
+	 * its java serialization otherwise; the deserialization accepts both of them
+	 */
+	public byte[] toBinary() {
+		if ( DTOBinaryCodec.isEnabled() && DTOBinaryCodec.supports(getClass()) ) {
+			try {
+				return DTOBinaryCodec.encode ( this );
+			} catch(IllegalArgumentException e) {
+				// a field holds an unsupported subclass, use the java serialization
+			}
+		}
+		return TemplateUtils.Encoding.serialize ( this );
 	}
 	
 	public static <DTO extends BaseDTO> String serializeBase64 ( DTO dto ) {
@@ -232,14 +298,11 @@ public abstract class BaseDTO implements Serializable {
 	}
 
 	public static <DTO extends BaseDTO> DTO fromJSON(InputStream is, Class<? extends DTO> dtoClass) throws IOException {
-		String json = new String ( IOUtils.toByteArray(is) );
-		return TemplateUtils.Encoding.deserializeJSON ( dtoClass, json );
+		return TemplateUtils.Encoding.deserializeJSON ( dtoClass, is );
 	}
 	
 	public void toJSON(OutputStream os) throws IOException {
-		String json = toJSON(); 
-		os.write ( json.getBytes() );
-		os.flush();
+		TemplateUtils.Encoding.writeJSON ( this, os );
 	}
 
 	public String toJSON() {
@@ -280,27 +343,25 @@ public abstract class BaseDTO implements Serializable {
 	// -
 	
 	public static <DTO extends BaseDTO> DTO fromXML ( String xml, Class<DTO> clazz ) throws JAXBException {
-		return fromXML ( new ByteArrayInputStream(xml.getBytes()), clazz );
+		return DTOXmlBinder.unmarshal ( clazz, new StringReader(xml) );
 	}
 	
-	@SuppressWarnings("unchecked")
 	public static <DTO extends BaseDTO> DTO fromXML ( InputStream is, Class<DTO> clazz ) throws JAXBException {
-		Unmarshaller u = JAXBContext.newInstance(clazz).createUnmarshaller();
-		return (DTO) u.unmarshal(is);
+		return DTOXmlBinder.unmarshal ( clazz, is );
 	}
 	
 	public void toXML(OutputStream os) throws JAXBException {
-		JAXBContext jcupr = JAXBContext.newInstance(this.getClass());
-		Marshaller m = jcupr.createMarshaller();
-		m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-		m.marshal(this, os);
+		DTOXmlBinder.marshal ( this, os );
+	}
+	
+	public void toXML(Writer writer) throws JAXBException {
+		DTOXmlBinder.marshal ( this, writer );
 	}
 	
 	public String toXML() throws JAXBException {
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		toXML(baos);
-		IOUtils.closeQuietly(baos);
-		return new String(baos.toByteArray());
+		StringWriter writer = new StringWriter();
+		toXML(writer);
+		return writer.toString();
 	}
 	
 	public static <DTO extends BaseDTO> String serializeXML ( DTO dto ) {
@@ -347,11 +408,92 @@ public abstract class BaseDTO implements Serializable {
 //		return mapping;
 //	}
 	
-	protected DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-	protected DateFormat dateTimeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
-	protected DateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSS");
-	protected NumberFormat integerFormat = new DecimalFormat("0");
-	protected NumberFormat decimalFormat = new DecimalFormat("0.00");
+	// The formats are kept as patterns. The values are formatted by the FastDateFormats, immutable and shared, 
+	// and parsed by copies of SimpleDateFormat prototypes: the parsing stays lenient, as it has always been
+	private static final ConcurrentMap<String, SimpleDateFormat> DATE_PARSERS = new ConcurrentHashMap<String, SimpleDateFormat>();
+	
+	private String datePattern = "yyyy-MM-dd";
+	private String dateTimePattern = "yyyy-MM-dd HH:mm:ss.SSS";
+	private String timePattern = "HH:mm:ss.SSS";
+	private String integerPattern = "0";
+	private String decimalPattern = "0.00";
+	
+	private static DateFormat dateParser ( String pattern ) {
+		SimpleDateFormat prototype = DATE_PARSERS.get ( pattern );
+		if ( prototype == null ) {
+			prototype = new SimpleDateFormat ( pattern );
+			DATE_PARSERS.putIfAbsent ( pattern, prototype );
+		}
+		// the prototypes are never used, they can be cloned concurrently
+		return (DateFormat) prototype.clone();
+	}
+	
+	protected Date parseDate ( String value ) throws ParseException {
+		return dateParser(datePattern).parse ( value );
+	}
+	
+	protected Date parseDateTime ( String value ) throws ParseException {
+		return dateParser(dateTimePattern).parse ( value );
+	}
+	
+	protected Date parseTime ( String value ) throws ParseException {
+		return dateParser(timePattern).parse ( value );
+	}
+	
+	protected String formatDate ( Date value ) {
+		return FastDateFormat.getInstance(datePattern).format ( value );
+	}
+	
+	protected String formatDateTime ( Date value ) {
+		return FastDateFormat.getInstance(dateTimePattern).format ( value );
+	}
+	
+	protected String formatTime ( Date value ) {
+		return FastDateFormat.getInstance(timePattern).format ( value );
+	}
+	
+	/**
+	 * @deprecated use {@link #parseDate(String)} and {@link #formatDate(Date)}; the returned formatter
+	 * is a new instance, its changes are not applied to the DTO
+	 */
+	@Deprecated
+	protected DateFormat getDateFormat() {
+		return dateParser ( datePattern );
+	}
+	
+	/**
+	 * @deprecated use {@link #parseDateTime(String)} and {@link #formatDateTime(Date)}; the returned formatter
+	 * is a new instance, its changes are not applied to the DTO
+	 */
+	@Deprecated
+	protected DateFormat getDateTimeFormat() {
+		return dateParser ( dateTimePattern );
+	}
+	
+	/**
+	 * @deprecated use {@link #parseTime(String)} and {@link #formatTime(Date)}; the returned formatter
+	 * is a new instance, its changes are not applied to the DTO
+	 */
+	@Deprecated
+	protected DateFormat getTimeFormat() {
+		return dateParser ( timePattern );
+	}
+	
+	/**
+	 * @deprecated the returned formatter is a new instance, its changes are not applied to the DTO
+	 */
+	@Deprecated
+	protected NumberFormat getIntegerFormat() {
+		return new DecimalFormat ( integerPattern );
+	}
+	
+	/**
+	 * @deprecated the returned formatter is a new instance, its changes are not applied to the DTO
+	 */
+	@Deprecated
+	protected NumberFormat getDecimalFormat() {
+		return new DecimalFormat ( decimalPattern );
+	}
 	
 	protected void formatValues(Map<DTOPropertyType, String> dtoPropertyFormats) throws IllegalArgumentException {
 		// Mapping annotation -> dtoPropertyType restricted on the managed annotations
@@ -363,23 +505,25 @@ public abstract class BaseDTO implements Serializable {
 		
 		try {
 			String newFormat;
-			DateFormat newDateFormat = null;
-			DateFormat newTimeFormat = null;
-			DateFormat newDateTimeFormat = null;
+			FastDateFormat newDateFormat = null;
+			FastDateFormat newTimeFormat = null;
+			FastDateFormat newDateTimeFormat = null;
 			NumberFormat newIntegerFormat = null;
 			NumberFormat newDecimalFormat = null;
+			NumberFormat integerFormat = new DecimalFormat(integerPattern);
+			NumberFormat decimalFormat = new DecimalFormat(decimalPattern);
 			// create the the custom formatters 
 			newFormat = dtoPropertyFormats.get(DTOPropertyType.Date); 
 			if(newFormat != null) {
-				newDateFormat = new SimpleDateFormat(newFormat);
+				newDateFormat = FastDateFormat.getInstance(newFormat);
 			}
 			newFormat = dtoPropertyFormats.get(DTOPropertyType.Time);
 			if(newFormat != null) {
-				newTimeFormat = new SimpleDateFormat(newFormat);
+				newTimeFormat = FastDateFormat.getInstance(newFormat);
 			}
 			newFormat = dtoPropertyFormats.get(DTOPropertyType.DateTime);
 			if(newFormat != null) {
-				newDateTimeFormat = new SimpleDateFormat(newFormat);
+				newDateTimeFormat = FastDateFormat.getInstance(newFormat);
 			}
 			newFormat = dtoPropertyFormats.get(DTOPropertyType.Integer);
 			if(newFormat != null) {
@@ -397,7 +541,7 @@ public abstract class BaseDTO implements Serializable {
 			DTOPropertyType dtoPropertyType;
 			for(Field field : fields) {
 				// ignore the static field 
-				if((field.getModifiers() & java.lang.reflect.Modifier.STATIC) > 0) continue;
+				if(Modifier.isStatic(field.getModifiers())) continue;
 				
 				property = field.getName();
 				fieldType = field.getType();
@@ -430,17 +574,17 @@ public abstract class BaseDTO implements Serializable {
 									break;
 								}
 								case Date: {	
-									value = dateFormat.parse(strValue);
+									value = parseDate(strValue);
 									PropertyUtils.setProperty(this, property, newDateFormat.format(value));
 									break;
 								}
 								case Time: {	
-									value = timeFormat.parse(strValue);
+									value = parseTime(strValue);
 									PropertyUtils.setProperty(this, property, newTimeFormat.format(value));
 									break;
 								}
 								case DateTime: {	
-									value = dateTimeFormat.parse(strValue);
+									value = parseDateTime(strValue);
 									PropertyUtils.setProperty(this, property, newDateTimeFormat.format(value));
 									break;
 								}
@@ -463,11 +607,11 @@ public abstract class BaseDTO implements Serializable {
 			}
 			
 			// update the internal formatters
-			if(newDateFormat != null) 		dateFormat = newDateFormat;
-			if(newTimeFormat != null) 		timeFormat = newTimeFormat;
-			if(newDateTimeFormat != null) 	dateTimeFormat = newDateTimeFormat;
-			if(newIntegerFormat != null) 	integerFormat = newIntegerFormat;
-			if(newDecimalFormat != null) 	decimalFormat = newDecimalFormat;
+			if(newDateFormat != null) 		datePattern = newDateFormat.getPattern();
+			if(newTimeFormat != null) 		timePattern = newTimeFormat.getPattern();
+			if(newDateTimeFormat != null) 	dateTimePattern = newDateTimeFormat.getPattern();
+			if(newIntegerFormat != null) 	integerPattern = dtoPropertyFormats.get(DTOPropertyType.Integer);
+			if(newDecimalFormat != null) 	decimalPattern = dtoPropertyFormats.get(DTOPropertyType.Decimal);
 		} catch(RuntimeException e) {
 			throw e;			
 		} catch(Exception e) {
@@ -495,9 +639,9 @@ public abstract class BaseDTO implements Serializable {
 //					dtoPropertyType = ANNOTATION_MAPPING.get(annotations[i].annotationType());
 //					switch(dtoPropertyType) {
 //					case Flag: 		value = BooleanUtils.toBoolean(strValue);	break;
-//					case Date: 		value = dateFormat.parse(strValue);			break;
-//					case Time: 		value = timeFormat.parse(strValue);			break;
-//					case DateTime: 	value = dateTimeFormat.parse(strValue);		break;
+//					case Date: 		value = parseDate(strValue);			break;
+//					case Time: 		value = parseTime(strValue);			break;
+//					case DateTime: 	value = parseDateTime(strValue);		break;
 //					case Integer:  	value = integerFormat.parse(strValue);		break;
 //					case Decimal:  	value = decimalFormat.parse(strValue);		break;
 //					default: throw new IllegalArgumentException("unimplemented format: " + dtoPropertyType.name());
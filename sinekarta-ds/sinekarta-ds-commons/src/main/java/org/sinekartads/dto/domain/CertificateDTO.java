@@ -16,10 +16,8 @@
  */
 package org.sinekartads.dto.domain;
 
-import java.io.ByteArrayInputStream;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.text.ParseException;
 import java.util.Date;
@@ -27,9 +25,11 @@ import java.util.Date;
 import org.apache.commons.lang3.StringUtils;
 import org.sinekartads.dto.BaseDTO;
 import org.sinekartads.dto.formats.DateDTOProperty;
+import org.sinekartads.dto.formats.HexDTOProperty;
 import org.sinekartads.model.domain.CertificateId;
 import org.sinekartads.model.domain.CertificateIdFactory;
 import org.sinekartads.util.HexUtils;
+import org.sinekartads.util.x509.X509Utils;
 
 public class CertificateDTO extends BaseDTO {
 
@@ -60,6 +60,7 @@ public class CertificateDTO extends BaseDTO {
     
     private String qcStatements;
         
+    @HexDTOProperty
     private String hexCertificate;
     
     private String sourceName;
@@ -202,10 +203,7 @@ public class CertificateDTO extends BaseDTO {
 		if ( hexCertificate != null )												return null;
 		
 		try {
-			CertificateFactory cf = CertificateFactory.getInstance("X.509");
-			X509Certificate rawX509Certificate = (X509Certificate) cf.generateCertificate (
-					new ByteArrayInputStream(HexUtils.decodeHex(hexCertificate)) );
-			return rawX509Certificate;
+			return X509Utils.rawX509CertificateFromHex ( hexCertificate );
 		} catch (CertificateException e) {
 			// never thrown, using the TsTokenDTO protocol the certificate hex has to be correct
 			throw new RuntimeException(e);
@@ -216,7 +214,7 @@ public class CertificateDTO extends BaseDTO {
 		Date notBefore = null;
 		if ( StringUtils.isNotBlank(this.notBefore) ) {
 			try {
-				notBefore = timeFormat.parse ( this.notBefore );
+				notBefore = parseTime ( this.notBefore );
 			} catch (ParseException e) {
 				throw new RuntimeException(e);
 			}
@@ -228,7 +226,7 @@ public class CertificateDTO extends BaseDTO {
 		if ( notBefore == null) {
 			this.notBefore = null;
 		} else {
-			this.notBefore = timeFormat.format(notBefore);
+			this.notBefore = formatTime(notBefore);
 		}
 	}
 	    
@@ -236,7 +234,7 @@ public class CertificateDTO extends BaseDTO {
 		Date notAfter = null;
 		if ( StringUtils.isNotBlank(this.notAfter) ) {
 			try {
-				notAfter = timeFormat.parse ( this.notAfter );
+				notAfter = parseTime ( this.notAfter );
 			} catch (ParseException e) {
 				throw new RuntimeException(e);
 			}
@@ -248,7 +246,7 @@ public class CertificateDTO extends BaseDTO {
 		if ( notAfter == null) {
 			this.notAfter = null;
 		} else {
-			this.notAfter = timeFormat.format(notAfter);
+			this.notAfter = formatTime(notAfter);
 		}
 	}
 	
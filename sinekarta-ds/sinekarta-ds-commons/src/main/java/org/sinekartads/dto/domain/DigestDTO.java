@@ -2,6 +2,7 @@ package org.sinekartads.dto.domain;
 
 import org.apache.commons.lang3.StringUtils;
 import org.sinekartads.dto.BaseDTO;
+import org.sinekartads.dto.formats.HexDTOProperty;
 import org.sinekartads.model.oid.DigestAlgorithm;
 import org.sinekartads.util.HexUtils;
 
@@ -11,6 +12,7 @@ public class DigestDTO extends BaseDTO {
 
 	private String digestAlgorithmName;
 	
+	@HexDTOProperty
 	private String hexFingerPrint;
 	
 
@@ -90,7 +90,7 @@ public class NodeDTO extends BaseDTO {
 		Date creationDate = null;
 		if ( StringUtils.isNotBlank(this.creationDate) ) {
 			try {
-				creationDate = timeFormat.parse ( this.creationDate );
+				creationDate = parseTime ( this.creationDate );
 			} catch (ParseException e) {
 				throw new RuntimeException(e);
 			}
@@ -102,7 +102,7 @@ public class NodeDTO extends BaseDTO {
 		if ( creationDate == null) {
 			this.creationDate = null;
 		} else {
-			this.creationDate = timeFormat.format(creationDate);
+			this.creationDate = formatTime(creationDate);
 		}
 	}
 	
@@ -110,7 +110,7 @@ public class NodeDTO extends BaseDTO {
 		Date lastUpdate = null;
 		if ( StringUtils.isNotBlank(this.lastUpdate) ) {
 			try {
-				lastUpdate = timeFormat.parse ( this.lastUpdate );
+				lastUpdate = parseTime ( this.lastUpdate );
 			} catch (ParseException e) {
 				throw new RuntimeException(e);
 			}
@@ -122,7 +122,7 @@ public class NodeDTO extends BaseDTO {
 		if ( lastUpdate == null) {
 			this.lastUpdate = null;
 		} else {
-			this.lastUpdate = timeFormat.format(lastUpdate);
+			this.lastUpdate = formatTime(lastUpdate);
 		}
 	}
 	
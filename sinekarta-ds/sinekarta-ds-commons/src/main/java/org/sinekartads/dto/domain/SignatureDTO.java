@@ -10,6 +10,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.sinekartads.dto.BaseDTO;
 import org.sinekartads.dto.formats.DateDTOProperty;
 import org.sinekartads.dto.formats.FlagDTOProperty;
+import org.sinekartads.dto.formats.HexDTOProperty;
 import org.sinekartads.model.domain.SecurityLevel.VerifyResult;
 import org.sinekartads.model.domain.SignatureStatus;
 import org.sinekartads.model.domain.SignatureType.SignCategory;
@@ -45,9 +46,11 @@ public class SignatureDTO extends BaseDTO {
 	private String location;
 	
 	private TimeStampRequestDTO timeStampRequest;	
+	@HexDTOProperty
 	private String[] hexCertificateChain;
 	private CertificateDTO certificate;
 	private DigestDTO digest;
+	@HexDTOProperty
 	private String hexDigitalSignature;	
 	private TimeStampDTO[] timeStamps;
 	private String verifyResult;
@@ -195,7 +198,8 @@ public class SignatureDTO extends BaseDTO {
 	}
 	
 	public void signAlgorithmToString(SignatureAlgorithm signatureAlgorithm) {
-		this.signAlgorithm = signatureAlgorithm.getName();
+		// unknown for the signatures that can't be read
+		this.signAlgorithm = signatureAlgorithm != null ? signatureAlgorithm.getName() : "";
 	}
 	
 	public DigestAlgorithm digestAlgorithmFromName() {
@@ -203,7 +207,7 @@ public class SignatureDTO extends BaseDTO {
 	}
 	
 	public void digestAlgorithmToName(DigestAlgorithm digestAlgorithm) {
-		this.digestAlgorithm = digestAlgorithm.getName();
+		this.digestAlgorithm = digestAlgorithm != null ? digestAlgorithm.getName() : "";
 	}
 	
 	public Boolean finalizedFromString() {
@@ -226,7 +230,7 @@ public class SignatureDTO extends BaseDTO {
 		Date signingTime = null;
 		if ( StringUtils.isNotBlank(this.signingTime) ) {
 			try {
-				signingTime = dateTimeFormat.parse ( this.signingTime );
+				signingTime = parseDateTime ( this.signingTime );
 			} catch (ParseException e) {
 				throw new RuntimeException(e);
 			}
@@ -238,7 +242,7 @@ public class SignatureDTO extends BaseDTO {
 		if ( signingTime == null) {
 			this.signingTime = "";
 		} else {
-			this.signingTime = dateTimeFormat.format(signingTime);
+			this.signingTime = formatDateTime(signingTime);
 		}
 	}
 	
@@ -347,9 +351,15 @@ public class SignatureDTO extends BaseDTO {
 	private String pdfRevision;
 	@FlagDTOProperty
 	private String pdfCoversWholeDocument;
+	@HexDTOProperty
 	private String pdfHexDocumentId;
+	@HexDTOProperty
 	private String pdfHexFileId;
 	private String pdfUnicodeModDate;
+	private String pdfPreparedDocument;
+	private String pdfByteRange;
+	@HexDTOProperty
+	private String pdfHexRangeDigest;
 	
 	public String getPdfSignName() {
 		return pdfSignName;
@@ -403,6 +413,48 @@ public class SignatureDTO extends BaseDTO {
 	public void setPdfUnicodeModDate(String pdfUnicodeModDate) {
 		this.pdfUnicodeModDate = pdfUnicodeModDate;
 	}
+	
+	public String getPdfPreparedDocument() {
+		return pdfPreparedDocument;
+	}
+
+	public void setPdfPreparedDocument(String pdfPreparedDocument) {
+		this.pdfPreparedDocument = pdfPreparedDocument;
+	}
+	
+	public long[] pdfByteRangeFromString() {
+		if ( StringUtils.isBlank(pdfByteRange) ) 								return null;
+		String[] tokens = StringUtils.split ( pdfByteRange );
+		long[] byteRange = new long[tokens.length];
+		for ( int i=0; i<tokens.length; i++ ) {
+			byteRange[i] = Long.parseLong ( tokens[i] );
+		}
+		return byteRange;
+	}
+	
+	public void pdfByteRangeToString(long[] byteRange) {
+		if ( byteRange != null ) {
+			this.pdfByteRange = StringUtils.join ( ArrayUtils.toObject(byteRange), ' ' );
+		} else {
+			this.pdfByteRange = null;
+		}
+	}
+	
+	public String getPdfByteRange() {
+		return pdfByteRange;
+	}
+
+	public void setPdfByteRange(String pdfByteRange) {
+		this.pdfByteRange = pdfByteRange;
+	}
+	
+	public String getPdfHexRangeDigest() {
+		return pdfHexRangeDigest;
+	}
+
+	public void setPdfHexRangeDigest(String pdfHexRangeDigest) {
+		this.pdfHexRangeDigest = pdfHexRangeDigest;
+	}
 
 
 	
@@ -7,6 +7,7 @@ import java.util.Date;
 import org.apache.commons.lang3.StringUtils;
 import org.sinekartads.dto.BaseDTO;
 import org.sinekartads.dto.formats.DateDTOProperty;
+import org.sinekartads.dto.formats.HexDTOProperty;
 import org.sinekartads.model.domain.SecurityLevel.TimeStampVerifyResult;
 import org.sinekartads.model.domain.SignDisposition;
 import org.sinekartads.model.oid.DigestAlgorithm;
@@ -20,10 +21,13 @@ public class TimeStampDTO extends BaseDTO {
 	private String signAlgorithm;
 	private String digestAlgorithm;
 	private String disposition;
+	@HexDTOProperty
 	private String hexTimeStampToken;
 	private DigestDTO messageImprint;
 //	private CertificateDTO certificate;
+	@HexDTOProperty
 	private String[] hexCertificateChain;
+	@HexDTOProperty
 	private String hexDigitalSignature;
 	private String verifyResult;
 	private String tsaName;
@@ -207,7 +211,7 @@ public class TimeStampDTO extends BaseDTO {
 		Date signingTime = null;
 		if ( StringUtils.isNotBlank(this.signingTime) ) {
 			try {
-				signingTime = timeFormat.parse ( this.signingTime );
+				signingTime = parseTime ( this.signingTime );
 			} catch (ParseException e) {
 				throw new RuntimeException(e);
 			}
@@ -219,7 +223,7 @@ public class TimeStampDTO extends BaseDTO {
 		if ( signingTime == null) {
 			this.signingTime = null;
 		} else {
-			this.signingTime = timeFormat.format(signingTime);
+			this.signingTime = formatTime(signingTime);
 		}
 	}
 	
@@ -3,6 +3,7 @@ package org.sinekartads.dto.domain;
 import java.security.cert.CertificateException;
 
 import org.sinekartads.dto.BaseDTO;
+import org.sinekartads.dto.formats.HexDTOProperty;
 import org.sinekartads.util.HexUtils;
 
 public class TimeStampResponseDTO extends BaseDTO {
@@ -10,6 +11,7 @@ public class TimeStampResponseDTO extends BaseDTO {
 	private static final long serialVersionUID = 5211381154218052951L;
 	
 	private TimeStampDTO timeStamp;
+	@HexDTOProperty
 	private String hexTimeStampResponse;
 	
 	public TimeStampDTO getTimeStamp() {
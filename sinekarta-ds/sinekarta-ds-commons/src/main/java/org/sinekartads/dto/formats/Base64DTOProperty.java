@@ -0,0 +1,16 @@
+package org.sinekartads.dto.formats;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * String or String[] property holding binary data in its base64 encoding; the binary DTO codec
+ * stores it as raw bytes.
+ */
+@Target({ElementType.FIELD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Base64DTOProperty { 
+
+}
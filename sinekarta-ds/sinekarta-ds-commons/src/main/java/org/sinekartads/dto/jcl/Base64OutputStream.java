@@ -1,67 +1,125 @@
 package org.sinekartads.dto.jcl;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Serializable;
 
-import org.apache.commons.codec.binary.Base64;
-
+/**
+ * OutputStream that encodes the written bytes to base64 incrementally: every complete 3-byte
+ * group is translated to its 4 characters as soon as it arrives, while the trailing 1 or 2
+ * bytes are kept pending until the end. The resulting string is materialized only by
+ * {@link #getBase64()}, so writing a document chunk by chunk costs linear time.
+ * The produced encoding is the same of Base64.encodeBase64String (no line separators).
+ */
 public class Base64OutputStream extends OutputStream implements Serializable {
 
 	private static final long serialVersionUID = 327182581224029989L;
-	
-	
+
+	private static final char[] ALPHABET =
+			"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+	private static final char PAD = '=';
+	private static final int DEFAULT_CAPACITY = 1024;
+
+
 	public Base64OutputStream ( ) {
-		baos = new ByteArrayOutputStream ( );
+		this ( DEFAULT_CAPACITY );
 	}
-	
-	private ByteArrayOutputStream baos;
+
+	/**
+	 * @param expectedSize the expected number of bytes to be written, used to presize the
+	 * encoding buffer and avoid its reallocations
+	 */
+	public Base64OutputStream ( int expectedSize ) {
+		encoded = new StringBuilder ( ((Math.max(expectedSize, 0) + 2) / 3) * 4 );
+		pending = new byte[3];
+	}
+
+	private StringBuilder encoded;
+	private byte[] pending;
+	private int pendingLength;
+	private boolean written;
 	private String base64;
-	
+
 	public void close() {
-		try {
-			baos.close();
-		} catch (IOException e) {
-			// never thrown, byte array operation
-			throw new RuntimeException(e);
-		}
+		// nothing to release, the encoding is completed by getBase64()
 	}
-	
+
 	public void flush() {
-		try {
-			baos.flush();
-		} catch (IOException e) {
-			// never thrown, byte array operation
-			throw new RuntimeException(e);
-		}
+		// nothing to flush, the trailing bytes can't be encoded before the end of the stream
 	}
-	
+
 	public void write(byte[] b) {
-		try {
-			baos.write(b);
-		} catch(IOException e) {
-			// never thrown, byte array operation
-			throw new RuntimeException(e);
-		} finally {
-			byte[] buf = baos.toByteArray();
-			base64 = Base64.encodeBase64String(buf);
-		}
+		write(b, 0, b.length);
 	}
-	
+
 	public void write(int b) {
-		baos.write(b);
-		byte[] buf = baos.toByteArray();
-		base64 = Base64.encodeBase64String(buf);
+		written = true;
+		base64 = null;
+		pending[pendingLength++] = (byte)b;
+		if ( pendingLength == 3 ) {
+			encodeGroup ( pending, 0 );
+			pendingLength = 0;
+		}
 	}
-	
+
 	public void write(byte[] b, int off, int len) {
-		baos.write(b, off, len);
-		byte[] buf = baos.toByteArray();
-		base64 = Base64.encodeBase64String(buf);
+		if ( off < 0 || len < 0 || off + len > b.length ) {
+			throw new IndexOutOfBoundsException();
+		}
+		written = true;
+		base64 = null;
+		int end = off + len;
+
+		// complete the pending group first
+		while ( pendingLength > 0 && off < end ) {
+			write ( b[off++] );
+		}
+
+		// encode the full groups directly from the source buffer
+		int fullEnd = off + ((end - off) / 3) * 3;
+		encoded.ensureCapacity ( encoded.length() + ((end - off) / 3) * 4 + 4 );
+		for ( ; off < fullEnd; off += 3 ) {
+			encodeGroup ( b, off );
+		}
+
+		// keep the remaining bytes for the next write
+		while ( off < end ) {
+			pending[pendingLength++] = b[off++];
+		}
 	}
-	
+
+	/**
+	 * @return the base64 encoding of the bytes written so far, or null if nothing has been written
+	 */
 	public String getBase64() {
+		if ( !written ) {
+			return null;
+		}
+		if ( base64 == null ) {
+			StringBuilder result = new StringBuilder ( encoded.length() + 4 );
+			result.append ( encoded );
+			if ( pendingLength == 1 ) {
+				int b0 = pending[0] & 0xff;
+				result.append ( ALPHABET[b0 >>> 2] );
+				result.append ( ALPHABET[(b0 & 0x03) << 4] );
+				result.append ( PAD ).append ( PAD );
+			} else if ( pendingLength == 2 ) {
+				int b0 = pending[0] & 0xff;
+				int b1 = pending[1] & 0xff;
+				result.append ( ALPHABET[b0 >>> 2] );
+				result.append ( ALPHABET[((b0 & 0x03) << 4) | (b1 >>> 4)] );
+				result.append ( ALPHABET[(b1 & 0x0f) << 2] );
+				result.append ( PAD );
+			}
+			base64 = result.toString();
+		}
 		return base64;
 	}
-}
\ No newline at end of file
+
+	private void encodeGroup ( byte[] buf, int off ) {
+		int group = ((buf[off] & 0xff) << 16) | ((buf[off+1] & 0xff) << 8) | (buf[off+2] & 0xff);
+		encoded.append ( ALPHABET[(group >>> 18) & 0x3f] );
+		encoded.append ( ALPHABET[(group >>> 12) & 0x3f] );
+		encoded.append ( ALPHABET[(group >>> 6) & 0x3f] );
+		encoded.append ( ALPHABET[group & 0x3f] );
+	}
+}
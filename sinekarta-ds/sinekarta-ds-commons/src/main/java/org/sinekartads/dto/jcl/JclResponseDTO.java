@@ -2,6 +2,7 @@ package org.sinekartads.dto.jcl;
 
 import org.sinekartads.dto.BaseDTO;
 import org.sinekartads.dto.ResultCode;
+import org.sinekartads.dto.formats.Base64DTOProperty;
 
 public class JclResponseDTO extends BaseDTO {
 
@@ -11,6 +12,7 @@ public class JclResponseDTO extends BaseDTO {
 	// --- Data transport protocol
 	// -
 	
+	@Base64DTOProperty
 	private String result;
 	private String resultCode;
 	private String errorMessage;
@@ -1,11 +1,13 @@
 package org.sinekartads.dto.request;
 
 import org.sinekartads.dto.domain.DocumentDTO;
+import org.sinekartads.dto.formats.Base64DTOProperty;
 
 public abstract class SkdsSignRequest extends BaseRequest {
 
 	private static final long serialVersionUID = 5770544609426553783L;
 	
+	@Base64DTOProperty
 	private String[] documentsBase64;
 	
 	
@@ -21,6 +21,7 @@ import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlRootElement;
 
 import org.sinekartads.dto.domain.DocumentDTO;
+import org.sinekartads.dto.formats.Base64DTOProperty;
 import org.sinekartads.dto.formats.FlagDTOProperty;
 import org.sinekartads.model.domain.SecurityLevel.VerifyResult;
 
@@ -30,6 +31,7 @@ public class SkdsVerifyRequest extends BaseRequest {
 
 	private static final long serialVersionUID = -7664506240352914238L;
 
+	@Base64DTOProperty
 	private String documentBase64;
 	@FlagDTOProperty	
 	private String minSecurityLevel;
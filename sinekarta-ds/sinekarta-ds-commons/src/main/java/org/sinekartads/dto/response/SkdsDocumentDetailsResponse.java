@@ -17,11 +17,13 @@
 package org.sinekartads.dto.response;
 
 import org.sinekartads.dto.domain.DocumentDTO;
+import org.sinekartads.dto.formats.Base64DTOProperty;
 
 public class SkdsDocumentDetailsResponse extends BaseResponse {
 
 	private static final long serialVersionUID = -3373366314803845064L;
 	
+	@Base64DTOProperty
 	private String[] documentsBase64;
 	
 	
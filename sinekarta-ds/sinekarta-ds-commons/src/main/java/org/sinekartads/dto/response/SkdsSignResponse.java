@@ -21,11 +21,13 @@ import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlRootElement;
 
 import org.sinekartads.dto.domain.DocumentDTO;
+import org.sinekartads.dto.formats.Base64DTOProperty;
 
 public abstract class SkdsSignResponse extends BaseResponse {
 
 	private static final long serialVersionUID = 1795756709990551060L;
 		
+	@Base64DTOProperty
 	private String[] documentsBase64;
 
 	
@@ -10,6 +10,7 @@ import javax.xml.bind.annotation.XmlRootElement;
 
 import org.sinekartads.dto.BaseDTO;
 import org.sinekartads.dto.domain.VerifyDTO;
+import org.sinekartads.dto.formats.Base64DTOProperty;
 import org.sinekartads.util.TemplateUtils;
 
 @XmlRootElement(name = "SinekartaDsVerifyResponse")
@@ -30,6 +31,7 @@ public class SkdsVerifyResponse extends BaseResponse {
 	
 	private String destRef;
 	
+	@Base64DTOProperty
 	private String verifyInfoBase64;
 	
 	
@@ -2,6 +2,7 @@ package org.sinekartads.dto.share;
 
 import org.sinekartads.dto.domain.DocumentDTO;
 import org.sinekartads.dto.domain.SignatureDTO;
+import org.sinekartads.dto.formats.HexDTOProperty;
 
 public class SignWizardDTO extends WizardDTO {
 
@@ -36,6 +37,7 @@ public class SignWizardDTO extends WizardDTO {
 	private String[] ksAliases;
 	private String ksUserAlias;
 	private String ksUserPassword;
+	@HexDTOProperty
 	private String ksHexPrivateKey;
 
 	private String[] scDriverNames;
@@ -0,0 +1,513 @@
+package org.sinekartads.dto.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.lang3.ClassUtils;
+import org.sinekartads.dto.BaseDTO;
+import org.sinekartads.dto.formats.Base64DTOProperty;
+import org.sinekartads.dto.formats.HexDTOProperty;
+
+/**
+ * Compact binary encoding of the DTOs, used instead of the java serialization when the DTOs
+ * are transported as hex or base64 strings (JCL boundary, SignatureDTO transitions).
+ * <p>
+ * The encoding starts with the "SKDB" magic and the format version, followed by the root DTO.
+ * Each DTO is written as its class name and the list of its fields, each one given by name and
+ * by a tagged value. Class and field names are written only once per stream and referred by index
+ * afterwards. Unknown fields are skipped by the decoder, missing ones keep the constructor value,
+ * so that the two sides of the transport can evolve separately.
+ * <p>
+ * The String fields declared as carrying binary data - annotated with {@link HexDTOProperty} or
+ * {@link Base64DTOProperty}, as the nested DTO of the JclResponseDTO results - are stored as
+ * length-prefixed raw bytes, whenever the string is exactly the canonical encoding of them;
+ * otherwise they are kept as UTF-8 strings.
+ * <p>
+ * The decoders recognize the format by its magic, falling back to the java serialization
+ * for the data produced by the previous versions; see {@link #isEncoded(byte[])}. The encoding
+ * is produced only when enabled by the {@value #ENABLED_PROPERTY} system property, to be set
+ * once every peer receiving the hex and base64 DTOs runs a decoder knowing it.
+ * <p>
+ * The decoding of a stream is bounded by {@value #MAX_LENGTH_PROPERTY} bytes and by a nesting
+ * depth of {@value #MAX_DEPTH} values.
+ */
+public class DTOBinaryCodec {
+
+	/**
+	 * system property to be set to "true" to produce the binary encoding instead of the java serialization
+	 */
+	public static final String ENABLED_PROPERTY = "sinekartads.dto.binary";
+
+	/**
+	 * system property limiting the bytes decoded from a stream, 64MB by default
+	 */
+	public static final String MAX_LENGTH_PROPERTY = "sinekartads.dto.binary.maxLength";
+
+	public static final int DEFAULT_MAX_LENGTH = 64 * 1024 * 1024;
+
+	/**
+	 * maximum nesting of the decoded values: DTOs, arrays and the DTOs inside them
+	 */
+	public static final int MAX_DEPTH = 64;
+
+	public static final int VERSION = 1;
+
+	private static final byte[] MAGIC = { 'S', 'K', 'D', 'B' };
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// value tags
+	private static final int TAG_NULL 			= 0;
+	private static final int TAG_STRING 		= 1;
+	private static final int TAG_HEX 			= 2;
+	private static final int TAG_BASE64 		= 3;
+	private static final int TAG_STRING_ARRAY 	= 4;
+	private static final int TAG_DTO 			= 5;
+	private static final int TAG_DTO_ARRAY 		= 6;
+	private static final int TAG_INT 			= 7;
+	private static final int TAG_LONG 			= 8;
+	private static final int TAG_BOOLEAN 		= 9;
+	private static final int TAG_BYTES 			= 10;
+
+	private static volatile boolean enabled = "true".equalsIgnoreCase ( System.getProperty(ENABLED_PROPERTY) );
+	private static volatile int maxLength = Integer.getInteger ( MAX_LENGTH_PROPERTY, DEFAULT_MAX_LENGTH );
+
+
+
+	// -----
+	// --- Configuration
+	// -
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled ( boolean enabled ) {
+		DTOBinaryCodec.enabled = enabled;
+	}
+
+	public static int getMaxLength() {
+		return maxLength;
+	}
+
+	public static void setMaxLength ( int maxLength ) {
+		DTOBinaryCodec.maxLength = maxLength;
+	}
+
+	/**
+	 * @return true if the bytes have been produced by this codec
+	 */
+	public static boolean isEncoded ( byte[] bytes ) {
+		if ( bytes == null || bytes.length <= MAGIC.length ) 					return false;
+		for ( int i=0; i<MAGIC.length; i++ ) {
+			if ( bytes[i] != MAGIC[i] ) 										return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if all the fields of the given DTO class, and of the DTO classes of its fields,
+	 * can be represented by this codec
+	 */
+	public static boolean supports ( Class<? extends BaseDTO> dtoClass ) {
+		return DTOSchema.supports ( dtoClass );
+	}
+
+
+
+	// -----
+	// --- Encoding
+	// -
+
+	public static byte[] encode ( BaseDTO dto ) {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try {
+			encode ( dto, baos );
+		} catch(IOException e) {
+			// never thrown by a ByteArrayOutputStream
+			throw new RuntimeException(e);
+		}
+		return baos.toByteArray();
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the dto contains a field not supported by the codec
+	 */
+	public static void encode ( BaseDTO dto, OutputStream os ) throws IOException {
+		DataOutputStream out = new DataOutputStream ( os );
+		out.write ( MAGIC );
+		out.write ( VERSION );
+		new Encoder(out).writeValue ( null, "", dto );
+		out.flush();
+	}
+
+
+
+	// -----
+	// --- Decoding
+	// -
+
+	public static <DTO extends BaseDTO> DTO decode ( Class<DTO> dtoClass, byte[] bytes ) {
+		try {
+			return decode ( dtoClass, new ByteArrayInputStream(bytes), bytes.length );
+		} catch(IOException e) {
+			throw new IllegalArgumentException("invalid binary dto encoding", e);
+		}
+	}
+
+	/**
+	 * Decode a DTO reading at most {@link #getMaxLength()} bytes of strings, byte arrays and array items.
+	 */
+	public static <DTO extends BaseDTO> DTO decode ( Class<DTO> dtoClass, InputStream is ) throws IOException {
+		return decode ( dtoClass, is, maxLength );
+	}
+
+	/**
+	 * @param maxLength maximum total of the string, byte array and array lengths read from the stream;
+	 * the allocations of the decoder are proportional to it
+	 * @throws IOException if the encoding is invalid or exceeds the maxLength or the {@link #MAX_DEPTH}
+	 */
+	public static <DTO extends BaseDTO> DTO decode ( Class<DTO> dtoClass, InputStream is, int maxLength ) throws IOException {
+		DataInputStream in = new DataInputStream ( is );
+		byte[] magic = new byte[MAGIC.length];
+		in.readFully ( magic );
+		if ( !Arrays.equals(magic, MAGIC) ) {
+			throw new IOException("not a binary dto encoding");
+		}
+		int version = in.readUnsignedByte();
+		if ( version > VERSION ) {
+			throw new IOException(String.format ( "unsupported binary dto version - %d", version ));
+		}
+		Object dto = new Decoder(in, dtoClass.getClassLoader(), maxLength).readValue();
+		if ( !dtoClass.isInstance(dto) ) {
+			throw new IOException(String.format ( "the binary encoding does not contain a %s", dtoClass.getName() ));
+		}
+		return dtoClass.cast ( dto );
+	}
+
+
+
+	// -----
+	// --- Encoder and decoder implementation
+	// -
+
+	private static class Encoder {
+
+		final DataOutputStream out;
+		final Map<String, Integer> names = new HashMap<String, Integer>();
+
+		Encoder ( DataOutputStream out ) {
+			this.out = out;
+		}
+
+		void writeDto ( BaseDTO dto ) throws IOException {
+			Class<?> dtoClass = dto.getClass();
+			writeName ( dtoClass.getName() );
+			Map<String, Field> fields = DTOSchema.fieldsOf ( dtoClass );
+			writeVarInt ( fields.size() );
+			try {
+				for ( Map.Entry<String, Field> entry : fields.entrySet() ) {
+					writeName ( entry.getKey() );
+					writeValue ( entry.getValue(), entry.getKey(), entry.getValue().get(dto) );
+				}
+			} catch(IllegalAccessException e) {
+				// fields are set accessible by fieldsOf()
+				throw new RuntimeException(e);
+			}
+		}
+
+		/**
+		 * @param field the DTO field holding the value, null for the root DTO
+		 */
+		void writeValue ( Field field, String name, Object value ) throws IOException {
+			if ( value == null ) {
+				out.write ( TAG_NULL );
+			} else if ( value instanceof String ) {
+				writeString ( field, (String)value );
+			} else if ( value instanceof String[] ) {
+				String[] values = (String[]) value;
+				out.write ( TAG_STRING_ARRAY );
+				writeVarInt ( values.length );
+				for ( String item : values ) {
+					writeString ( field, item );
+				}
+			} else if ( value instanceof BaseDTO ) {
+				out.write ( TAG_DTO );
+				writeDto ( (BaseDTO)value );
+			} else if ( value instanceof BaseDTO[] ) {
+				BaseDTO[] values = (BaseDTO[]) value;
+				out.write ( TAG_DTO_ARRAY );
+				writeName ( values.getClass().getComponentType().getName() );
+				writeVarInt ( values.length );
+				for ( BaseDTO item : values ) {
+					if ( item == null ) {
+						out.write ( TAG_NULL );
+					} else {
+						out.write ( TAG_DTO );
+						writeDto ( item );
+					}
+				}
+			} else if ( value instanceof Integer ) {
+				out.write ( TAG_INT );
+				out.writeInt ( (Integer)value );
+			} else if ( value instanceof Long ) {
+				out.write ( TAG_LONG );
+				out.writeLong ( (Long)value );
+			} else if ( value instanceof Boolean ) {
+				out.write ( TAG_BOOLEAN );
+				out.writeBoolean ( (Boolean)value );
+			} else if ( value instanceof byte[] ) {
+				out.write ( TAG_BYTES );
+				writeBytes ( (byte[])value );
+			} else {
+				throw new IllegalArgumentException(String.format ( "unsupported dto field %s - %s", name, value.getClass() ));
+			}
+		}
+
+		void writeString ( Field field, String value ) throws IOException {
+			if ( value == null ) {
+				out.write ( TAG_NULL );
+				return;
+			}
+			byte[] bytes = null;
+			int tag = TAG_STRING;
+			if ( field != null && field.isAnnotationPresent(HexDTOProperty.class) ) {
+				bytes = decodeHex ( value );
+				tag = TAG_HEX;
+			} else if ( field != null && field.isAnnotationPresent(Base64DTOProperty.class) ) {
+				bytes = decodeBase64 ( value );
+				tag = TAG_BASE64;
+			}
+			if ( bytes == null ) {
+				bytes = value.getBytes ( UTF8 );
+				tag = TAG_STRING;
+			}
+			out.write ( tag );
+			writeBytes ( bytes );
+		}
+
+		void writeName ( String name ) throws IOException {
+			Integer index = names.get ( name );
+			if ( index == null ) {
+				// 0 introduces a new name, which will be referred by its position+1 afterwards
+				writeVarInt ( 0 );
+				writeBytes ( name.getBytes(UTF8) );
+				names.put ( name, names.size() + 1 );
+			} else {
+				writeVarInt ( index );
+			}
+		}
+
+		void writeBytes ( byte[] bytes ) throws IOException {
+			writeVarInt ( bytes.length );
+			out.write ( bytes );
+		}
+
+		void writeVarInt ( int value ) throws IOException {
+			while ( (value & ~0x7f) != 0 ) {
+				out.write ( (value & 0x7f) | 0x80 );
+				value >>>= 7;
+			}
+			out.write ( value );
+		}
+
+		/**
+		 * @return the decoded bytes, null if value is not their canonical hex encoding
+		 */
+		static byte[] decodeHex ( String value ) {
+			if ( value.length() == 0 || value.length() % 2 != 0 ) 			return null;
+			try {
+				byte[] bytes = Hex.decodeHex ( value.toCharArray() );
+				return Hex.encodeHexString(bytes).equals(value) ? bytes : null;
+			} catch(DecoderException e) {
+				return null;
+			}
+		}
+
+		/**
+		 * @return the decoded bytes, null if value is not their canonical base64 encoding
+		 */
+		static byte[] decodeBase64 ( String value ) {
+			if ( value.length() == 0 || value.length() % 4 != 0 ) 			return null;
+			byte[] bytes = Base64.decodeBase64 ( value );
+			return Base64.encodeBase64String(bytes).equals(value) ? bytes : null;
+		}
+	}
+
+	private static class Decoder {
+
+		final DataInputStream in;
+		final ClassLoader classLoader;
+		final List<String> names = new ArrayList<String>();
+		// lengths still allowed: every string, byte array, array item and dto field takes at least one byte
+		// of a valid encoding, so that the budget is never exceeded by the encoding of a byte array
+		int remaining;
+		int depth;
+
+		Decoder ( DataInputStream in, ClassLoader classLoader, int maxLength ) {
+			this.in = in;
+			this.classLoader = classLoader;
+			this.remaining = maxLength;
+		}
+
+		Object readValue ( ) throws IOException {
+			if ( ++depth > MAX_DEPTH ) {
+				throw new IOException(String.format ( "binary dto nested beyond %d levels", MAX_DEPTH ));
+			}
+			try {
+				return readTaggedValue ( in.readUnsignedByte() );
+			} finally {
+				depth--;
+			}
+		}
+
+		Object readTaggedValue ( int tag ) throws IOException {
+			switch ( tag ) {
+				case TAG_NULL: 		return null;
+				case TAG_STRING: 	return new String ( readBytes(), UTF8 );
+				case TAG_HEX: 		return Hex.encodeHexString ( readBytes() );
+				case TAG_BASE64: 	return Base64.encodeBase64String ( readBytes() );
+				case TAG_STRING_ARRAY: {
+					String[] values = new String[readAllocation()];
+					for ( int i=0; i<values.length; i++ ) {
+						values[i] = readItem ( String.class );
+					}
+					return values;
+				}
+				case TAG_DTO: 		return readDto();
+				case TAG_DTO_ARRAY: {
+					Class<? extends BaseDTO> componentClass = dtoClass ( readName() );
+					BaseDTO[] values = (BaseDTO[]) Array.newInstance ( componentClass, readAllocation() );
+					for ( int i=0; i<values.length; i++ ) {
+						values[i] = readItem ( componentClass );
+					}
+					return values;
+				}
+				case TAG_INT: 		return in.readInt();
+				case TAG_LONG: 		return in.readLong();
+				case TAG_BOOLEAN: 	return in.readBoolean();
+				case TAG_BYTES: 	return readBytes();
+				default: throw new IOException(String.format ( "invalid binary dto tag - %d", tag ));
+			}
+		}
+
+		<T> T readItem ( Class<T> itemClass ) throws IOException {
+			Object item = readValue();
+			if ( item != null && !itemClass.isInstance(item) ) {
+				throw new IOException(String.format ( "invalid binary dto array item - %s", item.getClass().getName() ));
+			}
+			return itemClass.cast ( item );
+		}
+
+		BaseDTO readDto ( ) throws IOException {
+			Class<? extends BaseDTO> dtoClass = dtoClass ( readName() );
+			BaseDTO dto;
+			try {
+				dto = DTOSchema.newInstance ( dtoClass );
+			} catch(Exception e) {
+				throw new IOException(String.format ( "unable to instantiate %s", dtoClass.getName() ), e);
+			}
+
+			Map<String, Field> fields = DTOSchema.fieldsOf ( dtoClass );
+			int count = readAllocation();
+			Field field;
+			Object value;
+			for ( int i=0; i<count; i++ ) {
+				field = fields.get ( readName() );
+				value = readValue();
+				// unknown fields and values of a different type are ignored
+				if ( field != null && isAssignable(field.getType(), value) ) {
+					try {
+						field.set ( dto, value );
+					} catch(IllegalAccessException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			}
+			return dto;
+		}
+
+		Class<? extends BaseDTO> dtoClass ( String className ) throws IOException {
+			Class<?> dtoClass;
+			try {
+				dtoClass = Class.forName ( className, false, classLoader );
+			} catch(ClassNotFoundException e) {
+				throw new IOException(String.format ( "unknown dto class - %s", className ), e);
+			}
+			// only the DTOs can be instantiated by the decoder
+			if ( !BaseDTO.class.isAssignableFrom(dtoClass) ) {
+				throw new IOException(String.format ( "not a dto class - %s", className ));
+			}
+			return dtoClass.asSubclass ( BaseDTO.class );
+		}
+
+		String readName ( ) throws IOException {
+			int index = readLength();
+			if ( index == 0 ) {
+				String name = new String ( readBytes(), UTF8 );
+				names.add ( name );
+				return name;
+			}
+			if ( index > names.size() ) {
+				throw new IOException(String.format ( "invalid binary dto name reference - %d", index ));
+			}
+			return names.get ( index - 1 );
+		}
+
+		byte[] readBytes ( ) throws IOException {
+			byte[] bytes = new byte[readAllocation()];
+			in.readFully ( bytes );
+			return bytes;
+		}
+
+		/**
+		 * @return a length to be allocated, charged to the remaining budget
+		 */
+		int readAllocation ( ) throws IOException {
+			int length = readLength();
+			if ( length > remaining ) {
+				throw new IOException(String.format ( "binary dto exceeding the maximum length - %d", length ));
+			}
+			remaining -= length;
+			return length;
+		}
+
+		int readLength ( ) throws IOException {
+			int value = 0;
+			int b;
+			for ( int shift = 0; shift < 32; shift += 7 ) {
+				b = in.readUnsignedByte();
+				value |= (b & 0x7f) << shift;
+				if ( (b & 0x80) == 0 ) {
+					if ( value < 0 ) {
+						throw new IOException(String.format ( "invalid binary dto length - %d", value ));
+					}
+					return value;
+				}
+			}
+			throw new IOException("invalid binary dto varint");
+		}
+
+		static boolean isAssignable ( Class<?> fieldType, Object value ) {
+			if ( value == null ) {
+				return !fieldType.isPrimitive();
+			}
+			return ClassUtils.primitiveToWrapper(fieldType).isInstance ( value );
+		}
+	}
+}
@@ -42,7 +42,6 @@ import org.sinekartads.model.domain.VerifyInfo;
 import org.sinekartads.model.domain.XMLSignatureInfo;
 import org.sinekartads.util.HexUtils;
 import org.sinekartads.util.TemplateUtils;
-import org.sinekartads.util.x509.X509Utils;
 
 public class DTOConverter {
 
@@ -222,6 +221,9 @@ public class DTOConverter {
 				PDFSignatureInfo pdfSignature = ( PDFSignatureInfo ) signature;
 				dto.setPdfHexFileId				( HexUtils.encodeHex(pdfSignature.getFileId()) );
 				dto.setPdfUnicodeModDate		( pdfSignature.getUnicodeModDate() 		);
+				dto.setPdfPreparedDocument		( pdfSignature.getPreparedDocument()	);
+				dto.pdfByteRangeToString		( pdfSignature.getByteRange()			);
+				dto.setPdfHexRangeDigest		( HexUtils.encodeHex(pdfSignature.getRangeDigest()) );
 				dto.setPdfSignName				( pdfSignature.getName()				);
 				dto.setPdfRevision				( pdfSignature.getRevision()			);
 				dto.pdfCoversWholeDocumentToString 	( pdfSignature.getCoversWholeDocument()	);
@@ -251,7 +253,7 @@ public class DTOConverter {
 		dto.finalizedToString               ( signature.isFinalized() );
 		
 		if ( signature.isFinalized() ) {
-			dto.setHexCertificateChain	( X509Utils.rawX509CertificatesToHex(signature.getRawX509Certificates()) );
+			dto.setHexCertificateChain		( signature.getHexCertificateChain() );
 //			dto.setCertificate				( fromCertificateInfo(signature.getCertificate()) );
 			dto.setDigest					( fromDigestInfo(signature.getDigest()) );
 			dto.digitalSignatureToHex		( signature.getDigitalSignature() );
@@ -274,7 +276,7 @@ public class DTOConverter {
 					dto.setDigest				( fromDigestInfo(signature.getDigest()) );
 				}
 				case CHAIN: {
-					dto.setHexCertificateChain 	( X509Utils.rawX509CertificatesToHex(signature.getRawX509Certificates()) );
+					dto.setHexCertificateChain 	( signature.getHexCertificateChain() );
 				}
 				default:
 			}
@@ -289,12 +291,12 @@ public class DTOConverter {
 		
 		if ( timeStamp == null)									 					return null;
 		TimeStampDTO dto = new TimeStampDTO ( );
-		dto.encTimeStampTokenToHex			( timeStamp.getEncTimeStampToken() );
+		dto.setHexTimeStampToken			( timeStamp.getHexTimeStampToken() );
 		dto.signAlgorithmToString 			( timeStamp.getSignAlgorithm() );
 		dto.digestAlgorithmToString 		( timeStamp.getDigestAlgorithm() );
 		dto.digitalSignatureToHex 			( timeStamp.getDigitalSignature() );
 //		dto.setCertificate 					( fromCertificateInfo(timeStamp.getCertificate()) );
-		dto.setHexCertificateChain			( X509Utils.rawX509CertificatesToHex(timeStamp.getRawX509Certificates()) );
+		dto.setHexCertificateChain			( timeStamp.getHexCertificateChain() );
 		dto.setMessageImprint				( fromDigestInfo(timeStamp.getMessageInprintInfo()) );
 		dto.signingTimeToString 			( timeStamp.getSigningTime() );
 		dto.setReason						( timeStamp.getReason() );
@@ -421,6 +423,9 @@ public class DTOConverter {
 																		   dto.digestAlgorithmFromName() );
 					pdfSignature.setFileId ( HexUtils.decodeHex(dto.getPdfHexFileId()) );
 					pdfSignature.setUnicodeModDate(dto.getPdfUnicodeModDate());
+					pdfSignature.setPreparedDocument ( dto.getPdfPreparedDocument() );
+					pdfSignature.setByteRange ( dto.pdfByteRangeFromString() );
+					pdfSignature.setRangeDigest ( HexUtils.decodeHex(dto.getPdfHexRangeDigest()) );
 					pdfSignature.setCoversWholeDocument	( dto.pdfCoversWholeDocumentFromString() );
 					pdfSignature.setRevision ( dto.getPdfRevision() );
 					rawSignature = pdfSignature;
@@ -452,8 +457,8 @@ public class DTOConverter {
 		
 		ChainSignature<?,?,VerifyResult,?> chainSignature = null;
 		if ( hasPropertyAccess(dto, SignatureStatus.SignProcess.CHAIN) ) {
-			chainSignature = emptySignature.toChainSignature (
-					X509Utils.rawX509CertificatesFromHex(dto.getHexCertificateChain()) );
+			// the chain is handed over encoded, it will be parsed only if accessed
+			chainSignature = emptySignature.toChainSignature ( dto.getHexCertificateChain() );
 		}
 		
 		DigestSignature<?,?,VerifyResult,?> digestSignature = null;
@@ -528,10 +533,10 @@ public class DTOConverter {
 				dto.digestAlgorithmFromString(),
 				toDigestInfo(dto.getMessageImprint()),
 //					toCertificateInfo(dto.getCertificate()),
-				X509Utils.rawX509CertificatesFromHex(dto.getHexCertificateChain()),
+				dto.getHexCertificateChain(),
 				dto.digitalSignatureFromHex(),
 				dto.verifyResultFromString(),
-				dto.encTimeStampTokenFromHex() );
+				dto.getHexTimeStampToken() );
 		
 		untrustedTimeStamp.setSigningTime	( dto.signingTimeFromString() );
 		untrustedTimeStamp.setReason		( dto.getReason() );
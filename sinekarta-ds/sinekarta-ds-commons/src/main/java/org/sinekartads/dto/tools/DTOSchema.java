@@ -0,0 +1,220 @@
+package org.sinekartads.dto.tools;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.ClassUtils;
+import org.sinekartads.dto.BaseDTO;
+
+/**
+ * Per-class metadata of the DTOs: the instance fields of each DTO class are resolved at its first
+ * use and shared afterwards by the binary codec and by the field-wise equals, hashCode and copy.
+ * <p>
+ * The structural DTOs are the ones whose fields only hold Strings, String arrays, byte arrays,
+ * integer, long and boolean values, other structural DTOs and arrays of them; see {@link #supports(Class)}.
+ */
+public class DTOSchema {
+
+	private static final ConcurrentMap<Class<?>, Map<String, Field>> schemas = new ConcurrentHashMap<Class<?>, Map<String, Field>>();
+	private static final ConcurrentMap<Class<?>, Boolean> supportedClasses = new ConcurrentHashMap<Class<?>, Boolean>();
+	private static final ConcurrentMap<Class<?>, Constructor<?>> constructors = new ConcurrentHashMap<Class<?>, Constructor<?>>();
+	private static final Field[] formatFields = instanceFields ( BaseDTO.class );
+
+
+
+	// -----
+	// --- Class schemas
+	// -
+
+	/**
+	 * @return the instance fields of the DTO class and of its superclasses up to BaseDTO (excluded),
+	 * which only carries the formatters, by name; the fields are already accessible
+	 */
+	public static Map<String, Field> fieldsOf ( Class<?> dtoClass ) {
+		Map<String, Field> fields = schemas.get ( dtoClass );
+		if ( fields == null ) {
+			fields = new LinkedHashMap<String, Field>();
+			int modifiers;
+			for ( Class<?> clazz = dtoClass; clazz != null && clazz != BaseDTO.class; clazz = clazz.getSuperclass() ) {
+				for ( Field field : clazz.getDeclaredFields() ) {
+					modifiers = field.getModifiers();
+					if ( Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) ) 	continue;
+					if ( fields.containsKey(field.getName()) ) 								continue;
+					field.setAccessible ( true );
+					fields.put ( field.getName(), field );
+				}
+			}
+			fields = Collections.unmodifiableMap ( fields );
+			schemas.putIfAbsent ( dtoClass, fields );
+		}
+		return fields;
+	}
+
+	private static Field[] instanceFields ( Class<?> clazz ) {
+		List<Field> fields = new ArrayList<Field>();
+		int modifiers;
+		for ( Field field : clazz.getDeclaredFields() ) {
+			modifiers = field.getModifiers();
+			if ( Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) ) 		continue;
+			field.setAccessible ( true );
+			fields.add ( field );
+		}
+		return fields.toArray ( new Field[fields.size()] );
+	}
+
+	/**
+	 * @return true if all the fields of the given DTO class, and of the DTO classes of its fields,
+	 * are of the types listed by the class description
+	 */
+	public static boolean supports ( Class<? extends BaseDTO> dtoClass ) {
+		Boolean supported = supportedClasses.get ( dtoClass );
+		if ( supported == null ) {
+			supported = checkSupport ( dtoClass, new HashSet<Class<?>>() );
+			supportedClasses.put ( dtoClass, supported );
+		}
+		return supported;
+	}
+
+	private static boolean checkSupport ( Class<?> dtoClass, Set<Class<?>> visited ) {
+		if ( !visited.add(dtoClass) ) 												return true;
+		Class<?> type;
+		for ( Field field : fieldsOf(dtoClass).values() ) {
+			type = field.getType();
+			if ( type.isArray() && BaseDTO.class.isAssignableFrom(type.getComponentType()) ) {
+				type = type.getComponentType();
+			}
+			if ( BaseDTO.class.isAssignableFrom(type) ) {
+				if ( !checkSupport(type, visited) ) 								return false;
+			} else if ( type != String.class && type != String[].class && type != byte[].class
+					&& ClassUtils.primitiveToWrapper(type) != Integer.class
+					&& ClassUtils.primitiveToWrapper(type) != Long.class
+					&& ClassUtils.primitiveToWrapper(type) != Boolean.class ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return a new instance of the DTO class, built by its no-arguments constructor
+	 */
+	public static <DTO extends BaseDTO> DTO newInstance ( Class<DTO> dtoClass )
+			throws ReflectiveOperationException {
+		Constructor<?> constructor = constructors.get ( dtoClass );
+		if ( constructor == null ) {
+			constructor = dtoClass.getDeclaredConstructor();
+			constructor.setAccessible ( true );
+			constructors.putIfAbsent ( dtoClass, constructor );
+		}
+		return dtoClass.cast ( constructor.newInstance() );
+	}
+
+
+
+	// -----
+	// --- Field-wise equality
+	// -
+
+	/**
+	 * @return true if the two DTOs are of the same class and all their fields are equal,
+	 * the arrays being compared by content and the nested DTOs field-wise
+	 */
+	public static boolean equals ( BaseDTO dto, Object obj ) {
+		if ( dto == obj ) 															return true;
+		if ( dto == null || obj == null || dto.getClass() != obj.getClass() ) 		return false;
+		try {
+			for ( Field field : fieldsOf(dto.getClass()).values() ) {
+				if ( !Objects.deepEquals(field.get(dto), field.get(obj)) ) 			return false;
+			}
+		} catch(IllegalAccessException e) {
+			// never thrown, the fields are set accessible by fieldsOf()
+			throw new RuntimeException(e);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the hashCode of the DTO, consistent with {@link #equals(BaseDTO, Object)}
+	 */
+	public static int hashCode ( BaseDTO dto ) {
+		if ( dto == null ) 															return 0;
+		int hashCode = dto.getClass().hashCode();
+		Object[] value = new Object[1];
+		try {
+			for ( Field field : fieldsOf(dto.getClass()).values() ) {
+				value[0] = field.get ( dto );
+				hashCode = 31 * hashCode + Arrays.deepHashCode ( value );
+			}
+		} catch(IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+		return hashCode;
+	}
+
+
+
+	// -----
+	// --- Deep copy
+	// -
+
+	/**
+	 * Copy the DTO field by field: the arrays and the nested DTOs are copied as well, the Strings
+	 * and the primitive values are shared. The formats set on the DTO by its BaseDTO, which are not
+	 * part of the schema, are copied too. The DTO must be {@link #supports(Class) structural}, the
+	 * nested DTOs which are not - instances of a subclass of the declared type - are copied by
+	 * {@link BaseDTO#copy(BaseDTO)}, through the java serialization.
+	 * @return a copy of the DTO, independent of the original one
+	 */
+	public static <DTO extends BaseDTO> DTO copy ( DTO dto ) {
+		if ( dto == null ) 															return null;
+		@SuppressWarnings("unchecked")
+		Class<DTO> dtoClass = (Class<DTO>) dto.getClass();
+		if ( !supports(dtoClass) ) {
+			throw new IllegalArgumentException(String.format ( "not a structural dto - %s", dtoClass.getName() ));
+		}
+		try {
+			DTO copy = newInstance ( dtoClass );
+			for ( Field field : formatFields ) {
+				field.set ( copy, field.get(dto) );
+			}
+			for ( Field field : fieldsOf(dtoClass).values() ) {
+				field.set ( copy, copyValue(field.get(dto)) );
+			}
+			return copy;
+		} catch(ReflectiveOperationException e) {
+			throw new RuntimeException(String.format ( "unable to copy the %s", dtoClass.getName() ), e);
+		}
+	}
+
+	private static Object copyValue ( Object value ) {
+		if ( value instanceof BaseDTO ) {
+			return BaseDTO.copy ( (BaseDTO) value );
+		}
+		if ( value instanceof byte[] ) {
+			return ((byte[]) value).clone();
+		}
+		if ( value instanceof Object[] ) {
+			Object[] array = (Object[]) value;
+			Object[] copy = (Object[]) Array.newInstance ( array.getClass().getComponentType(), array.length );
+			for ( int i=0; i<array.length; i++ ) {
+				copy[i] = copyValue ( array[i] );
+			}
+			return copy;
+		}
+		// Strings and the primitive wrappers are immutable
+		return value;
+	}
+}
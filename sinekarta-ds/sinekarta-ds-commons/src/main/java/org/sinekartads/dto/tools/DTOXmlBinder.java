@@ -0,0 +1,144 @@
+package org.sinekartads.dto.tools;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+import org.sinekartads.dto.BaseDTO;
+
+/**
+ * JAXB transport of the DTOs. The JAXBContext of each DTO class is created at its first use
+ * and shared afterwards; the Marshallers and Unmarshallers, which are not thread-safe, are
+ * taken from a small per-class pool and given back after each call.
+ */
+public class DTOXmlBinder {
+
+	/**
+	 * maximum number of idle marshallers (and unmarshallers) kept for each DTO class
+	 */
+	public static final int MAX_POOLED = 8;
+
+	private static final ConcurrentMap<Class<?>, Binding> bindings = new ConcurrentHashMap<Class<?>, Binding>();
+
+
+
+	// -----
+	// --- Unmarshalling
+	// -
+
+	public static <DTO extends BaseDTO> DTO unmarshal ( Class<DTO> dtoClass, InputStream is ) throws JAXBException {
+		Binding binding = bindingFor ( dtoClass );
+		Unmarshaller unmarshaller = binding.acquireUnmarshaller();
+		try {
+			return dtoClass.cast ( unmarshaller.unmarshal(is) );
+		} finally {
+			binding.releaseUnmarshaller ( unmarshaller );
+		}
+	}
+
+	public static <DTO extends BaseDTO> DTO unmarshal ( Class<DTO> dtoClass, Reader reader ) throws JAXBException {
+		Binding binding = bindingFor ( dtoClass );
+		Unmarshaller unmarshaller = binding.acquireUnmarshaller();
+		try {
+			return dtoClass.cast ( unmarshaller.unmarshal(reader) );
+		} finally {
+			binding.releaseUnmarshaller ( unmarshaller );
+		}
+	}
+
+
+
+	// -----
+	// --- Marshalling
+	// -
+
+	public static void marshal ( BaseDTO dto, OutputStream os ) throws JAXBException {
+		Binding binding = bindingFor ( dto.getClass() );
+		Marshaller marshaller = binding.acquireMarshaller();
+		try {
+			marshaller.marshal ( dto, os );
+		} finally {
+			binding.releaseMarshaller ( marshaller );
+		}
+	}
+
+	public static void marshal ( BaseDTO dto, Writer writer ) throws JAXBException {
+		Binding binding = bindingFor ( dto.getClass() );
+		Marshaller marshaller = binding.acquireMarshaller();
+		try {
+			marshaller.marshal ( dto, writer );
+		} finally {
+			binding.releaseMarshaller ( marshaller );
+		}
+	}
+
+
+
+	// -----
+	// --- Context registry
+	// -
+
+	private static Binding bindingFor ( Class<?> dtoClass ) throws JAXBException {
+		Binding binding = bindings.get ( dtoClass );
+		if ( binding == null ) {
+			// concurrent first uses may create the context twice, only one of them will be kept
+			Binding newBinding = new Binding ( JAXBContext.newInstance(dtoClass) );
+			binding = bindings.putIfAbsent ( dtoClass, newBinding );
+			if ( binding == null ) {
+				binding = newBinding;
+			}
+		}
+		return binding;
+	}
+
+	private static class Binding {
+
+		final JAXBContext context;
+		final Queue<Marshaller> marshallers = new ConcurrentLinkedQueue<Marshaller>();
+		final Queue<Unmarshaller> unmarshallers = new ConcurrentLinkedQueue<Unmarshaller>();
+
+		Binding ( JAXBContext context ) {
+			this.context = context;
+		}
+
+		Marshaller acquireMarshaller() throws JAXBException {
+			Marshaller marshaller = marshallers.poll();
+			if ( marshaller == null ) {
+				marshaller = context.createMarshaller();
+				marshaller.setProperty ( Marshaller.JAXB_FORMATTED_OUTPUT, true );
+			}
+			return marshaller;
+		}
+
+		void releaseMarshaller ( Marshaller marshaller ) {
+			// the size() of the queue is not constant-time, the bound is approximate
+			if ( marshallers.size() < MAX_POOLED ) {
+				marshallers.offer ( marshaller );
+			}
+		}
+
+		Unmarshaller acquireUnmarshaller() throws JAXBException {
+			Unmarshaller unmarshaller = unmarshallers.poll();
+			if ( unmarshaller == null ) {
+				unmarshaller = context.createUnmarshaller();
+			}
+			return unmarshaller;
+		}
+
+		void releaseUnmarshaller ( Unmarshaller unmarshaller ) {
+			if ( unmarshallers.size() < MAX_POOLED ) {
+				unmarshallers.offer ( unmarshaller );
+			}
+		}
+	}
+}
@@ -19,6 +19,9 @@
 
 package org.sinekartads.dto.tools;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+
 import org.sinekartads.dto.domain.SignatureDTO;
 import org.sinekartads.dto.jcl.JclResponseDTO;
 
@@ -71,6 +74,17 @@ public interface SignatureService {
 			String chainSignatureBase64,
 			String contentBase64 ) ;
 	
+	/**
+	 * Streaming version of {@link #preSign(String, String)}: the content is read from the given
+	 * stream instead of being received as a base64 string, in order not to keep it in memory.
+	 * @param chainSignatureBase64 the base64-encoded SignatureDTO
+	 * @param contentIs an inputStream on the bytes that will be signed, not closed by the service
+	 * @return a base64-encoded {@link PreSignResponseDTO}, as for {@link #preSign(String, String)}
+	 */
+	public String preSign (
+			String chainSignatureBase64,
+			InputStream contentIs ) ;
+	
 	
 	
 	// -----
@@ -98,6 +112,27 @@ public interface SignatureService {
 			String signedSignatureBase64,
 			String contentBase64 ) ;
 	
+	/**
+	 * Streaming version of {@link #postSign(String, String)}: the content is read from the given
+	 * stream and the envelopes are written to the given output streams, so the resulting 
+	 * {@link PostSignResponseDTO} only carries the finalized SignatureDTO.
+	 * None of the streams is closed by the service.
+	 * @param signedSignatureBase64 the base64-encoded SignatureDTO, with the digital signature
+	 * @param contentIs an inputStream on the bytes that will be signed
+	 * @param detachedSignOs receives the detached envelope, if any
+	 * @param embeddedSignOs receives the embedded envelope, if any
+	 * @param tsResponseOs receives the timeStamp response, if any
+	 * @param markedSignOs receives the marked envelope, if any
+	 * @return a base64-encoded {@link PostSignResponseDTO} enveloping the finalized SignatureDTO
+	 */
+	public String postSign ( 
+			String signedSignatureBase64,
+			InputStream contentIs,
+			OutputStream detachedSignOs,
+			OutputStream embeddedSignOs,
+			OutputStream tsResponseOs,
+			OutputStream markedSignOs ) ;
+	
 	
 	
 	// -----
@@ -146,5 +181,22 @@ public interface SignatureService {
 			String envelopeBase64,
 			String contentBase64,
 			String tsResponseBase64) ;
+	
+	/**
+	 * Streaming version of {@link #verify(String, String, String)}: the envelope and the optional
+	 * data are read from the given streams and the extracted content, if any, is written to
+	 * extractedContentOs instead of being added to the {@link VerifyResponseDTO}.
+	 * None of the streams is closed by the service.
+	 * @param envelopeIs an inputStream on the signed envelope
+	 * @param contentIs an inputStream on the detached content, null if embedded into the envelope
+	 * @param tsResponseIs an inputStream on the detached timeStamp response, null if missing
+	 * @param extractedContentOs receives the content embedded into the envelope, if any
+	 * @return a base64-encoded {@link VerifyResponseDTO} enveloping a VerifyDTO
+	 */
+	public String verify (
+			InputStream envelopeIs,
+			InputStream contentIs,
+			InputStream tsResponseIs,
+			OutputStream extractedContentOs ) ;
 
 }
@@ -45,6 +45,9 @@ public class PDFSignatureInfo
 	private byte[] fileId;
 	private String unicodModDate;
 	private byte[] authenticatedAttributeBytes;
+	private String preparedDocument;
+	private long[] byteRange;
+	private byte[] rangeDigest;
 	
 	public String getName() {
 		return name;
@@ -112,6 +115,40 @@ public class PDFSignatureInfo
 		this.unicodModDate = unicodModDate;
 	}
 	
+	/**
+	 * @return the opaque handle of the pre-closed document kept server-side by the preSign, 
+	 * null if it has not been prepared
+	 */
+	public String getPreparedDocument() {
+		return preparedDocument;
+	}
+
+	public void setPreparedDocument(String preparedDocument) {
+		this.preparedDocument = preparedDocument;
+	}
+	
+	/**
+	 * @return the /ByteRange of the prepared document, the gap between the first two ranges hosts the /Contents
+	 */
+	public long[] getByteRange() {
+		return byteRange;
+	}
+
+	public void setByteRange(long[] byteRange) {
+		this.byteRange = byteRange;
+	}
+	
+	/**
+	 * @return the digest of the byte ranges of the prepared document, as evaluated by the preSign
+	 */
+	public byte[] getRangeDigest() {
+		return rangeDigest;
+	}
+
+	public void setRangeDigest(byte[] rangeDigest) {
+		this.rangeDigest = rangeDigest;
+	}
+	
 	
 	
 	// -----
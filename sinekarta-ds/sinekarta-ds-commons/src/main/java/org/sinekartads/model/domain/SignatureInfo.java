@@ -1,5 +1,7 @@
 package org.sinekartads.model.domain;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.security.cert.X509Certificate;
 import java.util.Collections;
@@ -26,6 +28,7 @@ import org.sinekartads.model.oid.SignatureAlgorithm;
 import org.sinekartads.util.HexUtils;
 import org.sinekartads.util.TemplateUtils;
 import org.sinekartads.util.TextUtils;
+import org.sinekartads.util.x509.X509Utils;
 import org.springframework.util.Assert;
 
 public class SignatureInfo<ST extends SignatureType<ST>,
@@ -101,7 +104,8 @@ public class SignatureInfo<ST extends SignatureType<ST>,
 		if ( ArrayUtils.isNotEmpty(timeStamps) )			return SignatureStatus.SignProcess.MARKED;
 		if ( digitalSignature != null )						return SignatureStatus.SignProcess.SIGNED;
 		if ( digest != null )								return SignatureStatus.SignProcess.DIGEST;
-		if ( rawX509Certificates != null )					return SignatureStatus.SignProcess.CHAIN;
+		if ( rawX509Certificates != null 
+				|| hexCertificateChain != null )			return SignatureStatus.SignProcess.CHAIN;
 		return SignatureStatus.SignProcess.EMPTY;
 	}
 	
@@ -195,7 +199,17 @@ public class SignatureInfo<ST extends SignatureType<ST>,
 	 * binded to SignProcessTransition instances only.
 	 */
 
-	protected X509Certificate[] rawX509Certificates;
+	/*
+	 * The certificate chain is kept in its hex encoding as well, which is the form used by the DTOs and
+	 * the one actually serialized: the transitions clone the signature by serialization and the 
+	 * X509Certificate instances would have been parsed again by each of them. An encoded chain is
+	 * parsed as soon as it is set, to validate it; the X509Certificates, transient, are recomputed
+	 * from it after each clone through the X509CertificateCache, which parses every certificate once.
+	 * The hex form of a chain given as X509Certificates is computed at its first access only. 
+	 * The hex arrays are copied when received and returned, they're never shared with the DTOs. 
+	 */
+	protected transient X509Certificate[] rawX509Certificates;
+	protected String[] hexCertificateChain;
 //	protected CertificateInfo certificate;
 	protected DigestInfo digest;
 	protected byte[] digitalSignature;
@@ -206,9 +220,32 @@ public class SignatureInfo<ST extends SignatureType<ST>,
 
 	@Override
 	public X509Certificate[] getRawX509Certificates() {
+		if ( rawX509Certificates == null && hexCertificateChain != null ) {
+			rawX509Certificates = X509Utils.rawX509CertificatesFromHex ( hexCertificateChain );
+		}
 		return rawX509Certificates;
 	}
 	
+	/**
+	 * @return a copy of the hex encoding of the certificate chain, the original one if the chain has been received encoded 
+	 */
+	public String[] getHexCertificateChain() {
+		encodeCertificateChain();
+		return hexCertificateChain == null ? null : hexCertificateChain.clone();
+	}
+	
+	private void encodeCertificateChain() {
+		if ( hexCertificateChain == null && rawX509Certificates != null ) {
+			hexCertificateChain = X509Utils.rawX509CertificatesToHex ( rawX509Certificates );
+		}
+	}
+	
+	private void writeObject ( ObjectOutputStream out ) throws IOException {
+		// the chain is serialized in its hex encoding only
+		encodeCertificateChain();
+		out.defaultWriteObject();
+	}
+	
 //	@Override
 //	public CertificateInfo getCertificate() {
 ////		assertAllowedAccess ( SignatureStatus.SignProcess.TRUSTED_CHAIN );
@@ -315,9 +352,34 @@ public class SignatureInfo<ST extends SignatureType<ST>,
 		SignatureInfo<ST, SD, SV, SI> chainInstance = TemplateUtils.Instantiation.clone ( this );
 //		chainInstance.certificate = new CertificateInfo(untrustedChain);
 		chainInstance.rawX509Certificates = certificateChain;
+		chainInstance.hexCertificateChain = null;
+		return chainInstance;
+	}
+	
+	/**
+	 * The chain is parsed immediately and a copy of it is kept, to be returned by {@link #getHexCertificateChain()}.
+	 * @throws IllegalArgumentException if any certificate is not the hex encoding of an X509 certificate
+	 */
+	public ChainSignature < ST, SD, SV, SI >	toChainSignature ( String[] hexCertificateChain ) {
+		SignatureInfo<ST, SD, SV, SI> chainInstance = TemplateUtils.Instantiation.clone ( this );
+		chainInstance.rawX509Certificates = parseCertificateChain ( hexCertificateChain );
+		chainInstance.hexCertificateChain = hexCertificateChain == null ? null : hexCertificateChain.clone();
 		return chainInstance;
 	}
 	
+	/**
+	 * @return the certificates encoded by the hex chain, parsed once by the X509CertificateCache
+	 * @throws IllegalArgumentException if any certificate is not the hex encoding of an X509 certificate
+	 */
+	protected static X509Certificate[] parseCertificateChain ( String[] hexCertificateChain ) {
+		if ( hexCertificateChain == null )									return null;
+		try {
+			return X509Utils.rawX509CertificatesFromHex ( hexCertificateChain );
+		} catch(RuntimeException e) {
+			throw new IllegalArgumentException ( "invalid certificate chain encoding", e );
+		}
+	}
+	
 	
 	// -----
 	// --- ChainSignature -> DigestSignature
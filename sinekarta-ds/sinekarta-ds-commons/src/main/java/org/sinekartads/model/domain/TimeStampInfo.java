@@ -16,6 +16,8 @@
  */
 package org.sinekartads.model.domain;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.security.cert.X509Certificate;
 
 import org.sinekartads.model.domain.SecurityLevel.TimeStampVerifyResult;
@@ -25,6 +27,7 @@ import org.sinekartads.model.domain.Transitions.UntrustedTimeStamp;
 import org.sinekartads.model.domain.Transitions.VerifiedTimeStamp;
 import org.sinekartads.model.oid.DigestAlgorithm;
 import org.sinekartads.model.oid.SignatureAlgorithm;
+import org.sinekartads.util.HexUtils;
 import org.sinekartads.util.TemplateUtils;
 import org.springframework.util.Assert;
 
@@ -69,6 +72,26 @@ public class TimeStampInfo
 		this.encTimeStampToken = encTimeStampToken;
 	}	
 	
+	/**
+	 * Build the timeStamp from the hex encoding of its chain and token, as received by a TimeStampDTO;
+	 * both are decoded immediately, the token and a copy of the chain are kept and returned by the hex getters.
+	 * @throws IllegalArgumentException if the chain or the token are not valid hex encodings 
+	 */
+	public TimeStampInfo (
+			SignatureAlgorithm signatureAlgorithm,
+			DigestAlgorithm digestAlgorithm,
+			DigestInfo messageImprintInfo,
+			String[] hexCertificateChain,
+			byte[] digitalSignature,
+			TimeStampVerifyResult verifyResult,
+			String hexTimeStampToken ) {
+		
+		this ( signatureAlgorithm, digestAlgorithm, messageImprintInfo, parseCertificateChain(hexCertificateChain), 
+				digitalSignature, verifyResult, decodeTimeStampToken(hexTimeStampToken) );
+		this.hexCertificateChain = hexCertificateChain == null ? null : hexCertificateChain.clone();
+		this.hexTimeStampToken = hexTimeStampToken;
+	}
+	
 	
 	
 	// -----
@@ -76,13 +99,41 @@ public class TimeStampInfo
 	// -
 	
 	private final DigestInfo messageImprintInfo;
-	private final byte[] encTimeStampToken;
+	// as for the certificate chain, the token is serialized in its hex encoding only
+	private transient byte[] encTimeStampToken;
+	private String hexTimeStampToken;
 	
 	@Override
 	public byte[] getEncTimeStampToken() {
+		if ( encTimeStampToken == null && hexTimeStampToken != null ) {
+			encTimeStampToken = HexUtils.decodeHex ( hexTimeStampToken );
+		}
 		return encTimeStampToken;
 	}
 	
+	/**
+	 * @return the hex encoding of the token, the original one if the token has been received encoded
+	 */
+	public String getHexTimeStampToken() {
+		if ( hexTimeStampToken == null && encTimeStampToken != null ) {
+			hexTimeStampToken = HexUtils.encodeHex ( encTimeStampToken );
+		}
+		return hexTimeStampToken;
+	}
+	
+	private void writeObject ( ObjectOutputStream out ) throws IOException {
+		getHexTimeStampToken();
+		out.defaultWriteObject();
+	}
+	
+	private static byte[] decodeTimeStampToken ( String hexTimeStampToken ) {
+		try {
+			return HexUtils.decodeHex ( hexTimeStampToken );
+		} catch(RuntimeException e) {
+			throw new IllegalArgumentException ( "invalid timestamp token encoding", e );
+		}
+	}
+	
 	@Override
 	public DigestInfo getMessageInprintInfo() {
 		return messageImprintInfo;
@@ -148,6 +148,9 @@ public class Transitions <	ST extends SignatureType<ST>,
 		public void setTsRequest ( TsRequestInfo tsRequest ) throws UnsupportedOperationException ;
 		
 		public ChainSignature < ST, SD, SV, SI >	toChainSignature ( X509Certificate[] untrustedChain ) ;
+		
+		// the encoded certificates are parsed immediately, a copy of them is kept
+		public ChainSignature < ST, SD, SV, SI >	toChainSignature ( String[] hexUntrustedChain ) ;
 	}
 	
 	
@@ -16,9 +16,10 @@
  */
 package org.sinekartads.model.domain;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.math.BigInteger;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 import org.apache.commons.lang.math.RandomUtils;
@@ -26,6 +27,7 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Assert;
 import org.sinekartads.model.oid.DigestAlgorithm;
+import org.sinekartads.util.CryptoEnginePool;
 import org.sinekartads.util.TemplateUtils;
 
 /**
@@ -160,9 +162,28 @@ public class TsRequestInfo implements Serializable {
     	// Evaluate the message imprint digest
     	byte[] messageImprintDigest;
     	try {
-			MessageDigest digester = MessageDigest.getInstance(messageImprintAlgorithm.getName());
-			digester.update(message);
-			messageImprintDigest = digester.digest();
+			messageImprintDigest = CryptoEnginePool.getInstance().digest(messageImprintAlgorithm, message);
+    	} catch(NoSuchAlgorithmException e) {
+    		// never thrown, algorithm validity granted by DigestAlgorithm
+    		throw new RuntimeException(e);
+    	}
+    	TsRequestInfo digestInstance = TemplateUtils.Instantiation.clone ( this );
+		digestInstance.messageImprintDigest = messageImprintDigest;
+		return digestInstance;    	
+    }
+    
+    /**
+     * Evaluate the message imprint while reading the message from a stream, which is not closed
+     */
+    public TsRequestInfo evaluateMessageImprint ( InputStream message ) throws IOException {
+    	
+    	assertNotFinalized();
+    	Assert.assertNotNull ( message );
+    	
+    	// Evaluate the message imprint digest
+    	byte[] messageImprintDigest;
+    	try {
+			messageImprintDigest = CryptoEnginePool.getInstance().digest(messageImprintAlgorithm, message);
     	} catch(NoSuchAlgorithmException e) {
     		// never thrown, algorithm validity granted by DigestAlgorithm
     		throw new RuntimeException(e);
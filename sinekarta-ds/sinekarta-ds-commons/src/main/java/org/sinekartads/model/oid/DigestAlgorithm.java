@@ -2,11 +2,14 @@ package org.sinekartads.model.oid;
 
 import java.io.Serializable;
 import java.security.GeneralSecurityException;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
+import org.sinekartads.util.CryptoEnginePool;
 
 public enum DigestAlgorithm implements Serializable, OidWrapper {
 	
@@ -34,10 +37,7 @@ public enum DigestAlgorithm implements Serializable, OidWrapper {
 		// Evaluate the expectedFingerPrint from the given content
 		byte[] expectedFingerPrint;
 		try {
-			MessageDigest digester = MessageDigest.getInstance ( 
-					algorithm.getName(), "BC" );
-			digester.update(content);
-			expectedFingerPrint = digester.digest();
+			expectedFingerPrint = CryptoEnginePool.getInstance().digest ( this, content );
 		} catch (NoSuchAlgorithmException e) {
 			// never thrown, algorithm provided by enum
 			throw new RuntimeException(e);
@@ -61,6 +61,25 @@ public enum DigestAlgorithm implements Serializable, OidWrapper {
 	// -----
 	// --- Factory methods
 	// -
+	
+	private static final Map<String, DigestAlgorithm> algorithmsByName;
+	static {
+		Map<String, DigestAlgorithm> byName = new HashMap<String, DigestAlgorithm>();
+		for(DigestAlgorithm algorithm : DigestAlgorithm.values()) {
+			byName.put(algorithm.getName(), algorithm);
+		}
+		algorithmsByName = Collections.unmodifiableMap(byName);
+	}
+	
+	/**
+	 * Non-throwing version of getInstance, see {@link SinekartaDsAlgorithm#lookup(Object)}
+	 * @param algorithmDescriptor
+	 * @return the matching DigestAlgorithm, null if there is no match
+	 */
+	public static DigestAlgorithm lookup(Object algorithmDescriptor) {
+		SinekartaDsAlgorithm algorithm = SinekartaDsAlgorithm.lookup(algorithmDescriptor);
+		return algorithm != null ? algorithmsByName.get(algorithm.getName()) : null;
+	}
 		
 	/**
 	 * Return the DigestAlgorithm matching with the given algorithmDescriptor.
@@ -106,12 +125,11 @@ public enum DigestAlgorithm implements Serializable, OidWrapper {
 		if(StringUtils.isBlank(algorithmName)) {
 			return null;
 		}
-		for(DigestAlgorithm algorithm : DigestAlgorithm.values()) {
-			if(StringUtils.equals(algorithm.getName(), algorithmName)) {
-				return algorithm;
-			}
+		DigestAlgorithm algorithm = algorithmsByName.get(algorithmName);
+		if(algorithm == null) {
+			throw new IllegalArgumentException("algorithm not found: " + algorithmName);
 		}
-		throw new IllegalArgumentException("algorithm not found: " + algorithmName);
+		return algorithm;
 	}
 	
 	
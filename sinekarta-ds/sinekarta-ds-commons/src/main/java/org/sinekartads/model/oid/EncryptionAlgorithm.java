@@ -1,6 +1,9 @@
 package org.sinekartads.model.oid;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
 import org.sinekartads.util.HexUtils;
@@ -51,6 +54,25 @@ public enum EncryptionAlgorithm implements Serializable, OidWrapper {
 	// -----
 	// --- Instance retrieving
 	// -
+	
+	private static final Map<String, EncryptionAlgorithm> algorithmsByName;
+	static {
+		Map<String, EncryptionAlgorithm> byName = new HashMap<String, EncryptionAlgorithm>();
+		for(EncryptionAlgorithm algorithm : EncryptionAlgorithm.values()) {
+			byName.put(algorithm.getName(), algorithm);
+		}
+		algorithmsByName = Collections.unmodifiableMap(byName);
+	}
+	
+	/**
+	 * Non-throwing version of getInstance, see {@link SinekartaDsAlgorithm#lookup(Object)}
+	 * @param algorithmDescriptor
+	 * @return the matching EncryptionAlgorithm, null if there is no match
+	 */
+	public static EncryptionAlgorithm lookup(Object algorithmDescriptor) {
+		SinekartaDsAlgorithm algorithm = SinekartaDsAlgorithm.lookup(algorithmDescriptor);
+		return algorithm != null ? algorithmsByName.get(algorithm.getName()) : null;
+	}
 		
 	/**
 	 * Return the CipherAlgorithm matching with the given algorithmDescriptor.
@@ -96,12 +118,11 @@ public enum EncryptionAlgorithm implements Serializable, OidWrapper {
 		if(StringUtils.isBlank(algorithmName)) {
 			return null;
 		}
-		for(EncryptionAlgorithm algorithm : EncryptionAlgorithm.values()) {
-			if(StringUtils.equals(algorithm.getName(), algorithmName)) {
-				return algorithm;
-			}
+		EncryptionAlgorithm algorithm = algorithmsByName.get(algorithmName);
+		if(algorithm == null) {
+			throw new IllegalArgumentException("algorithm not found: " + algorithmName);
 		}
-		throw new IllegalArgumentException("algorithm not found: " + algorithmName);
+		return algorithm;
 	}
 	
 	
@@ -1,6 +1,9 @@
 package org.sinekartads.model.oid;
 
 import java.io.Serializable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -72,6 +75,25 @@ public enum SignatureAlgorithm implements Serializable, OidWrapper {
 	// -----
 	// --- Instance retrieving
 	// -
+	
+	private static final Map<String, SignatureAlgorithm> algorithmsByName;
+	static {
+		Map<String, SignatureAlgorithm> byName = new HashMap<String, SignatureAlgorithm>();
+		for(SignatureAlgorithm algorithm : SignatureAlgorithm.values()) {
+			byName.put(algorithm.getName(), algorithm);
+		}
+		algorithmsByName = Collections.unmodifiableMap(byName);
+	}
+	
+	/**
+	 * Non-throwing version of getInstance, see {@link SinekartaDsAlgorithm#lookup(Object)}
+	 * @param algorithmDescriptor
+	 * @return the matching SignatureAlgorithm, null if there is no match
+	 */
+	public static SignatureAlgorithm lookup(Object algorithmDescriptor) {
+		SinekartaDsAlgorithm algorithm = SinekartaDsAlgorithm.lookup(algorithmDescriptor);
+		return algorithm != null ? algorithmsByName.get(algorithm.getName()) : null;
+	}
 		
 	/**
 	 * Return the SignatureAlgorithm matching with the given algorithmDescriptor.
@@ -127,12 +149,11 @@ public enum SignatureAlgorithm implements Serializable, OidWrapper {
 		if(StringUtils.isBlank(algorithmName)) {
 			return null;
 		}
-		for(SignatureAlgorithm algorithm : SignatureAlgorithm.values()) {
-			if(StringUtils.equals(algorithm.getName(), algorithmName)) {
-				return algorithm;
-			}
+		SignatureAlgorithm algorithm = algorithmsByName.get(algorithmName);
+		if(algorithm == null) {
+			throw new IllegalArgumentException("algorithm not found: " + algorithmName);
 		}
-		throw new IllegalArgumentException("algorithm not found: " + algorithmName);
+		return algorithm;
 	}
 	
 	
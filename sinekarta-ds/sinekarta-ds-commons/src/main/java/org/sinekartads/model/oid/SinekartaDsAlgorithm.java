@@ -2,12 +2,14 @@ package org.sinekartads.model.oid;
 
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
 import org.apache.commons.lang.StringUtils;
-import org.apache.commons.lang3.ArrayUtils;
 import org.sinekartads.util.TemplateUtils;
 import org.sinekartads.util.TextUtils;
 
@@ -27,7 +29,7 @@ public enum SinekartaDsAlgorithm implements Serializable, OidWrapper {
     SHA224					("SHA224", 					SinekartaDsObjectIdentifiers.adig_SHA224),
     SHA256					("SHA256", 					SinekartaDsObjectIdentifiers.adig_SHA256),
     SHA384					("SHA384", 					SinekartaDsObjectIdentifiers.adig_SHA384),
-    SHA512					("SHA512",					SinekartaDsObjectIdentifiers.adig_SHA256),
+    SHA512					("SHA512",					SinekartaDsObjectIdentifiers.adig_SHA512),
 	// Cipher algorithms
 	DSA						("DSA",						SinekartaDsObjectIdentifiers.aenc_DSA),	
 	// Digital signature algorithms
@@ -104,6 +106,54 @@ public enum SinekartaDsAlgorithm implements Serializable, OidWrapper {
 	// --- Instance retrieving
 	// -
 	
+	/*
+	 * Immutable indexes of the algorithms by oid and by name, built once after the enum constants.
+	 * An oid listed by more algorithms is bound to the first one, as the previous linear scan did.
+	 */
+	private static final Map<String, SinekartaDsAlgorithm> algorithmsById;
+	private static final Map<String, SinekartaDsAlgorithm> algorithmsByName;
+	static {
+		Map<String, SinekartaDsAlgorithm> byId = new HashMap<String, SinekartaDsAlgorithm>();
+		Map<String, SinekartaDsAlgorithm> byName = new HashMap<String, SinekartaDsAlgorithm>();
+		for(SinekartaDsAlgorithm algorithm : SinekartaDsAlgorithm.values()) {
+			for(String curOid : algorithm.oids) {
+				if(!byId.containsKey(curOid)) {
+					byId.put(curOid, algorithm);
+				}
+			}
+			if(!byName.containsKey(algorithm.name)) {
+				byName.put(algorithm.name, algorithm);
+			}
+		}
+		algorithmsById = Collections.unmodifiableMap(byId);
+		algorithmsByName = Collections.unmodifiableMap(byName);
+	}
+	
+	/**
+	 * Non-throwing version of {@link #getInstance(Object)}. Any descriptor other than a String or 
+	 * an OidWrapper is looked up by its toString(), which is the dotted oid for the BouncyCastle
+	 * ASN1ObjectIdentifier and DERObjectIdentifier. 
+	 * @param algorithmDescriptor
+	 * @return the matching SinekartaDsAlgorithm, null if there is no match
+	 */
+	public static SinekartaDsAlgorithm lookup(Object algorithmDescriptor) {
+		if(algorithmDescriptor == null) {
+			return null;
+		}
+		if(algorithmDescriptor instanceof SinekartaDsAlgorithm) {
+			return (SinekartaDsAlgorithm)algorithmDescriptor;
+		}
+		if(algorithmDescriptor instanceof OidWrapper) {
+			return algorithmsById.get(((OidWrapper)algorithmDescriptor).getId());
+		}
+		String descriptor = algorithmDescriptor.toString();
+		SinekartaDsAlgorithm algorithm = algorithmsById.get(descriptor);
+		if(algorithm == null) {
+			algorithm = algorithmsByName.get(descriptor);
+		}
+		return algorithm;
+	}
+	
 	/**
 	 * Return the SinekartaDsAlgorithm matching with the given algorithmDescriptor.
 	 * Accepted values: \n" +
@@ -120,24 +170,19 @@ public enum SinekartaDsAlgorithm implements Serializable, OidWrapper {
 	 * any SinekartaDsAlgorithm
 	 */
 	public static SinekartaDsAlgorithm getInstance(Object algorithmDescriptor) {
-		SinekartaDsAlgorithm algorithm;
+		if(algorithmDescriptor instanceof String && StringUtils.isBlank((String)algorithmDescriptor)) {
+			return null;
+		}
+		SinekartaDsAlgorithm algorithm = lookup(algorithmDescriptor);
+		if(algorithm != null) {
+			return algorithm;
+		}
 		if(algorithmDescriptor instanceof String) {
-			// try to recognize the algorithm by id
-			try {
-				algorithm = fromId((String)algorithmDescriptor);
-			} catch(IllegalArgumentException e) {
-				// try to recognize the algorithm by name
-				try {
-					algorithm = fromName((String)algorithmDescriptor);
-				} catch(IllegalArgumentException e1) {
-					// error if there are no matches with either id or name
-					throw new IllegalArgumentException(
-							String.format("algorithmDescriptor %s doesn't match with any algorithmId or algorithmName", algorithmDescriptor));
-				}							 
-			}
-			// proceed with a valid algorithm
+			// error if there are no matches with either id or name
+			throw new IllegalArgumentException(
+					String.format("algorithmDescriptor %s doesn't match with any algorithmId or algorithmName", algorithmDescriptor));
 		} else if(algorithmDescriptor instanceof OidWrapper) {
-			algorithm = fromId(((OidWrapper)algorithmDescriptor).getId());
+			throw new IllegalArgumentException("algorithm not found: " + ((OidWrapper)algorithmDescriptor).getId());
 		} else {
 			throw new IllegalArgumentException(String.format(
 					"Invalid algorithmDescriptor: %s. Accepted values: \n" +
@@ -148,7 +193,6 @@ public enum SinekartaDsAlgorithm implements Serializable, OidWrapper {
 					" - [String 			  algorithmName] ",
 					algorithmDescriptor));
 		}
-		return algorithm;
 	}
 		
 	/**
@@ -162,14 +206,11 @@ public enum SinekartaDsAlgorithm implements Serializable, OidWrapper {
 		if(StringUtils.isBlank(algorithmId)) {
 			return null;
 		}
-		for(SinekartaDsAlgorithm algorithm : SinekartaDsAlgorithm.values()) {
-			for(String curOid : algorithm.oids) {
-				if(StringUtils.equals(curOid, algorithmId)) {
-					return algorithm;
-				}
-			}
+		SinekartaDsAlgorithm algorithm = algorithmsById.get(algorithmId);
+		if(algorithm == null) {
+			throw new IllegalArgumentException("algorithm not found: " + algorithmId);
 		}
-		throw new IllegalArgumentException("algorithm not found: " + algorithmId);
+		return algorithm;
 	}
 	
 	/**
@@ -182,12 +223,11 @@ public enum SinekartaDsAlgorithm implements Serializable, OidWrapper {
 		if(StringUtils.isBlank(algorithmName)) {
 			return null;
 		}
-		for(SinekartaDsAlgorithm algorithm : SinekartaDsAlgorithm.values()) {
-			if(StringUtils.equals(algorithm.getName(), algorithmName)) {
-				return algorithm;
-			}
+		SinekartaDsAlgorithm algorithm = algorithmsByName.get(algorithmName);
+		if(algorithm == null) {
+			throw new IllegalArgumentException("algorithm not found: " + algorithmName);
 		}
-		throw new IllegalArgumentException("algorithm not found: " + algorithmName);
+		return algorithm;
 	}
 	
 	
@@ -202,10 +242,9 @@ public enum SinekartaDsAlgorithm implements Serializable, OidWrapper {
 	 * @see org.sinekartads.oid.OidWrapper#matchesWith(java.lang.Object)
 	 */
 	public boolean matchesWith(Object algorithmDescriptor) throws IllegalArgumentException {
-		// take the algorithmId related to the given algorithmDescriptor
-		String algorithmId = getInstance(algorithmDescriptor).getId();
-		// the match will happen if the algorithmId appears among the algorithm oids  
-		return ArrayUtils.contains(oids, algorithmId);
+		// every oid is indexed to a single algorithm: the algorithmId related to the given 
+		// algorithmDescriptor appears among the algorithm oids only if it resolves to this algorithm
+		return getInstance(algorithmDescriptor) == this;
 	}
 	
 	@Override
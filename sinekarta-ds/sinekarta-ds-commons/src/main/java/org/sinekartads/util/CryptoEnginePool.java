@@ -0,0 +1,214 @@
+package org.sinekartads.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.Provider;
+import java.security.Security;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.sinekartads.model.oid.DigestAlgorithm;
+
+/**
+ * Pool of the MessageDigest engines.
+ * <ul>
+ * <li>the Provider serving each digest algorithm is resolved once, the synchronized provider lookup
+ * of the JCA is not repeated for the following engines
+ * <li>the idle engines are kept in a bounded queue for each algorithm and provider, shared by all
+ * the threads: {@link #acquireDigester(DigestAlgorithm)} takes one, or creates it if none is idle,
+ * {@link #release(MessageDigest)} gives it back. The engines exceeding the bound are left to the GC;
+ * nothing is bound to the threads, as for the factories of the
+ * {@link org.sinekartads.util.x509.X509CertificateCache X509CertificateCache}.
+ * <li>the content hashing can be served by the JDK SUN provider instead of BouncyCastle, whose SHA
+ * implementations are replaced by the JVM intrinsics; the digests are the same whatever the provider.
+ * See {@link #setPreferJdkDigests(boolean)} and the {@value #PREFER_JDK_DIGESTS_PROPERTY} system property.
+ * </ul>
+ */
+public class CryptoEnginePool {
+
+	public static final String PREFER_JDK_DIGESTS_PROPERTY = "sinekartads.digest.preferJdk";
+
+	private static final String BC_PROVIDER = "BC";
+	private static final String JDK_PROVIDER = "SUN";
+
+	private static final CryptoEnginePool singleton = new CryptoEnginePool();
+
+	public static CryptoEnginePool getInstance() {
+		return singleton;
+	}
+
+	private final ConcurrentMap<String, Provider> digestProviders = new ConcurrentHashMap<String, Provider>();
+
+	// idle engines by algorithm and provider
+	private final ConcurrentMap<String, BlockingQueue<MessageDigest>> idleDigesters = new ConcurrentHashMap<String, BlockingQueue<MessageDigest>>();
+	private final int maxIdle = Math.max ( 4, 2 * Runtime.getRuntime().availableProcessors() );
+
+	private volatile boolean preferJdkDigests = !"false".equalsIgnoreCase ( System.getProperty(PREFER_JDK_DIGESTS_PROPERTY) );
+
+
+
+	// -----
+	// --- Digest
+	// -
+
+	/**
+	 * @return the digest of the content, evaluated by a pooled engine
+	 */
+	public byte[] digest ( DigestAlgorithm algorithm, byte[] content ) throws NoSuchAlgorithmException {
+		MessageDigest digester = acquireDigester ( algorithm );
+		try {
+			return digester.digest ( content );
+		} finally {
+			release ( digester );
+		}
+	}
+
+	/**
+	 * @return the digest of the whole stream, evaluated by a pooled engine; the stream is not closed
+	 */
+	public byte[] digest ( DigestAlgorithm algorithm, InputStream is ) throws NoSuchAlgorithmException, IOException {
+		MessageDigest digester = acquireDigester ( algorithm );
+		try {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ( (read = is.read(buffer)) != -1 ) {
+				digester.update ( buffer, 0, read );
+			}
+			return digester.digest ( );
+		} finally {
+			release ( digester );
+		}
+	}
+
+	/**
+	 * Take a digester for the given algorithm: the JDK one if preferred and available, otherwise the
+	 * BouncyCastle one if the provider has been registered, otherwise the first one supporting it.
+	 * The digester is reset and should be given back by {@link #release(MessageDigest)}.
+	 */
+	public MessageDigest acquireDigester ( DigestAlgorithm algorithm ) throws NoSuchAlgorithmException {
+		if ( preferJdkDigests && Security.getProvider(JDK_PROVIDER) != null ) {
+			try {
+				return acquireDigester ( jdkName(algorithm), JDK_PROVIDER );
+			} catch(NoSuchAlgorithmException | NoSuchProviderException e) {
+				// not supported by the JDK, e.g. MD4
+			}
+		}
+		try {
+			return acquireDigester ( algorithm.getName(), Security.getProvider(BC_PROVIDER) != null ? BC_PROVIDER : null );
+		} catch(NoSuchProviderException e) {
+			// never thrown, the provider availability has just been verified
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @param algorithmName the JCA algorithm name
+	 * @param providerName the provider to be used, null to use the first one supporting the algorithm
+	 */
+	public MessageDigest acquireDigester ( String algorithmName, String providerName )
+			throws NoSuchAlgorithmException, NoSuchProviderException {
+
+		Provider provider = digestProvider ( algorithmName, providerName );
+		MessageDigest digester = idleDigesters ( algorithmName, provider ).poll();
+		if ( digester == null ) {
+			// the idle digesters have been reset by their release
+			digester = MessageDigest.getInstance ( algorithmName, provider );
+		}
+		return digester;
+	}
+
+	/**
+	 * Give back a digester taken by acquireDigester, it will be reused by the following acquisitions.
+	 * Do not use the digester after its release.
+	 */
+	public void release ( MessageDigest digester ) {
+		if ( digester == null )														return;
+		digester.reset ( );
+		idleDigesters ( digester.getAlgorithm(), digester.getProvider() ).offer ( digester );
+	}
+
+	private BlockingQueue<MessageDigest> idleDigesters ( String algorithmName, Provider provider ) {
+		String key = algorithmName + "@" + provider.getName();
+		BlockingQueue<MessageDigest> digesters = idleDigesters.get ( key );
+		if ( digesters == null ) {
+			digesters = new ArrayBlockingQueue<MessageDigest> ( maxIdle );
+			BlockingQueue<MessageDigest> current = idleDigesters.putIfAbsent ( key, digesters );
+			if ( current != null ) {
+				digesters = current;
+			}
+		}
+		return digesters;
+	}
+
+	/**
+	 * @return a new digester, not pooled, of the provider resolved once for the algorithm
+	 */
+	public MessageDigest newDigester ( String algorithmName, Provider provider ) throws NoSuchAlgorithmException {
+		if ( provider == null ) {
+			try {
+				provider = digestProvider ( algorithmName, null );
+			} catch(NoSuchProviderException e) {
+				// never thrown, no provider name given
+				throw new RuntimeException(e);
+			}
+		}
+		return MessageDigest.getInstance ( algorithmName, provider );
+	}
+
+	private Provider digestProvider ( String algorithmName, String providerName )
+			throws NoSuchAlgorithmException, NoSuchProviderException {
+
+		String key = algorithmName + "@" + providerName;
+		Provider provider = digestProviders.get ( key );
+		if ( provider == null ) {
+			if ( providerName != null ) {
+				provider = MessageDigest.getInstance(algorithmName, providerName).getProvider();
+			} else {
+				provider = MessageDigest.getInstance(algorithmName).getProvider();
+			}
+			digestProviders.putIfAbsent ( key, provider );
+		}
+		return provider;
+	}
+
+	/**
+	 * @return the standard JCA name of the digest algorithm, e.g. SHA-256 for SHA256
+	 */
+	private static String jdkName ( DigestAlgorithm algorithm ) {
+		String name = algorithm.getName();
+		if ( name.startsWith("SHA") && name.length() > 3 && Character.isDigit(name.charAt(3)) ) {
+			return "SHA-" + name.substring(3);
+		}
+		return name;
+	}
+
+
+
+	// -----
+	// --- Configuration
+	// -
+
+	public boolean isPreferJdkDigests() {
+		return preferJdkDigests;
+	}
+
+	/**
+	 * @param preferJdkDigests true to digest by the JDK provider whenever it supports the algorithm
+	 */
+	public void setPreferJdkDigests ( boolean preferJdkDigests ) {
+		this.preferJdkDigests = preferJdkDigests;
+	}
+
+	/**
+	 * Forget the resolved providers, to be called if the registered providers change.
+	 */
+	public void clearProviders() {
+		digestProviders.clear();
+		idleDigesters.clear();
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2010 - 2012 Jenia Software.
+ *
+ * This file is part of Sinekarta
+ *
+ * Sinekarta is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Sinekarta is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+package org.sinekartads.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.apache.commons.codec.binary.Base64;
+import org.sinekartads.model.domain.SignatureType.SignCategory;
+
+/**
+ * Recognizes the category of a signed envelope by looking at its first and last bytes only:
+ * <ul>
+ * <li>PDF: the "%PDF-" header within the first kilobyte, or the "%%EOF" trailer at the end
+ * <li>CMS: a DER SEQUENCE opening with the signedData or the timestampedData (MarkedData) OID
+ * <li>XML: a document starting with the '<' character, after the optional BOM and whitespaces
+ * </ul>
+ */
+public class SignCategoryDetector {
+
+	/**
+	 * number of bytes to be inspected at the beginning and at the end of the envelope
+	 */
+	public static final int PROBE_SIZE = 1024;
+
+	private static final byte[] PDF_HEADER  = { '%', 'P', 'D', 'F', '-' };
+	private static final byte[] PDF_TRAILER = { '%', '%', 'E', 'O', 'F' };
+
+	// DER encoding of the OIDs 1.2.840.113549.1.7.2 and 1.2.840.113549.1.9.16.1.31, tag and length included
+	private static final byte[] OID_SIGNED_DATA = {
+		0x06, 0x09, 0x2a, (byte)0x86, 0x48, (byte)0x86, (byte)0xf7, 0x0d, 0x01, 0x07, 0x02 };
+	private static final byte[] OID_TIMESTAMPED_DATA = {
+		0x06, 0x0b, 0x2a, (byte)0x86, 0x48, (byte)0x86, (byte)0xf7, 0x0d, 0x01, 0x09, 0x10, 0x01, 0x1f };
+
+	// the ContentInfo OID follows the outer SEQUENCE tag and its (at most 5 bytes) length
+	private static final int MAX_OID_OFFSET = 6;
+
+	private static final byte[] UTF8_BOM = { (byte)0xef, (byte)0xbb, (byte)0xbf };
+
+
+
+	/**
+	 * Detect the category of a base64-encoded envelope, decoding only its head and tail.
+	 * @param envelopeBase64 the base64 encoding of the envelope, without line separators
+	 * @return the detected category, null if the format has not been recognized
+	 */
+	public static SignCategory detect ( String envelopeBase64 ) {
+		if ( envelopeBase64 == null )											return null;
+
+		int probeChars = (PROBE_SIZE / 3) * 4;
+		int length = envelopeBase64.length();
+		byte[] head = Base64.decodeBase64 ( envelopeBase64.substring(0, Math.min(length, probeChars)) );
+		byte[] tail = null;
+		if ( length > probeChars && length % 4 == 0 ) {
+			tail = Base64.decodeBase64 ( envelopeBase64.substring(length - probeChars) );
+		}
+		return detect ( head, tail );
+	}
+
+	/**
+	 * Detect the category of an envelope reading its first bytes from the given stream, 
+	 * which is reset at its initial position afterwards. The trailer is not inspected.
+	 * @param envelopeIs an inputStream on the envelope, it must support mark and reset
+	 * @return the detected category, null if the format has not been recognized
+	 * @throws IOException if the stream can't be read
+	 */
+	public static SignCategory detect ( InputStream envelopeIs ) throws IOException {
+		if ( envelopeIs == null )												return null;
+		if ( !envelopeIs.markSupported() ) {
+			throw new IllegalArgumentException("the envelope stream must support mark and reset");
+		}
+		
+		byte[] head = new byte[PROBE_SIZE];
+		int length = 0;
+		int read;
+		envelopeIs.mark ( PROBE_SIZE );
+		while ( length < PROBE_SIZE && (read = envelopeIs.read(head, length, PROBE_SIZE - length)) >= 0 ) {
+			length += read;
+		}
+		envelopeIs.reset ( );
+		return detect ( Arrays.copyOf(head, length), null );
+	}
+
+	/**
+	 * Detect the category of an envelope given its first and last bytes.
+	 * @param head the first bytes of the envelope, at least {@link #PROBE_SIZE} of them if available
+	 * @param tail the last bytes of the envelope, null if head already contains the whole envelope
+	 * @return the detected category, null if the format has not been recognized
+	 */
+	public static SignCategory detect ( byte[] head, byte[] tail ) {
+		if ( head == null || head.length == 0 )									return null;
+
+		if ( indexOf(head, PDF_HEADER, 0, PROBE_SIZE) >= 0 ) {
+			return SignCategory.PDF;
+		}
+		if ( head[0] == 0x30 ) {
+			if ( indexOf(head, OID_SIGNED_DATA, 0, MAX_OID_OFFSET + OID_SIGNED_DATA.length) >= 0
+					|| indexOf(head, OID_TIMESTAMPED_DATA, 0, MAX_OID_OFFSET + OID_TIMESTAMPED_DATA.length) >= 0 ) {
+				return SignCategory.CMS;
+			}
+		}
+		if ( isXml(head) ) {
+			return SignCategory.XML;
+		}
+		byte[] trailer = tail != null ? tail : head;
+		if ( indexOf(trailer, PDF_TRAILER, Math.max(0, trailer.length - PROBE_SIZE), trailer.length) >= 0 ) {
+			return SignCategory.PDF;
+		}
+		return null;
+	}
+
+	private static boolean isXml ( byte[] head ) {
+		int i = 0;
+		if ( indexOf(head, UTF8_BOM, 0, UTF8_BOM.length) == 0 ) {
+			i = UTF8_BOM.length;
+		}
+		while ( i < head.length && Character.isWhitespace((char)head[i]) ) {
+			i++;
+		}
+		return i < head.length && head[i] == '<';
+	}
+
+	private static int indexOf ( byte[] buf, byte[] pattern, int from, int to ) {
+		int end = Math.min(buf.length, to) - pattern.length;
+		for ( int i = from; i <= end; i++ ) {
+			int j = 0;
+			while ( j < pattern.length && buf[i+j] == pattern[j] ) {
+				j++;
+			}
+			if ( j == pattern.length ) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -2,8 +2,12 @@ package org.sinekartads.util;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.io.Serializable;
+import java.io.Writer;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -14,6 +18,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import net.sf.json.JSON;
 import net.sf.json.JSONArray;
@@ -25,6 +31,8 @@ import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.SerializationUtils;
+import org.sinekartads.dto.BaseDTO;
+import org.sinekartads.dto.tools.DTOBinaryCodec;
 import org.sinekartads.util.EntityTransformer.BitsBytesTransformer;
 import org.springframework.util.Assert;
 
@@ -188,6 +196,10 @@ public abstract class TemplateUtils {
 	public static final class Instantiation {
 		
 		public static <T> T clone ( T item ) {
+			if ( item instanceof BaseDTO ) {
+				// the DTOs are copied field by field, without any serialization round trip
+				return (T) BaseDTO.copy ( (BaseDTO) item );
+			}
 			T clone = null;
 			try {
 				clone = (T) cloneBySerialization ( Encoding.toSerializable(item) );
@@ -272,6 +284,10 @@ public abstract class TemplateUtils {
 		}
 		
 		public static <T> T deserialize ( Class<T> tClass, byte[] bytes ) {
+			// DTOs may come with the compact binary encoding, recognized by its magic
+			if ( BaseDTO.class.isAssignableFrom(tClass) && DTOBinaryCodec.isEncoded(bytes) ) {
+				return tClass.cast ( DTOBinaryCodec.decode(tClass.asSubclass(BaseDTO.class), bytes) );
+			}
 			return (T)SerializationUtils.deserialize(bytes);
 		}
 		
@@ -326,9 +342,14 @@ public abstract class TemplateUtils {
 		
 		// --- JSON encoding
 		
+		/**
+		 * charset of the JSON encodings read from and written to byte streams
+		 */
+		public static final String JSON_CHARSET = "UTF-8";
+		
 		public static String serializeJSON ( Object item, OutputStream os ) throws IOException {
 			String jsonEnc = serializeJSON ( item, false );
-			IOUtils.write ( jsonEnc.getBytes(), os );
+			IOUtils.write ( jsonEnc.getBytes(JSON_CHARSET), os );
 			return jsonEnc;
 		}
 		
@@ -340,14 +361,7 @@ public abstract class TemplateUtils {
 			if ( item == null )													return "";
 			String jsonEnc;
 			try {
-				Class<?> tClass = item.getClass();
-				JsonConfig jsonConfig = standardJsonConfig ( tClass );
-				JSON json;
-				if ( Object[].class.isAssignableFrom(tClass) ) {
-					json = JSONArray.fromObject ( item, jsonConfig );
-				} else {
-					json = JSONObject.fromObject ( item, jsonConfig );
-				}
+				JSON json = toJSON ( item );
 				if ( prettify ) {
 					jsonEnc = json.toString(4);
 				} else {
@@ -360,14 +374,54 @@ public abstract class TemplateUtils {
 			}
 			return jsonEnc;
 		}
+		
+		/**
+		 * Write the JSON encoding of the item directly to the writer, without materializing it as a String.
+		 * The produced text is the same returned by serializeJSON(item).
+		 */
+		public static void writeJSON ( Object item, Writer writer ) throws IOException {
+			if ( item == null )													return;
+			toJSON ( item ).write ( writer );
+			writer.flush();
+		}
+		
+		/**
+		 * Write the JSON encoding of the item to the stream, encoded in {@value #JSON_CHARSET}.
+		 */
+		public static void writeJSON ( Object item, OutputStream os ) throws IOException {
+			writeJSON ( item, new OutputStreamWriter(os, JSON_CHARSET) );
+		}
+		
+		private static JSON toJSON ( Object item ) {
+			Class<?> tClass = item.getClass();
+			JsonConfig jsonConfig = sharedJsonConfig ( tClass );
+			JSON json;
+			if ( Object[].class.isAssignableFrom(tClass) ) {
+				json = JSONArray.fromObject ( item, jsonConfig );
+			} else {
+				json = JSONObject.fromObject ( item, jsonConfig );
+			}
+			return json;
+		}
 
+		/**
+		 * Read a JSON encoding in {@value #JSON_CHARSET}.
+		 */
 		public static <T> T deserializeJSON ( Class<T> tClass, InputStream is ) throws IOException {
-			String jsonEnc = new String ( IOUtils.toByteArray(is) );
+			return deserializeJSON ( tClass, new InputStreamReader(is, JSON_CHARSET) );
+		}
+		
+		/**
+		 * Read a JSON encoding from a reader, already decoded by the caller; json-lib only parses 
+		 * Strings, the text is read once.
+		 */
+		public static <T> T deserializeJSON ( Class<T> tClass, Reader reader ) throws IOException {
+			String jsonEnc = IOUtils.toString ( reader );
 			return deserializeJSON(tClass, jsonEnc);
 		}
 		
 		public static <T> T deserializeJSON ( Class<T> tClass, String jsonEnc ) {
-			JsonConfig jsonConfig = standardJsonConfig ( tClass );
+			JsonConfig jsonConfig = sharedJsonConfig ( tClass );
 			T item;
 			if ( Object[].class.isAssignableFrom(tClass) ) {
 				JSONArray jsonArray = JSONArray.fromObject ( jsonEnc, jsonConfig );
@@ -399,6 +453,24 @@ public abstract class TemplateUtils {
 //			jsonConfig.setIgnoreTransientFields(true);
 			return jsonConfig;
 		}
+		
+		/**
+		 * standard configurations, one per root class; json-lib only reads them during the conversions 
+		 * (the nested beans are converted with copies), they are then shared by all the threads 
+		 */
+		private static final ConcurrentMap<Class<?>, JsonConfig> jsonConfigs = new ConcurrentHashMap<Class<?>, JsonConfig>();
+		
+		private static JsonConfig sharedJsonConfig ( Class<?> tClass ) {
+			JsonConfig jsonConfig = jsonConfigs.get ( tClass );
+			if ( jsonConfig == null ) {
+				jsonConfig = standardJsonConfig ( tClass );
+				JsonConfig current = jsonConfigs.putIfAbsent ( tClass, jsonConfig );
+				if ( current != null ) {
+					jsonConfig = current;
+				}
+			}
+			return jsonConfig;
+		}
 	}
 	
 	
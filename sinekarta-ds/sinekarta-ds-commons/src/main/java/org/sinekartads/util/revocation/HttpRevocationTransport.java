@@ -0,0 +1,102 @@
+package org.sinekartads.util.revocation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Transport reaching the CRL distribution points and the OCSP responders by their URLs, the OCSP
+ * requests are posted as application/ocsp-request. Both the connection and the read are bounded
+ * by their timeouts, the responses by their size.
+ */
+public class HttpRevocationTransport implements RevocationTransport {
+
+	public static final int DEFAULT_CONNECT_TIMEOUT 	= 5000;
+	public static final int DEFAULT_READ_TIMEOUT 		= 15000;
+	public static final int DEFAULT_MAX_RESPONSE_BYTES 	= 32 * 1024 * 1024;
+
+	private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+	private int readTimeout = DEFAULT_READ_TIMEOUT;
+	private int maxResponseBytes = DEFAULT_MAX_RESPONSE_BYTES;
+
+	@Override
+	public byte[] fetch ( String url, byte[] ocspRequest ) throws IOException {
+		URLConnection con = new URL(url).openConnection();
+		con.setConnectTimeout ( connectTimeout );
+		con.setReadTimeout ( readTimeout );
+		con.setUseCaches ( false );
+		if ( ocspRequest != null ) {
+			con.setRequestProperty ( "Content-Type", "application/ocsp-request" );
+			con.setRequestProperty ( "Accept", "application/ocsp-response" );
+			con.setDoOutput ( true );
+			OutputStream os = con.getOutputStream();
+			try {
+				os.write ( ocspRequest );
+			} finally {
+				os.close();
+			}
+		}
+
+		InputStream is = null;
+		try {
+			if ( con instanceof HttpURLConnection ) {
+				int responseCode = ((HttpURLConnection) con).getResponseCode();
+				if ( responseCode / 100 != 2 ) {
+					throw new IOException(String.format ( "invalid http response %d - %s", responseCode, url ));
+				}
+			}
+			is = con.getInputStream();
+			ByteArrayOutputStream response = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ( (read = is.read(buffer)) != -1 ) {
+				if ( response.size() + read > maxResponseBytes ) {
+					throw new IOException(String.format ( "response exceeding %d bytes - %s", maxResponseBytes, url ));
+				}
+				response.write ( buffer, 0, read );
+			}
+			return response.toByteArray();
+		} finally {
+			IOUtils.closeQuietly ( is );
+			if ( con instanceof HttpURLConnection ) {
+				((HttpURLConnection) con).disconnect();
+			}
+		}
+	}
+
+
+
+	// -----
+	// --- Configuration
+	// -
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public void setConnectTimeout ( int connectTimeout ) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	public void setReadTimeout ( int readTimeout ) {
+		this.readTimeout = readTimeout;
+	}
+
+	public int getMaxResponseBytes() {
+		return maxResponseBytes;
+	}
+
+	public void setMaxResponseBytes ( int maxResponseBytes ) {
+		this.maxResponseBytes = maxResponseBytes;
+	}
+}
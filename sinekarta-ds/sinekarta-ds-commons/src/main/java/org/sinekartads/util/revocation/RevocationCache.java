@@ -0,0 +1,456 @@
+package org.sinekartads.util.revocation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.sinekartads.model.oid.DigestAlgorithm;
+import org.sinekartads.util.CryptoEnginePool;
+import org.sinekartads.util.HexUtils;
+
+/**
+ * Shared cache of the revocation data, CRLs and OCSP responses, used by every verification of the
+ * signatures and of the certificate chains.
+ * <ul>
+ * <li>each entry is valid until the nextUpdate declared by the data itself; the data without nextUpdate,
+ * or already expired when received, is kept for the minTtl only
+ * <li>the cache is bounded both by number of entries and by the total size of the encodings,
+ * the least recently used entries are evicted first
+ * <li>concurrent requests of the same data are served by a single fetch, the other threads wait for it
+ * <li>the entries can be persisted into a store directory, so that they survive to the restarts and
+ * remain available offline
+ * <li>the expired entries are never served: if they can't be refreshed, offline or because the transport
+ * fails, a {@link StaleRevocationDataException} reports the revocation status as unknown
+ * <li>the data is obtained by a pluggable {@link RevocationTransport}, HTTP by default
+ * </ul>
+ * The store directory and the offline mode can be set by the {@value #STORE_PROPERTY} and
+ * {@value #OFFLINE_PROPERTY} system properties, the store is disabled with the value "none".
+ * Without the property the entries are kept in memory, until the application sets its own store.
+ */
+public class RevocationCache {
+
+	public static final String STORE_PROPERTY 		= "sinekartads.revocation.store";
+	public static final String OFFLINE_PROPERTY 	= "sinekartads.revocation.offline";
+
+	public static final int DEFAULT_MAX_ENTRIES 	= 256;
+	public static final long DEFAULT_MAX_BYTES 		= 16 * 1024 * 1024;
+	public static final long DEFAULT_MIN_TTL 		= 5 * 60 * 1000;
+
+	private static final Logger tracer = Logger.getLogger(RevocationCache.class);
+
+	private static final RevocationCache singleton = new RevocationCache();
+
+	public static RevocationCache getInstance() {
+		return singleton;
+	}
+
+	/**
+	 * Reads the validity of the data received by the transport.
+	 */
+	public interface NextUpdateReader {
+
+		/**
+		 * @return the nextUpdate declared by the data, null if none
+		 * @throws IOException if the data is not valid, it won't be cached then
+		 */
+		public Date getNextUpdate ( byte[] encoded ) throws IOException;
+	}
+
+	private static final NextUpdateReader CRL_NEXT_UPDATE = new NextUpdateReader() {
+		@Override
+		public Date getNextUpdate ( byte[] encoded ) throws IOException {
+			try {
+				X509CRL crl = (X509CRL) CertificateFactory.getInstance("X.509").generateCRL (
+						new ByteArrayInputStream(encoded) );
+				return crl.getNextUpdate();
+			} catch(CertificateException | CRLException e) {
+				throw new IOException("invalid CRL received", e);
+			}
+		}
+	};
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private long totalBytes;
+	private final ConcurrentMap<String, FutureTask<Entry>> pendingFetches = new ConcurrentHashMap<String, FutureTask<Entry>>();
+
+	private volatile RevocationTransport transport = new HttpRevocationTransport();
+	private volatile File storeDirectory;
+	private volatile boolean offline = Boolean.getBoolean ( OFFLINE_PROPERTY );
+	private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+	private volatile long maxBytes = DEFAULT_MAX_BYTES;
+	private volatile long minTtl = DEFAULT_MIN_TTL;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong storeHits = new AtomicLong();
+	private final AtomicLong fetches = new AtomicLong();
+	private final AtomicLong staleLookups = new AtomicLong();
+
+	RevocationCache() {
+		String store = System.getProperty ( STORE_PROPERTY );
+		if ( store != null && !"none".equalsIgnoreCase(store) ) {
+			storeDirectory = new File ( store );
+		}
+	}
+
+
+
+	// -----
+	// --- Lookup
+	// -
+
+	/**
+	 * @return the DER encoded CRL published at the given url
+	 * @throws StaleRevocationDataException if only an expired CRL is known
+	 * @throws IOException if the CRL is neither cached nor available by the transport
+	 */
+	public byte[] getCRL ( String url ) throws IOException {
+		return get ( "crl:" + url, url, null, CRL_NEXT_UPDATE );
+	}
+
+	/**
+	 * @param url the OCSP responder
+	 * @param certificateId an unique identifier of the certificate checked by the request,
+	 * e.g. the hashes of its issuer and its serial number
+	 * @param ocspRequest the DER encoded request, posted only if the response is not cached; it must not
+	 * carry a nonce, since the response is shared by every request for the same certificate
+	 * @param nextUpdateReader the reader of the validity of the response
+	 * @return the DER encoded OCSP response
+	 * @throws StaleRevocationDataException if only an expired response is known
+	 * @throws IOException if the response is neither cached nor available by the transport
+	 */
+	public byte[] getOCSPResponse ( String url, String certificateId, byte[] ocspRequest,
+			NextUpdateReader nextUpdateReader ) throws IOException {
+
+		return get ( "ocsp:" + url + "#" + certificateId, url, ocspRequest, nextUpdateReader );
+	}
+
+	/**
+	 * @param key the identifier of the data into the cache
+	 * @return the data cached under the given key if still valid, otherwise the one obtained from the url
+	 * @throws StaleRevocationDataException if the data can't be obtained and only an expired entry is known
+	 */
+	public byte[] get ( String key, String url, byte[] ocspRequest, NextUpdateReader nextUpdateReader )
+			throws IOException {
+
+		long now = System.currentTimeMillis();
+		Entry entry = lookup ( key );
+		if ( entry != null && entry.expiration > now ) {
+			hits.incrementAndGet();
+			return entry.encoded.clone();
+		}
+		if ( entry == null ) {
+			entry = load ( key );
+			if ( entry != null ) {
+				entry = put ( entry, false );
+				if ( entry.expiration > now ) {
+					storeHits.incrementAndGet();
+					return entry.encoded.clone();
+				}
+			}
+		}
+
+		if ( offline ) {
+			IOException e = new IOException(String.format ( "revocation data not available offline - %s", url ));
+			throw entry != null ? stale(url, entry, e) : e;
+		}
+		try {
+			return fetch ( key, url, ocspRequest, nextUpdateReader ).encoded.clone();
+		} catch(IOException e) {
+			if ( entry == null ) {
+				throw e;
+			}
+			tracer.warn(String.format ( "unable to refresh the revocation data, expired on %s - %s", 
+					new Date(entry.expiration), url ), e);
+			throw stale ( url, entry, e );
+		}
+	}
+
+	private StaleRevocationDataException stale ( String url, Entry entry, IOException cause ) {
+		staleLookups.incrementAndGet();
+		return new StaleRevocationDataException ( url, new Date(entry.expiration), cause );
+	}
+
+	/**
+	 * Fetch the data by the transport, unless another thread is already fetching it: wait for that result then.
+	 */
+	private Entry fetch ( final String key, final String url, final byte[] ocspRequest,
+			final NextUpdateReader nextUpdateReader ) throws IOException {
+
+		FutureTask<Entry> task = new FutureTask<Entry> ( new Callable<Entry>() {
+			@Override
+			public Entry call() throws Exception {
+				byte[] encoded = transport.fetch ( url, ocspRequest );
+				Date nextUpdate = nextUpdateReader.getNextUpdate ( encoded );
+				long now = System.currentTimeMillis();
+				long expiration = nextUpdate != null && nextUpdate.getTime() > now ? nextUpdate.getTime() : now + minTtl;
+				return put ( new Entry(key, encoded, expiration), true );
+			}
+		} );
+		FutureTask<Entry> pending = pendingFetches.putIfAbsent ( key, task );
+		if ( pending == null ) {
+			fetches.incrementAndGet();
+			try {
+				task.run();
+			} finally {
+				pendingFetches.remove ( key, task );
+			}
+			pending = task;
+		}
+
+		try {
+			return pending.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(String.format ( "interrupted while waiting for %s", url ));
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if ( cause instanceof IOException ) 						throw (IOException) cause;
+			if ( cause instanceof RuntimeException ) 					throw (RuntimeException) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	private synchronized Entry lookup ( String key ) {
+		return entries.get ( key );
+	}
+
+	/**
+	 * @param persist true to write the entry into the store as well
+	 * @return the cached entry, the given one or a fresher one put meanwhile by another thread
+	 */
+	private Entry put ( Entry entry, boolean persist ) {
+		synchronized ( this ) {
+			Entry current = entries.get ( entry.key );
+			if ( current != null ) {
+				if ( current.expiration >= entry.expiration && !persist ) {
+					return current;
+				}
+				totalBytes -= current.encoded.length;
+			}
+			entries.put ( entry.key, entry );
+			totalBytes += entry.encoded.length;
+
+			Iterator<Entry> eldest = entries.values().iterator();
+			while ( (entries.size() > maxEntries || totalBytes > maxBytes) && entries.size() > 1 ) {
+				totalBytes -= eldest.next().encoded.length;
+				eldest.remove();
+			}
+		}
+		if ( persist ) {
+			persist ( entry );
+		}
+		return entry;
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		totalBytes = 0;
+	}
+
+
+
+	// -----
+	// --- Persistent store
+	// -
+
+	private File storeFile ( String key ) {
+		File directory = storeDirectory;
+		if ( directory == null ) 													return null;
+		try {
+			byte[] hash = CryptoEnginePool.getInstance().digest ( DigestAlgorithm.SHA256, key.getBytes("UTF-8") );
+			return new File ( directory, HexUtils.encodeHex(hash) + ".rev" );
+		} catch(NoSuchAlgorithmException | IOException e) {
+			// never thrown, SHA-256 and UTF-8 are supported by every JRE
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Write the entry to a temporary file first, then replace the stored one: the readers never
+	 * see a partial entry.
+	 */
+	private void persist ( Entry entry ) {
+		File file = storeFile ( entry.key );
+		if ( file == null ) 														return;
+		File tempFile = null;
+		DataOutputStream dos = null;
+		try {
+			File directory = file.getParentFile();
+			if ( !directory.isDirectory() && !directory.mkdirs() ) {
+				throw new IOException(String.format ( "unable to create the store - %s", directory ));
+			}
+			tempFile = File.createTempFile ( "skds", ".tmp", directory );
+			dos = new DataOutputStream ( new BufferedOutputStream(new FileOutputStream(tempFile)) );
+			dos.writeUTF ( entry.key );
+			dos.writeLong ( entry.expiration );
+			dos.writeInt ( entry.encoded.length );
+			dos.write ( entry.encoded );
+			dos.close();
+			if ( !tempFile.renameTo(file) ) {
+				file.delete();
+				if ( !tempFile.renameTo(file) ) {
+					throw new IOException(String.format ( "unable to replace %s", file ));
+				}
+			}
+			tempFile = null;
+		} catch(IOException e) {
+			tracer.warn(String.format ( "unable to store the revocation data - %s", entry.key ), e);
+		} finally {
+			IOUtils.closeQuietly ( dos );
+			if ( tempFile != null ) {
+				tempFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * @return the entry stored under the given key, whatever its expiration, null if none
+	 */
+	private Entry load ( String key ) {
+		File file = storeFile ( key );
+		if ( file == null || !file.isFile() ) 										return null;
+		DataInputStream dis = null;
+		try {
+			dis = new DataInputStream ( new BufferedInputStream(new FileInputStream(file)) );
+			if ( !key.equals(dis.readUTF()) ) 										return null;
+			long expiration = dis.readLong();
+			byte[] encoded = new byte[dis.readInt()];
+			dis.readFully ( encoded );
+			return new Entry ( key, encoded, expiration );
+		} catch(IOException | RuntimeException e) {
+			tracer.warn(String.format ( "unable to load the revocation data - %s", file ), e);
+			return null;
+		} finally {
+			IOUtils.closeQuietly ( dis );
+		}
+	}
+
+
+
+	// -----
+	// --- Cached data
+	// -
+
+	private static class Entry {
+
+		final String key;
+		final byte[] encoded;
+		final long expiration;
+
+		Entry ( String key, byte[] encoded, long expiration ) {
+			this.key = key;
+			this.encoded = encoded;
+			this.expiration = expiration;
+		}
+	}
+
+
+
+	// -----
+	// --- Configuration and metrics
+	// -
+
+	public RevocationTransport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * @param transport the channel reaching the responders, e.g. a {@link StubRevocationTransport}
+	 */
+	public void setTransport ( RevocationTransport transport ) {
+		this.transport = transport;
+	}
+
+	public File getStoreDirectory() {
+		return storeDirectory;
+	}
+
+	/**
+	 * @param storeDirectory the directory persisting the entries, null to keep them in memory only
+	 */
+	public void setStoreDirectory ( File storeDirectory ) {
+		this.storeDirectory = storeDirectory;
+	}
+
+	public boolean isOffline() {
+		return offline;
+	}
+
+	/**
+	 * @param offline true to never reach the responders, only the cached data not expired yet is served
+	 */
+	public void setOffline ( boolean offline ) {
+		this.offline = offline;
+	}
+
+	public void setMaxEntries ( int maxEntries ) {
+		this.maxEntries = maxEntries;
+	}
+
+	public void setMaxBytes ( long maxBytes ) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @param minTtl the milliseconds the data without a future nextUpdate is kept for
+	 */
+	public void setMinTtl ( long minTtl ) {
+		this.minTtl = minTtl;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the requests served by the valid entries in memory
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the requests served by the valid entries loaded from the store
+	 */
+	public long getStoreHits() {
+		return storeHits.get();
+	}
+
+	/**
+	 * @return the fetches performed by the transport
+	 */
+	public long getFetches() {
+		return fetches.get();
+	}
+
+	/**
+	 * @return the requests finding an expired entry only, offline or after a transport failure,
+	 * refused by a {@link StaleRevocationDataException}
+	 */
+	public long getStaleLookups() {
+		return staleLookups.get();
+	}
+}
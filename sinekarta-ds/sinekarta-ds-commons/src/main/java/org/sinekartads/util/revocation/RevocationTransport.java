@@ -0,0 +1,19 @@
+package org.sinekartads.util.revocation;
+
+import java.io.IOException;
+
+/**
+ * Channel used by the {@link RevocationCache} to reach the CRL distribution points and the OCSP responders.
+ * The default one is the {@link HttpRevocationTransport}, the {@link StubRevocationTransport} answers
+ * from the same JVM without any network access.
+ */
+public interface RevocationTransport {
+
+	/**
+	 * @param url the CRL distribution point or the OCSP responder
+	 * @param ocspRequest the DER encoded OCSP request to be posted, null to download a CRL
+	 * @return the DER encoded CRL or OCSP response
+	 * @throws IOException if the data can't be obtained
+	 */
+	public byte[] fetch ( String url, byte[] ocspRequest ) throws IOException;
+}
@@ -0,0 +1,27 @@
+package org.sinekartads.util.revocation;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Thrown by the {@link RevocationCache} when the data can't be refreshed, offline or after a transport failure,
+ * and only an expired copy is known: the revocation status is unknown then, the expired copy is never served.
+ */
+public class StaleRevocationDataException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Date expiration;
+
+	public StaleRevocationDataException ( String url, Date expiration, Throwable cause ) {
+		super ( String.format("revocation data expired on %s and not refreshed - %s", expiration, url), cause );
+		this.expiration = expiration;
+	}
+
+	/**
+	 * @return the expiration of the last known data
+	 */
+	public Date getExpiration() {
+		return expiration;
+	}
+}
@@ -0,0 +1,72 @@
+package org.sinekartads.util.revocation;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process CRL and OCSP responder, to run the verifications without any network access.
+ * The responses are registered by URL, either as fixed encodings (e.g. a CRL) or as {@link Responder}s
+ * building the OCSP response from the request; the URLs not registered behave as unreachable.
+ * <pre>
+ * StubRevocationTransport stub = new StubRevocationTransport();
+ * stub.register ( "http://crl.example.com/ca.crl", encodedCrl );
+ * RevocationCache.getInstance().setTransport ( stub );
+ * </pre>
+ */
+public class StubRevocationTransport implements RevocationTransport {
+
+	/**
+	 * Builds the response to a request received by the stub.
+	 */
+	public interface Responder {
+
+		/**
+		 * @param ocspRequest the DER encoded OCSP request, null for a CRL download
+		 * @return the DER encoded CRL or OCSP response
+		 */
+		public byte[] respond ( byte[] ocspRequest ) throws IOException;
+	}
+
+	private final ConcurrentMap<String, Responder> responders = new ConcurrentHashMap<String, Responder>();
+	private final AtomicLong requests = new AtomicLong();
+
+	@Override
+	public byte[] fetch ( String url, byte[] ocspRequest ) throws IOException {
+		requests.incrementAndGet();
+		Responder responder = responders.get ( url );
+		if ( responder == null ) {
+			throw new IOException(String.format ( "no responder registered - %s", url ));
+		}
+		return responder.respond ( ocspRequest );
+	}
+
+	public void register ( String url, Responder responder ) {
+		responders.put ( url, responder );
+	}
+
+	/**
+	 * Answer to any request on the given url with the same encoding.
+	 */
+	public void register ( String url, final byte[] response ) {
+		final byte[] encoded = response.clone();
+		register ( url, new Responder() {
+			@Override
+			public byte[] respond ( byte[] ocspRequest ) {
+				return encoded.clone();
+			}
+		} );
+	}
+
+	public void unregister ( String url ) {
+		responders.remove ( url );
+	}
+
+	/**
+	 * @return the number of requests received, the ones answered by the cache never reach the stub
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+}
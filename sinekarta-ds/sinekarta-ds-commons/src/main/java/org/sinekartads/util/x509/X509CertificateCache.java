@@ -0,0 +1,254 @@
+package org.sinekartads.util.x509;
+
+import java.io.ByteArrayInputStream;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sinekartads.model.oid.DigestAlgorithm;
+import org.sinekartads.util.CryptoEnginePool;
+import org.sinekartads.util.DNParser;
+import org.sinekartads.util.HexUtils;
+
+/**
+ * Interning cache of the X509 certificates, keyed by the SHA-256 of their DER encoding.
+ * The same signer, CA and TSA certificates come back with every signature: each of them is parsed
+ * once and the entry keeps the values derived from it (hex encoding, SHA-256 hash used by the
+ * signingCertificateV2 attribute, subject and issuer DN fields). The other modules can attach
+ * their own representation of the certificate to the entry, e.g. the BouncyCastle X509CertificateHolder.
+ * <p>
+ * The cache is bounded both by number of entries and by the total size of the encodings,
+ * the least recently used entries are evicted first.
+ */
+public class X509CertificateCache {
+
+	public static final int DEFAULT_MAX_ENTRIES 	= 512;
+	public static final long DEFAULT_MAX_BYTES 		= 4 * 1024 * 1024;
+
+	private static final X509CertificateCache singleton = new X509CertificateCache();
+
+	public static X509CertificateCache getInstance() {
+		return singleton;
+	}
+
+	// the CertificateFactories are not thread-safe: the idle ones are shared by a bounded pool
+	// instead of being bound to the threads. A ThreadLocal value would stay referenced by the pooled
+	// threads of the container, and with it this class loader, after the webapp has been undeployed
+	private static final int MAX_IDLE_FACTORIES = Math.max ( 4, 2 * Runtime.getRuntime().availableProcessors() );
+	private static final BlockingQueue<CertificateFactory> idleFactories = new ArrayBlockingQueue<CertificateFactory>(MAX_IDLE_FACTORIES);
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private long totalBytes;
+	private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+	private volatile long maxBytes = DEFAULT_MAX_BYTES;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+
+
+	// -----
+	// --- Lookup
+	// -
+
+	/**
+	 * @param encoded the DER encoding of the certificate
+	 * @return the entry of the certificate, parsing it if not cached yet
+	 * @throws CertificateException if the certificate can't be parsed
+	 */
+	public Entry get ( byte[] encoded ) throws CertificateException {
+		String key = HexUtils.encodeHex ( digest(encoded) );
+		Entry entry = lookup ( key );
+		if ( entry == null ) {
+			entry = store ( new Entry(key, parse(encoded), encoded.clone()) );
+		}
+		return entry;
+	}
+
+	/**
+	 * @param certificate a certificate already parsed
+	 * @return the entry of the certificate, the given instance is interned if not cached yet
+	 * @throws CertificateEncodingException if the certificate can't be encoded
+	 */
+	public Entry get ( X509Certificate certificate ) throws CertificateEncodingException {
+		byte[] encoded = certificate.getEncoded();
+		String key = HexUtils.encodeHex ( digest(encoded) );
+		Entry entry = lookup ( key );
+		if ( entry == null ) {
+			entry = store ( new Entry(key, certificate, encoded) );
+		}
+		return entry;
+	}
+
+	private synchronized Entry lookup ( String key ) {
+		Entry entry = entries.get ( key );
+		if ( entry != null ) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+		}
+		return entry;
+	}
+
+	private synchronized Entry store ( Entry entry ) {
+		// another thread may have parsed the same certificate meanwhile
+		Entry current = entries.get ( entry.key );
+		if ( current != null ) {
+			return current;
+		}
+		entries.put ( entry.key, entry );
+		totalBytes += entry.encoded.length;
+
+		Iterator<Entry> eldest = entries.values().iterator();
+		while ( (entries.size() > maxEntries || totalBytes > maxBytes) && entries.size() > 1 ) {
+			totalBytes -= eldest.next().encoded.length;
+			eldest.remove();
+		}
+		return entry;
+	}
+
+	private static X509Certificate parse ( byte[] encoded ) throws CertificateException {
+		CertificateFactory factory = idleFactories.poll();
+		if ( factory == null ) {
+			factory = CertificateFactory.getInstance ( "X.509" );
+		}
+		try {
+			return (X509Certificate) factory.generateCertificate ( new ByteArrayInputStream(encoded) );
+		} finally {
+			idleFactories.offer ( factory );
+		}
+	}
+
+	private static byte[] digest ( byte[] encoded ) {
+		try {
+			return CryptoEnginePool.getInstance().digest ( DigestAlgorithm.SHA256, encoded );
+		} catch(NoSuchAlgorithmException e) {
+			// never thrown, SHA-256 is supported by every JRE
+			throw new RuntimeException(e);
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		totalBytes = 0;
+	}
+
+
+
+	// -----
+	// --- Cached certificate
+	// -
+
+	public static class Entry {
+
+		private final String key;
+		private final X509Certificate certificate;
+		private final byte[] encoded;
+		private volatile String hex;
+		private volatile Map<String, String> subjectDN;
+		private volatile Map<String, String> issuerDN;
+		private final ConcurrentMap<Class<?>, Object> attachments = new ConcurrentHashMap<Class<?>, Object>();
+
+		private Entry ( String key, X509Certificate certificate, byte[] encoded ) {
+			this.key = key;
+			this.certificate = certificate;
+			this.encoded = encoded;
+		}
+
+		public X509Certificate getCertificate() {
+			return certificate;
+		}
+
+		/**
+		 * @return a copy of the DER encoding of the certificate
+		 */
+		public byte[] getEncoded() {
+			return encoded.clone();
+		}
+
+		/**
+		 * @return the hex encoding of the certificate
+		 */
+		public String getHex() {
+			if ( hex == null ) {
+				hex = HexUtils.encodeHex ( encoded );
+			}
+			return hex;
+		}
+
+		/**
+		 * @return the SHA-256 of the DER encoding, as required by the signingCertificateV2 attribute
+		 */
+		public byte[] getSha256() {
+			return HexUtils.decodeHex ( key );
+		}
+
+		public Map<String, String> getSubjectDN() {
+			if ( subjectDN == null ) {
+				subjectDN = Collections.unmodifiableMap ( DNParser.parse(certificate.getSubjectX500Principal()) );
+			}
+			return subjectDN;
+		}
+
+		public Map<String, String> getIssuerDN() {
+			if ( issuerDN == null ) {
+				issuerDN = Collections.unmodifiableMap ( DNParser.parse(certificate.getIssuerX500Principal()) );
+			}
+			return issuerDN;
+		}
+
+		/**
+		 * @return the representation of the given type attached to this certificate, null if none
+		 */
+		public <T> T getAttachment ( Class<T> type ) {
+			return type.cast ( attachments.get(type) );
+		}
+
+		/**
+		 * Attach an immutable representation of the certificate, unless another one of the same
+		 * type has been attached before.
+		 * @return the attached representation, either the given one or the previous one
+		 */
+		public <T> T attach ( Class<T> type, T attachment ) {
+			Object current = attachments.putIfAbsent ( type, attachment );
+			return current != null ? type.cast(current) : attachment;
+		}
+	}
+
+
+
+	// -----
+	// --- Configuration and metrics
+	// -
+
+	public void setMaxEntries ( int maxEntries ) {
+		this.maxEntries = maxEntries;
+	}
+
+	public void setMaxBytes ( long maxBytes ) {
+		this.maxBytes = maxBytes;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+}
@@ -1,14 +1,11 @@
 package org.sinekartads.util.x509;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
 import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.PrivateKey;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
@@ -28,12 +25,10 @@ public class X509Utils {
 	
 	public static X509Certificate rawX509CertificateFromEncoded(byte[] encoded) throws CertificateException {
 		
-		// Return the X509Certificate encoded by the given byte array
+		// Return the X509Certificate encoded by the given byte array, parsed only once
 		X509Certificate x509Certificate;
 		if(ArrayUtils.isNotEmpty(encoded)) {
-			CertificateFactory cf = CertificateFactory.getInstance("X.509");
-			InputStream is = new ByteArrayInputStream(encoded);
-			x509Certificate = (X509Certificate) cf.generateCertificate(is);
+			x509Certificate = X509CertificateCache.getInstance().get(encoded).getCertificate();
 		} else {
 			x509Certificate = null;
 		}
@@ -53,7 +48,7 @@ public class X509Utils {
 		// Return the hex string relative to the given X509Certificate
 		String hex = null;
 		if ( certificate != null ) {
-			hex = HexUtils.encodeHex(certificate.getEncoded());
+			hex = X509CertificateCache.getInstance().get(certificate).getHex();
 		}
 		return hex;
 	}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2010 - 2012 Jenia Software.
+ *
+ * This file is part of Sinekarta
+ *
+ * Sinekarta is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Sinekarta is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+package org.sinekartads.dto;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Date;
+
+import org.sinekartads.dto.domain.DigestDTO;
+import org.sinekartads.dto.domain.DocumentDTO;
+import org.sinekartads.dto.domain.NodeDTO;
+import org.sinekartads.dto.domain.SignatureDTO;
+import org.sinekartads.dto.share.SignWizardDTO;
+
+/**
+ * Micro-benchmark of the DTO construction and of its round-trips through the encodings used by
+ * the webscripts. It is not run by the build, launch it with the test classpath:
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; org.sinekartads.dto.BaseDTOBenchmark [iterations]
+ * </pre>
+ * Each case is warmed up with the same number of iterations before being measured.
+ */
+public class BaseDTOBenchmark {
+
+	private static final int DEFAULT_ITERATIONS = 20000;
+
+	private interface Case {
+		Object run();
+	}
+
+	public static void main ( String[] args ) {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+		final SignatureDTO signature = sampleSignature();
+		final String json = signature.toJSON();
+		final String base64 = signature.toBase64();
+
+		measure ( "new SignatureDTO()", iterations, new Case() {
+			@Override
+			public Object run() {
+				return new SignatureDTO();
+			}
+		} );
+		measure ( "SignatureDTO JSON round-trip", iterations / 10, new Case() {
+			@Override
+			public Object run() {
+				return BaseDTO.fromJSON ( SignatureDTO.class, signature.toJSON() );
+			}
+		} );
+		measure ( "SignatureDTO JSON decoding", iterations / 10, new Case() {
+			@Override
+			public Object run() {
+				return BaseDTO.fromJSON ( SignatureDTO.class, json );
+			}
+		} );
+		measure ( "SignatureDTO base64 round-trip", iterations / 10, new Case() {
+			@Override
+			public Object run() {
+				return BaseDTO.fromBase64 ( signature.toBase64(), SignatureDTO.class );
+			}
+		} );
+		measure ( "SignatureDTO base64 decoding", iterations / 10, new Case() {
+			@Override
+			public Object run() {
+				return BaseDTO.fromBase64 ( base64, SignatureDTO.class );
+			}
+		} );
+		final SignWizardDTO wizard = sampleWizard ( 50 );
+		measure ( "SignWizardDTO (50 documents) JSON stream round-trip", iterations / 200, new Case() {
+			@Override
+			public Object run() {
+				try {
+					ByteArrayOutputStream os = new ByteArrayOutputStream();
+					wizard.toJSON ( os );
+					return BaseDTO.fromJSON ( new ByteArrayInputStream(os.toByteArray()), SignWizardDTO.class );
+				} catch(IOException e) {
+					throw new RuntimeException ( e );
+				}
+			}
+		} );
+		measure ( "SignatureDTO signingTime round-trip", iterations, new Case() {
+			@Override
+			public Object run() {
+				signature.signingTimeToString ( new Date() );
+				return signature.signingTimeFromString();
+			}
+		} );
+	}
+
+	static SignatureDTO sampleSignature() {
+		SignatureDTO signature = new SignatureDTO();
+		signature.setSignCategory ( "CMS" );
+		signature.setSignDisposition ( "ENVELOPING" );
+		signature.setSignAlgorithm ( "SHA256withRSA" );
+		signature.setDigestAlgorithm ( "SHA256" );
+		signature.setReason ( "benchmark" );
+		signature.setLocation ( "Padova" );
+		signature.signingTimeToString ( new Date() );
+		DigestDTO digest = new DigestDTO();
+		digest.setDigestAlgorithmName ( "SHA256" );
+		digest.setHexFingerPrint ( "00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff" );
+		signature.setDigest ( digest );
+		return signature;
+	}
+
+	static SignWizardDTO sampleWizard ( int documentCount ) {
+		DocumentDTO[] documents = new DocumentDTO[documentCount];
+		String[] nodeRefs = new String[documentCount];
+		for ( int i = 0; i < documentCount; i++ ) {
+			NodeDTO baseDocument = new NodeDTO();
+			nodeRefs[i] = "workspace://SpacesStore/00000000-0000-0000-0000-" + String.format("%012d", i);
+			baseDocument.setNodeRef ( nodeRefs[i] );
+			baseDocument.setFileName ( "documento-" + i + ".pdf" );
+			baseDocument.setFilePath ( "/Sites/firma/documentLibrary/attivit\u00e0" );
+			baseDocument.setMimetype ( "application/pdf" );
+			baseDocument.setDescription ( "documento n\u00b0 " + i );
+			DocumentDTO document = new DocumentDTO();
+			document.setBaseDocument ( baseDocument );
+			document.setSignCategory ( "PDF" );
+			document.setBaseName ( "documento-" + i );
+			document.setExtension ( "pdf" );
+			document.setDestName ( "documento-" + i + ".signed.pdf" );
+			document.setSignatures ( new SignatureDTO[] { sampleSignature() } );
+			documents[i] = document;
+		}
+		SignWizardDTO wizard = new SignWizardDTO();
+		wizard.setNodeRefs ( nodeRefs );
+		wizard.setDocuments ( documents );
+		wizard.setSignature ( sampleSignature() );
+		wizard.setClientType ( "KEYSTORE" );
+		return wizard;
+	}
+
+	private static void measure ( String name, int iterations, Case benchmarkCase ) {
+		int checksum = 0;
+		for ( int i = 0; i < iterations; i++ ) {
+			checksum += System.identityHashCode ( benchmarkCase.run() ) & 1;
+		}
+		long start = System.nanoTime();
+		for ( int i = 0; i < iterations; i++ ) {
+			checksum += System.identityHashCode ( benchmarkCase.run() ) & 1;
+		}
+		long elapsed = System.nanoTime() - start;
+		System.out.println ( String.format("%-52s %10d ns/op  (%d ops, checksum %d)",
+				name, elapsed / Math.max(1, iterations), iterations, checksum) );
+	}
+}
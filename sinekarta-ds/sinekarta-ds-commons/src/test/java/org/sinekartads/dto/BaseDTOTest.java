@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2010 - 2012 Jenia Software.
+ *
+ * This file is part of Sinekarta
+ *
+ * Sinekarta is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Sinekarta is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+package org.sinekartads.dto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+
+import org.junit.Test;
+import org.sinekartads.dto.domain.SignatureDTO;
+import org.sinekartads.dto.formats.DateDTOProperty;
+import org.sinekartads.dto.tools.DTOPropertyType;
+import org.sinekartads.util.TemplateUtils;
+
+public class BaseDTOTest {
+
+	public static class SampleDTO extends BaseDTO {
+
+		private static final long serialVersionUID = 1L;
+
+		@DateDTOProperty
+		private String day;
+		private String note;
+		private Integer count;
+
+		public String getDay() {
+			return day;
+		}
+
+		public void setDay(String day) {
+			this.day = day;
+		}
+
+		public String getNote() {
+			return note;
+		}
+
+		public void setNote(String note) {
+			this.note = note;
+		}
+
+		public Integer getCount() {
+			return count;
+		}
+
+		public void setCount(Integer count) {
+			this.count = count;
+		}
+
+		Date dayFromString() throws ParseException {
+			return parseDate ( day );
+		}
+
+		void dayToString(Date date) {
+			day = formatDate ( date );
+		}
+
+		@SuppressWarnings("deprecation")
+		DateFormat legacyDateFormat() {
+			return getDateFormat();
+		}
+	}
+
+
+
+	// -----
+	// --- Construction
+	// -
+
+	@Test
+	public void initializesTheStringPropertiesOnly() {
+		SampleDTO dto = new SampleDTO();
+		assertEquals ( "", dto.getDay() );
+		assertEquals ( "", dto.getNote() );
+		assertNull ( dto.getCount() );
+
+		SignatureDTO signature = new SignatureDTO();
+		assertEquals ( "", signature.getReason() );
+		assertNull ( signature.getTimeStamps() );
+	}
+
+
+
+	// -----
+	// --- JSON streams
+	// -
+
+	@Test
+	public void jsonStreamsAreUtf8() throws IOException {
+		SampleDTO dto = new SampleDTO();
+		dto.setNote ( "firma \u00e8 valida \u20ac" );
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		dto.toJSON ( os );
+		assertTrue ( new String(os.toByteArray(), "UTF-8").contains("firma \u00e8 valida") );
+
+		SampleDTO decoded = BaseDTO.fromJSON ( new ByteArrayInputStream(os.toByteArray()), SampleDTO.class );
+		assertEquals ( dto.getNote(), decoded.getNote() );
+		decoded = TemplateUtils.Encoding.deserializeJSON ( SampleDTO.class, new StringReader(dto.toJSON()) );
+		assertEquals ( dto.getNote(), decoded.getNote() );
+	}
+
+
+
+	// -----
+	// --- Dates
+	// -
+
+	@Test
+	public void formatsAndParsesTheDefaultPatterns() throws ParseException {
+		Date date = new GregorianCalendar(2014, Calendar.JANUARY, 5, 13, 45, 30).getTime();
+		SignatureDTO signature = new SignatureDTO();
+		signature.signingTimeToString ( date );
+		assertEquals ( "2014-01-05 13:45:30.000", signature.getSigningTime() );
+		assertEquals ( date, signature.signingTimeFromString() );
+
+		SampleDTO dto = new SampleDTO();
+		dto.dayToString ( date );
+		assertEquals ( "2014-01-05", dto.getDay() );
+	}
+
+	@Test
+	public void parsesLeniently() throws ParseException {
+		// as the SimpleDateFormats held by the DTOs used to do
+		SampleDTO dto = new SampleDTO();
+		dto.setDay ( "2014-1-5" );
+		assertEquals ( new GregorianCalendar(2014, Calendar.JANUARY, 5).getTime(), dto.dayFromString() );
+		dto.setDay ( "2014-02-30" );
+		assertEquals ( new GregorianCalendar(2014, Calendar.MARCH, 2).getTime(), dto.dayFromString() );
+		dto.setDay ( "2014-01-05 trailing text" );
+		assertEquals ( new GregorianCalendar(2014, Calendar.JANUARY, 5).getTime(), dto.dayFromString() );
+	}
+
+	@Test(expected = ParseException.class)
+	public void rejectsUnparseableDates() throws ParseException {
+		SampleDTO dto = new SampleDTO();
+		dto.setDay ( "05/01/2014" );
+		dto.dayFromString();
+	}
+
+	@Test
+	public void formatValuesAppliesTheNewPattern() throws ParseException {
+		SampleDTO dto = new SampleDTO();
+		dto.setDay ( "2014-01-05" );
+		DTOFormatter formatter = new DTOFormatter();
+		formatter.updateFormat ( DTOPropertyType.Date, "dd/MM/yyyy" );
+		formatter.format ( dto );
+
+		assertEquals ( "05/01/2014", dto.getDay() );
+		assertEquals ( new GregorianCalendar(2014, Calendar.JANUARY, 5).getTime(), dto.dayFromString() );
+
+		// the other instances keep the default pattern
+		SampleDTO other = new SampleDTO();
+		other.dayToString ( dto.dayFromString() );
+		assertEquals ( "2014-01-05", other.getDay() );
+	}
+
+	@Test
+	public void deprecatedAccessorsReturnIndependentLenientFormatters() {
+		SampleDTO dto = new SampleDTO();
+		DateFormat format = dto.legacyDateFormat();
+		assertNotSame ( format, dto.legacyDateFormat() );
+		assertTrue ( format.isLenient() );
+		assertEquals ( "yyyy-MM-dd", ((SimpleDateFormat) format).toPattern() );
+
+		// changing the returned formatter does not affect the DTO
+		format.setLenient ( false );
+		assertTrue ( dto.legacyDateFormat().isLenient() );
+	}
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2010 - 2012 Jenia Software.
+ *
+ * This file is part of Sinekarta
+ *
+ * Sinekarta is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Sinekarta is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+package org.sinekartads.dto.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.After;
+import org.junit.Test;
+import org.sinekartads.dto.BaseDTO;
+import org.sinekartads.dto.domain.DigestDTO;
+import org.sinekartads.dto.domain.SignatureDTO;
+import org.sinekartads.dto.jcl.JclResponseDTO;
+import org.sinekartads.util.TemplateUtils;
+
+public class DTOBinaryCodecTest {
+
+	private static final String HEX_DIGEST = "00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff";
+
+	// value tags of the encoding
+	private static final int TAG_STRING 		= 1;
+	private static final int TAG_STRING_ARRAY 	= 4;
+	private static final int TAG_INT 			= 7;
+
+	@After
+	public void tearDown() {
+		DTOBinaryCodec.setEnabled ( false );
+		DTOBinaryCodec.setMaxLength ( DTOBinaryCodec.DEFAULT_MAX_LENGTH );
+	}
+
+
+
+	// -----
+	// --- Encoding selection
+	// -
+
+	@Test
+	public void producesTheJavaSerializationUnlessEnabled() {
+		SignatureDTO signature = sampleSignature();
+		assertFalse ( DTOBinaryCodec.isEnabled() );
+		assertFalse ( DTOBinaryCodec.isEncoded(signature.toBinary()) );
+
+		DTOBinaryCodec.setEnabled ( true );
+		assertTrue ( DTOBinaryCodec.isEncoded(signature.toBinary()) );
+		assertEquals ( signature, BaseDTO.fromBase64(signature.toBase64(), SignatureDTO.class) );
+	}
+
+	@Test
+	public void decodesTheJavaSerialization() {
+		SignatureDTO signature = sampleSignature();
+		byte[] serialized = SerializationUtils.serialize ( signature );
+		assertEquals ( signature, TemplateUtils.Encoding.deserialize(SignatureDTO.class, serialized) );
+	}
+
+
+
+	// -----
+	// --- Round-trips
+	// -
+
+	@Test
+	public void roundTripsNestedDtosAndArrays() {
+		SignatureDTO signature = sampleSignature();
+		SignatureDTO decoded = DTOBinaryCodec.decode ( SignatureDTO.class, DTOBinaryCodec.encode(signature) );
+		assertEquals ( signature, decoded );
+		assertEquals ( HEX_DIGEST, decoded.getDigest().getHexFingerPrint() );
+	}
+
+	@Test
+	public void storesTheAnnotatedHexFieldsAsRawBytes() throws IOException {
+		DigestDTO digest = new DigestDTO();
+		digest.setHexFingerPrint ( HEX_DIGEST );
+		String encoding = new String ( DTOBinaryCodec.encode(digest), "ISO-8859-1" );
+		assertFalse ( encoding.contains(HEX_DIGEST) );
+
+		// a field not declared as hex keeps its text, even if it looks like hex
+		digest.setDigestAlgorithmName ( "abcdef12" );
+		encoding = new String ( DTOBinaryCodec.encode(digest), "ISO-8859-1" );
+		assertTrue ( encoding.contains("abcdef12") );
+		assertEquals ( digest, DTOBinaryCodec.decode(DigestDTO.class, DTOBinaryCodec.encode(digest)) );
+	}
+
+	@Test
+	public void keepsTheNonCanonicalEncodingsAsText() {
+		DigestDTO digest = new DigestDTO();
+		digest.setHexFingerPrint ( HEX_DIGEST.toUpperCase() );
+		assertEquals ( HEX_DIGEST.toUpperCase(),
+				DTOBinaryCodec.decode(DigestDTO.class, DTOBinaryCodec.encode(digest)).getHexFingerPrint() );
+
+		JclResponseDTO response = new JclResponseDTO();
+		response.setResult ( "not base64" );
+		assertEquals ( "not base64",
+				DTOBinaryCodec.decode(JclResponseDTO.class, DTOBinaryCodec.encode(response)).getResult() );
+	}
+
+	@Test
+	public void storesTheJclResultAsRawBytes() throws IOException {
+		DTOBinaryCodec.setEnabled ( true );
+		String result = sampleSignature().toBase64();
+		JclResponseDTO response = new JclResponseDTO();
+		response.setResult ( result );
+		byte[] encoding = DTOBinaryCodec.encode ( response );
+		assertTrue ( encoding.length < result.length() );
+		assertEquals ( result, DTOBinaryCodec.decode(JclResponseDTO.class, encoding).getResult() );
+	}
+
+
+
+	// -----
+	// --- Decoding limits
+	// -
+
+	@Test
+	public void boundsTheStreamDecoding() throws IOException {
+		SignatureDTO signature = sampleSignature();
+		byte[] encoding = DTOBinaryCodec.encode ( signature );
+		assertEquals ( signature, DTOBinaryCodec.decode(SignatureDTO.class, new ByteArrayInputStream(encoding)) );
+
+		DTOBinaryCodec.setMaxLength ( 16 );
+		try {
+			DTOBinaryCodec.decode ( SignatureDTO.class, new ByteArrayInputStream(encoding) );
+			fail ( "IOException expected" );
+		} catch(IOException e) {
+			assertTrue ( e.getMessage().contains("maximum length") );
+		}
+	}
+
+	@Test
+	public void rejectsLengthsBeyondTheEncoding() {
+		// a string array announcing 2^21 items
+		byte[] encoding = encoding ( TAG_STRING_ARRAY, 0x80, 0x80, 0x80, 0x01 );
+		try {
+			DTOBinaryCodec.decode ( SignatureDTO.class, encoding );
+			fail ( "IllegalArgumentException expected" );
+		} catch(IllegalArgumentException e) {
+			assertTrue ( e.getCause().getMessage().contains("maximum length") );
+		}
+	}
+
+	@Test
+	public void rejectsTheNestingBeyondTheMaximumDepth() {
+		ByteArrayOutputStream values = new ByteArrayOutputStream();
+		for ( int i = 0; i <= DTOBinaryCodec.MAX_DEPTH; i++ ) {
+			values.write ( TAG_STRING_ARRAY );
+			values.write ( 1 );
+		}
+		values.write ( TAG_STRING );
+		values.write ( 0 );
+		try {
+			DTOBinaryCodec.decode ( SignatureDTO.class, encoding(values.toByteArray()) );
+			fail ( "IllegalArgumentException expected" );
+		} catch(IllegalArgumentException e) {
+			assertTrue ( e.getCause().getMessage().contains("nested") );
+		}
+	}
+
+	@Test
+	public void rejectsArrayItemsOfAnotherType() {
+		byte[] encoding = encoding ( TAG_STRING_ARRAY, 1, TAG_INT, 0, 0, 0, 1 );
+		try {
+			DTOBinaryCodec.decode ( SignatureDTO.class, encoding );
+			fail ( "IllegalArgumentException expected" );
+		} catch(IllegalArgumentException e) {
+			assertTrue ( e.getCause().getMessage().contains("array item") );
+		}
+	}
+
+
+
+	// -----
+	// --- Utility methods
+	// -
+
+	private static SignatureDTO sampleSignature() {
+		SignatureDTO signature = new SignatureDTO();
+		signature.setSignCategory ( "CMS" );
+		signature.setSignAlgorithm ( "SHA256withRSA" );
+		signature.setReason ( "r\u00e8ason" );
+		signature.setHexDigitalSignature ( HEX_DIGEST );
+		signature.setHexCertificateChain ( new String[] { HEX_DIGEST, "0a0b", null } );
+		DigestDTO digest = new DigestDTO();
+		digest.setDigestAlgorithmName ( "SHA256" );
+		digest.setHexFingerPrint ( HEX_DIGEST );
+		signature.setDigest ( digest );
+		return signature;
+	}
+
+	/**
+	 * @return the magic and the version followed by the given values
+	 */
+	private static byte[] encoding ( byte[] values ) {
+		ByteArrayOutputStream encoding = new ByteArrayOutputStream();
+		encoding.write ( 'S' );
+		encoding.write ( 'K' );
+		encoding.write ( 'D' );
+		encoding.write ( 'B' );
+		encoding.write ( DTOBinaryCodec.VERSION );
+		encoding.write ( values, 0, values.length );
+		return encoding.toByteArray();
+	}
+
+	private static byte[] encoding ( int ... values ) {
+		byte[] bytes = new byte[values.length];
+		for ( int i = 0; i < values.length; i++ ) {
+			bytes[i] = (byte) values[i];
+		}
+		return encoding ( bytes );
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2010 - 2012 Jenia Software.
+ *
+ * This file is part of Sinekarta
+ *
+ * Sinekarta is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Sinekarta is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+package org.sinekartads.dto.tools;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+
+import org.sinekartads.dto.domain.DigestDTO;
+import org.sinekartads.dto.domain.SignatureDTO;
+import org.sinekartads.dto.domain.TimeStampDTO;
+import org.sinekartads.model.domain.SecurityLevel.TimeStampVerifyResult;
+import org.sinekartads.model.domain.SecurityLevel.VerifyResult;
+import org.sinekartads.model.domain.SignDisposition;
+import org.sinekartads.model.domain.SignatureInfo;
+import org.sinekartads.model.domain.SignatureType.SignCategory;
+import org.sinekartads.model.oid.DigestAlgorithm;
+import org.sinekartads.model.oid.SignatureAlgorithm;
+
+/**
+ * Allocation profile of the DTOConverter round-trip between a SignatureDTO and its SignatureInfo,
+ * the conversion performed by the webscripts at each step of the sign process, for a marked
+ * signature with a chain of 3 certificates and 2 timestamps. It is not run by the build, launch it
+ * with the test classpath on a HotSpot JVM:
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; org.sinekartads.dto.tools.DTOConverterBenchmark [iterations]
+ * </pre>
+ * Each case is warmed up with the same number of iterations before being measured; the bytes are
+ * the ones allocated by the measuring thread, as reported by its ThreadMXBean.
+ */
+public class DTOConverterBenchmark {
+
+	private static final int DEFAULT_ITERATIONS = 20000;
+
+	// self-signed EC certificate, CN=Test TSA
+	private static final String HEX_CERTIFICATE =
+			  "308201a330820149a003020102021416182101bebae1f4deec6a3b563c8b9600cb0928300a06082a8648ce3d04030230"
+			+ "273111300f06035504030c08546573742054534131123010060355040a0c0953696e656b61727461301e170d32363130"
+			+ "31383130353732325a170d3336313031353130353732325a30273111300f06035504030c085465737420545341311230"
+			+ "10060355040a0c0953696e656b617274613059301306072a8648ce3d020106082a8648ce3d03010703420004bd012476"
+			+ "5d428ee0644482ee4cf698018d06b04451d5ae87ec802a6fef9bfed440d617a026ad4f9709c4b5474aff852fc4b0ad3f"
+			+ "5f524ba339006102bc37db90a3533051301d0603551d0e04160414c5a46fbb34cb682b8cee8a2617bce3342dc0008430"
+			+ "1f0603551d23041830168014c5a46fbb34cb682b8cee8a2617bce3342dc00084300f0603551d130101ff040530030101"
+			+ "ff300a06082a8648ce3d0403020348003045022100ab972fcbe560e32dc76d2534d8c77e786f518dd44937a69d4a297a"
+			+ "5226d9f8cb02207d3766a8dd0f375119b7c14d1a91112ed16b90d928786b28282f0f0d006e8e76";
+
+	private static final String HEX_DIGEST = "00112233445566778899aabbccddeeff00112233445566778899aabbccddeeff";
+
+	private static final String HEX_TOKEN = "3003020101";
+
+	private interface Case {
+		Object run();
+	}
+
+	public static void main ( String[] args ) {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+		final DTOConverter converter = DTOConverter.getInstance();
+		final SignatureDTO dto = sampleSignature();
+		final SignatureInfo<?,?,VerifyResult,?> signature = converter.toSignatureInfo ( dto );
+
+		measure ( "toSignatureInfo (3 certificates, 2 timestamps)", iterations, new Case() {
+			@Override
+			public Object run() {
+				return converter.toSignatureInfo ( dto );
+			}
+		} );
+		measure ( "fromSignatureInfo (3 certificates, 2 timestamps)", iterations, new Case() {
+			@Override
+			public Object run() {
+				return converter.fromSignatureInfo ( signature );
+			}
+		} );
+		measure ( "SignatureDTO -> SignatureInfo -> SignatureDTO", iterations, new Case() {
+			@Override
+			public Object run() {
+				return converter.fromSignatureInfo ( converter.toSignatureInfo(dto) );
+			}
+		} );
+	}
+
+	static SignatureDTO sampleSignature() {
+		SignatureDTO signature = new SignatureDTO();
+		signature.signCategoryToString ( SignCategory.CMS );
+		signature.setSignAlgorithm ( SignatureAlgorithm.SHA256withRSA.getName() );
+		signature.setDigestAlgorithm ( DigestAlgorithm.SHA256.getName() );
+		signature.setReason ( "benchmark" );
+		signature.setLocation ( "Padova" );
+		signature.signingTimeToString ( new Date() );
+		signature.setHexCertificateChain ( new String[] { HEX_CERTIFICATE, HEX_CERTIFICATE, HEX_CERTIFICATE } );
+		signature.setDigest ( sampleDigest() );
+		signature.setHexDigitalSignature ( HEX_DIGEST );
+		signature.setTimeStamps ( new TimeStampDTO[] { sampleTimeStamp(), sampleTimeStamp() } );
+		return signature;
+	}
+
+	private static TimeStampDTO sampleTimeStamp() {
+		TimeStampDTO timeStamp = new TimeStampDTO();
+		timeStamp.signAlgorithmToString ( SignatureAlgorithm.SHA256withRSA );
+		timeStamp.digestAlgorithmToString ( DigestAlgorithm.SHA256 );
+		timeStamp.setHexCertificateChain ( new String[] { HEX_CERTIFICATE } );
+		timeStamp.setHexTimeStampToken ( HEX_TOKEN );
+		timeStamp.setMessageImprint ( sampleDigest() );
+		timeStamp.setHexDigitalSignature ( HEX_DIGEST );
+		timeStamp.verifyResultToString ( TimeStampVerifyResult.VALID );
+		timeStamp.dispositionToString ( SignDisposition.TimeStamp.ATTRIBUTE );
+		timeStamp.signingTimeToString ( new Date() );
+		return timeStamp;
+	}
+
+	private static DigestDTO sampleDigest() {
+		DigestDTO digest = new DigestDTO();
+		digest.setDigestAlgorithmName ( DigestAlgorithm.SHA256.getName() );
+		digest.setHexFingerPrint ( HEX_DIGEST );
+		return digest;
+	}
+
+	private static void measure ( String name, int iterations, Case benchmarkCase ) {
+		com.sun.management.ThreadMXBean threadBean =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		int checksum = 0;
+		for ( int i = 0; i < iterations; i++ ) {
+			checksum += System.identityHashCode ( benchmarkCase.run() ) & 1;
+		}
+		long allocated = threadBean.getThreadAllocatedBytes ( threadId );
+		long start = System.nanoTime();
+		for ( int i = 0; i < iterations; i++ ) {
+			checksum += System.identityHashCode ( benchmarkCase.run() ) & 1;
+		}
+		long elapsed = System.nanoTime() - start;
+		allocated = threadBean.getThreadAllocatedBytes ( threadId ) - allocated;
+		System.out.println ( String.format("%-52s %10d ns/op %10d B/op  (%d ops, checksum %d)",
+				name, elapsed / Math.max(1, iterations), allocated / Math.max(1, iterations), iterations, checksum) );
+	}
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2010 - 2012 Jenia Software.
+ *
+ * This file is part of Sinekarta
+ *
+ * Sinekarta is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Sinekarta is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+package org.sinekartads.dto.tools;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+import org.junit.Test;
+import org.sinekartads.dto.BaseDTO;
+import org.sinekartads.dto.domain.SignatureDTO;
+
+public class DTOSchemaTest {
+
+	public static class ChildDTO extends BaseDTO {
+
+		private static final long serialVersionUID = 1L;
+
+		private String name;
+		private byte[] data;
+
+		ChildDTO() { }
+
+		ChildDTO ( String name, byte[] data ) {
+			this.name = name;
+			this.data = data;
+		}
+	}
+
+	public static class ParentDTO extends BaseDTO {
+
+		private static final long serialVersionUID = 1L;
+
+		private String[] tags;
+		private ChildDTO child;
+		private ChildDTO[] children;
+		private int count;
+		private Long size;
+		private Boolean flag;
+		private transient String cached;
+	}
+
+	public static class ExtendedDTO extends ParentDTO {
+
+		private static final long serialVersionUID = 1L;
+
+		private String note;
+	}
+
+	public static class DateDTO extends BaseDTO {
+
+		private static final long serialVersionUID = 1L;
+
+		private Date date;
+	}
+
+	public static class DatedChildDTO extends ChildDTO {
+
+		private static final long serialVersionUID = 1L;
+
+		private Date date;
+	}
+
+	public static class FormattedDTO extends BaseDTO {
+
+		private static final long serialVersionUID = 1L;
+
+		void dateFormat ( String pattern ) {
+			formatValues ( Collections.singletonMap(DTOPropertyType.Date, pattern) );
+		}
+
+		String format ( Date value ) {
+			return formatDate ( value );
+		}
+	}
+
+	public static class ListHolderDTO extends BaseDTO {
+
+		private static final long serialVersionUID = 1L;
+
+		private DateDTO[] dates;
+		private ArrayList<String> list;
+	}
+
+
+
+	// -----
+	// --- Class schemas
+	// -
+
+	@Test
+	public void listsTheInstanceFieldsBelowBaseDTO() {
+		Map<String, ?> fields = DTOSchema.fieldsOf ( ParentDTO.class );
+		assertEquals ( "[tags, child, children, count, size, flag]", fields.keySet().toString() );
+		assertEquals ( "[note, tags, child, children, count, size, flag]",
+				DTOSchema.fieldsOf(ExtendedDTO.class).keySet().toString() );
+		assertTrue ( DTOSchema.fieldsOf(ParentDTO.class) == fields );
+	}
+
+	@Test
+	public void supportsTheStructuralDtosOnly() {
+		assertTrue ( DTOSchema.supports(ParentDTO.class) );
+		assertTrue ( DTOSchema.supports(ExtendedDTO.class) );
+		assertTrue ( DTOSchema.supports(SignatureDTO.class) );
+		assertFalse ( DTOSchema.supports(DateDTO.class) );
+		// an unsupported field type, or a nested DTO that is not structural
+		assertFalse ( DTOSchema.supports(ListHolderDTO.class) );
+	}
+
+
+
+	// -----
+	// --- Field-wise equality
+	// -
+
+	@Test
+	public void comparesTheArraysByContent() {
+		ParentDTO dto = sampleParent();
+		ParentDTO other = sampleParent();
+		assertTrue ( DTOSchema.equals(dto, other) );
+		assertEquals ( DTOSchema.hashCode(dto), DTOSchema.hashCode(other) );
+
+		other.children[1].data[0] = 9;
+		assertFalse ( DTOSchema.equals(dto, other) );
+		other = sampleParent();
+		other.tags[0] = "changed";
+		assertFalse ( DTOSchema.equals(dto, other) );
+	}
+
+	@Test
+	public void ignoresTheTransientFields() {
+		ParentDTO dto = sampleParent();
+		ParentDTO other = sampleParent();
+		other.cached = "cached";
+		assertTrue ( DTOSchema.equals(dto, other) );
+		assertEquals ( DTOSchema.hashCode(dto), DTOSchema.hashCode(other) );
+	}
+
+	@Test
+	public void requiresTheSameClass() {
+		ParentDTO parent = new ParentDTO();
+		ExtendedDTO extended = new ExtendedDTO();
+		assertFalse ( DTOSchema.equals(parent, extended) );
+		assertFalse ( DTOSchema.equals(parent, null) );
+		assertFalse ( DTOSchema.equals(parent, "parent") );
+		assertTrue ( DTOSchema.equals(null, null) );
+	}
+
+
+
+	// -----
+	// --- Deep copy
+	// -
+
+	@Test
+	public void copiesTheArraysAndTheNestedDtos() {
+		ParentDTO dto = sampleParent();
+		ParentDTO copy = DTOSchema.copy ( dto );
+
+		assertTrue ( DTOSchema.equals(dto, copy) );
+		assertNotSame ( dto.tags, copy.tags );
+		assertNotSame ( dto.child, copy.child );
+		assertNotSame ( dto.children, copy.children );
+		assertNotSame ( dto.children[1], copy.children[1] );
+		assertNotSame ( dto.children[1].data, copy.children[1].data );
+		assertEquals ( ChildDTO[].class, copy.children.getClass() );
+
+		copy.children[1].data[0] = 9;
+		assertArrayEquals ( new byte[] { 1, 2 }, dto.children[1].data );
+	}
+
+	@Test
+	public void copiesTheFormats() {
+		FormattedDTO dto = new FormattedDTO();
+		dto.dateFormat ( "dd/MM/yyyy" );
+		FormattedDTO copy = DTOSchema.copy ( dto );
+
+		Date date = new Date();
+		assertEquals ( dto.format(date), copy.format(date) );
+		assertEquals ( new FormattedDTO().format(date), BaseDTO.copy(new FormattedDTO()).format(date) );
+	}
+
+	@Test
+	public void copiesTheNonStructuralNestedDtosBySerialization() {
+		ParentDTO dto = sampleParent();
+		DatedChildDTO child = new DatedChildDTO();
+		child.date = new Date();
+		dto.child = child;
+		ParentDTO copy = DTOSchema.copy ( dto );
+
+		assertEquals ( DatedChildDTO.class, copy.child.getClass() );
+		assertNotSame ( child, copy.child );
+		assertEquals ( child.date, ((DatedChildDTO) copy.child).date );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void refusesToCopyTheNonStructuralDtos() {
+		DTOSchema.copy ( new DateDTO() );
+	}
+
+
+
+	// -----
+	// --- Utility methods
+	// -
+
+	private static ParentDTO sampleParent() {
+		ParentDTO dto = new ParentDTO();
+		dto.tags = new String[] { "a", null, "c" };
+		dto.child = new ChildDTO ( "child", new byte[] { 0 } );
+		dto.children = new ChildDTO[] { null, new ChildDTO("second", new byte[] { 1, 2 }) };
+		dto.count = 3;
+		dto.size = 4L;
+		dto.flag = Boolean.TRUE;
+		return dto;
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2010 - 2012 Jenia Software.
+ *
+ * This file is part of Sinekarta
+ *
+ * Sinekarta is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Sinekarta is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+package org.sinekartads.model.domain;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.security.cert.X509Certificate;
+
+import org.junit.Test;
+import org.sinekartads.model.oid.DigestAlgorithm;
+import org.sinekartads.model.oid.SignatureAlgorithm;
+import org.sinekartads.util.HexUtils;
+import org.sinekartads.util.TemplateUtils;
+
+public class TimeStampInfoTest {
+
+	// self-signed EC certificate, CN=Test TSA
+	private static final String HEX_CERTIFICATE =
+			  "308201a330820149a003020102021416182101bebae1f4deec6a3b563c8b9600cb0928300a06082a8648ce3d04030230"
+			+ "273111300f06035504030c08546573742054534131123010060355040a0c0953696e656b61727461301e170d32363130"
+			+ "31383130353732325a170d3336313031353130353732325a30273111300f06035504030c085465737420545341311230"
+			+ "10060355040a0c0953696e656b617274613059301306072a8648ce3d020106082a8648ce3d03010703420004bd012476"
+			+ "5d428ee0644482ee4cf698018d06b04451d5ae87ec802a6fef9bfed440d617a026ad4f9709c4b5474aff852fc4b0ad3f"
+			+ "5f524ba339006102bc37db90a3533051301d0603551d0e04160414c5a46fbb34cb682b8cee8a2617bce3342dc0008430"
+			+ "1f0603551d23041830168014c5a46fbb34cb682b8cee8a2617bce3342dc00084300f0603551d130101ff040530030101"
+			+ "ff300a06082a8648ce3d0403020348003045022100ab972fcbe560e32dc76d2534d8c77e786f518dd44937a69d4a297a"
+			+ "5226d9f8cb02207d3766a8dd0f375119b7c14d1a91112ed16b90d928786b28282f0f0d006e8e76";
+
+	private static final String HEX_TOKEN = "3003020101";
+
+
+
+	// -----
+	// --- Encoded construction
+	// -
+
+	@Test
+	public void keepsTheReceivedEncodings() {
+		String[] hexChain = new String[] { HEX_CERTIFICATE };
+		TimeStampInfo timeStamp = newTimeStamp ( hexChain, HEX_TOKEN );
+
+		assertArrayEquals ( hexChain, timeStamp.getHexCertificateChain() );
+		assertSame ( HEX_TOKEN, timeStamp.getHexTimeStampToken() );
+		X509Certificate[] chain = timeStamp.getRawX509Certificates();
+		assertEquals ( 1, chain.length );
+		assertEquals ( "O=Sinekarta,CN=Test TSA", chain[0].getSubjectX500Principal().getName() );
+		assertArrayEquals ( HexUtils.decodeHex(HEX_TOKEN), timeStamp.getEncTimeStampToken() );
+	}
+
+	@Test
+	public void copiesTheReceivedChain() {
+		String[] hexChain = new String[] { HEX_CERTIFICATE };
+		TimeStampInfo timeStamp = newTimeStamp ( hexChain, HEX_TOKEN );
+		hexChain[0] = null;
+		timeStamp.getHexCertificateChain()[0] = null;
+
+		assertEquals ( HEX_CERTIFICATE, timeStamp.getHexCertificateChain()[0] );
+		assertNotSame ( timeStamp.getHexCertificateChain(), timeStamp.getHexCertificateChain() );
+	}
+
+	@Test
+	public void copiesTheChainOfTheChainTransition() {
+		String[] hexChain = new String[] { HEX_CERTIFICATE };
+		SignatureInfo<?,?,?,?> chainSignature = (SignatureInfo<?,?,?,?>) newTimeStamp ( null, HEX_TOKEN ).toChainSignature ( hexChain );
+		hexChain[0] = null;
+
+		assertEquals ( HEX_CERTIFICATE, chainSignature.getHexCertificateChain()[0] );
+	}
+
+	@Test
+	public void survivesTheSerializationClone() {
+		TimeStampInfo timeStamp = newTimeStamp ( new String[] { HEX_CERTIFICATE }, HEX_TOKEN );
+		TimeStampInfo clone = TemplateUtils.Instantiation.clone ( timeStamp );
+
+		assertArrayEquals ( timeStamp.getHexCertificateChain(), clone.getHexCertificateChain() );
+		assertEquals ( timeStamp.getRawX509Certificates()[0], clone.getRawX509Certificates()[0] );
+		assertArrayEquals ( timeStamp.getEncTimeStampToken(), clone.getEncTimeStampToken() );
+	}
+
+	@Test
+	public void acceptsMissingEncodings() {
+		TimeStampInfo timeStamp = newTimeStamp ( null, null );
+		assertNull ( timeStamp.getRawX509Certificates() );
+		assertNull ( timeStamp.getEncTimeStampToken() );
+	}
+
+
+
+	// -----
+	// --- Validation
+	// -
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsMalformedCertificatesWhenSet() {
+		newTimeStamp ( new String[] { HEX_CERTIFICATE.substring(0, 200) }, HEX_TOKEN );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsInvalidHexCertificatesWhenSet() {
+		newTimeStamp ( new String[] { "not hex" }, HEX_TOKEN );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsInvalidHexTokensWhenSet() {
+		newTimeStamp ( new String[] { HEX_CERTIFICATE }, "30030" );
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsMalformedChainsOfTheChainTransition() {
+		newTimeStamp ( null, HEX_TOKEN ).toChainSignature ( new String[] { "0102" } );
+	}
+
+
+
+	// -----
+	// --- Utility methods
+	// -
+
+	private static TimeStampInfo newTimeStamp ( String[] hexChain, String hexToken ) {
+		return new TimeStampInfo ( SignatureAlgorithm.SHA256withRSA, DigestAlgorithm.SHA256, null,
+				hexChain, new byte[] { 1, 2, 3 }, null, hexToken );
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2010 - 2012 Jenia Software.
+ *
+ * This file is part of Sinekarta
+ *
+ * Sinekarta is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Sinekarta is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+package org.sinekartads.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.security.MessageDigest;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+import org.sinekartads.model.oid.DigestAlgorithm;
+
+public class CryptoEnginePoolTest {
+
+	private static final byte[] CONTENT = "sinekarta".getBytes();
+
+	private final CryptoEnginePool pool = new CryptoEnginePool();
+
+
+
+	// -----
+	// --- Digest
+	// -
+
+	@Test
+	public void digestsAsTheJca() throws Exception {
+		byte[] expected = MessageDigest.getInstance("SHA-256").digest ( CONTENT );
+		assertArrayEquals ( expected, pool.digest(DigestAlgorithm.SHA256, CONTENT) );
+		assertArrayEquals ( expected, pool.digest(DigestAlgorithm.SHA256, new ByteArrayInputStream(CONTENT)) );
+	}
+
+	@Test
+	public void releasedDigestersAreReset() throws Exception {
+		MessageDigest digester = pool.acquireDigester ( DigestAlgorithm.SHA256 );
+		digester.update ( CONTENT );
+		pool.release ( digester );
+
+		MessageDigest reused = pool.acquireDigester ( DigestAlgorithm.SHA256 );
+		assertSame ( digester, reused );
+		assertArrayEquals ( MessageDigest.getInstance("SHA-256").digest(), reused.digest() );
+	}
+
+
+
+	// -----
+	// --- Sharing among threads
+	// -
+
+	@Test
+	public void nestedAcquisitionsGetDistinctDigesters() throws Exception {
+		MessageDigest first = pool.acquireDigester ( DigestAlgorithm.SHA256 );
+		MessageDigest second = pool.acquireDigester ( DigestAlgorithm.SHA256 );
+		assertNotSame ( first, second );
+		pool.release ( first );
+		pool.release ( second );
+	}
+
+	@Test
+	public void idleDigestersAreSharedAmongThreads() throws Exception {
+		final MessageDigest digester = pool.acquireDigester ( DigestAlgorithm.SHA256 );
+		pool.release ( digester );
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			MessageDigest acquired = executor.submit ( new Callable<MessageDigest>() {
+				@Override
+				public MessageDigest call() throws Exception {
+					MessageDigest acquired = pool.acquireDigester ( DigestAlgorithm.SHA256 );
+					pool.release ( acquired );
+					return acquired;
+				}
+			} ).get();
+			assertSame ( digester, acquired );
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2010 - 2012 Jenia Software.
+ *
+ * This file is part of Sinekarta
+ *
+ * Sinekarta is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Sinekarta is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+package org.sinekartads.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Test;
+import org.sinekartads.model.domain.SignatureType.SignCategory;
+
+public class SignCategoryDetectorTest {
+
+	// signedData and timestampedData ContentInfo OIDs, tag and length included
+	private static final byte[] OID_SIGNED_DATA = {
+		0x06, 0x09, 0x2a, (byte)0x86, 0x48, (byte)0x86, (byte)0xf7, 0x0d, 0x01, 0x07, 0x02 };
+	private static final byte[] OID_TIMESTAMPED_DATA = {
+		0x06, 0x0b, 0x2a, (byte)0x86, 0x48, (byte)0x86, (byte)0xf7, 0x0d, 0x01, 0x09, 0x10, 0x01, 0x1f };
+	private static final byte[] OID_DATA = {
+		0x06, 0x09, 0x2a, (byte)0x86, 0x48, (byte)0x86, (byte)0xf7, 0x0d, 0x01, 0x07, 0x01 };
+
+
+
+	// -----
+	// --- CMS
+	// -
+
+	@Test
+	public void detectsDerSignedData() {
+		byte[] envelope = concat ( new byte[] { 0x30, (byte)0x82, 0x01, 0x00 }, OID_SIGNED_DATA, filler(256) );
+		assertEquals ( SignCategory.CMS, SignCategoryDetector.detect(envelope, null) );
+	}
+
+	@Test
+	public void detectsShortFormLength() {
+		byte[] envelope = concat ( new byte[] { 0x30, 0x20 }, OID_SIGNED_DATA, filler(21) );
+		assertEquals ( SignCategory.CMS, SignCategoryDetector.detect(envelope, null) );
+	}
+
+	@Test
+	public void detectsBerIndefiniteLength() {
+		// 0x80 opens an indefinite-length SEQUENCE, closed by the end-of-contents octets
+		byte[] envelope = concat ( new byte[] { 0x30, (byte)0x80 }, OID_SIGNED_DATA, filler(64), new byte[] { 0x00, 0x00 } );
+		assertEquals ( SignCategory.CMS, SignCategoryDetector.detect(envelope, null) );
+	}
+
+	@Test
+	public void detectsMarkedData() {
+		byte[] envelope = concat ( new byte[] { 0x30, (byte)0x80 }, OID_TIMESTAMPED_DATA, filler(64) );
+		assertEquals ( SignCategory.CMS, SignCategoryDetector.detect(envelope, null) );
+	}
+
+	@Test
+	public void rejectsOtherContentTypes() {
+		byte[] envelope = concat ( new byte[] { 0x30, (byte)0x80 }, OID_DATA, filler(64) );
+		assertNull ( SignCategoryDetector.detect(envelope, null) );
+	}
+
+	@Test
+	public void rejectsOidBeyondTheContentInfoHeader() {
+		byte[] envelope = concat ( new byte[] { 0x30, (byte)0x82, 0x01, 0x00 }, filler(16), OID_SIGNED_DATA );
+		assertNull ( SignCategoryDetector.detect(envelope, null) );
+	}
+
+
+
+	// -----
+	// --- PDF and XML
+	// -
+
+	@Test
+	public void detectsPdfHeader() {
+		byte[] envelope = concat ( ascii("%PDF-1.4\n"), filler(2048) );
+		assertEquals ( SignCategory.PDF, SignCategoryDetector.detect(envelope, null) );
+	}
+
+	@Test
+	public void detectsPdfHeaderAfterGarbage() {
+		byte[] envelope = concat ( filler(100), ascii("%PDF-1.7\n"), filler(100) );
+		assertEquals ( SignCategory.PDF, SignCategoryDetector.detect(envelope, null) );
+	}
+
+	@Test
+	public void detectsPdfTrailer() {
+		byte[] head = filler ( SignCategoryDetector.PROBE_SIZE );
+		byte[] tail = concat ( filler(100), ascii("%%EOF\n") );
+		assertEquals ( SignCategory.PDF, SignCategoryDetector.detect(head, tail) );
+	}
+
+	@Test
+	public void detectsXmlWithBom() {
+		byte[] envelope = concat ( new byte[] { (byte)0xef, (byte)0xbb, (byte)0xbf }, ascii(" \r\n<?xml version=\"1.0\"?><a/>") );
+		assertEquals ( SignCategory.XML, SignCategoryDetector.detect(envelope, null) );
+	}
+
+	@Test
+	public void rejectsUnknownFormats() {
+		assertNull ( SignCategoryDetector.detect(ascii("plain text"), null) );
+		assertNull ( SignCategoryDetector.detect(new byte[0], null) );
+		assertNull ( SignCategoryDetector.detect((String)null) );
+	}
+
+
+
+	// -----
+	// --- Base64 and stream probes
+	// -
+
+	@Test
+	public void detectsBase64Envelopes() {
+		byte[] pdf = concat ( ascii("%PDF-1.4\n"), filler(4096), ascii("%%EOF\n") );
+		assertEquals ( SignCategory.PDF, SignCategoryDetector.detect(Base64.encodeBase64String(pdf).trim()) );
+
+		byte[] cms = concat ( new byte[] { 0x30, (byte)0x80 }, OID_SIGNED_DATA, filler(4096) );
+		assertEquals ( SignCategory.CMS, SignCategoryDetector.detect(Base64.encodeBase64String(cms).trim()) );
+	}
+
+	@Test
+	public void streamProbeResetsTheStream() throws IOException {
+		byte[] envelope = concat ( new byte[] { 0x30, (byte)0x80 }, OID_SIGNED_DATA, filler(4096) );
+		InputStream is = new BufferedInputStream ( new ByteArrayInputStream(envelope) );
+		assertEquals ( SignCategory.CMS, SignCategoryDetector.detect(is) );
+
+		ByteArrayOutputStream read = new ByteArrayOutputStream();
+		int b;
+		while ( (b = is.read()) != -1 ) {
+			read.write ( b );
+		}
+		assertEquals ( Arrays.toString(envelope), Arrays.toString(read.toByteArray()) );
+	}
+
+
+
+	// -----
+	// --- Utility methods
+	// -
+
+	private static byte[] filler ( int length ) {
+		byte[] filler = new byte[length];
+		Arrays.fill ( filler, (byte)0x55 );
+		return filler;
+	}
+
+	private static byte[] ascii ( String text ) {
+		try {
+			return text.getBytes ( "US-ASCII" );
+		} catch(IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static byte[] concat ( byte[]... chunks ) {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		for ( byte[] chunk : chunks ) {
+			buffer.write ( chunk, 0, chunk.length );
+		}
+		return buffer.toByteArray();
+	}
+}
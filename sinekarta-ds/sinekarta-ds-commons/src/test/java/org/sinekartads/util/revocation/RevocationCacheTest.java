@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2010 - 2012 Jenia Software.
+ *
+ * This file is part of Sinekarta
+ *
+ * Sinekarta is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Sinekarta is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+package org.sinekartads.util.revocation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sinekartads.util.revocation.RevocationCache.NextUpdateReader;
+
+public class RevocationCacheTest {
+
+	private static final String URL 		= "http://crl.example.com/ca.crl";
+	private static final String OCSP_URL 	= "http://ocsp.example.com";
+	private static final byte[] DATA 		= "revocation data".getBytes();
+
+	// the data declares a nextUpdate one hour later
+	private static final NextUpdateReader VALID = new NextUpdateReader() {
+		@Override
+		public Date getNextUpdate ( byte[] encoded ) {
+			return new Date ( System.currentTimeMillis() + 60 * 60 * 1000 );
+		}
+	};
+
+	// the data declares no nextUpdate, it is kept for the minTtl only
+	private static final NextUpdateReader NO_NEXT_UPDATE = new NextUpdateReader() {
+		@Override
+		public Date getNextUpdate ( byte[] encoded ) {
+			return null;
+		}
+	};
+
+	private StubRevocationTransport stub;
+	private RevocationCache cache;
+	private File storeDirectory;
+
+	@Before
+	public void setUp() throws Exception {
+		stub = new StubRevocationTransport();
+		stub.register ( URL, DATA );
+		cache = newCache();
+		storeDirectory = File.createTempFile ( "skds", ".rev" );
+		storeDirectory.delete();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory ( storeDirectory );
+	}
+
+
+
+	// -----
+	// --- Lookup
+	// -
+
+	@Test
+	public void fetchesOnceUntilTheNextUpdate() throws Exception {
+		assertArrayEquals ( DATA, cache.get("crl:" + URL, URL, null, VALID) );
+		assertArrayEquals ( DATA, cache.get("crl:" + URL, URL, null, VALID) );
+		assertEquals ( 1, stub.getRequests() );
+		assertEquals ( 1, cache.getFetches() );
+		assertEquals ( 1, cache.getHits() );
+	}
+
+	@Test
+	public void refetchesTheExpiredData() throws Exception {
+		cache.setMinTtl ( 0 );
+		cache.get ( "crl:" + URL, URL, null, NO_NEXT_UPDATE );
+		cache.get ( "crl:" + URL, URL, null, NO_NEXT_UPDATE );
+		assertEquals ( 2, stub.getRequests() );
+		assertEquals ( 0, cache.getHits() );
+	}
+
+	@Test
+	public void doesNotCacheTheInvalidData() throws Exception {
+		for ( int i = 0; i < 2; i++ ) {
+			try {
+				cache.getCRL ( URL );
+				fail ( "IOException expected" );
+			} catch(IOException e) {
+				assertTrue ( e.getMessage().contains("invalid CRL") );
+			}
+		}
+		assertEquals ( 2, stub.getRequests() );
+		assertEquals ( 0, cache.size() );
+	}
+
+	@Test
+	public void cachesTheOcspResponsesPerCertificate() throws Exception {
+		final byte[][] received = new byte[1][];
+		stub.register ( OCSP_URL, new StubRevocationTransport.Responder() {
+			@Override
+			public byte[] respond ( byte[] ocspRequest ) {
+				received[0] = ocspRequest;
+				return DATA;
+			}
+		} );
+		byte[] request = new byte[] { 1 };
+		assertArrayEquals ( DATA, cache.getOCSPResponse(OCSP_URL, "issuer:1", request, VALID) );
+		assertArrayEquals ( request, received[0] );
+		// the same certificate by another request, then another certificate
+		cache.getOCSPResponse ( OCSP_URL, "issuer:1", new byte[] { 2 }, VALID );
+		assertEquals ( 1, stub.getRequests() );
+		cache.getOCSPResponse ( OCSP_URL, "issuer:2", new byte[] { 3 }, VALID );
+		assertEquals ( 2, stub.getRequests() );
+	}
+
+
+
+	// -----
+	// --- Expired data
+	// -
+
+	@Test
+	public void refusesTheExpiredDataIfTheTransportFails() throws Exception {
+		cache.setMinTtl ( 0 );
+		cache.get ( "crl:" + URL, URL, null, NO_NEXT_UPDATE );
+		stub.unregister ( URL );
+		try {
+			cache.get ( "crl:" + URL, URL, null, NO_NEXT_UPDATE );
+			fail ( "StaleRevocationDataException expected" );
+		} catch(StaleRevocationDataException e) {
+			assertTrue ( e.getExpiration().getTime() <= System.currentTimeMillis() );
+			assertTrue ( e.getCause().getMessage().contains("no responder") );
+		}
+		assertEquals ( 1, cache.getStaleLookups() );
+	}
+
+	@Test
+	public void servesTheValidDataOnlyOffline() throws Exception {
+		cache.get ( "crl:" + URL, URL, null, VALID );
+		cache.setMinTtl ( 0 );
+		cache.get ( "ocsp:" + OCSP_URL, URL, null, NO_NEXT_UPDATE );
+		cache.setOffline ( true );
+
+		assertArrayEquals ( DATA, cache.get("crl:" + URL, URL, null, VALID) );
+		try {
+			cache.get ( "ocsp:" + OCSP_URL, URL, null, NO_NEXT_UPDATE );
+			fail ( "StaleRevocationDataException expected" );
+		} catch(StaleRevocationDataException e) {
+			assertEquals ( 1, cache.getStaleLookups() );
+		}
+		try {
+			cache.get ( "unknown", URL, null, VALID );
+			fail ( "IOException expected" );
+		} catch(IOException e) {
+			assertFalse ( e instanceof StaleRevocationDataException );
+		}
+		assertEquals ( 2, stub.getRequests() );
+	}
+
+
+
+	// -----
+	// --- Persistent store
+	// -
+
+	@Test
+	public void keepsTheEntriesInMemoryByDefault() {
+		assertNull ( System.getProperty(RevocationCache.STORE_PROPERTY) );
+		assertNull ( new RevocationCache().getStoreDirectory() );
+	}
+
+	@Test
+	public void loadsTheEntriesPersistedByAnotherInstance() throws Exception {
+		cache.setStoreDirectory ( storeDirectory );
+		cache.get ( "crl:" + URL, URL, null, VALID );
+		stub.unregister ( URL );
+
+		RevocationCache restarted = newCache();
+		restarted.setStoreDirectory ( storeDirectory );
+		assertArrayEquals ( DATA, restarted.get("crl:" + URL, URL, null, VALID) );
+		assertEquals ( 1, restarted.getStoreHits() );
+		assertEquals ( 0, restarted.getFetches() );
+	}
+
+
+
+	// -----
+	// --- Sharing among threads
+	// -
+
+	@Test
+	public void concurrentLookupsShareASingleFetch() throws Exception {
+		final CountDownLatch fetching = new CountDownLatch ( 1 );
+		final CountDownLatch release = new CountDownLatch ( 1 );
+		stub.register ( URL, new StubRevocationTransport.Responder() {
+			@Override
+			public byte[] respond ( byte[] ocspRequest ) throws IOException {
+				fetching.countDown();
+				try {
+					release.await();
+				} catch(InterruptedException e) {
+					throw new IOException(e);
+				}
+				return DATA;
+			}
+		} );
+		Callable<byte[]> lookup = new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				return cache.get ( "crl:" + URL, URL, null, VALID );
+			}
+		};
+
+		ExecutorService executor = Executors.newFixedThreadPool ( 2 );
+		try {
+			Future<byte[]> first = executor.submit ( lookup );
+			fetching.await();
+			Future<byte[]> second = executor.submit ( lookup );
+			release.countDown();
+			assertArrayEquals ( DATA, first.get() );
+			assertArrayEquals ( DATA, second.get() );
+			assertEquals ( 1, stub.getRequests() );
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+
+
+	// -----
+	// --- Utility methods
+	// -
+
+	private RevocationCache newCache() {
+		RevocationCache cache = new RevocationCache();
+		cache.setStoreDirectory ( null );
+		cache.setTransport ( stub );
+		return cache;
+	}
+}
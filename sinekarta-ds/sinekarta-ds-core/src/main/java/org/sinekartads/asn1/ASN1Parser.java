@@ -9,8 +9,6 @@ import org.bouncycastle.asn1.DERSequence;
 //import org.bouncycastle.asn1.DEREncodable;
 //import org.bouncycastle.asn1.DEROctetString;
 //import org.bouncycastle.asn1.DERSequence;
-import org.sinekartads.asn1.ASN1Selector.ASN1StructureSelector;
-import org.sinekartads.util.HexUtils;
 
 /**
  * Usage
@@ -73,8 +71,6 @@ public abstract class ASN1Parser implements Cloneable {
 		}
 	}
 	
-	static ASN1StructureSelector selector = new ASN1StructureSelector(); 
-	
 	public static ASN1FingerPrint[] locateFingerPrints(DEREncodable enc) throws ASN1ParseException {
 		ASN1Parser[] parsers  = parse(new ASN1FingerPrint(), enc);
 		ASN1FingerPrint[] result = new ASN1FingerPrint[parsers.length];
@@ -93,9 +89,9 @@ public abstract class ASN1Parser implements Cloneable {
 	}
 	
 	private static ASN1Parser[] parse(ASN1Parser parser, DEREncodable enc, boolean single) throws ASN1ParseException {
-		DEREncodable template;
-		template = ASN1Utils.readObject(HexUtils.decodeHex(parser.getHexTemplate()));		
-		DEREncodable[] matches = selector.find(enc, template);
+		// the template is decoded and compiled once, the compiled form is shared by the concurrent parsings
+		ASN1Template template = ASN1Template.compile(parser.getHexTemplate());
+		DEREncodable[] matches = template.find(enc);
 		if(ArrayUtils.isEmpty(matches)) {
 			throw new ASN1ParseException("template structure not found.");  
 		}
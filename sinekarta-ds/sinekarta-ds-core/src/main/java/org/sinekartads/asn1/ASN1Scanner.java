@@ -1,8 +1,12 @@
 package org.sinekartads.asn1;
 
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import org.bouncycastle.asn1.ASN1Boolean;
 import org.bouncycastle.asn1.ASN1Integer;
@@ -19,17 +23,21 @@ import org.bouncycastle.asn1.DERSet;
 import org.bouncycastle.asn1.DERTaggedObject;
 import org.bouncycastle.asn1.DERUTF8String;
 
+/**
+ * Depth-first visit of an ASN1 tree. The scanner holds no state: each scan carries its own
+ * arguments and controller, the same scanner can be used by concurrent scans.
+ */
 public abstract class ASN1Scanner {
 	
 	public static final String ARG_VALUE = "value";
 	public static final String ARG_LEVEL = "level";
 	public static final String ARG_CONTROLLER = "controller";
 	
-	public synchronized void scan(DEREncodable root) {
+	public void scan(DEREncodable root) {
 		scan(root, null);
 	}
 	
-	public synchronized void scan(DEREncodable root, Map<String, Object> args) {
+	public void scan(DEREncodable root, Map<String, Object> args) {
 		if(args == null) {
 			args = new HashMap<String, Object>(); 
 		}
@@ -73,10 +81,76 @@ public abstract class ASN1Scanner {
 	}
 	
 	private Map<String, Object> nextCallArgs(Map<String, Object> args) {
-		Map<String, Object> nextArgs = new HashMap<String, Object>(args);
 		int level = (Integer)args.get(ARG_LEVEL);
-		nextArgs.put(ARG_LEVEL, level+1);
-		return nextArgs;
+		return new NodeArgs(args, level+1);
+	}
+	
+	/**
+	 * Arguments of a nested node: the values put while visiting the node are kept locally, the
+	 * others are read through from the arguments of the parent node. The children see the values
+	 * of their parent and none of their siblings', as if the parent arguments were copied for 
+	 * each of them, without copying any map.
+	 */
+	private static class NodeArgs extends AbstractMap<String, Object> {
+		
+		private final Map<String, Object> parent;
+		private String[] keys = new String[4];
+		private Object[] values = new Object[4];
+		private int size;
+		
+		private NodeArgs(Map<String, Object> parent, int level) {
+			this.parent = parent;
+			put(ARG_LEVEL, level);
+		}
+		
+		private int indexOf(Object key) {
+			for(int i=0; i<size; i++) {
+				if(keys[i].equals(key)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+		
+		@Override
+		public Object get(Object key) {
+			int idx = indexOf(key);
+			return idx >= 0 ? values[idx] : parent.get(key);
+		}
+		
+		@Override
+		public boolean containsKey(Object key) {
+			return indexOf(key) >= 0 || parent.containsKey(key);
+		}
+		
+		@Override
+		public Object put(String key, Object value) {
+			int idx = indexOf(key);
+			if(idx >= 0) {
+				Object previous = values[idx];
+				values[idx] = value;
+				return previous;
+			}
+			if(size == keys.length) {
+				keys = Arrays.copyOf(keys, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+			}
+			Object previous = parent.get(key);
+			keys[size] = key;
+			values[size] = value;
+			size++;
+			return previous;
+		}
+		
+		@Override
+		public Set<Map.Entry<String, Object>> entrySet() {
+			// rarely needed, the merged view is built on demand
+			Map<String, Object> merged = new HashMap<String, Object>(parent);
+			for(int i=0; i<size; i++) {
+				merged.put(keys[i], values[i]);
+			}
+			return Collections.unmodifiableMap(merged).entrySet();
+		}
 	}
 	
 	protected void analyze(DEREncodable object, DEREncodable parent, Map<String, Object> args) {		
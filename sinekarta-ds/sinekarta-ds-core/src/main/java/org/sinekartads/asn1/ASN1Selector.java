@@ -1,18 +1,13 @@
 package org.sinekartads.asn1;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
-import org.bouncycastle.asn1.ASN1TaggedObject;
 import org.bouncycastle.asn1.DEREncodable;
-import org.bouncycastle.asn1.DERNull;
-import org.bouncycastle.asn1.DERSequence;
-import org.bouncycastle.asn1.DERSet;
 
 public abstract class ASN1Selector<Constraint> {
 	
@@ -51,51 +46,25 @@ public abstract class ASN1Selector<Constraint> {
 	public static class ASN1StructureSelector extends ASN1Selector<DEREncodable> {
 		@Override
 		protected boolean check(DEREncodable object, DEREncodable parent, Map<String, Object> args) {
-			DEREncodable template = (DEREncodable) args.get(ARG_CONSTRAINT);
-			return sameStructure(object, template);
+			// the template is compiled once per search and kept with its arguments
+			ASN1Template template = (ASN1Template) args.get(ARG_TEMPLATE);
+			if(template == null) {
+				template = ASN1Template.compile((DEREncodable) args.get(ARG_CONSTRAINT));
+				args.put(ARG_TEMPLATE, template);
+			}
+			return template.matches(object);
 		}
 		@Override
 		protected DEREncodable choose(DEREncodable object, DEREncodable parent, Map<String, Object> args) {
 			return object;
 		}
-		@SuppressWarnings({ "unchecked" })
-		private boolean sameStructure(DEREncodable current, DEREncodable template) {
-			// an empty template means to ignore the branch nested into current and accept it 
-			if(template.getClass() == DERNull.class) {
-				return true;
-			}
-			// the two items must have the same type
-			if(current.getClass() != template.getClass()) {
-				return false;
-			}
-			
-			// take the children from both the items
-			List<DEREncodable> currChildren = new ArrayList<DEREncodable>();
-			List<DEREncodable> tempChildren = new ArrayList<DEREncodable>();
-			if(current instanceof ASN1TaggedObject) {
-				currChildren.add( ((ASN1TaggedObject)current).getObject() );
-				tempChildren.add( ((ASN1TaggedObject)template).getObject() );
-			} else if(current instanceof DERSequence) {
-				currChildren = Collections.list(((DERSequence)current).getObjects());
-				tempChildren = Collections.list(((DERSequence)template).getObjects());
-			} else if(current instanceof DERSet) {
-				currChildren = Collections.list(((DERSet)current).getObjects());
-				tempChildren = Collections.list(((DERSet)template).getObjects());
-			}
-			
-			// expected the same number of children
-			if(currChildren.size() != tempChildren.size()) {
-				return false;
-			}
-			// recursion on the children, they must all be successful
-			for(int i=0; i<currChildren.size(); i++) {
-				if( sameStructure( currChildren.get(i), tempChildren.get(i) ) == false ) {
-					return false;
-				}
-			}
-			
-			// the branch nested into the current node is isomorph to the template 
-			return true;
+		@Override
+		public DEREncodable get(DEREncodable root, DEREncodable template) {
+			return ASN1Template.compile(template).findFirst(root);
+		}
+		@Override
+		public DEREncodable[] find(DEREncodable root, DEREncodable template) {
+			return ASN1Template.compile(template).find(root);
 		}
 	}
 	
@@ -117,6 +86,7 @@ public abstract class ASN1Selector<Constraint> {
 	public static final String ARG_CONSTRAINT = "constraint";
 	public static final String ARG_MULTIPLE = "multiple"; 
 	public static final String ARG_RESULT = "matches";
+	public static final String ARG_TEMPLATE = "template";
 	
 	public static DEREncodable getByOidLabel(DEREncodable rootEnc, ASN1ObjectIdentifier oid) {
 		return new ASN1OidLabelSelector().get(rootEnc, oid);
@@ -134,7 +104,7 @@ public abstract class ASN1Selector<Constraint> {
 		scanner = new ASN1ScannerImpl();
 	}
 
-	public synchronized DEREncodable get(DEREncodable root, Constraint constraint) {
+	public DEREncodable get(DEREncodable root, Constraint constraint) {
 		List<DEREncodable> matches = search(root, constraint, false);
 		DEREncodable result = null; 
 		if(matches.size() > 0) {
@@ -0,0 +1,197 @@
+package org.sinekartads.asn1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.bouncycastle.asn1.ASN1TaggedObject;
+import org.bouncycastle.asn1.DEREncodable;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERSet;
+import org.sinekartads.asn1.ASN1Selector.ASN1StructureSelector;
+
+/**
+ * Compiled form of a structure template, as matched by the {@link ASN1StructureSelector}:
+ * each node of the template is reduced to the expected type and to the nodes of its children,
+ * a DERNull accepting any branch.
+ * The compiled templates are immutable and can be shared by any number of concurrent searches,
+ * the ones compiled from their hex encoding are cached.
+ */
+public class ASN1Template {
+
+	private static final ConcurrentMap<String, ASN1Template> compiledTemplates = new ConcurrentHashMap<String, ASN1Template>();
+
+	/**
+	 * @return the compiled template, decoded and compiled only at the first request
+	 */
+	public static ASN1Template compile(String hexTemplate) {
+		ASN1Template template = compiledTemplates.get(hexTemplate);
+		if(template == null) {
+			template = compile(ASN1Utils.readObject(hexTemplate));
+			compiledTemplates.putIfAbsent(hexTemplate, template);
+		}
+		return template;
+	}
+
+	public static ASN1Template compile(DEREncodable template) {
+		return new ASN1Template(compileNode(template));
+	}
+
+	private static Node compileNode(DEREncodable template) {
+		// an empty template means to ignore the branch and accept it
+		if(template.getClass() == DERNull.class) {
+			return Node.ANY;
+		}
+
+		Node[] children;
+		if(template instanceof ASN1TaggedObject) {
+			children = new Node[] { compileNode(((ASN1TaggedObject)template).getObject()) };
+		} else if(template instanceof DERSequence) {
+			DERSequence seq = (DERSequence)template;
+			children = new Node[seq.size()];
+			for(int i=0; i<children.length; i++) {
+				children[i] = compileNode(seq.getObjectAt(i));
+			}
+		} else if(template instanceof DERSet) {
+			DERSet set = (DERSet)template;
+			children = new Node[set.size()];
+			for(int i=0; i<children.length; i++) {
+				children[i] = compileNode(set.getObjectAt(i));
+			}
+		} else {
+			children = null;
+		}
+		return new Node(template.getClass(), children);
+	}
+
+	private static class Node {
+		static final Node ANY = new Node(null, null);
+
+		// null for the nodes accepting any branch
+		final Class<?> type;
+		// null for the leaf nodes
+		final Node[] children;
+
+		Node(Class<?> type, Node[] children) {
+			this.type = type;
+			this.children = children;
+		}
+	}
+
+
+
+	private final Node root;
+
+	private ASN1Template(Node root) {
+		this.root = root;
+	}
+
+
+
+	// -----
+	// --- Matching
+	// -
+
+	/**
+	 * @return true if the branch nested into the object is isomorph to the template
+	 */
+	public boolean matches(DEREncodable object) {
+		return matches(root, object);
+	}
+
+	private static boolean matches(Node node, DEREncodable current) {
+		if(node.type == null) {
+			return true;
+		}
+		// the two items must have the same type
+		if(current.getClass() != node.type) {
+			return false;
+		}
+		if(node.children == null) {
+			return true;
+		}
+
+		// expected the same number of children, they must all match
+		if(current instanceof ASN1TaggedObject) {
+			return matches(node.children[0], ((ASN1TaggedObject)current).getObject());
+		} else if(current instanceof DERSequence) {
+			DERSequence seq = (DERSequence)current;
+			if(seq.size() != node.children.length) {
+				return false;
+			}
+			for(int i=0; i<node.children.length; i++) {
+				if(matches(node.children[i], seq.getObjectAt(i)) == false) {
+					return false;
+				}
+			}
+		} else {
+			DERSet set = (DERSet)current;
+			if(set.size() != node.children.length) {
+				return false;
+			}
+			for(int i=0; i<node.children.length; i++) {
+				if(matches(node.children[i], set.getObjectAt(i)) == false) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+
+
+	// -----
+	// --- Search
+	// -
+
+	/**
+	 * @return all the branches of the tree matching with the template, in the same depth-first order
+	 * of the {@link ASN1Scanner}
+	 */
+	public DEREncodable[] find(DEREncodable root) {
+		List<DEREncodable> matches = new ArrayList<DEREncodable>();
+		search(root, matches, true);
+		return matches.toArray(new DEREncodable[matches.size()]);
+	}
+
+	/**
+	 * @return the first branch of the tree matching with the template, null if none
+	 */
+	public DEREncodable findFirst(DEREncodable root) {
+		List<DEREncodable> matches = new ArrayList<DEREncodable>(1);
+		search(root, matches, false);
+		return matches.isEmpty() ? null : matches.get(0);
+	}
+
+	/**
+	 * @return false if the search must be interrupted
+	 */
+	private boolean search(DEREncodable object, List<DEREncodable> matches, boolean multiple) {
+		if(matches(root, object)) {
+			matches.add(object);
+			if(multiple == false) {
+				return false;
+			}
+		}
+		if(object instanceof ASN1TaggedObject) {
+			return search(((ASN1TaggedObject)object).getObject(), matches, multiple);
+		} else if(object instanceof DERSequence) {
+			DERSequence seq = (DERSequence)object;
+			for(int i=0; i<seq.size(); i++) {
+				if(search(seq.getObjectAt(i), matches, multiple) == false) {
+					return false;
+				}
+			}
+		} else if(object instanceof DERSet) {
+			DERSet set = (DERSet)object;
+			for(int i=0; i<set.size(); i++) {
+				if(search(set.getObjectAt(i), matches, multiple) == false) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+}
@@ -163,7 +163,8 @@ public abstract class ASN1Writer extends Writer {
 		this.valuePrefix = valuePrefix;
 	}
 			
-	public void write(DEREncodable object) throws IOException {
+	// the scanner is reentrant, the lock keeps the output of concurrent writes apart
+	public synchronized void write(DEREncodable object) throws IOException {
 		try {
 			scanner.scan(object);
 		} catch(RuntimeException e) {
@@ -176,7 +177,7 @@ public abstract class ASN1Writer extends Writer {
 	}
 
 	
-	public void write(byte[] encoded) throws IOException {
+	public synchronized void write(byte[] encoded) throws IOException {
 		try {
 			scanner.scan(ASN1Utils.readObject(encoded));
 		} catch(RuntimeException e) {
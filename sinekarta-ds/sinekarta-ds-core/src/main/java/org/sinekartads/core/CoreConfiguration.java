@@ -21,8 +21,12 @@ import java.security.Security;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.sinekartads.conf.SystemConfiguration;
+import org.sinekartads.core.pdf.CachedRevocationDataSource;
 import org.sinekartads.model.oid.DigestAlgorithm;
 import org.sinekartads.model.oid.SignatureAlgorithm;
+import org.sinekartads.util.revocation.RevocationCache;
+
+import com.itextpdf.text.pdf.security.RevocationDataSource;
 
 public class CoreConfiguration extends SystemConfiguration {
 	
@@ -47,6 +51,12 @@ public class CoreConfiguration extends SystemConfiguration {
 	public static final String DIGEST_ALGORITHM		= "DIGEST_ALGORITHM";
 	public static final String TEMPORARY_FOLDER		= "TEMPORARY_FOLDER";
 	
+	/**
+	 * System property enabling the check of the PDF signing certificates against their CRL,
+	 * downloaded by the verification itself if not cached yet
+	 */
+	public static final String PDF_REVOCATION_CHECK	= "sinekartads.verify.pdf.crl";
+	
 	
 	
 	// -----
@@ -62,9 +72,18 @@ public class CoreConfiguration extends SystemConfiguration {
 		if ( !temporaryFolder.exists() ) {
 			temporaryFolder.mkdirs();
 		}
+		
+		// share the revocation data among the verifications, persisted under the working folder if not set otherwise
+		revocationFolder = new File ( temporaryFolder, "revocation" );
+		RevocationCache revocationCache = RevocationCache.getInstance();
+		if ( System.getProperty(RevocationCache.STORE_PROPERTY) == null ) {
+			revocationCache.setStoreDirectory ( revocationFolder );
+		}
+		RevocationDataSource.setShared ( new CachedRevocationDataSource(revocationCache) );
 	}
 	
 	File temporaryFolder;
+	File revocationFolder;
 	
 	@Override
 	protected void loadProperties() {
@@ -92,5 +111,13 @@ public class CoreConfiguration extends SystemConfiguration {
 	public File getTemporaryFolder() {
 		return temporaryFolder;
 	}
+	
+	public File getRevocationFolder() {
+		return revocationFolder;
+	}
+	
+	public boolean isPdfRevocationCheck() {
+		return Boolean.getBoolean ( PDF_REVOCATION_CHECK );
+	}
 
 }
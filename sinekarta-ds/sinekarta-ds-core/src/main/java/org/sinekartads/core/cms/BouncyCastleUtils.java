@@ -1,5 +1,7 @@
 package org.sinekartads.core.cms;
 
+import java.io.IOException;
+import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 
@@ -9,6 +11,7 @@ import org.bouncycastle.cms.SignerInformationVerifier;
 import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.sinekartads.core.CoreConfiguration;
+import org.sinekartads.util.x509.X509CertificateCache;
 
 /**
  * Convenience suite of BouncyCastle utility methods.
@@ -34,6 +37,29 @@ public class BouncyCastleUtils {
 		return converter.getCertificate(certHolder);
 	}
 	
+	/**
+	 * Return the X509CertificateHolder of the given certificate, created once per certificate
+	 * and kept by the X509CertificateCache
+	 * @param certificate
+	 * @return
+	 * @throws CertificateEncodingException
+	 */
+	public static X509CertificateHolder certHolderFor(X509Certificate certificate) 
+			throws CertificateEncodingException {
+		
+		X509CertificateCache.Entry entry = X509CertificateCache.getInstance().get(certificate);
+		X509CertificateHolder certHolder = entry.getAttachment(X509CertificateHolder.class);
+		if ( certHolder == null ) {
+			try {
+				certHolder = entry.attach ( X509CertificateHolder.class, 
+						new X509CertificateHolder(entry.getEncoded()) );
+			} catch(IOException e) {
+				throw new CertificateEncodingException("unable to parse the certificate", e);
+			}
+		}
+		return certHolder;
+	}
+	
 	/**
 	 * Return a SignerInformationVerifier based on the given X509CertificateHolder
 	 * @param certHolder
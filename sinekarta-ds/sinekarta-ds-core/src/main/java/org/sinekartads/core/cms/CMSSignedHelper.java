@@ -39,6 +39,7 @@ import org.bouncycastle.x509.NoSuchStoreException;
 import org.bouncycastle.x509.X509CollectionStoreParameters;
 import org.bouncycastle.x509.X509Store;
 import org.bouncycastle.x509.X509V2AttributeCertificate;
+import org.sinekartads.util.CryptoEnginePool;
 
 //--- SKDSFIX
 // class imported into the project since involved during the signature process
@@ -210,14 +211,8 @@ class CMSSignedHelper
         Provider provider)
         throws NoSuchAlgorithmException
     {
-        if (provider != null)
-        {
-            return MessageDigest.getInstance(algorithm, provider);
-        }
-        else
-        {
-            return MessageDigest.getInstance(algorithm);
-        }
+        // the provider serving the algorithm is resolved once, rather than at each instance
+        return CryptoEnginePool.getInstance().newDigester(algorithm, provider);
     }
 
     Signature getSignatureInstance(
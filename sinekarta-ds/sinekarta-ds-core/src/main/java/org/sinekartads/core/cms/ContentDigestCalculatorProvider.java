@@ -0,0 +1,118 @@
+package org.sinekartads.core.cms;
+
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.operator.DigestCalculator;
+import org.bouncycastle.operator.DigestCalculatorProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.sinekartads.model.oid.DigestAlgorithm;
+import org.sinekartads.util.CryptoEnginePool;
+
+/**
+ * DigestCalculatorProvider sharing a single calculator for each digest algorithm.
+ * Given to a CMSSignedDataParser, the content is streamed once through each of the algorithms
+ * declared by the envelope whatever the number of signers; the resulting digests remain available
+ * after the parsing.
+ * The engines are taken from the {@link CryptoEnginePool} and given back once the digests are evaluated.
+ * <p>
+ * An instance serves a single content, it is not meant to be shared among threads.
+ */
+public class ContentDigestCalculatorProvider implements DigestCalculatorProvider {
+
+	private final Map<DigestAlgorithm, ContentDigestCalculator> calculators =
+			new LinkedHashMap<DigestAlgorithm, ContentDigestCalculator>();
+
+	@Override
+	public DigestCalculator get ( AlgorithmIdentifier digestAlgorithmIdentifier ) throws OperatorCreationException {
+		DigestAlgorithm digestAlgorithm = DigestAlgorithm.lookup ( digestAlgorithmIdentifier.getAlgorithm() );
+		if ( digestAlgorithm == null ) {
+			throw new OperatorCreationException(String.format ( "unsupported digest algorithm - %s",
+					digestAlgorithmIdentifier.getAlgorithm().getId() ));
+		}
+		ContentDigestCalculator calculator = calculators.get ( digestAlgorithm );
+		if ( calculator == null ) {
+			try {
+				calculator = new ContentDigestCalculator ( digestAlgorithmIdentifier,
+						CryptoEnginePool.getInstance().acquireDigester(digestAlgorithm) );
+			} catch(NoSuchAlgorithmException e) {
+				throw new OperatorCreationException(e.getMessage(), e);
+			}
+			calculators.put ( digestAlgorithm, calculator );
+		}
+		return calculator;
+	}
+
+	/**
+	 * @return the digest of the content evaluated with the given algorithm, null if not evaluated
+	 */
+	public byte[] getDigest ( DigestAlgorithm digestAlgorithm ) {
+		ContentDigestCalculator calculator = calculators.get ( digestAlgorithm );
+		return calculator != null ? calculator.getDigest() : null;
+	}
+
+	/**
+	 * @return the digests of the content by algorithm, to be called once the whole content has been read
+	 */
+	public Map<DigestAlgorithm, byte[]> getDigests() {
+		Map<DigestAlgorithm, byte[]> digests = new LinkedHashMap<DigestAlgorithm, byte[]>();
+		for ( Map.Entry<DigestAlgorithm, ContentDigestCalculator> entry : calculators.entrySet() ) {
+			digests.put ( entry.getKey(), entry.getValue().getDigest() );
+		}
+		return Collections.unmodifiableMap ( digests );
+	}
+
+
+
+	/**
+	 * Calculator evaluating its digest only once: the following calls, by the parser for each signer
+	 * or by the caller, return the same value.
+	 */
+	private static class ContentDigestCalculator implements DigestCalculator {
+
+		private final AlgorithmIdentifier algorithmIdentifier;
+		private MessageDigest digester;
+		private byte[] digest;
+
+		private final OutputStream digestOs = new OutputStream() {
+			@Override
+			public void write ( int b ) {
+				digester.update ( (byte)b );
+			}
+			@Override
+			public void write ( byte[] b, int off, int len ) {
+				digester.update ( b, off, len );
+			}
+		};
+
+		ContentDigestCalculator ( AlgorithmIdentifier algorithmIdentifier, MessageDigest digester ) {
+			this.algorithmIdentifier = algorithmIdentifier;
+			this.digester = digester;
+		}
+
+		@Override
+		public AlgorithmIdentifier getAlgorithmIdentifier() {
+			return algorithmIdentifier;
+		}
+
+		@Override
+		public OutputStream getOutputStream() {
+			return digestOs;
+		}
+
+		@Override
+		public byte[] getDigest() {
+			if ( digest == null ) {
+				digest = digester.digest();
+				CryptoEnginePool.getInstance().release ( digester );
+				digester = null;
+			}
+			return digest.clone();
+		}
+	}
+}
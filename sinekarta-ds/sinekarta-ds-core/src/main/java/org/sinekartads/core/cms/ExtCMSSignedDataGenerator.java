@@ -1,18 +1,21 @@
 package org.sinekartads.core.cms;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.security.MessageDigest;
+import java.io.OutputStream;
 import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
-import org.apache.commons.io.IOUtils;
+import org.bouncycastle.asn1.ASN1Encodable;
 import org.bouncycastle.asn1.ASN1EncodableVector;
 import org.bouncycastle.asn1.ASN1Integer;
 import org.bouncycastle.asn1.DEROctetString;
@@ -21,21 +24,25 @@ import org.bouncycastle.asn1.DERSet;
 import org.bouncycastle.asn1.DERTaggedObject;
 import org.bouncycastle.asn1.cms.Attribute;
 import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.cms.CMSObjectIdentifiers;
 import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
 import org.bouncycastle.asn1.x509.X509CertificateStructure;
-import org.bouncycastle.cert.X509CertificateHolder;
 import org.bouncycastle.cert.jcajce.JcaCertStore;
 import org.bouncycastle.cms.CMSAttributeTableGenerator;
 import org.bouncycastle.cms.CMSException;
 import org.bouncycastle.cms.CMSProcessable;
 import org.bouncycastle.cms.CMSSignedData;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.cms.CMSSignedDataStreamGenerator;
 import org.bouncycastle.operator.ContentSigner;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.bc.BcDigestCalculatorProvider;
 import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 import org.bouncycastle.util.Store;
+import org.bouncycastle.util.io.Streams;
 import org.sinekartads.model.domain.SignDisposition;
+import org.sinekartads.model.oid.DigestAlgorithm;
+import org.sinekartads.util.CryptoEnginePool;
+import org.sinekartads.util.x509.X509CertificateCache;
 
 public class ExtCMSSignedDataGenerator {
 	
@@ -47,7 +54,7 @@ public class ExtCMSSignedDataGenerator {
 		if (null != signingCertificateChain) {
 			
 			// take the certification list
-			Store certStore = new JcaCertStore(Arrays.asList(signingCertificateChain));
+			certStore = new JcaCertStore(Arrays.asList(signingCertificateChain));
 			generator.addCertificates(certStore);
 
 			// init a contentSigner on a fake-key and the certificates
@@ -59,33 +66,11 @@ public class ExtCMSSignedDataGenerator {
 				// hide the implementation-dependent exception
 				throw new CertificateEncodingException("Unable to obtain the certificate", e);
 			}
-			MessageDigest md = null;
-			InputStream is = null;
-			byte[] encoded;
+			X509CertificateCache.Entry certEntry;
 			for (X509Certificate cert : signingCertificateChain) {
-				encoded = cert.getEncoded();
-				try {
-					is = new ByteArrayInputStream(encoded);
-					md =  MessageDigest.getInstance("SHA256", BouncyCastleProvider.PROVIDER_NAME);
-					byte[] buffer = new byte[1024];
-					int readLen = is.read(buffer);
-					while (readLen != -1) {
-						md.update(buffer, 0, readLen);
-						readLen = is.read(buffer);
-					}
-				} catch(NoSuchAlgorithmException e) {
-					// never thrown, SHA256 programmatically set
-					throw new RuntimeException(e);
-				} catch(NoSuchProviderException e) {
-					// never thrown, BC programmatically set
-					throw new RuntimeException(e);
-				} catch(IOException e) {
-					// never thrown, byte array I/O
-					throw new RuntimeException(e);
-				} finally {
-					IOUtils.closeQuietly(is);
-				}
-				byte[] certHash = md.digest();
+				// the SHA-256 of the certificate encoding is computed once and kept by the cache
+				certEntry = X509CertificateCache.getInstance().get(cert);
+				byte[] certHash = certEntry.getSha256();
 				
 				ASN1Integer issuerInteger;
 				DERSequence issuerSequence;
@@ -151,15 +136,14 @@ public class ExtCMSSignedDataGenerator {
 			
 				sifGen = null;
 				try {
-					sifGen = genBuild.build(sigGen, new X509CertificateHolder(encoded));
+					sifGen = genBuild.build(sigGen, BouncyCastleUtils.certHolderFor(cert));
 				} catch (OperatorCreationException e) {
 					// hide the implementation-dependent exception
 					throw new CertificateEncodingException("Unable to obtain the certificate", e);
-				} catch(IOException e) {
-					// never thrown, encoded has to be valid 
 				}
 
 				generator.addSignerInfoGenerator(sifGen);
+				signerGens.add(sifGen);
 			}
 		}
 	}
@@ -186,6 +170,48 @@ public class ExtCMSSignedDataGenerator {
 		return SHA256WithRSAProxySignature.getDigestValue();
 	}
 	
+	/**
+	 * Digest-only alternative to {@link #evaluateDigest(CMSProcessable, SignDisposition.CMS)}: the content
+	 * is streamed once through SHA-256 and only the signed attributes are generated, the envelope is not built.
+	 * The result is the same digest that the CMSProvider would intercept.
+	 * @param contentIs the content to be signed, read to its end and not closed
+	 */
+	public byte[] evaluateDigest(InputStream contentIs) throws CMSException, IOException {
+		try {
+			return evaluateDigest(CryptoEnginePool.getInstance().digest(DigestAlgorithm.SHA256, contentIs));
+		} catch (NoSuchAlgorithmException e) {
+			// never thrown, SHA256 is supported by every provider
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * @param contentDigest the SHA-256 of the content to be signed
+	 * @return the SHA-256 of the DER encoding of the signed attributes, as the ExtSignerInfoGenerator 
+	 * would pass it to the signature engine
+	 */
+	public byte[] evaluateDigest(byte[] contentDigest) throws CMSException {
+		sifGen.setReason(reason);
+		sifGen.setLocation(location);
+		
+		Map<String, Object> parameters = new HashMap<String, Object>();
+		parameters.put(CMSAttributeTableGenerator.CONTENT_TYPE, CMSObjectIdentifiers.data);
+		parameters.put(CMSAttributeTableGenerator.DIGEST_ALGORITHM_IDENTIFIER, sifGen.getDigestAlgorithm());
+		parameters.put(CMSAttributeTableGenerator.DIGEST, contentDigest.clone());
+		AttributeTable signed = sifGen.getSignedAttributeTableGenerator().getAttributes(
+				Collections.unmodifiableMap(parameters));
+		signingTime = sifGen.getSigningTime();
+		
+		try {
+			byte[] signedAttrEnc = new DERSet(signed.toASN1EncodableVector()).getEncoded(ASN1Encodable.DER);
+			return CryptoEnginePool.getInstance().digest(DigestAlgorithm.SHA256, signedAttrEnc);
+		} catch (IOException e) {
+			throw new CMSException("encoding error.", e);
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
 	@SuppressWarnings("deprecation")
 	public CMSSignedData generateSignedData(CMSProcessable content, byte[] digitalSignature, SignDisposition.CMS disposition) throws CMSException {
 		boolean encapsulate;
@@ -211,7 +237,38 @@ public class ExtCMSSignedDataGenerator {
 		return signedData;
 	}
 	
+	/**
+	 * Streaming alternative to {@link #generateSignedData(CMSProcessable, byte[], SignDisposition.CMS)}:
+	 * the envelope is written to signOs while the content is read, the content is never held in memory.
+	 * @param contentIs the signed content, read to its end and not closed
+	 * @param signOs the stream receiving the BER encoded signedData, not closed
+	 */
+	public void generateSignedData(InputStream contentIs, byte[] digitalSignature, SignDisposition.CMS disposition, 
+			OutputStream signOs) throws CMSException, IOException {
+		
+		boolean encapsulate = disposition != SignDisposition.CMS.DETACHED;
+		
+		CMSSignedDataStreamGenerator streamGenerator = new CMSSignedDataStreamGenerator();
+		streamGenerator.addCertificates(certStore);
+		for (ExtSignerInfoGenerator signerGen : signerGens) {
+			streamGenerator.addSignerInfoGenerator(signerGen);
+		}
+		
+		SHA256WithRSAProxySignature.reset();
+		SHA256WithRSAProxySignature.setSignatureValue(digitalSignature);
+		sifGen.setSigningTime(signingTime);
+		sifGen.setReason(reason);
+		sifGen.setLocation(location);
+		
+		OutputStream contentOs = streamGenerator.open(signOs, encapsulate);
+		Streams.pipeAll(contentIs, contentOs);
+		// the signerInfos are generated and written at the close, signOs is left open
+		contentOs.close();
+	}
+	
 	private ExtSignerInfoGenerator sifGen = null;
+	private final List<ExtSignerInfoGenerator> signerGens = new ArrayList<ExtSignerInfoGenerator>();
+	private Store certStore;
     private Date signingTime;
     private String reason;
     private String location;
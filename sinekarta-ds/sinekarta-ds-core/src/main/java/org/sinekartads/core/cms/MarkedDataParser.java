@@ -0,0 +1,133 @@
+package org.sinekartads.core.cms;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bouncycastle.asn1.ASN1OctetStringParser;
+import org.bouncycastle.asn1.ASN1SequenceParser;
+import org.bouncycastle.asn1.ASN1StreamParser;
+import org.bouncycastle.asn1.ASN1TaggedObjectParser;
+import org.bouncycastle.asn1.DEREncodable;
+import org.bouncycastle.asn1.DERInteger;
+import org.bouncycastle.asn1.DERObjectIdentifier;
+import org.bouncycastle.asn1.DERTags;
+import org.bouncycastle.asn1.cms.ContentInfo;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.tsp.TSPException;
+import org.bouncycastle.tsp.TimeStampToken;
+import org.bouncycastle.util.io.Streams;
+import org.sinekartads.asn1.ASN1Parser.ASN1ParseException;
+import org.sinekartads.model.oid.SinekartaDsObjectIdentifiers;
+
+/**
+ * Streaming reader of the *.tsd files, the DIKE format of {@link MarkedData}.
+ * The header is parsed at the construction, then the marked content (usually a *.p7m) is
+ * exposed as an InputStream read straight from the source; the timeStamp tokens follow the content
+ * into the envelope and are parsed when requested, skipping the content not read yet.
+ * Neither the content nor the envelope are ever loaded in memory.
+ * <p>
+ * Both the DER and the indefinite-length BER encodings are supported.
+ */
+public class MarkedDataParser {
+
+	/**
+	 * Check whether an envelope starts as a DIKE envelope, reading its content type only.
+	 * @param head the first bytes of the envelope, the ones following the content type are not needed
+	 * @param length the number of bytes available into the head
+	 */
+	public static boolean isMarkedData ( byte[] head, int length ) {
+		try {
+			// the lengths of the envelope go beyond the head, they are not checked against it
+			DEREncodable contentInfo = new ASN1StreamParser(new ByteArrayInputStream(head, 0, length), Integer.MAX_VALUE).readObject();
+			if ( !(contentInfo instanceof ASN1SequenceParser) )						return false;
+			DEREncodable contentType = ((ASN1SequenceParser) contentInfo).readObject();
+			return contentType instanceof DERObjectIdentifier 
+					&& SinekartaDsObjectIdentifiers.cnt_timestampedData.equals(((DERObjectIdentifier) contentType).getId());
+		} catch(IOException | RuntimeException e) {
+			return false;
+		}
+	}
+
+	private final ASN1SequenceParser body;
+	private final int version;
+	private final InputStream markedContentIs;
+	private TimeStampToken[] tsTokens;
+
+	/**
+	 * @param is the *.tsd envelope, it is read while the content is consumed and never closed
+	 * @throws ASN1ParseException if the stream doesn't start with a DIKE envelope
+	 */
+	public MarkedDataParser ( InputStream is ) throws ASN1ParseException, IOException {
+		try {
+			// contentInfo: timestampedData oid, [0] body
+			ASN1SequenceParser contentInfo = (ASN1SequenceParser) new ASN1StreamParser(is).readObject();
+			if ( contentInfo == null ) {
+				throw new ASN1ParseException("unrecognized markedData pattern");
+			}
+			DERObjectIdentifier contentType = (DERObjectIdentifier) contentInfo.readObject();
+			if ( !SinekartaDsObjectIdentifiers.cnt_timestampedData.equals(contentType.getId()) ) {
+				throw new ASN1ParseException("unrecognized markedData pattern");
+			}
+			ASN1TaggedObjectParser tagged = (ASN1TaggedObjectParser) contentInfo.readObject();
+
+			// body: version, markedContent, [0] timeStamp evidence
+			body = (ASN1SequenceParser) tagged.getObjectParser ( DERTags.SEQUENCE, true );
+			version = ((DERInteger) body.readObject()).getValue().intValue();
+			markedContentIs = ((ASN1OctetStringParser) body.readObject()).getOctetStream();
+		} catch(ClassCastException e) {
+			throw new ASN1ParseException("unrecognized markedData pattern", e);
+		}
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the marked content, to be read before the timeStamp tokens
+	 */
+	public InputStream getMarkedContent() {
+		return markedContentIs;
+	}
+
+	/**
+	 * @return the first timeStamp token applied to the marked content
+	 */
+	public TimeStampToken getRawTimeStampToken() throws ASN1ParseException, IOException {
+		return getRawTimeStampTokens()[0];
+	}
+
+	/**
+	 * Parse the timeStamp evidence following the content, the part of the content not read yet is skipped.
+	 * @return the timeStamp tokens applied to the marked content
+	 */
+	public TimeStampToken[] getRawTimeStampTokens() throws ASN1ParseException, IOException {
+		if ( tsTokens == null ) {
+			Streams.drain ( markedContentIs );
+			List<TimeStampToken> tokens = new ArrayList<TimeStampToken>();
+			try {
+				ASN1TaggedObjectParser evidence = (ASN1TaggedObjectParser) body.readObject();
+				if ( evidence == null ) {
+					throw new ASN1ParseException("signedData not found");
+				}
+				ASN1SequenceParser tokenSeq = (ASN1SequenceParser) evidence.getObjectParser ( DERTags.SEQUENCE, true );
+				DEREncodable tokenEnc;
+				while ( (tokenEnc = tokenSeq.readObject()) != null ) {
+					ContentInfo tokenInfo = ContentInfo.getInstance ( tokenEnc.getDERObject() );
+					tokens.add ( new TimeStampToken(new CMSSignedData(tokenInfo)) );
+				}
+			} catch(ClassCastException | IllegalArgumentException | TSPException | CMSException e) {
+				throw new ASN1ParseException("signedData not found", e);
+			}
+			if ( tokens.isEmpty() ) {
+				throw new ASN1ParseException("signedData not found");
+			}
+			tsTokens = tokens.toArray ( new TimeStampToken[tokens.size()] );
+		}
+		return tsTokens;
+	}
+}
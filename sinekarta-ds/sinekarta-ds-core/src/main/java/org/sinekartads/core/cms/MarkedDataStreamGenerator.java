@@ -0,0 +1,113 @@
+package org.sinekartads.core.cms;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DERTags;
+import org.sinekartads.asn1.ASN1Utils;
+import org.sinekartads.model.oid.SinekartaDsObjectIdentifiers;
+
+/**
+ * Streaming writer of the *.tsd files, the DIKE format of {@link MarkedData}.
+ * The lengths of the DER structure are evaluated from the content length, then the marked content
+ * is copied straight from its InputStream into the envelope. The output is the same encoding
+ * produced by {@link MarkedData#getEncoded()}, without ever loading the content in memory.
+ */
+public class MarkedDataStreamGenerator {
+
+	private final byte[] encTimeStampToken;
+	private final int version;
+
+	public MarkedDataStreamGenerator ( byte[] encTimeStampToken ) {
+		this ( encTimeStampToken, MarkedData.DEFAULT_VERSION );
+	}
+
+	public MarkedDataStreamGenerator ( byte[] encTimeStampToken, int version ) {
+		// the token is DER encoded as nested into the MarkedData structure
+		this.encTimeStampToken = ASN1Utils.readObject(encTimeStampToken).getDEREncoded();
+		this.version = version;
+	}
+
+	/**
+	 * Write the *.tsd envelope marking the given content.
+	 * @param markedSignOs the stream receiving the envelope, not closed
+	 * @param markedContentIs the content to be marked, usually a *.p7m, read to its end and not closed
+	 * @param contentLength the exact number of bytes of the content
+	 * @throws IOException if the content length doesn't match or on any I/O failure
+	 */
+	public void generate ( OutputStream markedSignOs, InputStream markedContentIs, long contentLength ) throws IOException {
+		byte[] oidEnc = new ASN1ObjectIdentifier(SinekartaDsObjectIdentifiers.cnt_timestampedData).getDEREncoded();
+		byte[] versionEnc = new ASN1Integer(version).getDEREncoded();
+
+		// timeStamp evidence: [0] { sequence { timeStampToken } }
+		ByteArrayOutputStream evidence = new ByteArrayOutputStream();
+		writeHeader ( evidence, DERTags.CONSTRUCTED | DERTags.TAGGED,
+				headerLength(encTimeStampToken.length) + encTimeStampToken.length );
+		writeHeader ( evidence, DERTags.CONSTRUCTED | DERTags.SEQUENCE, encTimeStampToken.length );
+		evidence.write ( encTimeStampToken );
+		byte[] evidenceEnc = evidence.toByteArray();
+
+		// body: sequence { version, markedContent, evidence }
+		long contentTlvLength = headerLength(contentLength) + contentLength;
+		long bodyLength = versionEnc.length + contentTlvLength + evidenceEnc.length;
+		long taggedLength = headerLength(bodyLength) + bodyLength;
+		long rootLength = oidEnc.length + headerLength(taggedLength) + taggedLength;
+
+		// root: sequence { timestampedData oid, [0] body }
+		writeHeader ( markedSignOs, DERTags.CONSTRUCTED | DERTags.SEQUENCE, rootLength );
+		markedSignOs.write ( oidEnc );
+		writeHeader ( markedSignOs, DERTags.CONSTRUCTED | DERTags.TAGGED, taggedLength );
+		writeHeader ( markedSignOs, DERTags.CONSTRUCTED | DERTags.SEQUENCE, bodyLength );
+		markedSignOs.write ( versionEnc );
+		writeHeader ( markedSignOs, DERTags.OCTET_STRING, contentLength );
+
+		byte[] buffer = new byte[8192];
+		long copied = 0;
+		int read;
+		while ( (read = markedContentIs.read(buffer)) != -1 ) {
+			copied += read;
+			if ( copied > contentLength ) {
+				throw new IOException(String.format ( "the marked content exceeds the declared length - %d", contentLength ));
+			}
+			markedSignOs.write ( buffer, 0, read );
+		}
+		if ( copied != contentLength ) {
+			throw new IOException(String.format ( "the marked content is shorter than the declared length - %d < %d",
+					copied, contentLength ));
+		}
+
+		markedSignOs.write ( evidenceEnc );
+	}
+
+	private static void writeHeader ( OutputStream os, int tag, long length ) throws IOException {
+		os.write ( tag );
+		if ( length < 0x80 ) {
+			os.write ( (int)length );
+		} else {
+			int size = lengthBytes ( length );
+			os.write ( 0x80 | size );
+			for ( int i=(size-1)*8; i>=0; i-=8 ) {
+				os.write ( (int)(length >> i) );
+			}
+		}
+	}
+
+	/**
+	 * @return the size of the DER tag and length octets preceding a value of the given length
+	 */
+	private static int headerLength ( long length ) {
+		return length < 0x80 ? 2 : 2 + lengthBytes(length);
+	}
+
+	private static int lengthBytes ( long length ) {
+		int size = 1;
+		while ( (length >>>= 8) != 0 ) {
+			size++;
+		}
+		return size;
+	}
+}
@@ -0,0 +1,44 @@
+package org.sinekartads.core.cms;
+
+import java.io.OutputStream;
+
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.operator.DigestCalculator;
+import org.bouncycastle.operator.DigestCalculatorProvider;
+
+/**
+ * DigestCalculatorProvider discarding the content, to be given to a CMSSignedDataParser when only
+ * the SignerInformation are needed: the content still has to be drained, but it is not digested.
+ * The SignerInformation obtained this way can't be verified.
+ */
+public class NoDigestCalculatorProvider implements DigestCalculatorProvider {
+
+	private static final byte[] NO_DIGEST = new byte[0];
+
+	private static final OutputStream discardOs = new OutputStream() {
+		@Override
+		public void write ( int b ) { }
+		@Override
+		public void write ( byte[] b, int off, int len ) { }
+	};
+
+	@Override
+	public DigestCalculator get ( final AlgorithmIdentifier digestAlgorithmIdentifier ) {
+		return new DigestCalculator() {
+			@Override
+			public AlgorithmIdentifier getAlgorithmIdentifier() {
+				return digestAlgorithmIdentifier;
+			}
+
+			@Override
+			public OutputStream getOutputStream() {
+				return discardOs;
+			}
+
+			@Override
+			public byte[] getDigest() {
+				return NO_DIGEST;
+			}
+		};
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2010 - 2012 Jenia Software.
+ *
+ * This file is part of Sinekarta
+ *
+ * Sinekarta is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Sinekarta is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+package org.sinekartads.core.pdf;
+
+import java.io.IOException;
+import java.util.Date;
+
+import org.bouncycastle.asn1.ocsp.OCSPResponseStatus;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.SingleResp;
+import org.sinekartads.util.HexUtils;
+import org.sinekartads.util.revocation.RevocationCache;
+
+import com.itextpdf.text.pdf.security.RevocationDataSource;
+
+/**
+ * itext revocation source which serves the CRLs and the OCSP responses through the shared {@link RevocationCache},
+ * until their nextUpdate, instead of downloading them for each verification.
+ * The OCSP responses are cached per certificate id, the requests received carry no nonce.
+ */
+public class CachedRevocationDataSource extends RevocationDataSource {
+
+	/**
+	 * Reads the validity of the successful responses, the earliest nextUpdate of their single responses.
+	 */
+	static final RevocationCache.NextUpdateReader OCSP_NEXT_UPDATE = new RevocationCache.NextUpdateReader() {
+		@Override
+		public Date getNextUpdate ( byte[] encoded ) throws IOException {
+			try {
+				OCSPResp ocspResponse = new OCSPResp ( encoded );
+				if ( ocspResponse.getStatus() != OCSPResponseStatus.SUCCESSFUL ) {
+					throw new IOException(String.format ( "unsuccessful OCSP response, status %d", ocspResponse.getStatus() ));
+				}
+				Date nextUpdate = null;
+				for ( SingleResp resp : ((BasicOCSPResp) ocspResponse.getResponseObject()).getResponses() ) {
+					if ( resp.getNextUpdate() == null ) {
+						return null;
+					}
+					if ( nextUpdate == null || resp.getNextUpdate().before(nextUpdate) ) {
+						nextUpdate = resp.getNextUpdate();
+					}
+				}
+				return nextUpdate;
+			} catch(OCSPException e) {
+				throw new IOException(e.getMessage(), e);
+			}
+		}
+	};
+	
+	private final RevocationCache cache;
+	
+	public CachedRevocationDataSource() {
+		this ( RevocationCache.getInstance() );
+	}
+	
+	public CachedRevocationDataSource ( RevocationCache cache ) {
+		this.cache = cache;
+	}
+	
+	@Override
+	public byte[] getCRL ( String url ) throws IOException {
+		return cache.getCRL ( url );
+	}
+	
+	@Override
+	public byte[] getOCSPResponse ( String url, CertificateID id, byte[] ocspRequest ) throws IOException {
+		String certificateId = String.format ( "%s:%s:%s", HexUtils.encodeHex(id.getIssuerNameHash()), 
+				HexUtils.encodeHex(id.getIssuerKeyHash()), id.getSerialNumber().toString(16) );
+		return cache.getOCSPResponse ( url, certificateId, ocspRequest, OCSP_NEXT_UPDATE );
+	}
+}
@@ -30,7 +30,6 @@ package org.sinekartads.core.pdf;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.security.MessageDigest;
 import java.security.SignatureException;
 import java.security.cert.Certificate;
 import java.util.ArrayList;
@@ -54,6 +53,7 @@ import org.sinekartads.model.domain.Transitions.DigestSignature;
 import org.sinekartads.model.domain.Transitions.FinalizedSignature;
 import org.sinekartads.model.domain.Transitions.SignedSignature;
 import org.sinekartads.model.domain.TsRequestInfo;
+import org.sinekartads.util.CryptoEnginePool;
 
 import com.itextpdf.text.pdf.AcroFields;
 import com.itextpdf.text.pdf.PdfDate;
@@ -65,12 +65,10 @@ import com.itextpdf.text.pdf.PdfSignatureAppearance;
 import com.itextpdf.text.pdf.PdfStamper;
 import com.itextpdf.text.pdf.PdfString;
 import com.itextpdf.text.pdf.security.BouncyCastleDigest;
-import com.itextpdf.text.pdf.security.DigestAlgorithms;
 import com.itextpdf.text.pdf.security.ExternalDigest;
 import com.itextpdf.text.pdf.security.MakeSignature.CryptoStandard;
 import com.itextpdf.text.pdf.security.PdfPKCS7;
 import com.itextpdf.text.pdf.security.TSAClient;
-import com.itextpdf.text.pdf.security.TSAClientBouncyCastle;
 
 public class PDFTools {
 
@@ -107,7 +105,7 @@ public class PDFTools {
 			
 			TsRequestInfo tsRequest = signature.getTsRequest(); 
 			if (tsRequest!=null && StringUtils.isNotBlank(tsRequest.getTsUrl())) {
-				tsaClient = new TSAClientBouncyCastle(tsRequest.getTsUrl(), tsRequest.getTsUsername(), tsRequest.getTsPassword());
+				tsaClient = new PooledTSAClient(tsRequest.getTsUrl(), tsRequest.getTsUsername(), tsRequest.getTsPassword());
 			}
 //			if (tsaUrl!=null) {
 //				tsaClient = new TSAClientBouncyCastle(tsaUrl, tsaUser, tsaPassword);
@@ -181,7 +179,7 @@ public class PDFTools {
 	        String hashAlgorithm = signature.getDigestAlgorithm().getName();
 	        PdfPKCS7 sgn = new PdfPKCS7(null, chain, hashAlgorithm, BouncyCastleProvider.PROVIDER_NAME, externalDigest, false);
 	        InputStream data = sap.getRangeStream();
-	        byte hash[] = DigestAlgorithms.digest(data, externalDigest.getMessageDigest(hashAlgorithm));
+	        byte hash[] = CryptoEnginePool.getInstance().digest(signature.getDigestAlgorithm(), data);
 //	        byte[] ocsp = null;
 //	        if (chain.length >= 2 && ocspClient != null) {
 //	            ocsp = ocspClient.getEncoded((X509Certificate) chain[0], (X509Certificate) chain[1], null);
@@ -330,7 +328,7 @@ public class PDFTools {
 //	        String hashAlgorithm = Constants.SHA256;
 //	        PdfPKCS7 sgn = new PdfPKCS7(null, chain, hashAlgorithm, Constants.BC, externalDigest, false);
 	        InputStream data = sap.getRangeStream();
-	        byte hash[] = DigestAlgorithms.digest(data, externalDigest.getMessageDigest(hashAlgorithm));
+	        byte hash[] = CryptoEnginePool.getInstance().digest(signature.getDigestAlgorithm(), data);
 //	        byte[] ocsp = null;
 //	        if (chain.length >= 2 && ocspClient != null) {
 //	            ocsp = ocspClient.getEncoded((X509Certificate) chain[0], (X509Certificate) chain[1], null);
@@ -339,8 +337,7 @@ public class PDFTools {
 	        byte[] authenticatedAttributeBytes = sgn.getAuthenticatedAttributeBytes(hash, now, null, null, sigtype);
 
 	        // calcolo dell'impronta
-	        MessageDigest digester = MessageDigest.getInstance(signature.getDigestAlgorithm().getName());
-	        byte[] fingerPrint = digester.digest(authenticatedAttributeBytes);
+	        byte[] fingerPrint = CryptoEnginePool.getInstance().digest(signature.getDigestAlgorithm(), authenticatedAttributeBytes);
 	        
 //	     	byte[] fingerPrint = Util.digest256(authenticatedAttributeBytes);
 
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2010 - 2012 Jenia Software.
+ *
+ * This file is part of Sinekarta
+ *
+ * Sinekarta is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Sinekarta is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+package org.sinekartads.core.pdf;
+
+import java.io.IOException;
+
+import org.sinekartads.core.service.TimeStampHttpClient;
+
+import com.itextpdf.text.pdf.security.TSAClientBouncyCastle;
+
+/**
+ * itext TSA client which sends the timeStamp requests through the shared {@link TimeStampHttpClient},
+ * gaining its pooled connections, timeouts, retries and circuit breaker instead of opening
+ * a new URLConnection for each signature.
+ */
+public class PooledTSAClient extends TSAClientBouncyCastle {
+
+	private final TimeStampHttpClient httpClient;
+	
+	public PooledTSAClient ( String url, String username, String password ) {
+		this ( url, username, password, TimeStampHttpClient.getInstance() );
+	}
+	
+	public PooledTSAClient ( String url, String username, String password, TimeStampHttpClient httpClient ) {
+		super ( url, username, password );
+		this.httpClient = httpClient;
+	}
+	
+	@Override
+	protected byte[] getTSAResponse ( byte[] requestBytes ) throws IOException {
+		return httpClient.post ( tsaURL, tsaUsername, tsaPassword, requestBytes );
+	}
+}
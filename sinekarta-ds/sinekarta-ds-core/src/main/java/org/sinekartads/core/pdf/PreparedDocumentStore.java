@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2010 - 2012 Jenia Software.
+ *
+ * This file is part of Sinekarta
+ *
+ * Sinekarta is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Sinekarta is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+package org.sinekartads.core.pdf;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.sinekartads.model.oid.DigestAlgorithm;
+import org.sinekartads.util.CryptoEnginePool;
+import org.sinekartads.util.HexUtils;
+
+/**
+ * Server-side registry of the pre-closed PAdES documents kept between the preSign and the postSign.
+ * <p>
+ * The client only receives an opaque random handle, the prepared file and the values it has been
+ * evaluated with (byteRange, range digest, digest of the original content and the request binding)
+ * never leave the server. A handle can be taken only once; the documents not completed within
+ * their ttl are deleted, together with the orphan files left in the temporary folder by a
+ * previous run.
+ * </p><p>
+ * The store also reads back the /ByteRange actually written into a prepared file and digests its
+ * signed ranges, so that the postSign can verify the document before patching it.
+ * </p>
+ */
+public class PreparedDocumentStore {
+
+	public static final String PREPARED_DOCUMENT_PREFIX = "skdsprep";
+	public static final String PREPARED_DOCUMENT_SUFFIX = ".pdf";
+
+	/**
+	 * prepared documents older than this delay (in milliseconds) are considered abandoned and purged
+	 */
+	public static final long DEFAULT_TTL = 60 * 60 * 1000L;
+
+	/**
+	 * minimum delay (in milliseconds) between two sweeps of the temporary folder by {@link #sweepOrphans(File)}
+	 */
+	public static final long DEFAULT_SWEEP_INTERVAL = 10 * 60 * 1000L;
+
+	private static final byte[] BYTE_RANGE_KEY = { '/', 'B', 'y', 't', 'e', 'R', 'a', 'n', 'g', 'e' };
+
+	// the /ByteRange is written into the signature dictionary, right before or after the /Contents gap
+	private static final int BYTE_RANGE_WINDOW = 4096;
+
+	private static final Logger tracer = Logger.getLogger ( PreparedDocumentStore.class );
+
+	private static final PreparedDocumentStore singleton = new PreparedDocumentStore();
+
+	public static PreparedDocumentStore getInstance() {
+		return singleton;
+	}
+
+	private final ConcurrentMap<String, PreparedDocument> documents = new ConcurrentHashMap<String, PreparedDocument>();
+	private final SecureRandom random = new SecureRandom();
+	private volatile long ttl = DEFAULT_TTL;
+	private volatile long sweepInterval = DEFAULT_SWEEP_INTERVAL;
+	private final AtomicLong nextSweep = new AtomicLong();
+
+	PreparedDocumentStore() { }
+
+
+
+	// -----
+	// --- Prepared document
+	// -
+
+	/**
+	 * Pre-closed document with the values evaluated by the preSign.
+	 */
+	public static class PreparedDocument {
+
+		private final File file;
+		private final long[] byteRange;
+		private final byte[] rangeDigest;
+		private final byte[] contentDigest;
+		private final byte[] binding;
+		private final long creationTime;
+
+		/**
+		 * @param file the pre-closed document, with the /Contents gap still empty
+		 * @param byteRange the /ByteRange written into the document
+		 * @param rangeDigest the digest of the byte ranges, signed by the CAdES envelope
+		 * @param contentDigest the digest of the original document given to the preSign
+		 * @param binding the digest of the signature attributes the document has been prepared for
+		 */
+		public PreparedDocument (
+				File file,
+				long[] byteRange,
+				byte[] rangeDigest,
+				byte[] contentDigest,
+				byte[] binding ) {
+
+			this.file = file;
+			this.byteRange = byteRange.clone();
+			this.rangeDigest = rangeDigest.clone();
+			this.contentDigest = contentDigest.clone();
+			this.binding = binding.clone();
+			this.creationTime = System.currentTimeMillis();
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		public long[] getByteRange() {
+			return byteRange.clone();
+		}
+
+		public byte[] getRangeDigest() {
+			return rangeDigest.clone();
+		}
+
+		public byte[] getContentDigest() {
+			return contentDigest.clone();
+		}
+
+		public byte[] getBinding() {
+			return binding.clone();
+		}
+	}
+
+
+
+	// -----
+	// --- Registration
+	// -
+
+	/**
+	 * Register a prepared document, purging the expired ones.
+	 * @return the random handle to be given to the client
+	 */
+	public String put ( PreparedDocument document ) {
+		purge ( );
+		byte[] id = new byte[16];
+		String handle;
+		do {
+			random.nextBytes ( id );
+			handle = HexUtils.encodeHex ( id );
+		} while ( documents.putIfAbsent(handle, document) != null );
+		return handle;
+	}
+
+	/**
+	 * Take the prepared document registered with the given handle, which is removed from the store:
+	 * the caller becomes responsible of the file deletion.
+	 * @return the prepared document, null if the handle is unknown, already taken or expired
+	 */
+	public PreparedDocument take ( String handle ) {
+		if ( handle == null )														return null;
+		PreparedDocument document = documents.remove ( handle );
+		if ( document == null )														return null;
+		if ( isExpired(document) || !document.getFile().isFile() ) {
+			deleteQuietly ( document.getFile() );
+			return null;
+		}
+		return document;
+	}
+
+	/**
+	 * Drop the expired documents and delete their files.
+	 */
+	public void purge ( ) {
+		for ( Iterator<Map.Entry<String, PreparedDocument>> it = documents.entrySet().iterator(); it.hasNext(); ) {
+			PreparedDocument document = it.next().getValue();
+			if ( isExpired(document) ) {
+				it.remove ( );
+				deleteQuietly ( document.getFile() );
+			}
+		}
+	}
+
+	/**
+	 * Delete the prepared files found into the given folder that are older than the ttl and not
+	 * registered anymore, e.g. left by a previous run of the service.
+	 */
+	public void purgeOrphans ( File folder ) {
+		File[] files = folder.listFiles();
+		if ( files == null )														return;
+		List<File> registered = new ArrayList<File>();
+		for ( PreparedDocument document : documents.values() ) {
+			registered.add ( document.getFile().getAbsoluteFile() );
+		}
+		long expiration = System.currentTimeMillis() - ttl;
+		for ( File file : files ) {
+			String name = file.getName();
+			if ( name.startsWith(PREPARED_DOCUMENT_PREFIX) && name.endsWith(PREPARED_DOCUMENT_SUFFIX)
+					&& file.lastModified() < expiration && !registered.contains(file.getAbsoluteFile()) ) {
+				deleteQuietly ( file );
+			}
+		}
+	}
+
+	/**
+	 * Purge the orphans of the given folder unless it has already been done within the sweep interval:
+	 * the folder is listed at most once per interval, whatever the number of preSigns.
+	 * @return true if the folder has been swept
+	 */
+	public boolean sweepOrphans ( File folder ) {
+		long now = System.currentTimeMillis();
+		long next = nextSweep.get();
+		if ( now < next || !nextSweep.compareAndSet(next, now + sweepInterval) )		return false;
+		purgeOrphans ( folder );
+		return true;
+	}
+
+	private boolean isExpired ( PreparedDocument document ) {
+		return System.currentTimeMillis() - document.creationTime > ttl;
+	}
+
+
+
+	// -----
+	// --- Prepared file inspection
+	// -
+
+	/**
+	 * Read the /ByteRange entry of the signature whose /Contents gap starts and ends at the given
+	 * positions, looking for the key nearest to the gap.
+	 * @return the byte range, null if it can't be found or parsed
+	 */
+	public static long[] readByteRange ( File preparedFile, long gapStart, long gapEnd ) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile ( preparedFile, "r" );
+		try {
+			long length = raf.length();
+			if ( gapStart < 0 || gapEnd > length || gapStart >= gapEnd )			return null;
+
+			// look backward from the gap start first, then forward from the gap end
+			long beforeStart = Math.max ( 0, gapStart - BYTE_RANGE_WINDOW );
+			byte[] before = read ( raf, beforeStart, (int)(gapStart - beforeStart) );
+			int pos = lastIndexOf ( before, BYTE_RANGE_KEY );
+			if ( pos >= 0 ) {
+				long[] byteRange = parseByteRange ( before, pos + BYTE_RANGE_KEY.length );
+				if ( byteRange != null ) 											return byteRange;
+			}
+			byte[] after = read ( raf, gapEnd, (int)Math.min(BYTE_RANGE_WINDOW, length - gapEnd) );
+			pos = indexOf ( after, BYTE_RANGE_KEY );
+			if ( pos >= 0 ) {
+				return parseByteRange ( after, pos + BYTE_RANGE_KEY.length );
+			}
+			return null;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Digest the ranges of the prepared file as the signature does, i.e. the whole file except
+	 * the /Contents gap.
+	 */
+	public static byte[] digestRanges ( File preparedFile, long[] byteRange, DigestAlgorithm digestAlgorithm )
+			throws IOException, NoSuchAlgorithmException {
+
+		MessageDigest digester = CryptoEnginePool.getInstance().acquireDigester ( digestAlgorithm );
+		RandomAccessFile raf = new RandomAccessFile ( preparedFile, "r" );
+		try {
+			byte[] buf = new byte[8192];
+			for ( int i = 0; i + 1 < byteRange.length; i += 2 ) {
+				raf.seek ( byteRange[i] );
+				long remaining = byteRange[i+1];
+				while ( remaining > 0 ) {
+					int read = raf.read ( buf, 0, (int)Math.min(buf.length, remaining) );
+					if ( read < 0 ) {
+						throw new IOException("byte range exceeding the prepared document");
+					}
+					digester.update ( buf, 0, read );
+					remaining -= read;
+				}
+			}
+			return digester.digest();
+		} finally {
+			raf.close();
+			CryptoEnginePool.getInstance().release ( digester );
+		}
+	}
+
+	private static byte[] read ( RandomAccessFile raf, long position, int length ) throws IOException {
+		byte[] buf = new byte[length];
+		raf.seek ( position );
+		raf.readFully ( buf );
+		return buf;
+	}
+
+	/**
+	 * Parse the "[ n n n n ]" array following the /ByteRange key, as written by the signature appearance.
+	 */
+	private static long[] parseByteRange ( byte[] buf, int pos ) {
+		while ( pos < buf.length && isWhitespace(buf[pos]) ) 	pos++;
+		if ( pos >= buf.length || buf[pos] != '[' )									return null;
+		pos++;
+		List<Long> values = new ArrayList<Long>();
+		while ( pos < buf.length ) {
+			while ( pos < buf.length && isWhitespace(buf[pos]) ) 	pos++;
+			if ( pos >= buf.length )												return null;
+			if ( buf[pos] == ']' ) 													break;
+			long value = 0;
+			int digits = 0;
+			while ( pos < buf.length && buf[pos] >= '0' && buf[pos] <= '9' && digits < 18 ) {
+				value = value * 10 + (buf[pos++] - '0');
+				digits++;
+			}
+			if ( digits == 0 )														return null;
+			values.add ( value );
+		}
+		if ( pos >= buf.length )													return null;
+		long[] byteRange = new long[values.size()];
+		for ( int i = 0; i < byteRange.length; i++ ) {
+			byteRange[i] = values.get(i);
+		}
+		return byteRange;
+	}
+
+	private static boolean isWhitespace ( byte b ) {
+		return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0;
+	}
+
+	private static int indexOf ( byte[] buf, byte[] pattern ) {
+		for ( int i = 0; i <= buf.length - pattern.length; i++ ) {
+			if ( matches(buf, i, pattern) ) 										return i;
+		}
+		return -1;
+	}
+
+	private static int lastIndexOf ( byte[] buf, byte[] pattern ) {
+		for ( int i = buf.length - pattern.length; i >= 0; i-- ) {
+			if ( matches(buf, i, pattern) ) 										return i;
+		}
+		return -1;
+	}
+
+	private static boolean matches ( byte[] buf, int offset, byte[] pattern ) {
+		for ( int j = 0; j < pattern.length; j++ ) {
+			if ( buf[offset + j] != pattern[j] ) 									return false;
+		}
+		return true;
+	}
+
+	private static void deleteQuietly ( File file ) {
+		if ( file != null && file.exists() && !file.delete() ) {
+			tracer.warn ( String.format("unable to delete the prepared document %s", file) );
+			file.deleteOnExit();
+		}
+	}
+
+
+
+	// -----
+	// --- Configuration
+	// -
+
+	public long getTtl() {
+		return ttl;
+	}
+
+	/**
+	 * @param ttl the milliseconds a prepared document is kept waiting for its postSign
+	 */
+	public void setTtl ( long ttl ) {
+		this.ttl = ttl;
+	}
+
+	public long getSweepInterval() {
+		return sweepInterval;
+	}
+
+	/**
+	 * @param sweepInterval the minimum milliseconds between two sweeps of the orphan files
+	 */
+	public void setSweepInterval ( long sweepInterval ) {
+		this.sweepInterval = sweepInterval;
+	}
+}
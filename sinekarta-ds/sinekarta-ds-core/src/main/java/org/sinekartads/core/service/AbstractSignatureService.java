@@ -1,6 +1,7 @@
 package org.sinekartads.core.service;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -88,6 +89,42 @@ public abstract class AbstractSignatureService < ST extends SignatureType<ST>,
 	
 	
 	
+	// -----
+	// --- Base64 input support
+	// -
+	
+	/**
+	 * @return an inputStream on the decoded bytes, null if base64 is blank
+	 */
+	protected static InputStream base64ToInputStream ( String base64 ) {
+		if ( StringUtils.isBlank(base64) ) {
+			return null;
+		}
+		return new ByteArrayInputStream ( Base64.decodeBase64(base64) );
+	}
+	
+	
+	
+	// -----
+	// --- Temporary files
+	// -
+	
+	/**
+	 * @return an empty file into the configured temporary folder, used to spool the signature products
+	 */
+	protected static File createTempFile ( String suffix ) throws IOException {
+		return File.createTempFile ( "skds", suffix, conf.getTemporaryFolder() );
+	}
+	
+	protected static void deleteQuietly ( File file ) {
+		if ( file != null && file.exists() && !file.delete() ) {
+			tracer.warn ( String.format("unable to delete the temporary file %s", file) );
+			file.deleteOnExit();
+		}
+	}
+	
+	
+	
 	// -----
 	// --- Pre-Sign phase
 	// -
@@ -95,18 +132,28 @@ public abstract class AbstractSignatureService < ST extends SignatureType<ST>,
 	/**
 	 * {@inheritDoc}
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
 	public String preSign (
 			String chainSignatureBase64,
 			String contentBase64 ) {
 		
+		return preSign ( chainSignatureBase64, base64ToInputStream(contentBase64) );
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public String preSign (
+			String chainSignatureBase64,
+			InputStream contentIs ) {
+		
 		JclResponseDTO resp = new PreSignResponseDTO(); 
 		try {
 			
 			ChainSignature	< ST, SD, VerifyResult, SI > chainSignature;
 			DigestSignature	< ST, SD, VerifyResult, SI > digestSignature;
-			InputStream contentIs = new ByteArrayInputStream ( Base64.decodeBase64( contentBase64 ));
 			
 			SignatureDTO dto = (SignatureDTO) SignatureDTO.fromBase64 ( chainSignatureBase64, dtoClass );
 			chainSignature 	= (SignatureInfo<ST, SD, VerifyResult, SI>) converter.toSignatureInfo ( dto );
@@ -147,7 +194,6 @@ public abstract class AbstractSignatureService < ST extends SignatureType<ST>,
 	/**
 	 * {@inheritDoc}
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
 	public String postSign ( 
 			String signedSignatureBase64,
@@ -158,12 +204,41 @@ public abstract class AbstractSignatureService < ST extends SignatureType<ST>,
 		Base64OutputStream tsResponseOs = new Base64OutputStream();
 		Base64OutputStream markedSignOs = new Base64OutputStream();
 		
+		String respBase64 = postSign ( signedSignatureBase64, 
+									   base64ToInputStream(contentBase64), 
+									   detachedSignOs, 
+									   embeddedSignOs, 
+									   tsResponseOs, 
+									   markedSignOs );
+		
+		PostSignResponseDTO resp = BaseDTO.fromBase64 ( respBase64, PostSignResponseDTO.class );
+		if ( resp.resultCodeFromString() == ResultCode.SUCCESS ) {
+			resp.setDetachedSign(detachedSignOs.getBase64());
+			resp.setEmbeddedSign(embeddedSignOs.getBase64());
+			resp.setTsResponse(tsResponseOs.getBase64());
+			resp.setMarkedSign(markedSignOs.getBase64());
+		}
+		return resp.toBase64();
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public String postSign ( 
+			String signedSignatureBase64,
+			InputStream contentIs,
+			OutputStream detachedSignOs,
+			OutputStream embeddedSignOs,
+			OutputStream tsResponseOs,
+			OutputStream markedSignOs ) {
+		
 		PostSignResponseDTO resp = new PostSignResponseDTO(); 
 		try {
 			SignatureDTO dto = (SignatureDTO) SignatureDTO.fromBase64 ( signedSignatureBase64, dtoClass );
 			SignedSignature	   < ST, SD, VerifyResult, SI > signedSignature;
 			FinalizedSignature < ST, SD, VerifyResult, SI > finalizedSignature;
-			InputStream contentIs = new ByteArrayInputStream ( Base64.decodeBase64( contentBase64 ));
 			
 			signedSignature    = (SignatureInfo<ST, SD, VerifyResult, SI>) converter.toSignatureInfo(dto);
 			finalizedSignature = doPostSign ( signedSignature, 
@@ -176,10 +251,6 @@ public abstract class AbstractSignatureService < ST extends SignatureType<ST>,
 			dto = (SignatureDTO) converter.fromSignatureInfo ( 
 						(SignatureInfo < ST, SD, VerifyResult, SI >) finalizedSignature );
 			resp.setResult(dto.toBase64());
-			resp.setDetachedSign(detachedSignOs.getBase64());
-			resp.setEmbeddedSign(embeddedSignOs.getBase64());
-			resp.setTsResponse(tsResponseOs.getBase64());
-			resp.setMarkedSign(markedSignOs.getBase64());
 			resp.resultCodeToString(ResultCode.SUCCESS);
 		} catch ( Exception e ) {
 			processError ( resp, e );
@@ -307,28 +378,34 @@ public abstract class AbstractSignatureService < ST extends SignatureType<ST>,
 			String contentBase64,
 			String tsResponseBase64 ) {
 		
-		VerifyResponseDTO resp = new VerifyResponseDTO ( ); 
 		Base64OutputStream extractedContentOs = new Base64OutputStream();
+		String respBase64 = verify ( base64ToInputStream(envelopeBase64), 
+									 base64ToInputStream(contentBase64), 
+									 base64ToInputStream(tsResponseBase64), 
+									 extractedContentOs );
+		
+		VerifyResponseDTO resp = BaseDTO.fromBase64 ( respBase64, VerifyResponseDTO.class );
+		if ( resp.resultCodeFromString() == ResultCode.SUCCESS ) {
+			resp.setExtractedContent(extractedContentOs.getBase64());
+		}
+		return resp.toBase64();
+	}
+	
+	@Override
+	public String verify ( 
+			InputStream envelopeIs,
+			InputStream contentIs,
+			InputStream tsResponseIs,
+			OutputStream extractedContentOs ) {
+		
+		VerifyResponseDTO resp = new VerifyResponseDTO ( ); 
 		try {
-			InputStream contentIs = null;
-			InputStream tsResponseIs = null;
-			InputStream envelopeIs = null;
-			if (StringUtils.isNotBlank(contentBase64)) {
-				contentIs = new ByteArrayInputStream(Base64.decodeBase64( contentBase64 ));
-			}
-			if (StringUtils.isNotBlank(tsResponseBase64)) {
-				tsResponseIs = new ByteArrayInputStream(Base64.decodeBase64( tsResponseBase64 ));
-			}
-			if (StringUtils.isNotBlank(envelopeBase64)) {
-				envelopeIs = new ByteArrayInputStream(Base64.decodeBase64( envelopeBase64 ));
-			}
 			VerifyInfo verifyResult = doVerify ( contentIs, 
 												 tsResponseIs, 
 												 envelopeIs,
 												 extractedContentOs ); 
 			
 			VerifyDTO verifyDTO = converter.fromVerifyInfo ( verifyResult );
-			resp.setExtractedContent(extractedContentOs.getBase64());
 			resp.setResult(verifyDTO.toBase64());
 			resp.resultCodeToString(ResultCode.SUCCESS);
 		} catch ( Exception e ) {
@@ -1,12 +1,14 @@
 package org.sinekartads.core.service;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.io.PushbackInputStream;
 import java.security.SignatureException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
@@ -17,22 +19,26 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.ASN1UTCTime;
+import org.bouncycastle.asn1.DEREncodable;
 import org.bouncycastle.asn1.DERObjectIdentifier;
 import org.bouncycastle.asn1.DERSet;
 import org.bouncycastle.asn1.cms.Attribute;
 import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.cms.ContentInfo;
 import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
 import org.bouncycastle.cert.X509CertificateHolder;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
 import org.bouncycastle.cms.CMSException;
-import org.bouncycastle.cms.CMSProcessable;
-import org.bouncycastle.cms.CMSProcessableByteArray;
 import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.CMSSignedDataParser;
+import org.bouncycastle.cms.CMSTypedStream;
 import org.bouncycastle.cms.SignerId;
 import org.bouncycastle.cms.SignerInformation;
 import org.bouncycastle.cms.SignerInformationStore;
@@ -41,12 +47,17 @@ import org.bouncycastle.tsp.TSPException;
 import org.bouncycastle.tsp.TimeStampResponse;
 import org.bouncycastle.tsp.TimeStampToken;
 import org.bouncycastle.util.Store;
+import org.bouncycastle.util.io.TeeOutputStream;
 import org.sinekartads.asn1.ASN1Parser.ASN1ParseException;
 import org.sinekartads.asn1.ASN1Utils;
 import org.sinekartads.core.CoreConfiguration;
 import org.sinekartads.core.cms.BouncyCastleUtils;
+import org.sinekartads.core.cms.ContentDigestCalculatorProvider;
 import org.sinekartads.core.cms.ExtCMSSignedDataGenerator;
 import org.sinekartads.core.cms.MarkedData;
+import org.sinekartads.core.cms.MarkedDataParser;
+import org.sinekartads.core.cms.MarkedDataStreamGenerator;
+import org.sinekartads.core.cms.NoDigestCalculatorProvider;
 import org.sinekartads.model.domain.CMSSignatureInfo;
 import org.sinekartads.model.domain.DigestInfo;
 import org.sinekartads.model.domain.SecurityLevel.VerifyResult;
@@ -59,7 +70,6 @@ import org.sinekartads.model.domain.Transitions.EmptySignature;
 import org.sinekartads.model.domain.Transitions.FinalizedSignature;
 import org.sinekartads.model.domain.Transitions.MarkedSignature;
 import org.sinekartads.model.domain.Transitions.SignedSignature;
-import org.sinekartads.model.domain.Transitions.VerifiedSignature;
 import org.sinekartads.model.domain.TsRequestInfo;
 import org.sinekartads.model.domain.TsResponseInfo;
 import org.sinekartads.model.domain.VerifyInfo;
@@ -67,6 +77,7 @@ import org.sinekartads.model.oid.DigestAlgorithm;
 import org.sinekartads.model.oid.EncryptionAlgorithm;
 import org.sinekartads.model.oid.SignatureAlgorithm;
 import org.sinekartads.model.oid.SinekartaDsObjectIdentifiers;
+import org.sinekartads.util.SignCategoryDetector;
 import org.springframework.util.Assert;
 
 /**
@@ -139,9 +150,9 @@ public class CMSSignatureService
 	/**
 	 * PreSign implementation for the CAdES signature.
 	 * The process involves the enveloping of the certificate chain and the other signature
-	 * properties by means of the ExtCMSSignedDataGenerator. After that the generator creates the signature 
-	 * DER structure and obtain the digest from the CMSProvider. The SignatureDTO is then updated with
-	 * the digest and the signingTime and sent to the client side
+	 * properties by means of the ExtCMSSignedDataGenerator. After that the generator streams the content
+	 * through SHA-256 and creates the signed attributes only, whose DER encoding gives the digest to be signed.
+	 * The SignatureDTO is then updated with the digest and the signingTime and sent to the client side
 	 */
 	public DigestSignature < SignCategory, 
 							 SignDisposition.CMS, 
@@ -166,7 +177,6 @@ public class CMSSignatureService
 		
 		// Extract the signature options from the chainSignature
 		DigestAlgorithm digestAlgorithm 	= chainSignature.getDigestAlgorithm();
-		SignDisposition.CMS disposition 	= chainSignature.getDisposition();
 		
 		// Extract the trusted certificate chain from the trustedChainSignature
 		X509Certificate[] trustedChain = chainSignature.getRawX509Certificates();
@@ -179,12 +189,12 @@ public class CMSSignatureService
 			throw new IllegalArgumentException("only SHA256 is currently supported");
 		}
 		try {
-			CMSProcessable processable = new CMSProcessableByteArray ( IOUtils.toByteArray(contentIs) );
+			// the content is only digested, the envelope will be generated by the postSign
 			ExtCMSSignedDataGenerator generator = new ExtCMSSignedDataGenerator ( );
 			generator.setLocation(chainSignature.getLocation());
 			generator.setReason(chainSignature.getReason());
 			generator.embedCertificateChain ( trustedChain );
-			byte[] fingerPrint = generator.evaluateDigest ( processable, disposition );
+			byte[] fingerPrint = generator.evaluateDigest ( contentIs );
 			digestInfo = DigestInfo.getInstance ( digestAlgorithm, fingerPrint );
 			chainSignature.setSigningTime(generator.getSigningTime());
 		} catch (CertificateEncodingException e) {
@@ -210,7 +220,8 @@ public class CMSSignatureService
 	/**
 	 * PostSign implementation for the CAdES signature.
 	 * The method starts repeating the steps used during the preSign phase, with the difference that the
-	 * signingTime and the digitalSignature carried by the SignatureDTO are now added to the generator.
+	 * signingTime and the digitalSignature carried by the SignatureDTO are now added to the generator,
+	 * which streams the envelope to the output while reading the content.
 	 * If the SignatureDTO requires a timeStamp, the service ask the TimeStamp Authority for the timeStampToken,
 	 * and create a MarkedData which embeds the token and the generated CMSSignatureService.
 	 */
@@ -255,52 +266,19 @@ public class CMSSignatureService
 			throw new UnsupportedOperationException ( "only SHA256WithRSA is supported right now" );
 		}
 				
-		// Load the content to be signed
-		byte[] content = IOUtils.toByteArray(contentIs); 
-		CMSProcessable processable = new CMSProcessableByteArray(content);
-		CMSSignedData signedData;		
-		
-		// Embed the content and the certificate chain into the signedData
-		byte[] signedDataEnc = null;
-		try {
-			ExtCMSSignedDataGenerator generator = new ExtCMSSignedDataGenerator();
-			generator.setLocation(signedSignature.getLocation());
-			generator.setReason(signedSignature.getReason());
-			generator.setSigningTime(signedSignature.getSigningTime());
-			generator.embedCertificateChain(trustedChain);
-			signedData = generator.generateSignedData(
-					processable, signedSignature.getDigitalSignature(), signDisposition );
-			signedDataEnc = signedData.getEncoded();
-		} catch (CMSException e) {
-			throw new SignatureException (e);
-		} catch (CertificateEncodingException e) {
-			// never thrown, certificate validity granted by CertificateInfo
-			throw new RuntimeException(e);
-		}
-		
-		// Store the signedData into the appropriated OutputStream:
+		// The envelope is streamed to the appropriated OutputStream while reading the content:
 		//		- detachedSignOs	for DETACHED dispositions, *.p7m
 		//		- embeddedSignOs 	for EMBEDDED dispositions, *.p7m
-		// Init the inputStreams for the next applyTimeStamp() call
-		InputStream detachedSignIs;
-		InputStream embeddedSignIs;
+		OutputStream signOs;
 		switch ( signDisposition ) {
 			case DETACHED: {
 				Assert.notNull ( detachedSignOs );
-				IOUtils.write(signedDataEnc, detachedSignOs);
-				
-				contentIs = new ByteArrayInputStream ( content );
-				detachedSignIs = new ByteArrayInputStream ( signedDataEnc );
-				embeddedSignIs = null;
+				signOs = detachedSignOs;
 				break;
 			}
 			case EMBEDDED: {
 				Assert.notNull ( embeddedSignOs );
-				IOUtils.write(signedDataEnc, embeddedSignOs);
-				
-				contentIs = null;
-				detachedSignIs = null;
-				embeddedSignIs = new ByteArrayInputStream ( signedDataEnc );
+				signOs = embeddedSignOs;
 				break;
 			}
 			default: {
@@ -308,23 +286,53 @@ public class CMSSignatureService
 						"unsupported signature disposition - %s", signDisposition));
 			}
 		}
-
-		// Call applyTimeStamp() to apply the timeStamp if expected by the signatureType, the resulting structure will 
-		//			be sent through timestampOs or markedSignOs contextually to the application of the timeStamp
+		
+		// The timeStamp application needs the signedData again: it is spooled to a temporary file while 
+		//			streamed, the content is not needed since the timeStamp only covers the signedData
 		TsRequestInfo tsRequest = signedSignature.getTsRequest();
-		if ( tsRequest != null ) {
-			markedSignature = signedSignature.toMarkedSignature();
-			TimeStampInfo timeStamp = doApplyTimeStamp ( 
-					tsRequest, 
-					contentIs,
-					detachedSignIs,
-					embeddedSignIs,
-					tsResultOs,
-					markedSignOs );
-			markedSignature.appendTimeStamp ( timeStamp, tsRequest.getDisposition() );
-			finalizedSignature = markedSignature.finalizeSignature();
-		} else {
-			finalizedSignature = signedSignature.finalizeSignature();
+		File signedDataFile = null;
+		OutputStream signedDataOs = null;
+		try {
+			if ( tsRequest != null ) {
+				signedDataFile = createTempFile ( ".p7m" );
+				signedDataOs = new BufferedOutputStream ( new FileOutputStream(signedDataFile) );
+				signOs = new TeeOutputStream ( signOs, signedDataOs );
+			}
+			
+			// Embed the content and the certificate chain into the signedData
+			try {
+				ExtCMSSignedDataGenerator generator = new ExtCMSSignedDataGenerator();
+				generator.setLocation(signedSignature.getLocation());
+				generator.setReason(signedSignature.getReason());
+				generator.setSigningTime(signedSignature.getSigningTime());
+				generator.embedCertificateChain(trustedChain);
+				generator.generateSignedData (
+						contentIs, signedSignature.getDigitalSignature(), signDisposition, signOs );
+			} catch (CMSException e) {
+				throw new SignatureException (e);
+			} catch (CertificateEncodingException e) {
+				// never thrown, certificate validity granted by CertificateInfo
+				throw new RuntimeException(e);
+			}
+	
+			// Call applyTimeStamp() to apply the timeStamp if expected by the signatureType, the resulting structure will 
+			//			be sent through timestampOs or markedSignOs contextually to the application of the timeStamp
+			if ( tsRequest != null ) {
+				signedDataOs.close ( );
+				markedSignature = signedSignature.toMarkedSignature();
+				TimeStampInfo timeStamp = applyTimeStamp ( 
+						tsRequest, 
+						signedDataFile,
+						tsResultOs,
+						markedSignOs );
+				markedSignature.appendTimeStamp ( timeStamp, tsRequest.getDisposition() );
+				finalizedSignature = markedSignature.finalizeSignature();
+			} else {
+				finalizedSignature = signedSignature.finalizeSignature();
+			}
+		} finally {
+			IOUtils.closeQuietly ( signedDataOs );
+			deleteQuietly ( signedDataFile );
 		}
 		
 		return finalizedSignature;
@@ -335,6 +343,11 @@ public class CMSSignatureService
 	// -----
 	// --- TimeStamp application
 
+	/**
+	 * The signedData is spooled to a temporary file, read once to select the signer and then again to
+	 * evaluate the message imprint and to write the marked envelope. The content is not needed, since the
+	 * timeStamp covers the signedData (ENVELOPING) or the signer signature value (ATTRIBUTE).
+	 */
 	@Override
 	public TimeStampInfo doApplyTimeStamp (
 					TsRequestInfo tsRequest,
@@ -349,35 +362,59 @@ public class CMSSignatureService
 		
 		Assert.notNull ( tsRequest );
 		
-		// Generate the signedData from signedDataIs or embeddedSignIs
-		CMSSignedData signedData;
-		byte[] signedDataEnc;
-        try {
-        	InputStream signedDataIs;
-        	if ( embeddedSignIs != null ) {
-        		signedDataIs = embeddedSignIs;
-        	} else if ( signatureIs != null ) {
-        		signedDataIs = signatureIs;
-        	} else {
-        		throw new IllegalArgumentException( "unable to retrieve the signedData, provide embeddedSignIs or signatureIs" );
-        	}
-	        if ( contentIs == null ) {
-				signedData = new CMSSignedData ( signedDataIs );
-	        } else {
-	        	byte[] content = IOUtils.toByteArray ( contentIs );
-	            signedData = new CMSSignedData ( new CMSProcessableByteArray(content), signedDataIs );
-	        }
-	        signedDataEnc = signedData.getEncoded();
-        } catch(Exception e) {
-        	throw new SignatureException("unable to build a signedData from the given inputStreams, has contentIs been provided?", e);
-        }
+		// Spool the signedData from signedDataIs or embeddedSignIs
+		InputStream signedDataIs;
+		if ( embeddedSignIs != null ) {
+			signedDataIs = embeddedSignIs;
+		} else if ( signatureIs != null ) {
+			signedDataIs = signatureIs;
+		} else {
+			throw new IllegalArgumentException( "unable to retrieve the signedData, provide embeddedSignIs or signatureIs" );
+		}
+		File signedDataFile = createTempFile ( ".p7m" );
+		try {
+			OutputStream signedDataOs = new FileOutputStream ( signedDataFile );
+			try {
+				IOUtils.copy ( signedDataIs, signedDataOs );
+			} finally {
+				signedDataOs.close ( );
+			}
+			return applyTimeStamp ( tsRequest, signedDataFile, timestampOs, markedSignOs );
+		} finally {
+			deleteQuietly ( signedDataFile );
+		}
+	}
+	
+	private TimeStampInfo applyTimeStamp (
+					TsRequestInfo tsRequest,
+					File signedDataFile,
+					OutputStream timestampOs,
+					OutputStream markedSignOs ) 
+					throws SignatureException,
+							IOException {
+		
+		// Parse the signers of the signedData, the embedded content is only drained without being digested
+		SignerInformationStore signerStore;
+		InputStream signedDataIs = new BufferedInputStream ( new FileInputStream(signedDataFile) );
+		try {
+			CMSSignedDataParser signedData = new CMSSignedDataParser ( new NoDigestCalculatorProvider(), signedDataIs );
+			CMSTypedStream signedContent = signedData.getSignedContent ( );
+			if ( signedContent != null ) {
+				signedContent.drain ( );
+			}
+			signerStore = signedData.getSignerInfos ( );
+		} catch(CMSException e) {
+			throw new SignatureException("unable to read a signedData from the given inputStreams", e);
+		} finally {
+			signedDataIs.close ( );
+		}
         
         // Obtain signatureInfo being applied
         SignerInformation signer = null;
         Date signingTime;
         Date maxSigningTime = null;
         DERObjectIdentifier attrSigningTime = new DERObjectIdentifier(SinekartaDsObjectIdentifiers.attr_signingTime);
-        for ( SignerInformation si : (List<SignerInformation>) signedData.getSignerInfos().getSigners() ) {
+        for ( SignerInformation si : (Collection<SignerInformation>) signerStore.getSigners() ) {
     		try {
 				signingTime = ((ASN1UTCTime)si.getSignedAttributes().get(attrSigningTime).getAttrValues().getObjectAt(0)).getDate();
 			} catch (ParseException e) {
@@ -385,6 +422,7 @@ public class CMSSignatureService
 			}
         	if ( maxSigningTime == null || signingTime.after(maxSigningTime) ) {
         		signer = si;
+        		maxSigningTime = signingTime;
         	}
         }
         Assert.notNull(signer);
@@ -403,35 +441,35 @@ public class CMSSignatureService
 //				break;
 			}
 			case ENVELOPING: {
-		        // Evaluate the message imprint digest for the tsRequest
-//				TsRequestInfo digestTsr = tsRequest.evaluateMessageImprint( signer.getSignature() );
-		        TsRequestInfo digestTsr = tsRequest.evaluateMessageImprint( signedDataEnc );
+		        // Evaluate the message imprint digest for the tsRequest, reading the spooled signedData
+				TsRequestInfo digestTsr;
+				signedDataIs = new FileInputStream ( signedDataFile );
+				try {
+					digestTsr = tsRequest.evaluateMessageImprint ( signedDataIs );
+				} finally {
+					signedDataIs.close ( );
+				}
 		        
 		        // Use timeStampService to receive the tsResponse
 		        byte[] encTimeStampToken;
 				tsResponse = timeStampService.processTsTequest ( digestTsr );
 				encTimeStampToken = tsResponse.getTimeStamp().getEncTimeStampToken();
 
-				// Generate a MarkedData as <signedDataEnc + rawTimeStampToken> and convert it to bytes (markedDataEnc)
-				byte[] markedDataEnc = null;
+				// Stream a MarkedData as <signedData + rawTimeStampToken> into the markedSignOs (*.tsa)
+				Assert.notNull ( markedSignOs );
+				MarkedDataStreamGenerator markedDataGenerator = new MarkedDataStreamGenerator ( encTimeStampToken );
+				signedDataIs = new BufferedInputStream ( new FileInputStream(signedDataFile) );
 				try {
-					MarkedData markedData = MarkedData.getInstance ( signedDataEnc, encTimeStampToken );
-					markedDataEnc = markedData.getEncoded();
-				} catch (TSPException | CMSException e) {
-					throw new SignatureException(String.format("unable to apply the timestamp - %s", e.getMessage()), e);
-				} catch (ASN1ParseException e) {
-					throw new SignatureException(e);
+					markedDataGenerator.generate ( markedSignOs, signedDataIs, signedDataFile.length() );
+				} finally {
+					signedDataIs.close ( );
 				}
-				
-				// Write the markedDataEnc into the markedSignOs (*.tsa)
-				Assert.notNull ( markedSignOs );
-				IOUtils.write(markedDataEnc, markedSignOs);
 				break;
 			} case ATTRIBUTE: {
 				tsResponse = null;
 		        SignerInformationStore markedStore;
 		        // Generate a new signerStore and fill it with the marked signers
-				Collection<SignerInformation> prevSigners = signedData.getSignerInfos().getSigners();
+				Collection<SignerInformation> prevSigners = signerStore.getSigners();
 				List<SignerInformation> markedSigners = new ArrayList<SignerInformation>();
 		        for(SignerInformation si : prevSigners) {
 		        	if ( si.getSID().equals(signer.getSID()) ) {
@@ -463,13 +501,17 @@ public class CMSSignatureService
 		        }
 		        markedStore = new SignerInformationStore(markedSigners);
 		        
-		        // Generate a new, marked, signedData by replacing the signerStore and convert it to bytes (markedDataEnc) 
-		        CMSSignedData markedData = CMSSignedData.replaceSigners(signedData, markedStore);
-		        byte[] markedDataEnc = markedData.getEncoded();
-		        
-		        // Write the markedDataEnc into the markedSignOs (*.m7m)
+		        // Stream a new, marked, signedData into the markedSignOs (*.m7m) by replacing the signerStore
+		        //			of the spooled one, the content is copied without being loaded
 		        Assert.notNull ( markedSignOs );
-				IOUtils.write(markedDataEnc, markedSignOs);
+				signedDataIs = new BufferedInputStream ( new FileInputStream(signedDataFile) );
+				try {
+					CMSSignedDataParser.replaceSigners ( signedDataIs, markedStore, markedSignOs );
+				} catch(CMSException e) {
+					throw new SignatureException(e);
+				} finally {
+					signedDataIs.close ( );
+				}
 		        break;
 			} default: {
 				throw new UnsupportedOperationException(String.format ( 
@@ -490,14 +532,16 @@ public class CMSSignatureService
 	
 	/**
 	 * The verification process receives a DER encoded file and tries to parse it in the known formats.
-	 * At first the service attempts the parsing as MarkedData. On success (*tsd file) the CMSSignedData 
-	 * and the external TimeStamp are provided by the resulting MarkedData object.
-	 * If the parsing fails, the service tries to generate a CMSSignedData from the whole file. If the 
-	 * envelope contains a detached data, the CMSSignedData will be verified against the content received 
-	 * as first parameter.
+	 * At first the service probes the head of the envelope for a MarkedData. On success (*tsd file) the 
+	 * CMSSignedData and the external TimeStamp are provided by the resulting MarkedDataParser.
+	 * If the parsing fails, the service reads a CMSSignedData from the whole file. If the content is received
+	 * as first parameter the CMSSignedData will be verified against it, as for the detached data.
+	 * The envelope is parsed as a stream: the content is read once and digested with all the algorithms
+	 * needed by the signers, while being copied to the contentOs.
 	 * The verification is performed then on each SignerInformation provided by the signerData against a 
 	 * SignerInformationVerifier built on the relative certificate. Moreover, the service search for any
-	 * other timeStamp, stored as a unsigned attribute, and verifies it with the TimeStampService.
+	 * other timeStamp, stored as a unsigned attribute, and verifies it against the signature value of the
+	 * signer with the TimeStampService.
 	 * After the enveloped verification, the method returns an object which describes all the signatures
 	 * that have been found with the relative timeStamps.
 	 */
@@ -517,230 +561,130 @@ public class CMSSignatureService
 		Assert.notNull ( contentOs );
 		
 		
-		// Prepare the signature variables
-		EmptySignature   		  < SignCategory, 
-							 		SignDisposition.CMS,
-							 		VerifyResult,
-							 		CMSSignatureInfo >			emptySignature = null;		
-							
-		ChainSignature 	  		  < SignCategory, 
-									SignDisposition.CMS,
-									VerifyResult,
-									CMSSignatureInfo >			chainSignature = null;
-							
-		DigestSignature 	  	  < SignCategory, 
-									SignDisposition.CMS,
-									VerifyResult,
-									CMSSignatureInfo >			digestSignature	= null;		
-							
-		SignedSignature 	  	  < SignCategory, 
-									SignDisposition.CMS,
-									VerifyResult,
-									CMSSignatureInfo >			signedSignature	= null;
-		
-		MarkedSignature   		  <	SignCategory, 
-							 		SignDisposition.CMS,
-							 		VerifyResult,
-							 		CMSSignatureInfo >			markedSignature	= null;
-
-		FinalizedSignature 	  	  <	SignCategory, 
-									SignDisposition.CMS,
-									VerifyResult,
-									CMSSignatureInfo >			finalizedSignature = null;
-
-		VerifiedSignature 	  	  <	SignCategory, 
-									SignDisposition.CMS,
-									VerifyResult,
-									CMSSignatureInfo >			verifiedSignature = null;		
-		byte[] content;
-		MarkedData markedData = null;
-		CMSSignedData signedData = null;
-		SignCategory signatureType;
+		// Prepare the verification variables
+		MarkedDataParser markedData = null;
+		CMSSignedDataParser signedData = null;
 		
 		TimeStampToken rawTimeStampToken = null;
 		TimeStampInfo externalTimeStamp = null;
 		SignDisposition.TimeStamp extTsDisposition = null;
 		
-		// Retrieve the external timeStamp, it will considered applied to any signature on the document
-		//		- from the MarkedData structure loaded from the envelopedIs, if matching
-		//		- from the timeStamp loaded from the tsResponseIs, if provided
-		byte[] envelope = IOUtils.toByteArray ( envelopeIs ); 
-		try {
-			// ENVELOPING timeStamp disposition + EMBEDDED signature disposition
-			// 			try to generate a markedData: if fails attempt to get a CMSSignedData
-			markedData = MarkedData.getInstance ( envelope );
-			
-			// If the markedData generation succeeds, extract the nested signedData and the verified extTimestamp
-			signedData = markedData.getNestedSignedData ( );
-			rawTimeStampToken = markedData.getRawTimeStampToken ( );
-			extTsDisposition = SignDisposition.TimeStamp.ENVELOPING;
-			externalTimeStamp = timeStampService.verify ( rawTimeStampToken );
-		} catch(ASN1ParseException e) {		
-			// do nothing, try with the next disposition
+		// ENVELOPING timeStamp disposition + EMBEDDED signature disposition
+		// 			probe the head of the envelope and push it back: if it starts as a markedData the signedData 
+		//			is its content, otherwise the envelope is read as a CMSSignedData
+		PushbackInputStream probeIs = new PushbackInputStream ( envelopeIs, SignCategoryDetector.PROBE_SIZE );
+		byte[] head = new byte[SignCategoryDetector.PROBE_SIZE];
+		int headLength = 0;
+		int read;
+		while ( headLength < head.length && (read = probeIs.read(head, headLength, head.length - headLength)) >= 0 ) {
+			headLength += read;
 		}
-		if ( tsResponseIs != null ) {
-			// DETACHED timestamp disposition / still unable to determinate the signature disposition   
-			// 			load the rawTimeStampResponse from the tsResponseIs, verify the extTimestamp then
+		probeIs.unread ( head, 0, headLength );
+		InputStream signedDataIs = probeIs;
+		if ( MarkedDataParser.isMarkedData(head, headLength) ) {
 			try {
-				TimeStampResponse rawTimeStampResponse = new TimeStampResponse ( tsResponseIs );
-				rawTimeStampToken = rawTimeStampResponse.getTimeStampToken();
-				externalTimeStamp = timeStampService.verify ( rawTimeStampToken );
-				extTsDisposition = SignDisposition.TimeStamp.DETACHED;
-			} catch(TSPException e) {
-				
+				markedData = new MarkedDataParser ( probeIs );
+			} catch(ASN1ParseException e) {
+				throw new IllegalArgumentException ( "unable to load the markedData from the envelope", e );
 			}
+			signedDataIs = markedData.getMarkedContent ( );
 		}
 		
-		if ( markedData == null ) {
-			// ATTRIBUTE timeStamp disposition - no extTimestamp found  
-			try { 
-				// EMBEDDED signature disposition 
-				//			try to load the CMSSignedData directly from envelopeIs, if fails go to DETACHED
-				signedData = new CMSSignedData(envelope);
-//				signatureDisposition = SignDisposition.CMS.EMBEDDED;
-			} catch(Exception e) {
-				// DETACHED signature disposition
-				//			build the CMSSignedData from the contents loaded from envelopeIs and contentIs
-				try {
-					Assert.notNull ( contentIs );
-					content = IOUtils.toByteArray ( contentIs );
-		            signedData = new CMSSignedData ( new CMSProcessableByteArray(content), envelope );
-//		            signatureDisposition = SignDisposition.CMS.DETACHED;
-				} catch (Exception cmse) {
-					throw new IllegalArgumentException ( "unable to load a cms signature from the envelope" );
-				}
+		// Parse the signedData: the content is the embedded one, or the one read from contentIs for the DETACHED
+		//			signature disposition. The content digests needed by the signers are evaluated while streaming it 
+		ContentDigestCalculatorProvider digestProvider = new ContentDigestCalculatorProvider ( );
+		CMSTypedStream signedContent;
+		try {
+			if ( contentIs == null ) {
+				signedData = new CMSSignedDataParser ( digestProvider, signedDataIs );
+			} else {
+				signedData = new CMSSignedDataParser ( digestProvider, new CMSTypedStream(contentIs), signedDataIs );
 			}
-		} else {
-//			signatureDisposition = SignDisposition.CMS.EMBEDDED;
+			signedContent = signedData.getSignedContent ( );
+		} catch (CMSException e) {
+			throw new IllegalArgumentException ( "unable to load a cms signature from the envelope", e );
+		}
+		if ( signedContent == null ) {
+			throw new IllegalArgumentException ( "unable to load the signed content, has contentIs been provided?" );
 		}
 		
+		// Stream the signedContent to the contentOs, through the digest algorithms of the signers: 
+		//			the content is read only once
+		IOUtils.copy ( signedContent.getContentStream(), contentOs );
+		Map<DigestAlgorithm, byte[]> contentDigests = digestProvider.getDigests ( );
+		
 		// Verify the digital signatures and the timeStamps contained into the CMSSignedData.
 		// The VerifyInfo object, output of this operation, will contain the list of the SignatureInfo 
 		// 			and TimestampInfo detected with the relative verification results.
 		VerifyInfo verifyInfo = new VerifyInfo();
 
-		// Extract the content from the signedData and store it into the contentOs
-		content = null;
+	 	// Extract the stores from the signedData: certHolders and signerInformations, in the stream order
+	 	Store certHolderStore;
+		SignerInformationStore signerStore;
 		try {
-			ByteArrayOutputStream baos = new ByteArrayOutputStream(); 
-			CMSProcessable signedContent = signedData.getSignedContent();
-			signedContent.write(baos);
-			baos.flush();
-			content = baos.toByteArray();
-			
-		} catch(CMSException e) {
+			certHolderStore = signedData.getCertificates();
+			signerStore = signedData.getSignerInfos();
+		} catch (CMSException e) {
 			throw new SignatureException(e);
 		}
 		
-	 	// Extract the stores from the signedData: signerInformations and certHolders
-		SignerInformationStore signerStore = signedData.getSignerInfos();
-	 	Store certHolderStore = signedData.getCertificates();
+		// Retrieve the external timeStamp, it will considered applied to any signature on the document
+		//		- from the MarkedData structure, following the signedData into the envelope
+		//		- from the timeStamp loaded from the tsResponseIs, if provided
+		if ( markedData != null ) {
+			try {
+				rawTimeStampToken = markedData.getRawTimeStampToken ( );
+			} catch (ASN1ParseException e) {
+				throw new SignatureException(e);
+			}
+			extTsDisposition = SignDisposition.TimeStamp.ENVELOPING;
+			externalTimeStamp = timeStampService.verify ( rawTimeStampToken );
+		}
+		if ( tsResponseIs != null ) {
+			// DETACHED timestamp disposition 
+			// 			load the rawTimeStampResponse from the tsResponseIs, verify the extTimestamp then
+			try {
+				TimeStampResponse rawTimeStampResponse = new TimeStampResponse ( tsResponseIs );
+				rawTimeStampToken = rawTimeStampResponse.getTimeStampToken();
+				externalTimeStamp = timeStampService.verify ( rawTimeStampToken );
+				extTsDisposition = SignDisposition.TimeStamp.DETACHED;
+			} catch(TSPException e) {
+				
+			}
+		}
 		
-		// Iterate over the signers and build a SignatureInfo each, the timeStamp eventually 
+		// Verify the signers in parallel, each task builds the SignatureInfo of a signer; the timeStamp eventually 
 		//			stored as an unsigned attribute will be added to the signature as an TimeStampInfo
 	 	@SuppressWarnings("unchecked")
 	 	Collection<SignerInformation> signers = signerStore.getSigners();
-		DigestAlgorithm digestAlgorithm;
-		EncryptionAlgorithm encryptionAlgorithm;
-		SignatureAlgorithm signatureAlgorithm;
-		SignerId signerId;
-		MessageDigest digester;
-		byte[] fingerPrint;
-		DigestInfo digest;
-		byte[] digitalSignature;
-		X509CertificateHolder certHolder;
-		AttributeTable unsignedAttrs;
-		Attribute tsAttribute;
-		TimeStampInfo attributeTimeStamp;
+	 	final Store certStore = certHolderStore;
+	 	final Map<DigestAlgorithm, byte[]> digests = contentDigests;
+	 	final TimeStampInfo extTimeStamp = externalTimeStamp;
+	 	final SignDisposition.TimeStamp extDisposition = extTsDisposition;
+	 	List<Callable<SignerVerification>> tasks = new ArrayList<Callable<SignerVerification>>(signers.size());
+		for ( final SignerInformation signer : signers ) {
+			tasks.add ( new Callable<SignerVerification>() {
+				@Override
+				public SignerVerification call() throws Exception {
+					return verifySigner ( signer, certStore, digests, extTimeStamp, extDisposition );
+				}
+			} );
+		}
+		List<SignerVerification> verifications = VerificationExecutor.getInstance().invokeAll ( tasks );
+		
+		// Collect the results in the signers order and evaluate the securityLevels
 	 	VerifyResult securityLevel = VerifyResult.VALID;
 	 	VerifyResult minSecurityLevel = VerifyResult.VALID;
-	 	// Iterate over the CMS signature descriptor (SignerInformation)
-		for ( SignerInformation signer : signers ) {	
-			// Evaluate the signatureAlgorithm 
-			digestAlgorithm = DigestAlgorithm.getInstance(signer.getDigestAlgOID());
-			encryptionAlgorithm = EncryptionAlgorithm.getInstance(signer.getEncryptionAlgOID());
-			signatureAlgorithm = SignatureAlgorithm.getInstance(digestAlgorithm, encryptionAlgorithm);
-			
-            // Extract and verify the attributeTimeStamp, if any
-            attributeTimeStamp = null;
-            unsignedAttrs = signer.getUnsignedAttributes();
-        	if (unsignedAttrs != null) {
-        		tsAttribute = (Attribute) unsignedAttrs.toHashtable().get ( SinekartaDsObjectIdentifiers.attr_timeStampToken );
-        		if ( tsAttribute != null ) {
-        			rawTimeStampToken = (TimeStampToken) tsAttribute.getAttrValues().getObjects().nextElement();
-        			attributeTimeStamp = timeStampService.verify (
-        					rawTimeStampToken, 
-        					new ByteArrayInputStream(content) );
-        		}
-        	}
-			
-			// Recognize the signature type, the disposition is already known
-//        	if ( externalTimeStamp == null && attributeTimeStamp == null ) {
-//        		signatureType = SignCategory.CAdES_BES; 
-//        	} else {
-//        		signatureType = SignCategory.CAdES_T;
-//        	}
-        	signatureType = SignCategory.CMS;
-        	// TODO manage the other CMS signature types
-            
-            // Instance the CMSSignatureInfo as emptySignature 
-        	emptySignature = new CMSSignatureInfo ( signatureAlgorithm, digestAlgorithm );
-			
-        	// Obtain the trusted signing certificate and generate the trustedChainSignature
-			signerId = signer.getSID();
-			certHolder = (X509CertificateHolder) certHolderStore.getMatches(signerId).iterator().next();
-			chainSignature = emptySignature.toChainSignature ( 
-					new X509Certificate[] {certHolderConverter.getCertificate(certHolder)} );
-        	
-        	// Evaluate the digest by using the digestAlgorithm on the content and generate the digestSignature
-			try {
-				digester = MessageDigest.getInstance ( digestAlgorithm.getName() );
-				fingerPrint = digester.digest ( content );
-				digest = DigestInfo.getInstance(digestAlgorithm, fingerPrint);
-			} catch (NoSuchAlgorithmException e) {
-				// never thrown - algorithm validity granted by DigestAlgorithm
-				throw new RuntimeException(e);
-			}
-			digestSignature = chainSignature.toDigestSignature ( digest ); 
-			
-			// Obtain the digitalSignature and generate the signedSignature
-			digitalSignature = signer.getSignature();
-			signedSignature = digestSignature.toSignedSignature(digitalSignature);
-            
-			// Finalize the signature
-			if ( signatureType.isTimeStamped() ) {
-				// Convert the signedSignature to markedSignature, append the timeStamps to it and finalize,
-				//			if the signatureType is timeStamped
-				markedSignature = signedSignature.toMarkedSignature();
-				if ( externalTimeStamp != null ) {
-					markedSignature.appendTimeStamp(externalTimeStamp, extTsDisposition);
-				}
-				if ( attributeTimeStamp != null ) {
-					markedSignature.appendTimeStamp(attributeTimeStamp, SignDisposition.TimeStamp.ATTRIBUTE);
-				}
-				finalizedSignature = markedSignature.finalizeSignature();
+		for ( SignerVerification verification : verifications ) {
+			// Choose the appropriated verifyResult
+			if ( verification.verified ) {
+				securityLevel = minLevel ( securityLevel, VerifyResult.VALID );
 			} else {
-				// Finalize the signedSignature otherwise 
-				finalizedSignature = signedSignature.finalizeSignature();
-			}
-
-            // Verify the digital signature and choose the appropriated verifyResult
-            try {
-            	SignerInformationVerifier verifier = BouncyCastleUtils.buildVerifierFor ( certHolder );
-//            	if ( signer.verify(certHolderConverter.getCertificate(certHolder), "BC") ) {
-            	if ( signer.verify(verifier) ) {
-        			securityLevel = minLevel ( securityLevel, VerifyResult.VALID );
-            	} else {
-            		securityLevel = VerifyResult.INVALID;
-            	}
-			} catch (Exception e) {
-				tracer.error ( String.format("unable to get a verifier for %s", certHolder), e );
 				securityLevel = VerifyResult.INVALID;
 			}
-            verifiedSignature = finalizedSignature.toVerifiedSignature(securityLevel);
-            
+			
             // Add the signatureInfo inside the verifyInfo
-            verifyInfo.addSignature(verifiedSignature);
+            verifyInfo.addSignature ( verification.finalizedSignature.toVerifiedSignature(securityLevel) );
             
             // Evaluate the current minSecurityLevel
             if ( minSecurityLevel.compareTo(securityLevel) < 0 ) {
@@ -749,10 +693,158 @@ public class CMSSignatureService
 		}
 		verifyInfo.setMinSecurityLevel(minSecurityLevel);
 		
-		// Write the signedContent to the contentOs, if any
-		IOUtils.copy( new ByteArrayInputStream(content), contentOs );
-		
 		return verifyInfo;
 	}
+	
+	/**
+	 * Finalized signature of a signer with the result of its cryptographic verification, the securityLevel
+	 * is evaluated by the caller following the signers order.
+	 */
+	private static class SignerVerification {
+		final FinalizedSignature  <	SignCategory, 
+									SignDisposition.CMS,
+									VerifyResult,
+									CMSSignatureInfo >			finalizedSignature;
+		final boolean verified;
+		
+		SignerVerification ( FinalizedSignature < SignCategory, 
+												  SignDisposition.CMS,
+												  VerifyResult,
+												  CMSSignatureInfo > finalizedSignature, 
+							 boolean verified ) {
+			this.finalizedSignature = finalizedSignature;
+			this.verified = verified;
+		}
+	}
+	
+	/**
+	 * Build the SignatureInfo of a single signer and verify its digital signature and its attribute timeStamp.
+	 * The signer only reads the shared stores and the content digests, so that the signers of an envelope
+	 * can be verified at the same time.
+	 */
+	private SignerVerification verifySigner ( 
+			SignerInformation signer,
+			Store certHolderStore,
+			Map<DigestAlgorithm, byte[]> contentDigests,
+			TimeStampInfo externalTimeStamp,
+			SignDisposition.TimeStamp extTsDisposition ) 
+					throws 	CertificateException,
+							SignatureException,
+							IOException {
+		
+		// Prepare the signature variables
+		EmptySignature   		  < SignCategory, 
+							 		SignDisposition.CMS,
+							 		VerifyResult,
+							 		CMSSignatureInfo >			emptySignature = null;		
+							
+		ChainSignature 	  		  < SignCategory, 
+									SignDisposition.CMS,
+									VerifyResult,
+									CMSSignatureInfo >			chainSignature = null;
+							
+		DigestSignature 	  	  < SignCategory, 
+									SignDisposition.CMS,
+									VerifyResult,
+									CMSSignatureInfo >			digestSignature	= null;		
+							
+		SignedSignature 	  	  < SignCategory, 
+									SignDisposition.CMS,
+									VerifyResult,
+									CMSSignatureInfo >			signedSignature	= null;
+		
+		MarkedSignature   		  <	SignCategory, 
+							 		SignDisposition.CMS,
+							 		VerifyResult,
+							 		CMSSignatureInfo >			markedSignature	= null;
+
+		FinalizedSignature 	  	  <	SignCategory, 
+									SignDisposition.CMS,
+									VerifyResult,
+									CMSSignatureInfo >			finalizedSignature = null;
+		
+		// Evaluate the signatureAlgorithm 
+		DigestAlgorithm digestAlgorithm = DigestAlgorithm.getInstance(signer.getDigestAlgOID());
+		EncryptionAlgorithm encryptionAlgorithm = EncryptionAlgorithm.getInstance(signer.getEncryptionAlgOID());
+		SignatureAlgorithm signatureAlgorithm = SignatureAlgorithm.getInstance(digestAlgorithm, encryptionAlgorithm);
+		
+        // Extract and verify the attributeTimeStamp, if any
+		TimeStampInfo attributeTimeStamp = null;
+		AttributeTable unsignedAttrs = signer.getUnsignedAttributes();
+    	if (unsignedAttrs != null) {
+    		Attribute tsAttribute = unsignedAttrs.get ( PKCSObjectIdentifiers.id_aa_signatureTimeStampToken );
+    		if ( tsAttribute != null ) {
+    			// the signature timeStamp covers the signature value of the signer, as stamped by doApplyTimeStamp 
+    			TimeStampToken rawTimeStampToken;
+    			try {
+    				DEREncodable tokenEnc = tsAttribute.getAttrValues().getObjectAt(0);
+    				rawTimeStampToken = new TimeStampToken ( new CMSSignedData(ContentInfo.getInstance(tokenEnc.getDERObject())) );
+    			} catch(TSPException | IllegalArgumentException e) {
+    				throw new SignatureException ( "unable to read the signature timeStamp", e );
+    			}
+    			attributeTimeStamp = timeStampService.verify (
+    					rawTimeStampToken, 
+    					signer.getSignature() );
+    		}
+    	}
+		
+		// Recognize the signature type, the disposition is already known
+//    	if ( externalTimeStamp == null && attributeTimeStamp == null ) {
+//    		signatureType = SignCategory.CAdES_BES; 
+//    	} else {
+//    		signatureType = SignCategory.CAdES_T;
+//    	}
+    	SignCategory signatureType = SignCategory.CMS;
+    	// TODO manage the other CMS signature types
+        
+        // Instance the CMSSignatureInfo as emptySignature 
+    	emptySignature = new CMSSignatureInfo ( signatureAlgorithm, digestAlgorithm );
+		
+    	// Obtain the trusted signing certificate and generate the trustedChainSignature
+		SignerId signerId = signer.getSID();
+		X509CertificateHolder certHolder = (X509CertificateHolder) certHolderStore.getMatches(signerId).iterator().next();
+		chainSignature = emptySignature.toChainSignature ( 
+				new X509Certificate[] {certHolderConverter.getCertificate(certHolder)} );
+    	
+    	// Take the digest evaluated with the digestAlgorithm while streaming the content and generate the digestSignature
+		byte[] fingerPrint = contentDigests.get ( digestAlgorithm );
+		if ( fingerPrint == null ) {
+			throw new SignatureException(String.format ( "content digest not evaluated - %s", digestAlgorithm ));
+		}
+		DigestInfo digest = DigestInfo.getInstance(digestAlgorithm, fingerPrint);
+		digestSignature = chainSignature.toDigestSignature ( digest ); 
+		
+		// Obtain the digitalSignature and generate the signedSignature
+		byte[] digitalSignature = signer.getSignature();
+		signedSignature = digestSignature.toSignedSignature(digitalSignature);
+        
+		// Finalize the signature
+		if ( signatureType.isTimeStamped() ) {
+			// Convert the signedSignature to markedSignature, append the timeStamps to it and finalize,
+			//			if the signatureType is timeStamped
+			markedSignature = signedSignature.toMarkedSignature();
+			if ( externalTimeStamp != null ) {
+				markedSignature.appendTimeStamp(externalTimeStamp, extTsDisposition);
+			}
+			if ( attributeTimeStamp != null ) {
+				markedSignature.appendTimeStamp(attributeTimeStamp, SignDisposition.TimeStamp.ATTRIBUTE);
+			}
+			finalizedSignature = markedSignature.finalizeSignature();
+		} else {
+			// Finalize the signedSignature otherwise 
+			finalizedSignature = signedSignature.finalizeSignature();
+		}
+
+        // Verify the digital signature
+		boolean verified;
+        try {
+        	SignerInformationVerifier verifier = BouncyCastleUtils.buildVerifierFor ( certHolder );
+        	verified = signer.verify ( verifier );
+		} catch (Exception e) {
+			tracer.error ( String.format("unable to get a verifier for %s", certHolder), e );
+			verified = false;
+		}
+        return new SignerVerification ( finalizedSignature, verified );
+	}
 
 }
@@ -1,17 +1,28 @@
 package org.sinekartads.core.service;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.DigestInputStream;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.SignatureException;
 import java.security.cert.CRL;
 import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -24,6 +35,9 @@ import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.tsp.TimeStampToken;
 import org.sinekartads.core.cms.ExtCMSSignedDataGenerator;
 import org.sinekartads.core.cms.MarkedData;
+import org.sinekartads.core.pdf.PooledTSAClient;
+import org.sinekartads.core.pdf.PreparedDocumentStore;
+import org.sinekartads.core.pdf.PreparedDocumentStore.PreparedDocument;
 import org.sinekartads.model.domain.DigestInfo;
 import org.sinekartads.model.domain.PDFSignatureInfo;
 import org.sinekartads.model.domain.SecurityLevel.VerifyResult;
@@ -42,10 +56,13 @@ import org.sinekartads.model.domain.TsRequestInfo;
 import org.sinekartads.model.domain.VerifyInfo;
 import org.sinekartads.model.oid.DigestAlgorithm;
 import org.sinekartads.model.oid.SignatureAlgorithm;
+import org.sinekartads.util.CryptoEnginePool;
+import org.sinekartads.util.HexUtils;
 import org.sinekartads.util.x509.X509Utils;
 import org.springframework.util.Assert;
 
 import com.itextpdf.text.pdf.AcroFields;
+import com.itextpdf.text.pdf.ByteBuffer;
 import com.itextpdf.text.pdf.PdfDate;
 import com.itextpdf.text.pdf.PdfDictionary;
 import com.itextpdf.text.pdf.PdfName;
@@ -55,13 +72,12 @@ import com.itextpdf.text.pdf.PdfSignatureAppearance;
 import com.itextpdf.text.pdf.PdfStamper;
 import com.itextpdf.text.pdf.PdfString;
 import com.itextpdf.text.pdf.security.BouncyCastleDigest;
+import com.itextpdf.text.pdf.security.CertificateUtil;
 import com.itextpdf.text.pdf.security.CertificateVerification;
-import com.itextpdf.text.pdf.security.DigestAlgorithms;
 import com.itextpdf.text.pdf.security.ExternalDigest;
 import com.itextpdf.text.pdf.security.MakeSignature.CryptoStandard;
 import com.itextpdf.text.pdf.security.PdfPKCS7;
 import com.itextpdf.text.pdf.security.TSAClient;
-import com.itextpdf.text.pdf.security.TSAClientBouncyCastle;
 
 /**
  * <p>
@@ -95,8 +111,15 @@ import com.itextpdf.text.pdf.security.TSAClientBouncyCastle;
  * an envelope which matches with the previously evaluated digest. After that the postSign phase goes on
  * with the signed pdf creation and store its signed bytes by means of the outputStream.
  * </p><p>
- * The timeStamp is added automatically by itext, by using a {@link TSAClientBouncyCastle} instantiated
+ * The timeStamp is added automatically by itext, by using a {@link PooledTSAClient} instantiated
  * when the SignatureDTO requires a timeStamp.
+ * </p><p>
+ * The pre-closed document produced by the preSign is kept in the temporary folder and registered
+ * into the {@link PreparedDocumentStore}; only its opaque random handle travels with the SignatureDTO.
+ * The postSign takes the prepared document back and verifies it against the request: same signature 
+ * attributes, same content stream, same /ByteRange and range digest, read again from the file. 
+ * If everything matches, it only writes the CAdES envelope into the reserved /Contents gap, without 
+ * parsing and stamping the pdf again; otherwise the whole pipeline is repeated on the content stream.
  * </p> 
  * @author adeprato
  */
@@ -143,7 +166,12 @@ public class PDFSignatureService
 						  SignDisposition.PDF,
 						  VerifyResult,
 						  PDFSignatureInfo > digestSignature	= null;
+		File contentFile = null;
+		File preparedFile = null;
+		PdfSignatureAppearance sap = null;
 		try {
+			PreparedDocumentStore.getInstance().sweepOrphans ( conf.getTemporaryFolder() );
+			
 			TsRequestInfo tsRequest = chainSignature.getTsRequest();
 			boolean applyMark = tsRequest!=null && StringUtils.isNotBlank(tsRequest.getTsUrl());
 
@@ -153,13 +181,21 @@ public class PDFSignatureService
 			Certificate[] chain = signature.getRawX509Certificates();
 			
 			// Create the stamper that will be used to create the signed file
-			PdfReader reader = new PdfReader(contentIs);
+			byte[][] contentDigest = new byte[1][];
+			contentFile = spoolContent ( contentIs, signature.getDigestAlgorithm(), contentDigest );
+			preparedFile = File.createTempFile ( 
+					PreparedDocumentStore.PREPARED_DOCUMENT_PREFIX, 
+					PreparedDocumentStore.PREPARED_DOCUMENT_SUFFIX, 
+					conf.getTemporaryFolder() );
+			PdfReader reader = openReader ( contentFile );
 			PdfStamper stamper = PdfStamper.createSignature (
 					reader,		// embed the reader to access to the pdf bytes
-					null, 		// don't save the generated signed pdf anywhere
-					'\0' );		// use the last PDF version
+					null, 		// don't copy the generated pdf anywhere, keep it into the prepared file
+					'\0', 		// use the last PDF version
+					preparedFile,	// stamp into the prepared document rather than in memory
+					false );
 			
-			PdfSignatureAppearance sap = stamper.getSignatureAppearance();
+			sap = stamper.getSignatureAppearance();
 			ExternalDigest externalDigest = new BouncyCastleDigest();
 			 
 			// --- Code extracted by MakeSignature ---
@@ -201,7 +237,7 @@ public class PDFSignatureService
 	        String hashAlgorithm = signature.getDigestAlgorithm().getName();
 	        PdfPKCS7 sgn = new PdfPKCS7(null, chain, hashAlgorithm, BouncyCastleProvider.PROVIDER_NAME, externalDigest, false);
 	        InputStream data = sap.getRangeStream();
-	        byte hash[] = DigestAlgorithms.digest(data, externalDigest.getMessageDigest(hashAlgorithm));
+	        byte hash[] = CryptoEnginePool.getInstance().digest(signature.getDigestAlgorithm(), data);
 	        byte[] authenticatedAttributeBytes = sgn.getAuthenticatedAttributeBytes(hash, now, null, null, sigtype);
 	        // ---------------------------------------
 	        
@@ -209,16 +245,31 @@ public class PDFSignatureService
 	     	signature.setFileId(sap.getStamper().getFileId());
 			signature.setUnicodeModDate(sap.getStamper().getUnicodeModDate());
 			signature.setSigningTime(now.getTime());
+			
+			// Keep the pre-closed document, the postSign will only need to fill its /Contents gap
+			PreparedDocument preparedDocument = new PreparedDocument ( 
+					preparedFile, sap.getRange(), hash, contentDigest[0], requestBinding(signature) );
+			signature.setPreparedDocument ( PreparedDocumentStore.getInstance().put(preparedDocument) );
+			signature.setByteRange(sap.getRange());
+			signature.setRangeDigest(hash);
 	        
 	        // Store the fingerPrint of the nested CAdES signature, this value will then be signed on the clientSide 
-	        MessageDigest digester = MessageDigest.getInstance(signature.getDigestAlgorithm().getName());
-	        byte[] fingerPrint = digester.digest(authenticatedAttributeBytes);
+	        byte[] fingerPrint = CryptoEnginePool.getInstance().digest(signature.getDigestAlgorithm(), authenticatedAttributeBytes);
 	        DigestInfo digestInfo = DigestInfo.getInstance(signature.getDigestAlgorithm(), fingerPrint);
 			digestSignature = signature.toDigestSignature ( digestInfo );
 		} catch (SignatureException e) {
 			throw e;
 		} catch (Exception e) {
 			throw new SignatureException(e);
+		} finally {
+			// the stamped pdf is never closed by the preSign, keep it as prepared document only if succeeded
+			if ( sap != null ) {
+				sap.release();
+			}
+			if ( digestSignature == null ) {
+				deleteQuietly ( preparedFile );
+			}
+			deleteQuietly ( contentFile );
 		}
 				
 		// Return the digestSignature
@@ -235,6 +286,9 @@ public class PDFSignatureService
 	 * PostSign implementation for the PAdES signature.
 	 * The method follows almost the same steps of the preSign. Still, in this case signing time
 	 * and fileId are taken from the SignatureDTO.
+	 * If the document prepared by the preSign is still available and matches with the signature, the 
+	 * content stream is only digested and the envelope is written directly into the prepared document; 
+	 * the content is spooled and stamped again otherwise.
 	 */
 	@Override
 	public FinalizedSignature < SignCategory,
@@ -270,6 +324,8 @@ public class PDFSignatureService
 			envelopedStream = embeddedSignOs;
 		}
 		
+		File contentFile = null;
+		PdfSignatureAppearance sap = null;
 		try {
 			PDFSignatureInfo signature = (PDFSignatureInfo) signedSignature;
 			Certificate[] chain = signature.getRawX509Certificates();
@@ -277,20 +333,43 @@ public class PDFSignatureService
 			// Create the TSA client if a timeStamp is required
 			TSAClient tsaClient=null;
 			if ( applyMark ) {
-				tsaClient = new TSAClientBouncyCastle(tsRequest.getTsUrl(), tsRequest.getTsUsername(), tsRequest.getTsPassword());
+				tsaClient = new PooledTSAClient(tsRequest.getTsUrl(), tsRequest.getTsUsername(), tsRequest.getTsPassword());
 			}
+			
+			// Complete the prepared document if available, without parsing and stamping the pdf again:
+			//			the content is only digested, to be compared with the one given to the preSign
+			PreparedDocument preparedDocument = takePreparedDocument ( signature );
+			if ( preparedDocument != null ) {
+				try {
+					byte[] contentDigest = CryptoEnginePool.getInstance().digest ( signature.getDigestAlgorithm(), contentIs );
+					if ( !Arrays.equals(preparedDocument.getContentDigest(), contentDigest) ) {
+						// the range digest signed by the client has been evaluated on the preSign content
+						throw new SignatureException ( "the content differs from the one given to the preSign" );
+					}
+					completePreparedDocument ( signature, preparedDocument, tsaClient, envelopedStream );
+				} finally {
+					deleteQuietly ( preparedDocument.getFile() );
+				}
+				finalizedSignature = signature.finalizeSignature();
+				return finalizedSignature;
+			}
+			
+			// Spool the content otherwise, itext needs a seekable source to stamp the pdf again
+			contentFile = spoolContent ( contentIs );
 
 			int estimatedSize=0;
 			CryptoStandard sigtype = CryptoStandard.CADES;
 			
 			// Create the stamper that will be used to create the signed file
-			PdfReader reader = new PdfReader(contentIs);
+			PdfReader reader = openReader ( contentFile );
 			PdfStamper stamper = PdfStamper.createSignature (
 					reader,				// embed the reader to access to the pdf bytes
 					envelopedStream, 	// store the signed pdf bytes into through the outputStream
-					'\0' );				// use the last PDF version
+					'\0', 				// use the last PDF version
+					conf.getTemporaryFolder(),	// stamp into a temporary file, copied to the outputStream at the closure
+					false );
 
-			PdfSignatureAppearance sap = stamper.getSignatureAppearance();
+			sap = stamper.getSignatureAppearance();
 			ExternalDigest externalDigest = new BouncyCastleDigest();
 			 
 			// --- Code extracted by MakeSignature ---
@@ -334,29 +413,10 @@ public class PDFSignatureService
 	        String hashAlgorithm = signature.getDigestAlgorithm().getName();
 	        PdfPKCS7 sgn = new PdfPKCS7(null, chain, hashAlgorithm, BouncyCastleProvider.PROVIDER_NAME, externalDigest, false);
 	        InputStream data = sap.getRangeStream();
-	        byte hash[] = DigestAlgorithms.digest(data, externalDigest.getMessageDigest(hashAlgorithm));
-//	        byte[] ocsp = null;
-//	        if (chain.length >= 2 && ocspClient != null) {
-//	            ocsp = ocspClient.getEncoded((X509Certificate) chain[0], (X509Certificate) chain[1], null);
-//	        }
-	        sgn.setExternalDigest(signature.getDigitalSignature(), null, "RSA");
-
-//	        byte[] encodedSig = sgn.getEncodedPKCS7(hash, _getSignDate(doc.getSignDate()), tsaClient, ocsp, crlBytes, sigtype);
-	        byte[] encodedSig = sgn.getEncodedPKCS7(hash, cal, tsaClient, null, null, sigtype);
-
-	        if (estimatedSize + 2 < encodedSig.length)
-	            throw new IOException("Not enough space");
+	        byte hash[] = CryptoEnginePool.getInstance().digest(signature.getDigestAlgorithm(), data);
+	        byte[] paddedSig = buildSignatureContents ( sgn, signature, hash, cal, tsaClient, estimatedSize );
 	        // ---------------------------------------
 	        
-			ASN1EncodableVector extraDataVectorEncoding = new ASN1EncodableVector();
-			extraDataVectorEncoding.add(new DERObjectIdentifier("1.2.840.114283")); // encoding attribute 
-			extraDataVectorEncoding.add(new DERGeneralString("115.105.110.101.107.97.114.116.97"));
-
-			// Add the CAdES enveloped as the signature content
-			byte[] extraDataVectorEncodingBytes = new DERSequence(new DERSequence(extraDataVectorEncoding)).getEncoded();
-	        byte[] paddedSig = new byte[estimatedSize];
-	        System.arraycopy(encodedSig, 0, paddedSig, 0, encodedSig.length);
-			System.arraycopy(extraDataVectorEncodingBytes, 0,paddedSig, encodedSig.length,extraDataVectorEncodingBytes.length); // encoding attribute
 	        PdfDictionary dic2 = new PdfDictionary();
 	        dic2.put(PdfName.CONTENTS, new PdfString(paddedSig).setHexWriting(true));
 	        
@@ -368,13 +428,105 @@ public class PDFSignatureService
 			throw e;
 		} catch (Exception e) {
 			throw new SignatureException(e);
-		} 
+		} finally {
+			// the appearance closure releases the stamped pdf by itself, do it here if it has not been reached
+			if ( sap != null && finalizedSignature == null ) {
+				sap.release();
+			}
+			deleteQuietly ( contentFile );
+		}
 		
 		return finalizedSignature;
 	}
 	
 	
 	
+	/**
+	 * Generate the CAdES envelope and pad it to the size reserved for the /Contents entry. 
+	 * The PKCS7 structure is evaluated on the range digest and the signingTime, as it has been 
+	 * by the preSign, with the digital signature produced by the client.
+	 */
+	private byte[] buildSignatureContents ( 
+			PdfPKCS7 sgn,
+			PDFSignatureInfo signature,
+			byte[] hash,
+			Calendar cal,
+			TSAClient tsaClient,
+			int estimatedSize ) throws Exception {
+		
+		CryptoStandard sigtype = CryptoStandard.CADES;
+//	        byte[] ocsp = null;
+//	        if (chain.length >= 2 && ocspClient != null) {
+//	            ocsp = ocspClient.getEncoded((X509Certificate) chain[0], (X509Certificate) chain[1], null);
+//	        }
+        sgn.setExternalDigest(signature.getDigitalSignature(), null, "RSA");
+
+//	        byte[] encodedSig = sgn.getEncodedPKCS7(hash, _getSignDate(doc.getSignDate()), tsaClient, ocsp, crlBytes, sigtype);
+        byte[] encodedSig = sgn.getEncodedPKCS7(hash, cal, tsaClient, null, null, sigtype);
+
+        if (estimatedSize + 2 < encodedSig.length)
+            throw new IOException("Not enough space");
+		
+		ASN1EncodableVector extraDataVectorEncoding = new ASN1EncodableVector();
+		extraDataVectorEncoding.add(new DERObjectIdentifier("1.2.840.114283")); // encoding attribute 
+		extraDataVectorEncoding.add(new DERGeneralString("115.105.110.101.107.97.114.116.97"));
+
+		// Add the CAdES enveloped as the signature content
+		byte[] extraDataVectorEncodingBytes = new DERSequence(new DERSequence(extraDataVectorEncoding)).getEncoded();
+        byte[] paddedSig = new byte[estimatedSize];
+        System.arraycopy(encodedSig, 0, paddedSig, 0, encodedSig.length);
+		System.arraycopy(extraDataVectorEncodingBytes, 0,paddedSig, encodedSig.length,extraDataVectorEncodingBytes.length); // encoding attribute
+		return paddedSig;
+	}
+	
+	/**
+	 * Fill the /Contents gap of the prepared document with the CAdES envelope and copy it to the 
+	 * outputStream. The gap position and size are given by the byteRange evaluated by the preSign and
+	 * verified by {@link #takePreparedDocument(PDFSignatureInfo, byte[])}, the envelope is hex-encoded 
+	 * as itext does at the closure of the signature appearance.
+	 */
+	private void completePreparedDocument ( 
+			PDFSignatureInfo signature,
+			PreparedDocument preparedDocument,
+			TSAClient tsaClient,
+			OutputStream envelopedStream ) throws Exception {
+		
+		long[] byteRange = preparedDocument.getByteRange();
+		long contentsPosition = byteRange[1];
+		int contentsLength = (int) (byteRange[2] - byteRange[1]);
+		int estimatedSize = (contentsLength - 2) / 2;
+		
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(signature.getSigningTime());
+		String hashAlgorithm = signature.getDigestAlgorithm().getName();
+		PdfPKCS7 sgn = new PdfPKCS7(null, signature.getRawX509Certificates(), hashAlgorithm, 
+				BouncyCastleProvider.PROVIDER_NAME, new BouncyCastleDigest(), false);
+		byte[] paddedSig = buildSignatureContents ( sgn, signature, preparedDocument.getRangeDigest(), cal, tsaClient, estimatedSize );
+		
+		ByteBuffer bf = new ByteBuffer();
+		new PdfString(paddedSig).setHexWriting(true).toPdf(null, bf);
+		if ( bf.size() > contentsLength ) {
+			throw new IOException("Not enough space");
+		}
+		
+		RandomAccessFile raf = new RandomAccessFile ( preparedDocument.getFile(), "rw" );
+		try {
+			raf.seek ( contentsPosition );
+			raf.write ( bf.getBuffer(), 0, bf.size() );
+			raf.seek ( 0 );
+			byte[] buf = new byte[8192];
+			int read;
+			while ( (read = raf.read(buf)) >= 0 ) {
+				envelopedStream.write ( buf, 0, read );
+			}
+			envelopedStream.flush ( );
+		} finally {
+			raf.close();
+		}
+	}
+	
+	
+	
 	// -----
 	// --- TimeStamp application
 	// -
@@ -451,6 +603,105 @@ public class PDFSignatureService
 		
 		Assert.notNull ( envelopeIs );
 		
+		byte[] envelope = IOUtils.toByteArray(envelopeIs);
+		VerifyInfo verifyInfo = new VerifyInfo();
+		VerifyResult signVerifyResult = VerifyResult.INVALID;
+		PdfReader reader = null;
+		try {
+			reader = new PdfReader ( new ByteArrayInputStream(envelope) );
+			AcroFields acroFields = reader.getAcroFields();
+			
+			// Read the signatures from the document: the signed byte ranges are digested by the reader, 
+			//			that can't be shared among threads
+			List<Callable<PdfSignatureVerification>> tasks = new ArrayList<Callable<PdfSignatureVerification>>();
+			for ( final String signName : acroFields.getSignatureNames() ) {
+				PdfPKCS7 pdfPkCs7;
+				boolean coversWholeDocument;
+				try {
+					pdfPkCs7 = acroFields.verifySignature(signName, "BC");
+					coversWholeDocument = acroFields.signatureCoversWholeDocument(signName);
+				} catch(Exception e) {
+					// an unreadable signature is reported as invalid, the other ones are verified anyway
+					tracer.info ( String.format("unable to read the signature - %s", signName), e );
+					tasks.add ( new Callable<PdfSignatureVerification>() {
+						@Override
+						public PdfSignatureVerification call() {
+							return unreadableSignature ( signName );
+						}
+					} );
+					continue;
+				}
+				final PdfPKCS7 signature = pdfPkCs7;
+				final boolean coversWhole = coversWholeDocument;
+				tasks.add ( new Callable<PdfSignatureVerification>() {
+					@Override
+					public PdfSignatureVerification call() throws Exception {
+						return verifySignature ( signName, signature, coversWhole );
+					}
+				} );
+			}
+			
+			// Verify the signatures in parallel, then collect them in the document order
+			List<PdfSignatureVerification> verifications = VerificationExecutor.getInstance().invokeAll ( tasks );
+			for ( PdfSignatureVerification verification : verifications ) {
+				VerifiedSignature 	  	  <	SignCategory, 
+											SignDisposition.PDF,
+											VerifyResult,
+											PDFSignatureInfo >			verifiedSignature;
+				if ( verification.finalizedSignature == null ) {
+					verifiedSignature = verification.invalidSignature;
+				} else {
+					// Evaluate the securityLevel
+					if ( verification.verified ) { 
+						signVerifyResult = minLevel ( signVerifyResult, VerifyResult.VALID );
+					} else {
+						signVerifyResult = minLevel ( signVerifyResult, VerifyResult.INVALID );
+					}
+					verifiedSignature = verification.finalizedSignature.toVerifiedSignature(signVerifyResult);
+				}
+				verifyInfo.addSignature ( verifiedSignature );
+			}
+		} finally {
+			
+			if ( reader != null ) {
+				reader.close();
+			}
+			IOUtils.write ( envelope, extractedOs );
+			
+		}
+		
+		return verifyInfo;
+	}
+	
+	
+	
+	/**
+	 * Finalized signature of a pdf signature with the result of its cryptographic verification, or the 
+	 * invalidated signature if the verification failed. The securityLevel is evaluated by the caller following
+	 * the document order.
+	 */
+	private static class PdfSignatureVerification {
+		FinalizedSignature 	  	  <	SignCategory, 
+									SignDisposition.PDF,
+									VerifyResult,
+									PDFSignatureInfo >			finalizedSignature;
+		boolean verified;
+		VerifiedSignature 	  	  <	SignCategory, 
+									SignDisposition.PDF,
+									VerifyResult,
+									PDFSignatureInfo >			invalidSignature;
+	}
+	
+	/**
+	 * Build the SignatureInfo of a single pdf signature, already read from the document, and verify its digital 
+	 * signature, its signing certificate and its timeStamp. Any error invalidates the signature, which is 
+	 * reported as unreadable if its algorithms can't be recognized.
+	 */
+	private PdfSignatureVerification verifySignature ( 
+			String signName, 
+			PdfPKCS7 pdfPkCs7, 
+			boolean coversWholeDocument ) {
+		
 		// Prepare the signature variables
 		EmptySignature   		  < SignCategory, 
 							 		SignDisposition.PDF,
@@ -476,115 +727,82 @@ public class PDFSignatureService
 							 		SignDisposition.PDF,
 							 		VerifyResult,
 							 		PDFSignatureInfo >			markedSignature	= null;
-
-		FinalizedSignature 	  	  <	SignCategory, 
-									SignDisposition.PDF,
-									VerifyResult,
-									PDFSignatureInfo >			finalizedSignature = null;
-
-		VerifiedSignature 	  	  <	SignCategory, 
-									SignDisposition.PDF,
-									VerifyResult,
-									PDFSignatureInfo >			verifiedSignature = null;
 		
-		byte[] envelope = IOUtils.toByteArray(envelopeIs);
-		VerifyInfo verifyInfo = new VerifyInfo();
-		VerifyResult signVerifyResult = VerifyResult.INVALID;
-		PdfReader reader = null;
+		PdfSignatureVerification verification = new PdfSignatureVerification();
 		try {
-			reader = new PdfReader ( new ByteArrayInputStream(envelope) );
-			AcroFields acroFields = reader.getAcroFields();
-			
-//			SignDisposition.PDF signDisposition;
-//			SignatureType.PDF signType;
-			PdfPKCS7 pdfPkCs7;
-			TimeStampToken rawTimeStampToken;
+			DigestAlgorithm digestAlgorithm = DigestAlgorithm.getInstance(pdfPkCs7.getHashAlgorithm());
+			SignatureAlgorithm signatureAlgorithm = SignatureAlgorithm.getInstance(pdfPkCs7.getDigestAlgorithm());
+			TimeStampToken rawTimeStampToken = pdfPkCs7.getTimeStampToken();
 			VerifiedTimeStamp timeStamp;
-			DigestAlgorithm digestAlgorithm;
-			SignatureAlgorithm signatureAlgorithm;
-			DigestInfo digest;
-//			byte[] digitalSignature;
-			X509Certificate[] certificateChain;
+			if ( rawTimeStampToken != null ) {
+				timeStamp = timeStampService.verify(rawTimeStampToken);
+			} else {
+				timeStamp = null;
+			}
+			// Instance the PDFSignatureInfo as emptySignature
+			emptySignature = new PDFSignatureInfo ( signName, 
+													signatureAlgorithm, 
+													digestAlgorithm );
+			((PDFSignatureInfo)emptySignature).setCoversWholeDocument ( coversWholeDocument );
 			
-	        for ( String signName : acroFields.getSignatureNames() ) {
-	        	try {
-		            pdfPkCs7 = acroFields.verifySignature(signName, "BC");
-		            
-		        	digestAlgorithm = DigestAlgorithm.getInstance(pdfPkCs7.getHashAlgorithm());
-		        	signatureAlgorithm = SignatureAlgorithm.getInstance(pdfPkCs7.getDigestAlgorithm());
-		        	rawTimeStampToken = pdfPkCs7.getTimeStampToken();
-		        	if ( rawTimeStampToken != null ) {
-		        		timeStamp = timeStampService.verify(rawTimeStampToken);
-		        	} else {
-		        		timeStamp = null;
-		        	}
-					// Instance the PDFSignatureInfo as emptySignature
-					emptySignature = new PDFSignatureInfo ( signName, 
-															signatureAlgorithm, 
-															digestAlgorithm );
-					((PDFSignatureInfo)emptySignature).setCoversWholeDocument (
-							acroFields.signatureCoversWholeDocument(signName) );
-					
-					// Extract the untrusted signature chain and generate the untrustedChainSignature
-					Certificate[] certificates = pdfPkCs7.getCertificates();
-					certificateChain = new X509Certificate[certificates.length];
-					for ( int i=0; i<certificates.length; i++ ) {
-						certificateChain[i] = X509Utils.rawX509CertificateFromEncoded ( certificates[i].getEncoded() );
-					}
-					chainSignature = emptySignature.toChainSignature(certificateChain);
-
-					// Extract the digest and generate the digestSignature
-					digest = DigestInfo.getInstance(digestAlgorithm, "fingerPrint".getBytes());
-					digestSignature = chainSignature.toDigestSignature(digest);
-					
-					// Extract the digitalSignature and generate the signedSignature 
-//					digitalSignature = pdfPkCs7.getEncodedPKCS7();
-					signedSignature = digestSignature.toSignedSignature("digitalSignature".getBytes());
-					
-					// Append the timeStamp
-					if ( timeStamp != null ) {
-						markedSignature = signedSignature.toMarkedSignature();
-						markedSignature.appendTimeStamp(timeStamp, SignDisposition.TimeStamp.ATTRIBUTE);
-						finalizedSignature = markedSignature.finalizeSignature();
-					} else {
-						finalizedSignature = signedSignature.finalizeSignature();
-					}
-					
-					// Evaluate the securityLevel
-		            Calendar cal = pdfPkCs7.getSignDate();
-		            Certificate[] pkc = pdfPkCs7.getCertificates();
-					boolean verified = pdfPkCs7.verify() && StringUtils.isBlank ( 
-							CertificateVerification.verifyCertificate((X509Certificate)pkc[0], new ArrayList<CRL>(), cal) );
-					if ( verified ) { 
-						signVerifyResult = minLevel ( signVerifyResult, VerifyResult.VALID );
-					} else {
-						signVerifyResult = minLevel ( signVerifyResult, VerifyResult.INVALID );
-					}
-					verifiedSignature = finalizedSignature.toVerifiedSignature(signVerifyResult);
-					
-				} catch(Exception e) {
-					tracer.info(e.getMessage(), e);
-					
-					// Invalidate the signature if any error happen
-					if ( markedSignature != null ) 					verifiedSignature = markedSignature.invalidateSignature();
-					else if ( signedSignature != null ) 			verifiedSignature = signedSignature.invalidateSignature();
-					else if ( digestSignature != null )		 		verifiedSignature = digestSignature.invalidateSignature();
-					else if ( chainSignature != null ) 				verifiedSignature = chainSignature.invalidateSignature();
-					else											verifiedSignature = emptySignature.invalidateSignature();
-					 
-				}
-				verifyInfo.addSignature ( verifiedSignature );
+			// Extract the untrusted signature chain and generate the untrustedChainSignature
+			Certificate[] certificates = pdfPkCs7.getCertificates();
+			X509Certificate[] certificateChain = new X509Certificate[certificates.length];
+			for ( int i=0; i<certificates.length; i++ ) {
+				certificateChain[i] = X509Utils.rawX509CertificateFromEncoded ( certificates[i].getEncoded() );
 			}
-		} finally {
+			chainSignature = emptySignature.toChainSignature(certificateChain);
+
+			// Extract the digest and generate the digestSignature
+			DigestInfo digest = DigestInfo.getInstance(digestAlgorithm, "fingerPrint".getBytes());
+			digestSignature = chainSignature.toDigestSignature(digest);
 			
-			if ( reader != null ) {
-				reader.close();
+			// Extract the digitalSignature and generate the signedSignature 
+//			digitalSignature = pdfPkCs7.getEncodedPKCS7();
+			signedSignature = digestSignature.toSignedSignature("digitalSignature".getBytes());
+			
+			// Append the timeStamp
+			if ( timeStamp != null ) {
+				markedSignature = signedSignature.toMarkedSignature();
+				markedSignature.appendTimeStamp(timeStamp, SignDisposition.TimeStamp.ATTRIBUTE);
+				verification.finalizedSignature = markedSignature.finalizeSignature();
+			} else {
+				verification.finalizedSignature = signedSignature.finalizeSignature();
 			}
-			IOUtils.write ( envelope, extractedOs );
 			
+			// Verify the digital signature and the signing certificate, against its CRL if enabled
+            Calendar cal = pdfPkCs7.getSignDate();
+			verification.verified = pdfPkCs7.verify() && StringUtils.isBlank ( 
+					CertificateVerification.verifyCertificate((X509Certificate)certificates[0], 
+							signingCertificateCRLs((X509Certificate)certificates[0]), cal) );
+			
+		} catch(Exception e) {
+			tracer.info(e.getMessage(), e);
+			
+			// Invalidate the signature if any error happen
+			verification.finalizedSignature = null;
+			if ( markedSignature != null ) 					verification.invalidSignature = markedSignature.invalidateSignature();
+			else if ( signedSignature != null ) 			verification.invalidSignature = signedSignature.invalidateSignature();
+			else if ( digestSignature != null )		 		verification.invalidSignature = digestSignature.invalidateSignature();
+			else if ( chainSignature != null ) 				verification.invalidSignature = chainSignature.invalidateSignature();
+			else if ( emptySignature != null ) 				verification.invalidSignature = emptySignature.invalidateSignature();
+			else											verification = unreadableSignature ( signName );
 		}
-		
-		return verifyInfo;
+		return verification;
+	}
+	
+	/**
+	 * @return the invalidated signature of a pdf signature that can't be read, whose algorithms are unknown
+	 */
+	private static PdfSignatureVerification unreadableSignature ( String signName ) {
+		PdfSignatureVerification verification = new PdfSignatureVerification();
+		try {
+			verification.invalidSignature = new PDFSignatureInfo ( signName, null, null ).invalidateSignature();
+		} catch(CertificateException e) {
+			// never thrown, no certificate is given
+			throw new RuntimeException(e);
+		}
+		return verification;
 	}
 	
 	
@@ -593,6 +811,174 @@ public class PDFSignatureService
 	// --- Utility methods
 	// -
 	
+	/**
+	 * Retrieve the CRL of the signing certificate by the shared RevocationCache, if the check is enabled 
+	 * by the sinekartads.verify.pdf.crl system property: the CRL is downloaded once until its nextUpdate.
+	 * Without the check, or without any distribution point, the revocation is not checked.
+	 * @throws IOException if the CRL can't be obtained or has expired, the revocation status is unknown then
+	 */
+	private List<CRL> signingCertificateCRLs ( X509Certificate signingCertificate ) 
+			throws IOException, GeneralSecurityException {
+		
+		List<CRL> crls = new ArrayList<CRL>();
+		if ( conf.isPdfRevocationCheck() ) {
+			CRL crl = CertificateUtil.getCRL ( signingCertificate );
+			if ( crl != null ) {
+				crls.add ( crl );
+			}
+		}
+		return crls;
+	}
+	
+	/**
+	 * Copy the pdf content into a temporary file, in order to give to itext a seekable source
+	 * which can be read partially instead of loading the whole document into the heap.
+	 * @param digestAlgorithm algorithm of the content digest, evaluated while the content is copied
+	 * @param contentDigest receives the content digest as its first element
+	 */
+	private File spoolContent ( InputStream contentIs, DigestAlgorithm digestAlgorithm, byte[][] contentDigest ) 
+			throws IOException, NoSuchAlgorithmException {
+		
+		MessageDigest digester = CryptoEnginePool.getInstance().acquireDigester ( digestAlgorithm );
+		try {
+			File contentFile = spoolContent ( new DigestInputStream(contentIs, digester) );
+			contentDigest[0] = digester.digest ( );
+			return contentFile;
+		} finally {
+			CryptoEnginePool.getInstance().release ( digester );
+		}
+	}
+	
+	/**
+	 * Copy the pdf content into a temporary file, without evaluating its digest.
+	 */
+	private File spoolContent ( InputStream contentIs ) throws IOException {
+		
+		File contentFile = createTempFile ( ".pdf" );
+		OutputStream contentOs = null;
+		boolean spooled = false;
+		try {
+			contentOs = new FileOutputStream ( contentFile );
+			IOUtils.copy ( contentIs, contentOs );
+			spooled = true;
+		} finally {
+			IOUtils.closeQuietly ( contentOs );
+			if ( !spooled ) {
+				deleteQuietly ( contentFile );
+			}
+		}
+		return contentFile;
+	}
+	
+	/**
+	 * Open a partial PdfReader on the given file: only the xref table is parsed at the opening, 
+	 * the objects are read on demand from the (memory-mapped when possible) file.
+	 */
+	private PdfReader openReader ( File contentFile ) throws IOException {
+		return new PdfReader ( contentFile.getAbsolutePath(), null, true );
+	}
+	
+	/**
+	 * Take the prepared document referred by the signature handle from the {@link PreparedDocumentStore}
+	 * and verify that it can be completed with the signature: it must have been prepared for the same 
+	 * signature attributes, and its /ByteRange and range digest, read again from the file, must match 
+	 * with the ones signed by the client. The content digest is checked by the caller, while streaming it. 
+	 * A prepared document that does not pass the checks is deleted.
+	 * @return the verified prepared document, null if the pdf has to be stamped again
+	 */
+	private PreparedDocument takePreparedDocument ( PDFSignatureInfo signature ) 
+			throws IOException, NoSuchAlgorithmException {
+		
+		String handle = signature.getPreparedDocument();
+		if ( StringUtils.isBlank(handle) || signature.getByteRange() == null || signature.getRangeDigest() == null ) {
+			return null;
+		}
+		PreparedDocument preparedDocument = PreparedDocumentStore.getInstance().take ( handle );
+		if ( preparedDocument == null ) {
+			tracer.info ( String.format("prepared document %s not available, the pdf will be stamped again", handle) );
+			return null;
+		}
+		
+		String mismatch = null;
+		File preparedFile = preparedDocument.getFile();
+		long[] byteRange = preparedDocument.getByteRange();
+		if ( !Arrays.equals(preparedDocument.getBinding(), requestBinding(signature)) ) {
+			mismatch = "prepared for a different signature";
+		} else if ( !Arrays.equals(byteRange, signature.getByteRange()) 
+				|| !Arrays.equals(preparedDocument.getRangeDigest(), signature.getRangeDigest()) ) {
+			mismatch = "byteRange or range digest not matching with the signature";
+		} else if ( byteRange.length != 4 || byteRange[0] != 0 || byteRange[1] <= 0 || byteRange[2] <= byteRange[1] 
+				|| byteRange[3] < 0 || byteRange[2] + byteRange[3] != preparedFile.length() ) {
+			mismatch = "byteRange not covering the prepared file";
+		} else if ( !Arrays.equals(byteRange, PreparedDocumentStore.readByteRange(preparedFile, byteRange[1], byteRange[2])) ) {
+			mismatch = "byteRange not matching with the /ByteRange of the file";
+		} else if ( !isContentsGap(preparedFile, byteRange[1], byteRange[2]) ) {
+			mismatch = "/Contents gap not found";
+		} else if ( !Arrays.equals(preparedDocument.getRangeDigest(), 
+				PreparedDocumentStore.digestRanges(preparedFile, byteRange, signature.getDigestAlgorithm())) ) {
+			mismatch = "range digest not matching with the file";
+		}
+		
+		if ( mismatch != null ) {
+			tracer.warn ( String.format("prepared document %s discarded, %s: the pdf will be stamped again", handle, mismatch) );
+			deleteQuietly ( preparedFile );
+			return null;
+		}
+		return preparedDocument;
+	}
+	
+	/**
+	 * @return true if the given positions delimit the hex string reserved for the /Contents
+	 */
+	private static boolean isContentsGap ( File preparedFile, long gapStart, long gapEnd ) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile ( preparedFile, "r" );
+		try {
+			raf.seek ( gapStart );
+			int first = raf.read();
+			raf.seek ( gapEnd - 1 );
+			int last = raf.read();
+			return first == '<' && last == '>';
+		} finally {
+			raf.close();
+		}
+	}
+	
+	/**
+	 * Digest of the signature attributes a document is prepared for: signing certificate, digest algorithm,
+	 * signing time, fileId, modification date, reason and location. The postSign can complete a prepared 
+	 * document only for the same values.
+	 */
+	private static byte[] requestBinding ( PDFSignatureInfo signature ) 
+			throws IOException, NoSuchAlgorithmException {
+		
+		MessageDigest digester = CryptoEnginePool.getInstance().acquireDigester ( DigestAlgorithm.SHA256 );
+		try {
+			X509Certificate[] chain = signature.getRawX509Certificates();
+			try {
+				digester.update ( chain[0].getEncoded() );
+			} catch(CertificateEncodingException e) {
+				throw new IOException(e);
+			}
+			updateBinding ( digester, signature.getDigestAlgorithm().getName() );
+			updateBinding ( digester, signature.getSigningTime() != null ? Long.toString(signature.getSigningTime().getTime()) : null );
+			updateBinding ( digester, signature.getFileId() != null ? HexUtils.encodeHex(signature.getFileId()) : null );
+			updateBinding ( digester, signature.getUnicodeModDate() );
+			updateBinding ( digester, signature.getReason() );
+			updateBinding ( digester, signature.getLocation() );
+			return digester.digest();
+		} finally {
+			CryptoEnginePool.getInstance().release ( digester );
+		}
+	}
+	
+	private static void updateBinding ( MessageDigest digester, String value ) throws IOException {
+		byte[] encoded = value != null ? value.getBytes("UTF-8") : new byte[0];
+		digester.update ( (byte)(value != null ? 1 : 0) );
+		digester.update ( new byte[] { (byte)(encoded.length >>> 24), (byte)(encoded.length >>> 16), 
+				(byte)(encoded.length >>> 8), (byte)encoded.length } );
+		digester.update ( encoded );
+	}
+	
 	/**
 	 * metodo di utilita' che verifica se il pdf in input e' gia' firmato
 	 * 
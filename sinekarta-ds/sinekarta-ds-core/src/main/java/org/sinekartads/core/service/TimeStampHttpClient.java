@@ -0,0 +1,409 @@
+/*
+ * Copyright (C) 2010 - 2012 Jenia Software.
+ *
+ * This file is part of Sinekarta
+ *
+ * Sinekarta is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Sinekarta is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+package org.sinekartads.core.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.httpclient.DefaultHttpMethodRetryHandler;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.URI;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.params.HttpMethodParams;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Shared HTTP transport for the RFC 3161 requests sent to the TimeStampAuthorities.
+ * <ul>
+ * <li>connections are pooled and kept alive by a MultiThreadedHttpConnectionManager,
+ * with a limit of connections for each TSA host and an overall one
+ * <li>connect, read and pool wait timeouts are always applied, neither a hung TSA nor a saturated
+ * pool can block the caller forever
+ * <li>the response body is read up to a maximum length, a larger one is refused without retries
+ * <li>the calls failed by an I/O error or a 5xx http status are retried a bounded number of times,
+ * waiting an exponential backoff between the attempts; any other status is returned to the caller
+ * at the first attempt, since it would be answered again
+ * <li>each TSA url has its own circuit breaker: after a number of consecutive failed calls the
+ * url is rejected without any network access until the open time has elapsed, then a single
+ * trial call is let through to close the circuit again. A call counts once, whatever its attempts;
+ * the TSA answering with a 4xx status is considered available
+ * <li>as the itext TSA client, a response sent with the base64 Content-Encoding is decoded and
+ * the basic authentication is sent whenever a username is given
+ * </ul>
+ * The instance returned by {@link #getInstance()} is used by the {@link TimeStampService} and by
+ * the itext TSA client of the PAdES signatures; the configuration setters apply to the following calls.
+ */
+public class TimeStampHttpClient {
+
+	private static final Logger tracer = Logger.getLogger(TimeStampHttpClient.class);
+
+	public static final int DEFAULT_CONNECT_TIMEOUT 			= 10000;
+	public static final int DEFAULT_READ_TIMEOUT 				= 30000;
+	public static final long DEFAULT_CONNECTION_MANAGER_TIMEOUT = 10000;
+	public static final int DEFAULT_MAX_RESPONSE_LENGTH 		= 256 * 1024;
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_TSA 	= 8;
+	public static final int DEFAULT_MAX_TOTAL_CONNECTIONS 		= 32;
+	public static final int DEFAULT_MAX_RETRIES 				= 2;
+	public static final long DEFAULT_RETRY_BACKOFF 				= 500;
+	public static final int DEFAULT_FAILURE_THRESHOLD 			= 5;
+	public static final long DEFAULT_CIRCUIT_OPEN_TIME 			= 30000;
+
+
+
+	// -----
+	// --- Singleton implementation
+	// -
+
+	private static final TimeStampHttpClient singleton = new TimeStampHttpClient();
+
+	public static TimeStampHttpClient getInstance() {
+		return singleton;
+	}
+
+	public TimeStampHttpClient() {
+		connectionManager = new MultiThreadedHttpConnectionManager();
+		HttpConnectionManagerParams params = connectionManager.getParams();
+		params.setConnectionTimeout ( DEFAULT_CONNECT_TIMEOUT );
+		params.setSoTimeout ( DEFAULT_READ_TIMEOUT );
+		params.setDefaultMaxConnectionsPerHost ( DEFAULT_MAX_CONNECTIONS_PER_TSA );
+		params.setMaxTotalConnections ( DEFAULT_MAX_TOTAL_CONNECTIONS );
+		params.setStaleCheckingEnabled ( true );
+		httpClient = new HttpClient ( connectionManager );
+		httpClient.getParams().setConnectionManagerTimeout ( DEFAULT_CONNECTION_MANAGER_TIMEOUT );
+	}
+
+	private final MultiThreadedHttpConnectionManager connectionManager;
+	private final HttpClient httpClient;
+	private final ConcurrentMap<String, CircuitBreaker> circuits = new ConcurrentHashMap<String, CircuitBreaker>();
+
+	private volatile int maxResponseLength 	= DEFAULT_MAX_RESPONSE_LENGTH;
+	private volatile int maxRetries 		= DEFAULT_MAX_RETRIES;
+	private volatile long retryBackoff 		= DEFAULT_RETRY_BACKOFF;
+	private volatile int failureThreshold 	= DEFAULT_FAILURE_THRESHOLD;
+	private volatile long circuitOpenTime 	= DEFAULT_CIRCUIT_OPEN_TIME;
+
+
+
+	// -----
+	// --- TimeStamp request
+	// -
+
+	/**
+	 * Send the encoded timeStamp request to the TSA and return the encoded response.
+	 * @param tsaUrl the url of the TimeStampAuthority
+	 * @param tsaUsername username for the basic authentication, null if not required
+	 * @param tsaPassword password for the basic authentication, null for an empty one
+	 * @param encRequest the DER encoding of the TimeStampReq
+	 * @return the DER encoding of the TimeStampResp
+	 * @throws IOException if the TSA can't be reached after all the attempts, if it returned
+	 * an error status or if its circuit is open
+	 */
+	public byte[] post (
+			String tsaUrl,
+			String tsaUsername,
+			String tsaPassword,
+			byte[] encRequest )
+					throws IOException {
+
+		CircuitBreaker circuit = circuitFor ( tsaUrl );
+		if ( !circuit.allowRequest(failureThreshold, circuitOpenTime, System.currentTimeMillis()) ) {
+			throw new IOException(String.format ( "TSA circuit open, %s temporarily excluded after %d consecutive failures",
+					tsaUrl, circuit.getFailures() ));
+		}
+		
+		// the whole call counts once for the circuit, whatever its attempts and the way it ends
+		boolean available = false;
+		try {
+			IOException failure = null;
+			for ( int attempt = 0; attempt <= maxRetries; attempt++ ) {
+				if ( attempt > 0 ) {
+					backoff ( attempt );
+				}
+				try {
+					byte[] encResponse = execute ( tsaUrl, tsaUsername, tsaPassword, encRequest );
+					available = true;
+					return encResponse;
+				} catch(TsaStatusException e) {
+					if ( e.status < 500 ) {
+						// the TSA is working, but it would refuse the same request again
+						available = true;
+						throw e;
+					}
+					failure = e;
+				} catch(TsaResponseTooLargeException e) {
+					// the same response would be sent again
+					throw e;
+				} catch(InterruptedIOException e) {
+					// read timeouts are worth a retry, interruptions are not
+					if ( Thread.currentThread().isInterrupted() ) {
+						throw e;
+					}
+					failure = e;
+				} catch(IOException e) {
+					failure = e;
+				}
+				tracer.warn ( String.format("TSA call %d/%d to %s failed - %s", attempt+1, maxRetries+1, tsaUrl, failure.getMessage()) );
+			}
+			throw failure;
+		} finally {
+			if ( available ) {
+				circuit.success();
+			} else {
+				circuit.failure ( failureThreshold, System.currentTimeMillis() );
+			}
+		}
+	}
+	
+	/**
+	 * Http status other than 200 returned by the TSA.
+	 */
+	static class TsaStatusException extends IOException {
+		private static final long serialVersionUID = 1L;
+		
+		final int status;
+		
+		TsaStatusException ( String tsaUrl, int status ) {
+			super ( String.format("TSA %s returned the http status %d", tsaUrl, status) );
+			this.status = status;
+		}
+	}
+
+	/**
+	 * Response body longer than the maximum length accepted from the TSA.
+	 */
+	static class TsaResponseTooLargeException extends IOException {
+		private static final long serialVersionUID = 1L;
+		
+		TsaResponseTooLargeException ( String tsaUrl, int maxResponseLength ) {
+			super ( String.format("TSA %s returned a response longer than %d bytes", tsaUrl, maxResponseLength) );
+		}
+	}
+
+	private byte[] execute (
+			String tsaUrl,
+			String tsaUsername,
+			String tsaPassword,
+			byte[] encRequest )
+					throws IOException {
+
+		PostMethod method = new PostMethod ( tsaUrl );
+		try {
+			// the retries are driven by post(), disable the ones of httpclient
+			method.getParams().setParameter ( HttpMethodParams.RETRY_HANDLER, new DefaultHttpMethodRetryHandler(0, false) );
+			method.setRequestEntity ( new ByteArrayRequestEntity(encRequest, "application/timestamp-query") );
+			method.setRequestHeader ( "Content-type", "application/timestamp-query" );
+			method.setRequestHeader ( "Content-Transfer-Encoding", "binary" );
+			if ( StringUtils.isNotBlank(tsaUsername) ) {
+				String userPassword = tsaUsername + ":" + StringUtils.defaultString(tsaPassword);
+				method.setRequestHeader ( "Authorization", "Basic " + new String(Base64.encodeBase64(userPassword.getBytes())) );
+			}
+
+			int status = httpClient.executeMethod ( method );
+			if ( status != HttpStatus.SC_OK ) {
+				throw new TsaStatusException ( tsaUrl, status );
+			}
+			byte[] encResponse = readResponseBody ( tsaUrl, method );
+			if ( encResponse == null || encResponse.length == 0 ) {
+				throw new IOException(String.format ( "TSA %s returned an empty response", tsaUrl ));
+			}
+			
+			// some TSAs send the response base64-encoded
+			Header contentEncoding = method.getResponseHeader ( "Content-Encoding" );
+			if ( contentEncoding != null && "base64".equalsIgnoreCase(StringUtils.trim(contentEncoding.getValue())) ) {
+				encResponse = Base64.decodeBase64 ( new String(encResponse, "US-ASCII") );
+			}
+			return encResponse;
+		} finally {
+			// give the connection back to the pool, it will be kept alive for the next request
+			method.releaseConnection ( );
+		}
+	}
+
+	private byte[] readResponseBody ( String tsaUrl, PostMethod method ) throws IOException {
+		int limit = maxResponseLength;
+		long contentLength = method.getResponseContentLength ( );
+		if ( contentLength > limit ) {
+			// abort the connection, releasing it would read the whole body to keep it alive
+			method.abort ( );
+			throw new TsaResponseTooLargeException ( tsaUrl, limit );
+		}
+		InputStream is = method.getResponseBodyAsStream ( );
+		if ( is == null ) {
+			return null;
+		}
+		ByteArrayOutputStream os = new ByteArrayOutputStream ( contentLength > 0 ? (int) contentLength : 4096 );
+		byte[] buf = new byte[4096];
+		int read;
+		while ( (read = is.read(buf)) != -1 ) {
+			if ( os.size() + read > limit ) {
+				method.abort ( );
+				throw new TsaResponseTooLargeException ( tsaUrl, limit );
+			}
+			os.write ( buf, 0, read );
+		}
+		return os.toByteArray();
+	}
+
+	private void backoff ( int attempt ) throws IOException {
+		try {
+			Thread.sleep ( retryBackoff << (attempt - 1) );
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting to retry the TSA request");
+		}
+	}
+
+	private CircuitBreaker circuitFor ( String tsaUrl ) {
+		CircuitBreaker circuit = circuits.get ( tsaUrl );
+		if ( circuit == null ) {
+			CircuitBreaker newCircuit = new CircuitBreaker();
+			circuit = circuits.putIfAbsent ( tsaUrl, newCircuit );
+			if ( circuit == null ) {
+				circuit = newCircuit;
+			}
+		}
+		return circuit;
+	}
+
+	/**
+	 * Closed until failureThreshold consecutive failed calls, then open for circuitOpenTime
+	 * milliseconds; afterwards half-open, a single trial call decides whether to close it again.
+	 * Every call allowed by {@link #allowRequest(int, long, long)} must be ended by either
+	 * {@link #success()} or {@link #failure(int, long)}, otherwise the trial would never end.
+	 */
+	static class CircuitBreaker {
+
+		private int failures;
+		private long openedAt;
+		private boolean trialRunning;
+
+		synchronized boolean allowRequest ( int failureThreshold, long openTime, long now ) {
+			if ( failures < failureThreshold ) {
+				return true;
+			}
+			if ( !trialRunning && now - openedAt >= openTime ) {
+				trialRunning = true;
+				return true;
+			}
+			return false;
+		}
+
+		synchronized void success() {
+			failures = 0;
+			trialRunning = false;
+		}
+
+		synchronized void failure ( int failureThreshold, long now ) {
+			failures++;
+			if ( failures >= failureThreshold ) {
+				openedAt = now;
+			}
+			trialRunning = false;
+		}
+
+		synchronized int getFailures() {
+			return failures;
+		}
+
+		synchronized boolean isOpen ( int failureThreshold ) {
+			return failures >= failureThreshold;
+		}
+	}
+
+
+
+	// -----
+	// --- Lifecycle
+	// -
+
+	/**
+	 * Close all the pooled connections, the client can't be used anymore afterwards.
+	 */
+	public void shutdown() {
+		connectionManager.shutdown();
+	}
+
+
+
+	// -----
+	// --- Configuration
+	// -
+
+	public void setConnectTimeout ( int connectTimeout ) {
+		connectionManager.getParams().setConnectionTimeout ( connectTimeout );
+	}
+
+	public void setReadTimeout ( int readTimeout ) {
+		connectionManager.getParams().setSoTimeout ( readTimeout );
+	}
+
+	/**
+	 * Maximum time waited for a pooled connection when all the ones of the TSA host are in use.
+	 */
+	public void setConnectionManagerTimeout ( long connectionManagerTimeout ) {
+		httpClient.getParams().setConnectionManagerTimeout ( connectionManagerTimeout );
+	}
+
+	public void setMaxResponseLength ( int maxResponseLength ) {
+		this.maxResponseLength = maxResponseLength;
+	}
+
+	public void setMaxConnectionsPerTsa ( int maxConnections ) {
+		connectionManager.getParams().setDefaultMaxConnectionsPerHost ( maxConnections );
+	}
+
+	/**
+	 * Override the connection limit for the host of a single TSA url.
+	 */
+	public void setMaxConnections ( String tsaUrl, int maxConnections ) throws IOException {
+		HostConfiguration hostConfiguration = new HostConfiguration();
+		hostConfiguration.setHost ( new URI(tsaUrl, false) );
+		connectionManager.getParams().setMaxConnectionsPerHost ( hostConfiguration, maxConnections );
+	}
+
+	public void setMaxTotalConnections ( int maxTotalConnections ) {
+		connectionManager.getParams().setMaxTotalConnections ( maxTotalConnections );
+	}
+
+	public void setMaxRetries ( int maxRetries ) {
+		this.maxRetries = maxRetries;
+	}
+
+	public void setRetryBackoff ( long retryBackoff ) {
+		this.retryBackoff = retryBackoff;
+	}
+
+	public void setFailureThreshold ( int failureThreshold ) {
+		this.failureThreshold = failureThreshold;
+	}
+
+	public void setCircuitOpenTime ( long circuitOpenTime ) {
+		this.circuitOpenTime = circuitOpenTime;
+	}
+}
@@ -8,14 +8,8 @@ import java.security.SignatureException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 
-import org.apache.commons.codec.binary.Base64;
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
-import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.bouncycastle.cert.X509CertificateHolder;
-import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
 import org.bouncycastle.cms.SignerId;
 import org.bouncycastle.cms.SignerInformation;
 import org.bouncycastle.cms.SignerInformationVerifier;
@@ -37,15 +31,14 @@ import org.sinekartads.model.domain.TsResponseInfo;
 import org.sinekartads.model.oid.DigestAlgorithm;
 import org.sinekartads.model.oid.EncryptionAlgorithm;
 import org.sinekartads.model.oid.SignatureAlgorithm;
+import org.sinekartads.util.x509.X509CertificateCache;
 
 public class TimeStampService {
 
 	static final CoreConfiguration conf = CoreConfiguration.getInstance();
 	static final NoFilterSelector noFilterSelector =new NoFilterSelector();
 	
-	private static final JcaX509CertificateConverter certHolderConverter = 
-			new JcaX509CertificateConverter().setProvider ( 
-					CoreConfiguration.getInstance().getProviderName() );
+	private TimeStampHttpClient httpClient = TimeStampHttpClient.getInstance();
 	
 	
 	
@@ -65,21 +58,10 @@ public class TimeStampService {
 		String tsaUsername 						= tsRequest.getTsUsername();
 		String tsaPassword 						= tsRequest.getTsPassword();
 		 
-		// Send the tsRequest to tsaUrl as a POST  
-		PostMethod method = new PostMethod (tsaUrl);
-		method.setRequestEntity ( new ByteArrayRequestEntity(rawTimeStampRequest.getEncoded()) );
-		method.setRequestHeader ( "Content-type", "application/timestamp-query" );
-		if ( StringUtils.isNotBlank(tsaUsername) &&  StringUtils.isNotBlank(tsaPassword) ) {
-			 String userPassword = tsaUsername + ":" + tsaPassword;
-			 String basicAuth = "Basic " + new String(Base64.encodeBase64(userPassword.getBytes()));
-			 method.setRequestHeader("Authorization", basicAuth);            
-		}
-		HttpClient httpClient = new HttpClient();
-		httpClient.executeMethod ( method );	
+		// Send the tsRequest to tsaUrl as a POST, through the pooled connections
+		byte[] encResponse = httpClient.post ( tsaUrl, tsaUsername, tsaPassword, rawTimeStampRequest.getEncoded() );
 		
 		// Create the tsResponse, TSPException if the request failed (status!=0)
-		InputStream in = method.getResponseBodyAsStream ( );
-		byte[] encResponse = IOUtils.toByteArray(in);
 		TimeStampResponse rawTimeStampResponse;
 		try {
 			rawTimeStampResponse = new TimeStampResponse ( new ByteArrayInputStream(encResponse) );
@@ -102,6 +84,15 @@ public class TimeStampService {
 	}
 	
 	
+	public TimeStampHttpClient getHttpClient() {
+		return httpClient;
+	}
+
+	public void setHttpClient(TimeStampHttpClient httpClient) {
+		this.httpClient = httpClient;
+	}
+	
+	
 	public TimeStampInfo verify ( 
 			TimeStampToken rawTimeStampToken ) 
 					throws IOException, SignatureException {
@@ -189,8 +180,9 @@ public class TimeStampService {
 		X509CertificateHolder certHolder = (X509CertificateHolder)
 				certificateStore.getMatches( rawTimeStampToken.getSID() ).iterator().next();
 		try {
-			signingCertificate = certHolderConverter.getCertificate(certHolder);
-		} catch ( CertificateException e ) {
+			// the TSA certificate is the same for all the timeStamps, it is parsed only once
+			signingCertificate = X509CertificateCache.getInstance().get(certHolder.getEncoded()).getCertificate();
+		} catch ( CertificateException | IOException e ) {
 			throw new SignatureException(e);
 		}
 		
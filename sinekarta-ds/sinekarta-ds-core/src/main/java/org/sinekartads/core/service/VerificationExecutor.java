@@ -0,0 +1,204 @@
+package org.sinekartads.core.service;
+
+import java.io.IOException;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Bounded worker pool shared by the verifications, to check the signatures of a single envelope
+ * in parallel: the signature math, the certificate checks and the timeStamp checks of each signer
+ * are independent from the other ones once the envelope has been parsed.
+ * <p>
+ * The tasks of a single call are given back in the submission order, whatever their completion order,
+ * so that the VerifyInfo lists the signatures as they appear into the envelope. A call must be completed
+ * within its deadline, otherwise the tasks still running are cancelled.
+ * <ul>
+ * <li>the tasks are run directly by the calling thread if the parallelism is 1, if there is only one task
+ * or if the caller is already a verification worker, so that nested calls can't starve the pool; the deadline
+ * is then checked before starting each task, the remaining ones are not run once it is expired
+ * <li>the workers are started on demand and stopped when idle
+ * <li>the parallelism and the deadline are read from the {@value #PARALLELISM_PROPERTY} and
+ * {@value #DEADLINE_PROPERTY} system properties, since the services are loaded by their own classloader;
+ * they can be changed at runtime by the setters as well
+ * </ul>
+ */
+public class VerificationExecutor {
+
+	public static final String PARALLELISM_PROPERTY 	= "sinekartads.verify.parallelism";
+	public static final String DEADLINE_PROPERTY 		= "sinekartads.verify.deadline";
+
+	public static final long DEFAULT_DEADLINE = 60000L;
+
+	private static final Logger tracer = Logger.getLogger(VerificationExecutor.class);
+
+	private static final VerificationExecutor singleton = new VerificationExecutor();
+
+	public static VerificationExecutor getInstance() {
+		return singleton;
+	}
+
+	private final AtomicInteger threadCount = new AtomicInteger();
+	private final ThreadPoolExecutor executor;
+	private volatile long deadline;
+
+	VerificationExecutor() {
+		int parallelism = intProperty ( PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors() );
+		deadline = intProperty ( DEADLINE_PROPERTY, (int)DEFAULT_DEADLINE );
+		executor = new ThreadPoolExecutor ( Math.max(1, parallelism), Math.max(1, parallelism), 60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new WorkerThread ( r, "sinekartads-verify-" + threadCount.incrementAndGet() );
+						thread.setDaemon ( true );
+						return thread;
+					}
+				} );
+		executor.allowCoreThreadTimeOut ( true );
+		tracer.info(String.format ( "verification executor started with %d workers, %d ms deadline",
+				parallelism, deadline ));
+	}
+
+	private static class WorkerThread extends Thread {
+		WorkerThread ( Runnable r, String name ) {
+			super ( r, name );
+		}
+	}
+
+
+
+	// -----
+	// --- Task execution
+	// -
+
+	/**
+	 * Run the tasks within the configured deadline.
+	 * @see #invokeAll(List, long)
+	 */
+	public <T> List<T> invokeAll ( List<? extends Callable<T>> tasks )
+			throws SignatureException, IOException {
+
+		return invokeAll ( tasks, deadline );
+	}
+
+	/**
+	 * Run the tasks and wait for all of them.
+	 * @param deadline the milliseconds given to the whole call, 0 to wait indefinitely
+	 * @return the results of the tasks, in the same order of the tasks
+	 * @throws SignatureException if the deadline expired or the caller has been interrupted, the tasks not
+	 * completed yet are cancelled; the exception thrown by the first failed task is rethrown as it is if
+	 * it is a SignatureException, an IOException or a RuntimeException, wrapped into a SignatureException otherwise
+	 */
+	public <T> List<T> invokeAll ( List<? extends Callable<T>> tasks, long deadline )
+			throws SignatureException, IOException {
+
+		List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+		boolean inline = tasks.size() < 2
+				|| executor.getMaximumPoolSize() < 2
+				|| Thread.currentThread() instanceof WorkerThread;
+		long expiration = deadline > 0 ? System.currentTimeMillis() + deadline : Long.MAX_VALUE;
+		boolean completed = false;
+		try {
+			for ( Callable<T> task : tasks ) {
+				FutureTask<T> future = new FutureTask<T> ( task );
+				if ( inline ) {
+					// a task run by the calling thread can't be interrupted, the deadline is checked before each one
+					if ( System.currentTimeMillis() >= expiration ) {
+						throw new TimeoutException();
+					}
+					future.run ( );
+				} else {
+					executor.execute ( future );
+				}
+				futures.add ( future );
+			}
+
+			List<T> results = new ArrayList<T>(futures.size());
+			for ( Future<T> future : futures ) {
+				long remaining = expiration - System.currentTimeMillis();
+				results.add ( future.get(Math.max(0, remaining), TimeUnit.MILLISECONDS) );
+			}
+			completed = true;
+			return results;
+		} catch(TimeoutException e) {
+			throw new SignatureException(String.format ( "verification deadline expired - %d ms", deadline ), e);
+		} catch(CancellationException e) {
+			throw new SignatureException("verification cancelled", e);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SignatureException("interrupted while waiting for the verification tasks", e);
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if ( cause instanceof SignatureException ) 				throw (SignatureException) cause;
+			if ( cause instanceof IOException ) 					throw (IOException) cause;
+			if ( cause instanceof RuntimeException ) 				throw (RuntimeException) cause;
+			throw new SignatureException(cause);
+		} finally {
+			if ( !completed ) {
+				for ( Future<T> future : futures ) {
+					future.cancel ( true );
+				}
+			}
+		}
+	}
+
+
+
+	// -----
+	// --- Configuration
+	// -
+
+	public int getParallelism() {
+		return executor.getMaximumPoolSize();
+	}
+
+	/**
+	 * @param parallelism the number of workers shared by all the verifications, 1 to run them by the calling thread
+	 */
+	public void setParallelism ( int parallelism ) {
+		parallelism = Math.max ( 1, parallelism );
+		if ( parallelism > executor.getMaximumPoolSize() ) {
+			executor.setMaximumPoolSize ( parallelism );
+			executor.setCorePoolSize ( parallelism );
+		} else {
+			executor.setCorePoolSize ( parallelism );
+			executor.setMaximumPoolSize ( parallelism );
+		}
+	}
+
+	public long getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * @param deadline the default milliseconds given to each verification call, 0 to wait indefinitely
+	 */
+	public void setDeadline ( long deadline ) {
+		this.deadline = deadline;
+	}
+
+	private static int intProperty ( String name, int defaultValue ) {
+		String value = System.getProperty ( name );
+		if ( value == null ) 														return defaultValue;
+		try {
+			return Integer.parseInt ( value.trim() );
+		} catch(NumberFormatException e) {
+			tracer.warn(String.format ( "invalid value for %s - %s", name, value ));
+			return defaultValue;
+		}
+	}
+}
@@ -6,10 +6,6 @@ import java.io.OutputStream;
 import java.security.SignatureException;
 import java.security.cert.CertificateException;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
 import org.apache.commons.lang3.StringUtils;
@@ -212,21 +208,12 @@ public class XMLSignatureService
 
 	
 	public XMLSignatureService ( ) {
-		try {		
-			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-	    	dbf.setNamespaceAware(true);
-	    	db = dbf.newDocumentBuilder();
-	    	tf = TransformerFactory.newInstance();
-	    } catch(Exception e) {
-	    	throw new RuntimeException(e);
-	    }
 		if ( gblTsService == null ) {
 			gblTsService = timeStampService;
 		}
 	}
 
-	TransformerFactory tf;
-	DocumentBuilder db;
+	private static final String SIGNATURE_EXPRESSION = "*[local-name() = 'Signature']";
 	
 	
 	
@@ -257,7 +244,7 @@ public class XMLSignatureService
 						  VerifyResult, 		
 						  XMLSignatureInfo > digestSignature = null;
 		try {
-			Document doc = db.parse(contentIs);
+			Document doc = parse(contentIs);
 	        Element root = doc.getDocumentElement();
 	        DOMHelper.useIdAsXmlId(root);
 	        
@@ -342,7 +329,7 @@ public class XMLSignatureService
 						 	 XMLSignatureInfo > finalizedSignature = null;
 		
 		try {
-			Document doc = db.parse(contentIs);
+			Document doc = parse(contentIs);
 	        Element root = doc.getDocumentElement();
 	        DOMHelper.useIdAsXmlId(root);
 	        
@@ -390,8 +377,7 @@ public class XMLSignatureService
 	        // Generate the signed xml
 	        XadesSignatureResult signResult = signer.sign(dataObjs, root, SignatureAppendingStrategies.AsLastChild);
 	        XMLSignature xmlSignature = signResult.getSignature();
-	        String expression = "*[local-name() = 'Signature']";
-	        DOMUtils.replaceElement(doc.getDocumentElement(), expression, xmlSignature.getElement());
+	        DOMUtils.replaceElement(doc.getDocumentElement(), SIGNATURE_EXPRESSION, xmlSignature.getElement());
 	        
 	        // Finalize the signature and send the signed xml to the outputStream
 	        OutputStream targetStream;
@@ -404,7 +390,7 @@ public class XMLSignatureService
 	        	finalizedSignature = signedSignature.finalizeSignature();
 	        	targetStream = embeddedSignOs;
 	        }
-	    	tf.newTransformer().transform ( new DOMSource(doc), new StreamResult(targetStream) );
+	    	DOMUtils.transform ( doc, new StreamResult(targetStream) );
 		} catch(Exception e) {
         	throw new SignatureException(e);
         }
@@ -439,7 +425,7 @@ public class XMLSignatureService
 
 		XMLSignature xmlSignature;
 		try {
-			Document doc = db.parse(envelopeIs);
+			Document doc = parse(envelopeIs);
 			xmlSignature = new XMLSignature(doc.getDocumentElement(), null);
 		} catch(SAXException e) {
 			throw new IOException("unable to parse the xml document", e);
@@ -454,6 +440,14 @@ public class XMLSignatureService
 
 	
 	
+	private Document parse ( InputStream is ) throws SAXException, IOException {
+		try {
+			return DOMUtils.parse ( is, true );
+		} catch(RuntimeException e) {
+			throw new IOException("unable to create the xml parser", e);
+		}
+	}
+	
 	private static TimeStampService gblTsService;
 
 }
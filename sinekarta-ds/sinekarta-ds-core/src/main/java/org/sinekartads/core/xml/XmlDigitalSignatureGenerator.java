@@ -28,19 +28,15 @@ import javax.xml.crypto.dsig.keyinfo.KeyInfoFactory;
 import javax.xml.crypto.dsig.keyinfo.X509Data;
 import javax.xml.crypto.dsig.spec.C14NMethodParameterSpec;
 import javax.xml.crypto.dsig.spec.TransformParameterSpec;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
 import org.apache.log4j.Logger;
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
+import xades4j.xml.sign.DOMUtils;
+
 /**
  * This class is used to provide convenient methods to digitally sign an XML
  * document.
@@ -77,12 +73,8 @@ public class XmlDigitalSignatureGenerator {
 	 */
 	private Document getXmlDocument(InputStream contentIs) {
 		Document doc = null;
-		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-		dbf.setNamespaceAware(true);
 		try {
-			doc = dbf.newDocumentBuilder().parse(contentIs);
-		} catch (ParserConfigurationException ex) {
-			ex.printStackTrace();
+			doc = DOMUtils.parse(contentIs, true);
 		} catch (FileNotFoundException ex) {
 			ex.printStackTrace();
 		} catch (SAXException ex) {
@@ -97,16 +89,9 @@ public class XmlDigitalSignatureGenerator {
 	 * Method used to store the signed XMl document
 	 */
 	private void storeSignedDoc(Document doc, OutputStream signedContentOs) {
-		TransformerFactory transFactory = TransformerFactory.newInstance();
-		Transformer trans = null;
-		try {
-			trans = transFactory.newTransformer();
-		} catch (TransformerConfigurationException ex) {
-			ex.printStackTrace();
-		}
 		try {
 			StreamResult streamRes = new StreamResult(signedContentOs);
-			trans.transform(new DOMSource(doc), streamRes);
+			DOMUtils.transform(doc, streamRes);
 		} catch (TransformerException ex) {
 			ex.printStackTrace();
 		}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2010 - 2012 Jenia Software.
+ *
+ * This file is part of Sinekarta
+ *
+ * Sinekarta is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Sinekarta is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+package org.sinekartads.asn1;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.DEREncodable;
+import org.bouncycastle.asn1.DERInteger;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DERObjectIdentifier;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERSet;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Test;
+import org.sinekartads.asn1.ASN1Selector.ASN1StructureSelector;
+
+public class ASN1TemplateTest {
+
+	private static final DERObjectIdentifier OID = new DERObjectIdentifier ( "1.2.840.113549.1.9.16.2.14" );
+
+
+
+	// -----
+	// --- Matching
+	// -
+
+	@Test
+	public void matchesTheTypesAndTheChildrenCount() {
+		ASN1Template template = ASN1Template.compile ( sequence(new DERInteger(0), new DEROctetString(new byte[0])) );
+		assertTrue ( template.matches(sequence(new DERInteger(7), new DEROctetString(new byte[] { 1, 2 }))) );
+		assertFalse ( template.matches(sequence(new DEROctetString(new byte[0]), new DERInteger(7))) );
+		assertFalse ( template.matches(sequence(new DERInteger(7))) );
+		assertFalse ( template.matches(set(new DERInteger(7), new DEROctetString(new byte[0]))) );
+	}
+
+	@Test
+	public void acceptsAnyBranchInPlaceOfTheNulls() {
+		ASN1Template template = ASN1Template.compile ( sequence(OID, new DERTaggedObject(0, DERNull.INSTANCE)) );
+		assertTrue ( template.matches(sequence(OID, new DERTaggedObject(0, new DERInteger(1)))) );
+		assertTrue ( template.matches(sequence(OID, new DERTaggedObject(0, sequence(new DERInteger(1), OID)))) );
+		assertFalse ( template.matches(sequence(OID, new DERInteger(1))) );
+	}
+
+
+
+	// -----
+	// --- Search
+	// -
+
+	@Test
+	public void findsTheBranchesInDepthFirstOrder() {
+		DEREncodable first = sequence ( OID, new DERInteger(1) );
+		DEREncodable second = sequence ( OID, new DERInteger(2) );
+		DEREncodable third = sequence ( OID, new DERInteger(3) );
+		DEREncodable root = sequence ( first, set(new DERTaggedObject(0, second)), third );
+
+		ASN1Template template = ASN1Template.compile ( sequence(OID, new DERInteger(0)) );
+		DEREncodable[] matches = template.find ( root );
+		assertEquals ( 3, matches.length );
+		assertSame ( first, matches[0] );
+		assertSame ( second, matches[1] );
+		assertSame ( third, matches[2] );
+		assertSame ( first, template.findFirst(root) );
+		assertEquals ( 3, ASN1Selector.findByStructure(root, sequence(OID, new DERInteger(0))).length );
+		assertNull ( ASN1Template.compile(sequence(OID, OID)).findFirst(root) );
+	}
+
+
+
+	// -----
+	// --- Compilation
+	// -
+
+	@Test
+	public void cachesTheTemplatesCompiledFromHex() {
+		String hexTemplate = new String ( Hex.encode(sequence(OID, DERNull.INSTANCE).getDEREncoded()) );
+		assertSame ( ASN1Template.compile(hexTemplate), ASN1Template.compile(hexTemplate) );
+	}
+
+	@Test
+	public void compilesTheSelectorTemplateOncePerSearch() {
+		ASN1StructureSelector selector = new ASN1StructureSelector();
+		Map<String, Object> args = new HashMap<String, Object>();
+		args.put ( ASN1Selector.ARG_CONSTRAINT, sequence(OID, new DERInteger(0)) );
+
+		assertTrue ( selector.check(sequence(OID, new DERInteger(1)), null, args) );
+		Object compiled = args.get ( ASN1Selector.ARG_TEMPLATE );
+		assertTrue ( compiled instanceof ASN1Template );
+		assertFalse ( selector.check(new DERInteger(1), null, args) );
+		assertSame ( compiled, args.get(ASN1Selector.ARG_TEMPLATE) );
+	}
+
+
+
+	// -----
+	// --- Utility methods
+	// -
+
+	private static DERSequence sequence ( DEREncodable ... items ) {
+		return new DERSequence ( vector(items) );
+	}
+
+	private static DERSet set ( DEREncodable ... items ) {
+		return new DERSet ( vector(items) );
+	}
+
+	private static ASN1EncodableVector vector ( DEREncodable ... items ) {
+		ASN1EncodableVector vector = new ASN1EncodableVector();
+		for ( DEREncodable item : items ) {
+			vector.add ( item );
+		}
+		return vector;
+	}
+}
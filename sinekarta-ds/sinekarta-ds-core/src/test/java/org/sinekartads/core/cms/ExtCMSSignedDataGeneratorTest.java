@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2010 - 2012 Jenia Software.
+ *
+ * This file is part of Sinekarta
+ *
+ * Sinekarta is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Sinekarta is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+package org.sinekartads.core.cms;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.Random;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.DigestInfo;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.sinekartads.model.domain.SignDisposition;
+
+public class ExtCMSSignedDataGeneratorTest {
+
+	private static final String REASON 		= "test";
+	private static final String LOCATION 	= "Padova";
+
+	private static KeyPair keyPair;
+	private static X509Certificate certificate;
+	private static byte[] content;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		if ( Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null ) {
+			Security.addProvider ( new BouncyCastleProvider() );
+		}
+		KeyPairGenerator keyGenerator = KeyPairGenerator.getInstance ( "RSA" );
+		keyGenerator.initialize ( 2048 );
+		keyPair = keyGenerator.generateKeyPair();
+
+		X500Principal subject = new X500Principal ( "CN=Test Signer, O=Sinekarta" );
+		Date notBefore = new Date ( System.currentTimeMillis() - 3600000L );
+		Date notAfter = new Date ( System.currentTimeMillis() + 3600000L );
+		JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder (
+				subject, BigInteger.ONE, notBefore, notAfter, subject, keyPair.getPublic() );
+		certificate = new JcaX509CertificateConverter().setProvider(BouncyCastleProvider.PROVIDER_NAME).getCertificate ( 
+				builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate())) );
+
+		// larger than the stream buffers, so that the content is piped in several chunks
+		content = new byte[100000];
+		new Random(1).nextBytes ( content );
+	}
+
+
+
+	// -----
+	// --- Digest evaluation
+	// -
+
+	@Test
+	public void evaluatesTheDigestOfTheSignedAttributes() throws Exception {
+		ExtCMSSignedDataGenerator generator = newGenerator();
+		byte[] expected = generator.evaluateDigest ( new CMSProcessableByteArray(content), SignDisposition.CMS.EMBEDDED );
+		// the signingTime evaluated by the first call is kept by the generator
+		assertArrayEquals ( expected, generator.evaluateDigest(new ByteArrayInputStream(content)) );
+	}
+
+
+
+	// -----
+	// --- Envelope streaming
+	// -
+
+	@Test
+	public void streamsAVerifiableEmbeddedEnvelope() throws Exception {
+		CMSSignedData signedData = new CMSSignedData ( sign(SignDisposition.CMS.EMBEDDED) );
+		assertArrayEquals ( content, (byte[]) signedData.getSignedContent().getContent() );
+		verify ( signedData );
+	}
+
+	@Test
+	public void streamsAVerifiableDetachedEnvelope() throws Exception {
+		byte[] envelope = sign ( SignDisposition.CMS.DETACHED );
+		assertNull ( new CMSSignedData(envelope).getSignedContent() );
+		verify ( new CMSSignedData(new CMSProcessableByteArray(content), envelope) );
+	}
+
+
+
+	// -----
+	// --- Utility methods
+	// -
+
+	private static ExtCMSSignedDataGenerator newGenerator() throws Exception {
+		ExtCMSSignedDataGenerator generator = new ExtCMSSignedDataGenerator();
+		generator.setReason ( REASON );
+		generator.setLocation ( LOCATION );
+		generator.embedCertificateChain ( new X509Certificate[] { certificate } );
+		return generator;
+	}
+
+	/**
+	 * Run the preSign digest evaluation, sign the digest externally with the test key as a client would
+	 * and stream the envelope as the postSign does.
+	 */
+	private static byte[] sign ( SignDisposition.CMS disposition ) throws Exception {
+		ExtCMSSignedDataGenerator preSignGenerator = newGenerator();
+		byte[] digest = preSignGenerator.evaluateDigest ( new ByteArrayInputStream(content) );
+		Date signingTime = preSignGenerator.getSigningTime();
+
+		Signature signer = Signature.getInstance ( "NONEwithRSA" );
+		signer.initSign ( keyPair.getPrivate() );
+		signer.update ( new DigestInfo(new AlgorithmIdentifier(NISTObjectIdentifiers.id_sha256, DERNull.INSTANCE), digest).getDEREncoded() );
+		byte[] digitalSignature = signer.sign();
+
+		ExtCMSSignedDataGenerator postSignGenerator = newGenerator();
+		postSignGenerator.setSigningTime ( signingTime );
+		ByteArrayOutputStream signOs = new ByteArrayOutputStream();
+		postSignGenerator.generateSignedData ( new ByteArrayInputStream(content), digitalSignature, disposition, signOs );
+		return signOs.toByteArray();
+	}
+
+	private static void verify ( CMSSignedData signedData ) throws Exception {
+		assertEquals ( 1, signedData.getSignerInfos().size() );
+		SignerInformation signer = (SignerInformation) signedData.getSignerInfos().getSigners().iterator().next();
+		assertTrue ( signer.verify(new JcaSimpleSignerInfoVerifierBuilder()
+				.setProvider(BouncyCastleProvider.PROVIDER_NAME).build(certificate)) );
+	}
+}
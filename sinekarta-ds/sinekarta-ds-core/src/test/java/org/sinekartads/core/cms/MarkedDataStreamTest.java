@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2010 - 2012 Jenia Software.
+ *
+ * This file is part of Sinekarta
+ *
+ * Sinekarta is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Sinekarta is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+package org.sinekartads.core.cms;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.BEROctetStringGenerator;
+import org.bouncycastle.asn1.BERSequenceGenerator;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.DERTaggedObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.sinekartads.asn1.ASN1Utils;
+import org.sinekartads.model.oid.SinekartaDsObjectIdentifiers;
+
+public class MarkedDataStreamTest {
+
+	// a *.tsd produced by Dike, marking a BER encoded *.p7m
+	private static final String DIKE_SAMPLE = "pippo_dike.txt.p7m.tsd";
+
+	private byte[] markedContent;
+	private byte[] encTimeStampToken;
+
+	@Before
+	public void setUp() throws Exception {
+		InputStream is = getClass().getResourceAsStream ( DIKE_SAMPLE );
+		try {
+			MarkedData sample = MarkedData.getInstance ( IOUtils.toByteArray(is) );
+			markedContent = sample.getMarkedContent();
+			encTimeStampToken = sample.getRawTimeStampToken().getEncoded();
+		} finally {
+			IOUtils.closeQuietly ( is );
+		}
+	}
+
+
+
+	// -----
+	// --- Generation
+	// -
+
+	@Test
+	public void generatesTheEncodingOfMarkedData() throws Exception {
+		byte[] expected = MarkedData.getInstance(markedContent, encTimeStampToken).getEncoded();
+		assertArrayEquals ( expected, generate(markedContent) );
+	}
+
+	@Test
+	public void generatesTheLongFormLengths() throws Exception {
+		// a content longer than 64KB needs three length octets
+		byte[] content = new byte[70000];
+		content[0] = 0x30;
+		content[content.length - 1] = 0x01;
+		byte[] expected = MarkedData.getInstance(content, encTimeStampToken).getEncoded();
+		assertArrayEquals ( expected, generate(content) );
+	}
+
+	@Test
+	public void rejectsTheContentNotMatchingTheDeclaredLength() throws Exception {
+		MarkedDataStreamGenerator generator = new MarkedDataStreamGenerator ( encTimeStampToken );
+		try {
+			generator.generate ( new ByteArrayOutputStream(), new ByteArrayInputStream(markedContent), markedContent.length - 1 );
+			fail ( "IOException expected" );
+		} catch(IOException e) {
+			assertTrue ( e.getMessage().contains("exceeds") );
+		}
+		try {
+			generator.generate ( new ByteArrayOutputStream(), new ByteArrayInputStream(markedContent), markedContent.length + 1 );
+			fail ( "IOException expected" );
+		} catch(IOException e) {
+			assertTrue ( e.getMessage().contains("shorter") );
+		}
+	}
+
+
+
+	// -----
+	// --- Parsing
+	// -
+
+	@Test
+	public void recognizesTheEnvelopeFromItsHead() throws Exception {
+		byte[] envelope = generate ( markedContent );
+		assertTrue ( MarkedDataParser.isMarkedData(envelope, 32) );
+		assertFalse ( MarkedDataParser.isMarkedData(envelope, 8) );
+		// the nested *.p7m is a CMS envelope, not a marked one
+		assertFalse ( MarkedDataParser.isMarkedData(markedContent, 1024) );
+		assertFalse ( MarkedDataParser.isMarkedData("%PDF-1.4".getBytes("US-ASCII"), 8) );
+	}
+
+	@Test
+	public void parsesTheGeneratedEncoding() throws Exception {
+		MarkedDataParser parser = new MarkedDataParser ( new ByteArrayInputStream(generate(markedContent)) );
+		assertEquals ( MarkedData.DEFAULT_VERSION, parser.getVersion() );
+		assertArrayEquals ( markedContent, IOUtils.toByteArray(parser.getMarkedContent()) );
+		assertArrayEquals ( encTimeStampToken, parser.getRawTimeStampToken().getEncoded() );
+	}
+
+	@Test
+	public void skipsTheContentNotReadYet() throws Exception {
+		MarkedDataParser parser = new MarkedDataParser ( new ByteArrayInputStream(generate(markedContent)) );
+		assertEquals ( 1, parser.getRawTimeStampTokens().length );
+		assertArrayEquals ( encTimeStampToken, parser.getRawTimeStampToken().getEncoded() );
+	}
+
+	@Test
+	public void parsesTheIndefiniteLengthEncoding() throws Exception {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		BERSequenceGenerator root = new BERSequenceGenerator ( os );
+		root.addObject ( new ASN1ObjectIdentifier(SinekartaDsObjectIdentifiers.cnt_timestampedData) );
+		BERSequenceGenerator body = new BERSequenceGenerator ( root.getRawOutputStream(), 0, true );
+		body.addObject ( new ASN1Integer(MarkedData.DEFAULT_VERSION) );
+		BEROctetStringGenerator content = new BEROctetStringGenerator ( body.getRawOutputStream() );
+		OutputStream contentOs = content.getOctetOutputStream();
+		contentOs.write ( markedContent );
+		contentOs.close();
+		body.addObject ( new DERTaggedObject(0, new DERSequence(ASN1Utils.readObject(encTimeStampToken))) );
+		body.close();
+		root.close();
+
+		MarkedDataParser parser = new MarkedDataParser ( new ByteArrayInputStream(os.toByteArray()) );
+		assertArrayEquals ( markedContent, IOUtils.toByteArray(parser.getMarkedContent()) );
+		assertArrayEquals ( encTimeStampToken, parser.getRawTimeStampToken().getEncoded() );
+	}
+
+
+
+	// -----
+	// --- Utility methods
+	// -
+
+	private byte[] generate ( byte[] content ) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		new MarkedDataStreamGenerator(encTimeStampToken).generate ( os, new ByteArrayInputStream(content), content.length );
+		return os.toByteArray();
+	}
+}
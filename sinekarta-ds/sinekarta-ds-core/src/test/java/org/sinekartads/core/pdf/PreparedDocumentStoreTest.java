@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2010 - 2012 Jenia Software.
+ *
+ * This file is part of Sinekarta
+ *
+ * Sinekarta is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Sinekarta is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+package org.sinekartads.core.pdf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sinekartads.core.pdf.PreparedDocumentStore.PreparedDocument;
+import org.sinekartads.model.oid.DigestAlgorithm;
+
+public class PreparedDocumentStoreTest {
+
+	private PreparedDocumentStore store;
+	private File preparedFile;
+	private long[] byteRange;
+	private byte[] document;
+
+	@Before
+	public void setUp() throws IOException {
+		store = new PreparedDocumentStore();
+
+		// a fake incremental update: the signature dictionary, with the /ByteRange placeholder
+		// overwritten as the signature appearance does, and the /Contents gap
+		String head = "%PDF-1.4\n1 0 obj\n<</Type/Sig/Filter/Adobe.PPKLite/ByteRange ";
+		String gap = "<" + repeat('0', 64) + ">";
+		String tail = "/M(D:20140101000000)>>\nendobj\n%%EOF\n";
+		long gapStart = head.length() + 80;
+		long gapEnd = gapStart + gap.length();
+		byteRange = new long[] { 0, gapStart, gapEnd, tail.length() };
+		String range = "[0 " + gapStart + " " + gapEnd + " " + tail.length() + " ]";
+		document = (head + range + repeat(' ', 80 - range.length()) + gap + tail).getBytes("US-ASCII");
+
+		preparedFile = File.createTempFile ( PreparedDocumentStore.PREPARED_DOCUMENT_PREFIX, PreparedDocumentStore.PREPARED_DOCUMENT_SUFFIX );
+		FileOutputStream fos = new FileOutputStream ( preparedFile );
+		try {
+			fos.write ( document );
+		} finally {
+			fos.close();
+		}
+	}
+
+	@After
+	public void tearDown() {
+		preparedFile.delete();
+	}
+
+
+
+	// -----
+	// --- Registration
+	// -
+
+	@Test
+	public void handlesAreRandomAndSingleUse() {
+		PreparedDocument prepared = newPreparedDocument();
+		String handle = store.put ( prepared );
+		String other = store.put ( newPreparedDocument() );
+
+		assertFalse ( handle.equals(other) );
+		assertFalse ( handle.contains(preparedFile.getName()) );
+		assertSame ( prepared, store.take(handle) );
+		assertNull ( store.take(handle) );
+		assertNull ( store.take("unknown") );
+		assertNull ( store.take(null) );
+	}
+
+	@Test
+	public void expiredDocumentsAreDeleted() {
+		store.setTtl ( -1 );
+		String handle = store.put ( newPreparedDocument() );
+		assertNull ( store.take(handle) );
+		assertFalse ( preparedFile.exists() );
+	}
+
+	@Test
+	public void missingFilesAreNotServed() {
+		String handle = store.put ( newPreparedDocument() );
+		preparedFile.delete();
+		assertNull ( store.take(handle) );
+	}
+
+	@Test
+	public void registeredDocumentsAreNotOrphans() {
+		preparedFile.setLastModified ( System.currentTimeMillis() - 2 * PreparedDocumentStore.DEFAULT_TTL );
+		String handle = store.put ( newPreparedDocument() );
+		store.purgeOrphans ( preparedFile.getParentFile() );
+		assertTrue ( preparedFile.exists() );
+
+		store.take ( handle );
+		store.purgeOrphans ( preparedFile.getParentFile() );
+		assertFalse ( preparedFile.exists() );
+	}
+
+	@Test
+	public void sweepsTheOrphansOncePerInterval() {
+		preparedFile.setLastModified ( System.currentTimeMillis() - 2 * PreparedDocumentStore.DEFAULT_TTL );
+		String handle = store.put ( newPreparedDocument() );
+		assertTrue ( store.sweepOrphans(preparedFile.getParentFile()) );
+		assertTrue ( preparedFile.exists() );
+
+		store.take ( handle );
+		assertFalse ( store.sweepOrphans(preparedFile.getParentFile()) );
+		assertTrue ( preparedFile.exists() );
+
+		// the interval is counted from the last sweep of the store
+		store = new PreparedDocumentStore();
+		assertTrue ( store.sweepOrphans(preparedFile.getParentFile()) );
+		assertFalse ( preparedFile.exists() );
+	}
+
+
+
+	// -----
+	// --- Prepared file inspection
+	// -
+
+	@Test
+	public void readsTheByteRangeNearestToTheGap() throws IOException {
+		assertArrayEquals ( byteRange, PreparedDocumentStore.readByteRange(preparedFile, byteRange[1], byteRange[2]) );
+	}
+
+	@Test
+	public void rejectsGapsOutsideTheFile() throws IOException {
+		assertNull ( PreparedDocumentStore.readByteRange(preparedFile, byteRange[1], preparedFile.length() + 1) );
+		assertNull ( PreparedDocumentStore.readByteRange(preparedFile, byteRange[2], byteRange[1]) );
+	}
+
+	@Test
+	public void digestsTheRangesOnly() throws Exception {
+		ByteArrayOutputStream ranges = new ByteArrayOutputStream();
+		ranges.write ( document, 0, (int)byteRange[1] );
+		ranges.write ( document, (int)byteRange[2], (int)byteRange[3] );
+		byte[] expected = MessageDigest.getInstance("SHA-256").digest ( ranges.toByteArray() );
+
+		assertArrayEquals ( expected, PreparedDocumentStore.digestRanges(preparedFile, byteRange, DigestAlgorithm.SHA256) );
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsRangesExceedingTheFile() throws Exception {
+		long[] exceeding = byteRange.clone();
+		exceeding[3] += 10;
+		PreparedDocumentStore.digestRanges ( preparedFile, exceeding, DigestAlgorithm.SHA256 );
+	}
+
+
+
+	// -----
+	// --- Utility methods
+	// -
+
+	private PreparedDocument newPreparedDocument() {
+		PreparedDocument prepared = new PreparedDocument ( preparedFile, byteRange, new byte[32], new byte[32], new byte[32] );
+		assertNotNull ( prepared.getFile() );
+		return prepared;
+	}
+
+	private static String repeat ( char c, int count ) {
+		StringBuilder buf = new StringBuilder();
+		for ( int i = 0; i < count; i++ ) {
+			buf.append ( c );
+		}
+		return buf.toString();
+	}
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2010 - 2012 Jenia Software.
+ *
+ * This file is part of Sinekarta
+ *
+ * Sinekarta is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Sinekarta is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+package org.sinekartads.core.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.sinekartads.core.service.TimeStampHttpClient.CircuitBreaker;
+import org.sinekartads.core.service.TimeStampHttpClient.TsaResponseTooLargeException;
+import org.sinekartads.core.service.TimeStampHttpClient.TsaStatusException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class TimeStampHttpClientTest {
+
+	private static final byte[] REQUEST 	= { 0x30, 0x03, 0x02, 0x01, 0x01 };
+	private static final byte[] RESPONSE 	= { 0x30, 0x03, 0x02, 0x01, 0x00 };
+
+	private StubTsa stubTsa;
+	private TimeStampHttpClient client;
+	private String tsaUrl;
+
+	@Before
+	public void setUp() throws IOException {
+		stubTsa = new StubTsa();
+		tsaUrl = stubTsa.start();
+		client = new TimeStampHttpClient();
+		client.setConnectTimeout ( 2000 );
+		client.setReadTimeout ( 2000 );
+		client.setMaxRetries ( 2 );
+		client.setRetryBackoff ( 10 );
+		client.setFailureThreshold ( 2 );
+		client.setCircuitOpenTime ( 60000 );
+	}
+
+	@After
+	public void tearDown() {
+		client.shutdown();
+		stubTsa.stop();
+	}
+
+
+
+	// -----
+	// --- Retries and backoff
+	// -
+
+	@Test
+	public void retriesServerErrorsUntilSuccess() throws IOException {
+		stubTsa.enqueue ( 503, RESPONSE );
+		stubTsa.enqueue ( 500, RESPONSE );
+		stubTsa.enqueue ( 200, RESPONSE );
+
+		assertArrayEquals ( RESPONSE, client.post(tsaUrl, null, null, REQUEST) );
+		assertEquals ( 3, stubTsa.requests.get() );
+		assertArrayEquals ( REQUEST, stubTsa.bodies.get(0) );
+	}
+
+	@Test
+	public void doesNotRetryClientErrors() throws IOException {
+		stubTsa.enqueue ( 400, RESPONSE );
+		try {
+			client.post ( tsaUrl, null, null, REQUEST );
+			fail ( "TsaStatusException expected" );
+		} catch(TsaStatusException e) {
+			assertEquals ( 400, e.status );
+		}
+		assertEquals ( 1, stubTsa.requests.get() );
+
+		// the TSA is considered available, the circuit is still closed
+		for ( int i = 0; i < 3; i++ ) {
+			stubTsa.enqueue ( 404, RESPONSE );
+			try {
+				client.post ( tsaUrl, null, null, REQUEST );
+				fail ( "TsaStatusException expected" );
+			} catch(TsaStatusException e) {
+				// expected
+			}
+		}
+		assertEquals ( 4, stubTsa.requests.get() );
+	}
+
+	@Test
+	public void waitsAnExponentialBackoff() throws IOException {
+		client.setRetryBackoff ( 100 );
+		client.setFailureThreshold ( 10 );
+		long start = System.currentTimeMillis();
+		try {
+			client.post ( tsaUrl, null, null, REQUEST );
+			fail ( "IOException expected" );
+		} catch(TsaStatusException e) {
+			assertEquals ( 500, e.status );
+		}
+		// 100 ms before the second attempt, 200 ms before the third one
+		assertTrue ( System.currentTimeMillis() - start >= 300 );
+		assertEquals ( 3, stubTsa.requests.get() );
+	}
+
+
+
+	// -----
+	// --- Circuit transitions
+	// -
+
+	@Test
+	public void countsOneFailurePerCall() throws IOException {
+		// three failed attempts are a single failed call, below the threshold of 2
+		postExpectingFailure ( );
+		assertEquals ( 3, stubTsa.requests.get() );
+
+		stubTsa.enqueue ( 200, RESPONSE );
+		assertArrayEquals ( RESPONSE, client.post(tsaUrl, null, null, REQUEST) );
+	}
+
+	@Test
+	public void opensAfterTheThresholdAndRejectsWithoutNetworkAccess() throws IOException {
+		postExpectingFailure ( );
+		postExpectingFailure ( );
+		int requests = stubTsa.requests.get();
+
+		try {
+			client.post ( tsaUrl, null, null, REQUEST );
+			fail ( "circuit open expected" );
+		} catch(TsaStatusException e) {
+			fail ( "the TSA should not have been called" );
+		} catch(IOException e) {
+			assertTrue ( e.getMessage().contains("circuit open") );
+		}
+		assertEquals ( requests, stubTsa.requests.get() );
+	}
+
+	@Test
+	public void halfOpenTrialClosesTheCircuit() throws Exception {
+		client.setCircuitOpenTime ( 50 );
+		postExpectingFailure ( );
+		postExpectingFailure ( );
+		Thread.sleep ( 100 );
+
+		stubTsa.enqueue ( 200, RESPONSE );
+		assertArrayEquals ( RESPONSE, client.post(tsaUrl, null, null, REQUEST) );
+		stubTsa.enqueue ( 200, RESPONSE );
+		assertArrayEquals ( RESPONSE, client.post(tsaUrl, null, null, REQUEST) );
+	}
+
+	@Test
+	public void halfOpenTrialEndedByARuntimeExceptionIsReleased() throws IOException {
+		client.setFailureThreshold ( 1 );
+		client.setCircuitOpenTime ( 0 );
+		String invalidUrl = "unsupported://tsa";
+		for ( int i = 0; i < 3; i++ ) {
+			try {
+				client.post ( invalidUrl, null, null, REQUEST );
+				fail ( "RuntimeException expected" );
+			} catch(RuntimeException e) {
+				// expected at every call: the trial is released, the circuit does not stay open
+			} catch(IOException e) {
+				fail ( "circuit stuck open - " + e.getMessage() );
+			}
+		}
+	}
+
+	@Test
+	public void circuitBreakerTransitions() {
+		CircuitBreaker circuit = new CircuitBreaker();
+		assertTrue ( circuit.allowRequest(2, 1000, 0) );
+		circuit.failure ( 2, 0 );
+		assertTrue ( circuit.allowRequest(2, 1000, 0) );
+		circuit.failure ( 2, 0 );
+		assertTrue ( circuit.isOpen(2) );
+
+		// open until the open time has elapsed
+		assertFalse ( circuit.allowRequest(2, 1000, 999) );
+
+		// half-open: a single trial at a time
+		assertTrue ( circuit.allowRequest(2, 1000, 1000) );
+		assertFalse ( circuit.allowRequest(2, 1000, 1000) );
+
+		// a failed trial opens the circuit again
+		circuit.failure ( 2, 1000 );
+		assertFalse ( circuit.allowRequest(2, 1000, 1500) );
+		assertTrue ( circuit.allowRequest(2, 1000, 2000) );
+
+		// a successful trial closes it
+		circuit.success();
+		assertFalse ( circuit.isOpen(2) );
+		assertEquals ( 0, circuit.getFailures() );
+		assertTrue ( circuit.allowRequest(2, 1000, 2000) );
+	}
+
+
+
+	// -----
+	// --- iText compatibility
+	// -
+
+	@Test
+	public void decodesBase64ContentEncoding() throws IOException {
+		stubTsa.enqueue ( 200, Base64.encodeBase64(RESPONSE), "Content-Encoding", "base64" );
+		assertArrayEquals ( RESPONSE, client.post(tsaUrl, null, null, REQUEST) );
+	}
+
+	@Test
+	public void sendsTheBasicAuthenticationWithUsernameOnly() throws IOException {
+		stubTsa.enqueue ( 200, RESPONSE );
+		client.post ( tsaUrl, "user", null, REQUEST );
+		assertEquals ( "Basic " + new String(Base64.encodeBase64("user:".getBytes())), stubTsa.authorizations.get(0) );
+	}
+
+
+
+	// -----
+	// --- Response length
+	// -
+
+	@Test
+	public void acceptsAResponseAsLongAsTheLimit() throws IOException {
+		client.setMaxResponseLength ( RESPONSE.length );
+		stubTsa.enqueue ( 200, RESPONSE );
+		assertArrayEquals ( RESPONSE, client.post(tsaUrl, null, null, REQUEST) );
+	}
+
+	@Test
+	public void refusesALongerResponseWithoutRetries() throws IOException {
+		client.setMaxResponseLength ( RESPONSE.length - 1 );
+		stubTsa.enqueue ( 200, RESPONSE );
+		stubTsa.enqueue ( 200, RESPONSE );
+		try {
+			client.post ( tsaUrl, null, null, REQUEST );
+			fail ( "TsaResponseTooLargeException expected" );
+		} catch(TsaResponseTooLargeException e) {
+			// expected
+		}
+		assertEquals ( 1, stubTsa.requests.get() );
+	}
+
+
+
+	// -----
+	// --- Stub TSA
+	// -
+
+	private void postExpectingFailure ( ) {
+		try {
+			client.post ( tsaUrl, null, null, REQUEST );
+			fail ( "IOException expected" );
+		} catch(IOException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Local http server answering with the enqueued responses, a 500 status when the queue is empty.
+	 */
+	private static class StubTsa implements HttpHandler {
+
+		final AtomicInteger requests = new AtomicInteger();
+		final List<byte[]> bodies = new CopyOnWriteArrayList<byte[]>();
+		final List<String> authorizations = new CopyOnWriteArrayList<String>();
+		private final ConcurrentLinkedQueue<Object[]> responses = new ConcurrentLinkedQueue<Object[]>();
+		private HttpServer server;
+
+		String start() throws IOException {
+			server = HttpServer.create ( new InetSocketAddress("127.0.0.1", 0), 0 );
+			server.createContext ( "/tsa", this );
+			server.start();
+			return "http://127.0.0.1:" + server.getAddress().getPort() + "/tsa";
+		}
+
+		void stop() {
+			server.stop ( 0 );
+		}
+
+		void enqueue ( int status, byte[] body, String... headers ) {
+			responses.add ( new Object[] { status, body, headers } );
+		}
+
+		@Override
+		public void handle ( HttpExchange exchange ) throws IOException {
+			requests.incrementAndGet();
+			InputStream is = exchange.getRequestBody();
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			byte[] buf = new byte[1024];
+			int read;
+			while ( (read = is.read(buf)) != -1 ) {
+				body.write ( buf, 0, read );
+			}
+			bodies.add ( body.toByteArray() );
+			String authorization = exchange.getRequestHeaders().getFirst ( "Authorization" );
+			if ( authorization != null ) {
+				authorizations.add ( authorization );
+			}
+
+			Object[] response = responses.poll();
+			int status = response != null ? (Integer) response[0] : 500;
+			byte[] responseBody = response != null ? (byte[]) response[1] : new byte[] { 'k', 'o' };
+			if ( response != null ) {
+				String[] headers = (String[]) response[2];
+				for ( int i = 0; i + 1 < headers.length; i += 2 ) {
+					exchange.getResponseHeaders().add ( headers[i], headers[i+1] );
+				}
+			}
+			exchange.getResponseHeaders().add ( "Content-Type", "application/timestamp-reply" );
+			exchange.sendResponseHeaders ( status, responseBody.length );
+			OutputStream os = exchange.getResponseBody();
+			os.write ( responseBody );
+			os.close();
+		}
+	}
+}
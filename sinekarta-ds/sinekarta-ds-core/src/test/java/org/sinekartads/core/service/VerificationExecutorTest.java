@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2010 - 2012 Jenia Software.
+ *
+ * This file is part of Sinekarta
+ *
+ * Sinekarta is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Sinekarta is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ */
+package org.sinekartads.core.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class VerificationExecutorTest {
+
+	private final VerificationExecutor executor = new VerificationExecutor();
+
+
+
+	// -----
+	// --- Results
+	// -
+
+	@Test
+	public void givesTheResultsInTheSubmissionOrder() throws Exception {
+		executor.setParallelism ( 4 );
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for ( int i = 0; i < 4; i++ ) {
+			tasks.add ( sleeping(40 - i * 10, i, null) );
+		}
+		assertEquals ( Arrays.asList(0, 1, 2, 3), executor.invokeAll(tasks, 0) );
+	}
+
+
+
+	// -----
+	// --- Deadline
+	// -
+
+	@Test
+	public void cancelsThePooledTasksOnceTheDeadlineExpired() throws Exception {
+		executor.setParallelism ( 2 );
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		tasks.add ( sleeping(10, 0, null) );
+		tasks.add ( sleeping(5000, 1, null) );
+		long start = System.currentTimeMillis();
+		try {
+			executor.invokeAll ( tasks, 100 );
+			fail ( "SignatureException expected" );
+		} catch(SignatureException e) {
+			assertFalse ( System.currentTimeMillis() - start > 2000 );
+		}
+	}
+
+	@Test
+	public void skipsTheInlineTasksOnceTheDeadlineExpired() throws Exception {
+		executor.setParallelism ( 1 );
+		AtomicBoolean lastRun = new AtomicBoolean();
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		tasks.add ( sleeping(150, 0, null) );
+		tasks.add ( sleeping(0, 1, lastRun) );
+		try {
+			executor.invokeAll ( tasks, 50 );
+			fail ( "SignatureException expected" );
+		} catch(SignatureException e) {
+			assertFalse ( lastRun.get() );
+		}
+	}
+
+
+
+	// -----
+	// --- Utility methods
+	// -
+
+	private static Callable<Integer> sleeping ( final long millis, final int result, final AtomicBoolean run ) {
+		return new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				if ( run != null ) {
+					run.set ( true );
+				}
+				Thread.sleep ( millis );
+				return result;
+			}
+		};
+	}
+}
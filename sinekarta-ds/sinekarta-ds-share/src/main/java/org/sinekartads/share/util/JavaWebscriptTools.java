@@ -18,7 +18,9 @@ package org.sinekartads.share.util;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Serializable;
+import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -192,13 +194,14 @@ public class JavaWebscriptTools {
 			// Accept the response only if the http connection status is 200
 			if ( resp.getStatus().getCode() != Status.STATUS_OK ) {
 				message = "communication failure, see the data received with the alfresco response";
-				receivedData = new String ( IOUtils.getStreamAsByteArray(resp.getResponseStream()) );
+				receivedData = new String ( IOUtils.getStreamAsByteArray(resp.getResponseStream()), responseEncoding(resp) );
 				code = ResultCode.BAD_REQUEST; 
 				tracer.error(String.format("%s \nrespContent:\n%s", message, receivedData));
 				throw new AlfrescoException(message, code, receivedData);
 			}
 			// Accept the response only if the operation succeeds
-			response = (SkdsResponse)TemplateUtils.Encoding.deserializeJSON ( responseClass, resp.getResponseStream() );
+			response = (SkdsResponse)TemplateUtils.Encoding.deserializeJSON ( responseClass, 
+					new InputStreamReader(resp.getResponseStream(), responseEncoding(resp)) );
 			code = response.resultCodeFromString();
 			if ( code != null && code != ResultCode.SUCCESS ) {
 				if ( StringUtils.isBlank(message) ) {
@@ -225,6 +228,17 @@ public class JavaWebscriptTools {
 		}
 	}
 	
+	/**
+	 * Charset declared by the Alfresco-tier response, the JSON default if missing
+	 */
+	private static String responseEncoding(Response resp) {
+		String encoding = resp.getEncoding();
+		if ( StringUtils.isBlank(encoding) ) {
+			encoding = TemplateUtils.Encoding.JSON_CHARSET;
+		}
+		return encoding;
+	}
+	
 	
 	
 	
@@ -235,8 +249,9 @@ public class JavaWebscriptTools {
 	public static Response executeJsonPostRequest(String url, String body, ConnectorService connectorService) {
 		Map<String,String> params = new HashMap<String,String>();
 		Map<String,String> header = new HashMap<String,String>();
-		header.put("Content-Type", "application/json");
-		return executePostRequest(url, new ByteArrayInputStream(body.getBytes()), HttpMethod.POST, params, header, connectorService);
+		header.put("Content-Type", "application/json; charset=" + TemplateUtils.Encoding.JSON_CHARSET);
+		byte[] content = body.getBytes(Charset.forName(TemplateUtils.Encoding.JSON_CHARSET));
+		return executePostRequest(url, new ByteArrayInputStream(content), HttpMethod.POST, params, header, connectorService);
 	}
 	
 	public static Response executePostRequest(String url, String body, String contentType, ConnectorService connectorService) throws Exception {
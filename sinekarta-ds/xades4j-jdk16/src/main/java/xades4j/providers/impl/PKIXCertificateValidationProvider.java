@@ -16,6 +16,7 @@
  */
 package xades4j.providers.impl;
 
+import java.io.ByteArrayInputStream;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
@@ -25,6 +26,7 @@ import java.security.cert.CertPathBuilder;
 import java.security.cert.CertPathBuilderException;
 import java.security.cert.CertStore;
 import java.security.cert.CertStoreException;
+import java.security.cert.CertificateFactory;
 import java.security.cert.CollectionCertStoreParameters;
 import java.security.cert.PKIXBuilderParameters;
 import java.security.cert.PKIXCertPathBuilderResult;
@@ -42,6 +44,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import javax.security.auth.x500.X500Principal;
+import org.bouncycastle.asn1.ASN1Object;
+import org.bouncycastle.asn1.DERIA5String;
+import org.bouncycastle.asn1.x509.CRLDistPoint;
+import org.bouncycastle.asn1.x509.DistributionPoint;
+import org.bouncycastle.asn1.x509.DistributionPointName;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.X509Extensions;
+import org.bouncycastle.x509.extension.X509ExtensionUtil;
+import org.sinekartads.util.revocation.RevocationCache;
 import xades4j.providers.CannotBuildCertificationPathException;
 import xades4j.providers.CannotSelectCertificateException;
 import xades4j.providers.CertificateValidationException;
@@ -55,6 +67,9 @@ import xades4j.verification.UnexpectedJCAException;
  * Since the Java's PKIX API doesn't allow to access the CRLs used in the certification
  * path validation, this is manually done. There has to be a CRL for each issuer
  * in the path which is valid at the moment of validation (signature and date).
+ * <p>
+ * Patched by JENIA Software: if revocation is enabled the CRLs published at the distribution
+ * points of the certificates are added to the external ones, through the shared {@code RevocationCache}.
  * @author Luís
  */
 public class PKIXCertificateValidationProvider implements CertificateValidationProvider
@@ -229,6 +244,7 @@ public class PKIXCertificateValidationProvider implements CertificateValidationP
         }
 
         PKIXCertPathBuilderResult builderRes;
+        Collection<X509CRL> distributionPointCrls = Collections.emptyList();
         try
         {
             // Certificates to be used to build the certification path.
@@ -244,6 +260,13 @@ public class PKIXCertificateValidationProvider implements CertificateValidationP
             {
                 builderParams.addCertStore(intermCertsAndCrls[i]);
             }
+            // - The CRLs from the distribution points of the other certificates.
+            if (revocationEnabled && otherCerts != null)
+            {
+                distributionPointCrls = getDistributionPointCRLs(otherCerts);
+                CollectionCertStoreParameters ccsp = new CollectionCertStoreParameters(distributionPointCrls);
+                builderParams.addCertStore(CertStore.getInstance("Collection", ccsp));
+            }
 
             builderParams.setRevocationEnabled(revocationEnabled);
             builderParams.setMaxPathLength(maxPathLength);
@@ -278,14 +301,15 @@ public class PKIXCertificateValidationProvider implements CertificateValidationP
 
         if (revocationEnabled)
         {
-            return new ValidationData(certPath, getCRLsForCertPath(certPath, validationDate));
+            return new ValidationData(certPath, getCRLsForCertPath(certPath, validationDate, distributionPointCrls));
         }
         return new ValidationData(certPath);
     }
 
     private Collection<X509CRL> getCRLsForCertPath(
             List<X509Certificate> certPath,
-            Date validationDate) throws CertificateValidationException
+            Date validationDate,
+            Collection<X509CRL> distributionPointCrls) throws CertificateValidationException
     {
         // Map the issuers certificates in the chain. This is used to know the issuers
         // and later to verify the signatures in the CRLs.
@@ -320,6 +344,13 @@ public class PKIXCertificateValidationProvider implements CertificateValidationP
                 crls.addAll(Collections.checkedCollection(storeCRLs, X509CRL.class));
 
             }
+            for (X509CRL crl : distributionPointCrls)
+            {
+                if (crlSelector.match(crl))
+                {
+                    crls.add(crl);
+                }
+            }
         } catch (CertStoreException ex)
         {
             throw new CertificateValidationException(null, "Cannot get CRLs", ex);
@@ -348,4 +379,77 @@ public class PKIXCertificateValidationProvider implements CertificateValidationP
         }
         return crls;
     }
+
+    /**
+     * Downloads the CRLs published at the distribution points of the given certificates.
+     * The CRLs are served by the {@code RevocationCache} until their nextUpdate; the
+     * distribution points that cannot be reached, or whose CRL has expired and cannot be
+     * refreshed, are ignored, and the path validation fails later if no CRL is available
+     * for an issuer.
+     */
+    private static Collection<X509CRL> getDistributionPointCRLs(Collection<X509Certificate> certs)
+    {
+        Map<String, X509CRL> crls = new HashMap<String, X509CRL>();
+        CertificateFactory cf;
+        try
+        {
+            cf = CertificateFactory.getInstance("X.509");
+        } catch (Exception ex)
+        {
+            return crls.values();
+        }
+
+        for (X509Certificate cert : certs)
+        {
+            for (String url : getDistributionPointURLs(cert))
+            {
+                if (crls.containsKey(url))
+                {
+                    continue;
+                }
+                try
+                {
+                    byte[] encoded = RevocationCache.getInstance().getCRL(url);
+                    crls.put(url, (X509CRL) cf.generateCRL(new ByteArrayInputStream(encoded)));
+                } catch (Exception ex)
+                {
+                    // The CRL is not available; try the next distribution point.
+                }
+            }
+        }
+        return new ArrayList<X509CRL>(crls.values());
+    }
+
+    private static List<String> getDistributionPointURLs(X509Certificate cert)
+    {
+        List<String> urls = new ArrayList<String>();
+        byte[] extension = cert.getExtensionValue(X509Extensions.CRLDistributionPoints.getId());
+        if (null == extension)
+        {
+            return urls;
+        }
+        try
+        {
+            ASN1Object obj = X509ExtensionUtil.fromExtensionValue(extension);
+            for (DistributionPoint dp : CRLDistPoint.getInstance(obj).getDistributionPoints())
+            {
+                DistributionPointName dpName = dp.getDistributionPoint();
+                if (null == dpName || dpName.getType() != DistributionPointName.FULL_NAME)
+                {
+                    continue;
+                }
+                for (GeneralName name : GeneralNames.getInstance(dpName.getName()).getNames())
+                {
+                    if (name.getTagNo() == GeneralName.uniformResourceIdentifier)
+                    {
+                        urls.add(DERIA5String.getInstance(name.getName()).getString());
+                    }
+                }
+            }
+        } catch (Exception ex)
+        {
+            // Malformed extension; no distribution points.
+        }
+        return urls;
+    }
 }
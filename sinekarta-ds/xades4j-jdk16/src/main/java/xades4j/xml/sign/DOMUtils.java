@@ -1,21 +1,31 @@
 package xades4j.xml.sign;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringWriter;
 import java.util.LinkedList;
 import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import javax.xml.namespace.QName;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Result;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
@@ -27,18 +37,184 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
+/**
+ * DOM utilities shared by the XAdES signature classes and by the sinekarta XMLSignatureService.
+ * Parsers, transformers and XPath objects are not thread-safe: they are taken from small bounded pools,
+ * created from the shared factories, and given back reset once the document has been processed.
+ * The pools are not bound to the threads, the idle instances never outlive the classloader 
+ * of this class. The compiled XPath expressions are pooled as well, by expression.
+ */
 public class DOMUtils {
 
-	static XPath xPath;
-	static Transformer transformer;
-	static DocumentBuilder docBuilder;
+	private static final int MAX_IDLE = Math.max ( 4, 2 * Runtime.getRuntime().availableProcessors() );
+	
+	private static final DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
+	private static final DocumentBuilderFactory nsDocBuilderFactory = DocumentBuilderFactory.newInstance();
+	private static final TransformerFactory transformerFactory = TransformerFactory.newInstance();
+	private static final XPathFactory xPathFactory = XPathFactory.newInstance();
 	static {
+		nsDocBuilderFactory.setNamespaceAware ( true );
+	}
+	
+	/**
+	 * Bounded set of idle instances: acquire() creates a new instance when none is idle, 
+	 * release() discards it when MAX_IDLE instances are already idle.
+	 */
+	private static abstract class Pool<T> {
+		
+		private final BlockingQueue<T> idle = new ArrayBlockingQueue<T> ( MAX_IDLE );
+		
+		protected abstract T create ( );
+		
+		protected void reset ( T instance ) { }
+		
+		T acquire ( ) {
+			T instance = idle.poll();
+			return instance != null ? instance : create();
+		}
+		
+		void release ( T instance ) {
+			reset ( instance );
+			idle.offer ( instance );
+		}
+	}
+	
+	private static final Pool<DocumentBuilder> docBuilders = new DocumentBuilderPool ( docBuilderFactory );
+	private static final Pool<DocumentBuilder> nsDocBuilders = new DocumentBuilderPool ( nsDocBuilderFactory );
+	
+	private static class DocumentBuilderPool extends Pool<DocumentBuilder> {
+		
+		private final DocumentBuilderFactory factory;
+		
+		DocumentBuilderPool ( DocumentBuilderFactory factory ) {
+			this.factory = factory;
+		}
+		
+		@Override
+		protected DocumentBuilder create ( ) {
+			// the factories are not thread-safe
+			synchronized ( factory ) {
+				try {
+					return factory.newDocumentBuilder();
+				} catch(ParserConfigurationException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+		
+		@Override
+		protected void reset ( DocumentBuilder builder ) {
+			builder.reset();
+		}
+	}
+	
+	private static final Pool<Transformer> transformers = new Pool<Transformer>() {
+		@Override
+		protected Transformer create ( ) {
+			synchronized ( transformerFactory ) {
+				try {
+					return transformerFactory.newTransformer();
+				} catch(TransformerConfigurationException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+		
+		@Override
+		protected void reset ( Transformer transformer ) {
+			// drop the output properties, parameters and listeners set by the previous user
+			transformer.reset();
+		}
+	};
+	
+	private static final ConcurrentMap<String, Pool<XPathExpression>> xPathExpressions = 
+			new ConcurrentHashMap<String, Pool<XPathExpression>>();
+	
+	private static class XPathExpressionPool extends Pool<XPathExpression> {
+		
+		private final String expression;
+		
+		XPathExpressionPool ( String expression ) {
+			this.expression = expression;
+		}
+		
+		@Override
+		protected XPathExpression create ( ) {
+			try {
+				return compile ( expression );
+			} catch(XPathExpressionException e) {
+				// never thrown, the expression has been compiled once before creating the pool
+				throw new RuntimeException(e);
+			}
+		}
+	}
+	
+	private static XPathExpression compile ( String expression ) throws XPathExpressionException {
+		XPath xPath;
+		synchronized ( xPathFactory ) {
+			xPath = xPathFactory.newXPath();
+		}
+		return xPath.compile ( expression );
+	}
+	
+	/**
+	 * Parse an xml document with a pooled parser.
+	 * @param is the xml document, not closed
+	 * @param namespaceAware true to parse with the support for the XML namespaces
+	 */
+	public static Document parse ( InputStream is, boolean namespaceAware ) throws SAXException, IOException {
+		Pool<DocumentBuilder> pool = namespaceAware ? nsDocBuilders : docBuilders;
+		DocumentBuilder builder = pool.acquire();
 		try {
-			transformer = TransformerFactory.newInstance().newTransformer();
-			docBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-			xPath = XPathFactory.newInstance().newXPath();
-		} catch(Exception e) {
-			throw new RuntimeException(e);
+			return builder.parse ( is );
+		} finally {
+			pool.release ( builder );
+		}
+	}
+	
+	/**
+	 * Serialize a node with a pooled identity Transformer, without output properties.
+	 */
+	public static void transform ( Node node, Result result ) throws TransformerException {
+		transform ( node, result, false );
+	}
+	
+	private static void transform ( Node node, Result result, boolean indent ) throws TransformerException {
+		Transformer transformer = transformers.acquire();
+		try {
+			if ( indent ) {
+				transformer.setOutputProperty ( OutputKeys.INDENT, "yes" );
+			}
+			transformer.transform ( new DOMSource(node), result );
+		} finally {
+			transformers.release ( transformer );
+		}
+	}
+	
+	/**
+	 * Evaluate an XPath expression, compiled once and pooled.
+	 * @param expression an XPath expression
+	 * @param item the context node
+	 * @param returnType the expected result type, as defined by XPathConstants
+	 * @throws XPathExpressionException if the expression can't be compiled or evaluated
+	 */
+	public static Object evaluateXPath ( String expression, Object item, QName returnType ) throws XPathExpressionException {
+		Pool<XPathExpression> pool = xPathExpressions.get ( expression );
+		XPathExpression compiled;
+		if ( pool == null ) {
+			compiled = compile ( expression );
+			Pool<XPathExpression> newPool = new XPathExpressionPool ( expression );
+			pool = xPathExpressions.putIfAbsent ( expression, newPool );
+			if ( pool == null ) {
+				pool = newPool;
+			}
+		} else {
+			compiled = pool.acquire();
+		}
+		try {
+			return compiled.evaluate ( item, returnType );
+		} finally {
+			pool.release ( compiled );
 		}
 	}
 	
@@ -50,19 +226,8 @@ public class DOMUtils {
 	public static String toXML ( Node node ) {
 		String xml = null;
 		try {
-			ByteArrayOutputStream baos = new ByteArrayOutputStream();
-	        try {
-	        	transformer.transform (	new DOMSource(node), new StreamResult(baos) );
-	        } catch(Exception e) {
-	        	throw new RuntimeException(e);
-	        }
-			xml = new String ( baos.toByteArray() );
-			Transformer transformer = TransformerFactory.newInstance().newTransformer();
-			transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-			//initialize StreamResult with File object to save to file
 			StreamResult result = new StreamResult(new StringWriter());
-			DOMSource source = new DOMSource(node);
-			transformer.transform(source, result);
+			transform(node, result, true);
 			xml = result.getWriter().toString();
 		} catch(Exception e) {
 			throw new RuntimeException(e);
@@ -103,7 +268,7 @@ public class DOMUtils {
 	 * @throws XPathExpressionException
 	 */
 	public static Element replaceElement(Element root, String expression, Node y) throws XPathExpressionException {
-		Node current = (Node)xPath.compile(expression).evaluate(root, XPathConstants.NODE);
+		Node current = (Node)evaluateXPath(expression, root, XPathConstants.NODE);
 		current.getParentNode().replaceChild(y, current);
 	    return root;
 	}
@@ -116,7 +281,7 @@ public class DOMUtils {
 	public static Element parseXML ( String xml ) {
 		Document document;
 		try {
-			document = docBuilder.parse ( new ByteArrayInputStream(xml.getBytes()) );
+			document = parse ( new ByteArrayInputStream(xml.getBytes()), false );
 		} catch (SAXException | IOException e) {
 			// never thrown: byte array operation on a - supposed to be - valid XML string
 			throw new RuntimeException(e);
@@ -0,0 +1,84 @@
+package xades4j.xml.sign;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+public class DOMUtilsTest {
+
+	private static final String XML = "<a xmlns=\"urn:test\"><b>1</b><c/></a>";
+
+	@Test
+	public void transformerIsResetAfterUse() throws Exception {
+		Document doc = DOMUtils.parse ( new ByteArrayInputStream(XML.getBytes("UTF-8")), true );
+
+		// the indenting serialization must not leak its output properties into the following ones
+		assertTrue ( DOMUtils.toXML(doc).contains("\n") );
+		StringWriter writer = new StringWriter();
+		DOMUtils.transform ( doc.getDocumentElement(), new StreamResult(writer) );
+		assertFalse ( writer.toString().substring(writer.toString().indexOf("<a")).contains("\n") );
+	}
+
+	@Test
+	public void parsesWithAndWithoutNamespaces() throws Exception {
+		Document nsDoc = DOMUtils.parse ( new ByteArrayInputStream(XML.getBytes("UTF-8")), true );
+		assertEquals ( "urn:test", nsDoc.getDocumentElement().getNamespaceURI() );
+		Element element = DOMUtils.parseXML ( XML );
+		assertEquals ( null, element.getNamespaceURI() );
+	}
+
+	@Test
+	public void evaluatesPooledExpressions() throws Exception {
+		Document doc = DOMUtils.parse ( new ByteArrayInputStream(XML.getBytes("UTF-8")), false );
+		Node b = (Node) DOMUtils.evaluateXPath ( "/a/b", doc, XPathConstants.NODE );
+		assertEquals ( "1", b.getTextContent() );
+		assertSame ( b, DOMUtils.evaluateXPath("/a/b", doc, XPathConstants.NODE) );
+	}
+
+	@Test(expected = XPathExpressionException.class)
+	public void rejectsInvalidExpressions() throws Exception {
+		DOMUtils.evaluateXPath ( "/a[", DOMUtils.parseXML(XML), XPathConstants.NODE );
+	}
+
+	@Test
+	public void sharesThePoolsAmongThreads() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool ( 8 );
+		try {
+			List<Future<String>> futures = new ArrayList<Future<String>>();
+			for ( int i = 0; i < 200; i++ ) {
+				final String xml = "<a><b>" + i + "</b></a>";
+				futures.add ( executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						Element root = DOMUtils.parseXML ( xml );
+						return ((Node) DOMUtils.evaluateXPath("/a/b", root, XPathConstants.NODE)).getTextContent();
+					}
+				}) );
+			}
+			for ( int i = 0; i < futures.size(); i++ ) {
+				assertEquals ( Integer.toString(i), futures.get(i).get() );
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}